@@ -7,6 +7,8 @@ import asl.metadata.EpochData;
 import asl.metadata.StageData;
 import asl.metadata.Station;
 import asl.security.MemberDigest;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -145,9 +147,7 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 				addToDigest(poly.getUpperApproximationBound());
 				addToDigest(poly.getNumberOfCoefficients());
 				double[] coeffs = poly.getRealPolynomialCoefficients();
-				for (double coeff : coeffs) {
-					addToDigest(coeff);
-				}
+				addToDigest(coeffs, 0, coeffs.length);
 			}
 			// Add Digital Stage to Digest
 			else if (stage instanceof DigitalStage) {
@@ -161,6 +161,7 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 	// setter(s)
 	public void setSampleRate(double sampleRate) {
 		this.sampleRate = sampleRate;
+		invalidateDigest();
 	}
 
 	public void setDip(double dip) {
@@ -234,7 +235,9 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 
 	// Stages
 	private void addStage(Integer stageID, ResponseStage responseStage) {
+		responseStage.freeze();
 		stages.put(stageID, responseStage);
+		invalidateDigest();
 	}
 
 	private boolean hasStage(Integer stageID) {
@@ -245,10 +248,34 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 		return stages.get(stageID);
 	}
 
+	/**
+	 * Gets the response stages. Stages can't be changed once added, so the
+	 * digest of this channel is only recomputed when stages are added.
+	 *
+	 * @return the stages by stage number
+	 */
 	public Hashtable<Integer, ResponseStage> getStages() {
 		return stages;
 	}
 
+	/**
+	 * Read object and freeze its stages, which channels serialized before
+	 * stages were frozen don't have marked.
+	 *
+	 * @param in
+	 *            the ObjectInputStream containing the object
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 * @throws ClassNotFoundException
+	 *             the class not found exception
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		for (ResponseStage stage : stages.values()) {
+			stage.freeze();
+		}
+	}
+
 	// Be careful when using this since:
 	// A pole-zero response will have 3 stages: 0, 1, 2
 	// A polynomial response will have 1 stage: 1
@@ -348,6 +375,94 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 
 	public Complex[] getResponse(double[] freqs, ResponseUnits responseOut)
 			throws ChannelMetaException {
+		if (freqs.length == 0) {
+			throw new ChannelMetaException("getResponse: freqs.length = 0!");
+		}
+		if (invalidResponse()) {
+			throw new ChannelMetaException("getResponse: Invalid Response!");
+		}
+		double[] real = new double[freqs.length];
+		double[] imaginary = new double[freqs.length];
+		evaluateResponse(freqs, responseOut, real, imaginary);
+		return toComplex(real, imaginary);
+	}
+
+	/**
+	 * Return the complex response at the frequencies k * df, k = 0, ..., n - 1,
+	 * the grid of a single sided FFT. Responses are cached by
+	 * {@link ResponseCache} for every channel epoch with the same response, so
+	 * each grid is only evaluated once.
+	 *
+	 * @param n
+	 *            the number of frequencies
+	 * @param df
+	 *            the frequency spacing
+	 * @param responseOut
+	 *            the units of the response
+	 * @return the response at each frequency
+	 * @throws ChannelMetaException
+	 *             if the response is invalid or can't be converted to
+	 *             responseOut
+	 */
+	public Complex[] getResponse(int n, double df, ResponseUnits responseOut)
+			throws ChannelMetaException {
+		if (n <= 0) {
+			throw new ChannelMetaException("getResponse: freqs.length = 0!");
+		}
+		if (invalidResponse()) {
+			throw new ChannelMetaException("getResponse: Invalid Response!");
+		}
+		ResponseStage stage = stages.get(1);
+		if (!(stage instanceof PoleZeroStage)) {
+			throw new ChannelMetaException(
+					"getResponse: Stage1 is NOT a PoleZeroStage!");
+		}
+
+		// The digest covers the stages but not their units
+		ResponseCache.Key key = new ResponseCache.Key(getDigestBytes(),
+				stage.getInputUnits(), n, df, responseOut);
+		ResponseCache.Response response = ResponseCache.getInstance().get(key);
+		if (response == null) {
+			double[] freqs = new double[n];
+			for (int k = 0; k < n; k++) {
+				freqs[k] = (double) k * df;
+			}
+			double[] real = new double[n];
+			double[] imaginary = new double[n];
+			evaluateResponse(freqs, responseOut, real, imaginary);
+			response = ResponseCache.getInstance().put(key,
+					new ResponseCache.Response(real, imaginary));
+		}
+		return toComplex(response.real, response.imaginary);
+	}
+
+	/**
+	 * Gets the bytes the responses cached by
+	 * {@link #getResponse(int, double, ResponseUnits)} may hold at most.
+	 *
+	 * @return the cache budget in bytes
+	 */
+	public static long getResponseCacheBudget() {
+		return ResponseCache.BUDGET;
+	}
+
+	private static Complex[] toComplex(double[] real, double[] imaginary) {
+		Complex[] response = new Complex[real.length];
+		for (int i = 0; i < real.length; i++) {
+			response[i] = new Complex(real[i], imaginary[i]);
+		}
+		return response;
+	}
+
+	/**
+	 * Evaluate the response at given freqs into primitive arrays. Finite
+	 * values are computed with the same operations as Complex arithmetic, so
+	 * the response is identical to evaluating it with Complex, which is still
+	 * used for infinite and NaN values. The caller checks the response is
+	 * valid.
+	 */
+	private void evaluateResponse(double[] freqs, ResponseUnits responseOut,
+			double[] real, double[] imaginary) throws ChannelMetaException {
 		int outUnits = 0;
 		switch (responseOut) {
 		case DISPLACEMENT: // return Displacement Response
@@ -364,14 +479,6 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 			break;
 		}
 
-		if (freqs.length == 0) {
-			throw new ChannelMetaException("getResponse: freqs.length = 0!");
-		}
-		if (invalidResponse()) {
-			throw new ChannelMetaException("getResponse: Invalid Response!");
-		}
-		Complex[] response = null;
-
 		// Set response = polezero response (with A0 factored in):
 		ResponseStage stage = stages.get(1);
 
@@ -381,7 +488,7 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 		} else {
 			PoleZeroStage pz = (PoleZeroStage) stage;
 			try {
-				response = pz.getResponse(freqs);
+				pz.getResponse(freqs, real, imaginary);
 			} catch (PoleZeroStageException e) {
 				logger.error("PoleZeroStageException:", e);
 				throw new ChannelMetaException("PoleZeroStageException");
@@ -429,22 +536,32 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 				// response type as was previous
 				double s = 2. * Math.PI;
 
-				// Here we integrate
-				if (n < 0) { // INTEGRATION RESPONSE I(w) x (iw)^n
-					for (int i = 0; i < freqs.length; i++) {
-						Complex iw = new Complex(0.0, s * freqs[i]);
-						for (int j = 1; j < Math.abs(n); j++)
-							iw = iw.multiply(iw);
-						response[i] = iw.multiply(response[i]);
-					}
-				}
-				// Here we differentiate
-				else if (n > 0) { // DIFFERENTIATION RESPONSE I(w) / (iw)^n
+				if (n != 0) {
 					for (int i = 0; i < freqs.length; i++) {
-						Complex iw = new Complex(0.0, -1.0 / (s * freqs[i]));
-						for (int j = 1; j < Math.abs(n); j++)
-							iw = iw.multiply(iw);
-						response[i] = iw.multiply(response[i]);
+						// INTEGRATION RESPONSE I(w) x (iw)^n
+						// DIFFERENTIATION RESPONSE I(w) / (iw)^n
+						double iwReal = 0.0;
+						double iwImaginary = n < 0 ? s * freqs[i] : -1.0 / (s * freqs[i]);
+						for (int j = 1; j < Math.abs(n); j++) {
+							double t = iwReal * iwReal - iwImaginary * iwImaginary;
+							iwImaginary = iwReal * iwImaginary + iwImaginary * iwReal;
+							iwReal = t;
+						}
+						double rr = real[i];
+						double ri = imaginary[i];
+						if (Double.isFinite(iwReal) && Double.isFinite(iwImaginary)
+								&& Double.isFinite(rr) && Double.isFinite(ri)) {
+							real[i] = iwReal * rr - iwImaginary * ri;
+							imaginary[i] = iwReal * ri + iwImaginary * rr;
+						} else {
+							Complex iw = n < 0 ? new Complex(0.0, s * freqs[i])
+									: new Complex(0.0, -1.0 / (s * freqs[i]));
+							for (int j = 1; j < Math.abs(n); j++)
+								iw = iw.multiply(iw);
+							Complex converted = iw.multiply(new Complex(rr, ri));
+							real[i] = converted.getReal();
+							imaginary[i] = converted.getImaginary();
+						}
 					}
 				}
 			} // Convert
@@ -481,10 +598,15 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 		}
 
 		for (int i = 0; i < freqs.length; i++) {
-			response[i] = response[i].multiply(scale);
+			if (Double.isFinite(real[i]) && Double.isFinite(imaginary[i]) && Double.isFinite(scale)) {
+				real[i] *= scale;
+				imaginary[i] *= scale;
+			} else {
+				Complex scaled = new Complex(real[i], imaginary[i]).multiply(scale);
+				real[i] = scaled.getReal();
+				imaginary[i] = scaled.getImaginary();
+			}
 		}
-
-		return response;
 	}
 
 	/**
@@ -71,10 +71,12 @@ class DigitalStage extends ResponseStage implements Cloneable, Serializable {
 	}
 
 	public void setInputSampleRate(double sampleRate) {
+		checkNotFrozen();
 		this.inputSampleRate = sampleRate;
 	}
 
 	public void setDecimation(int factor) {
+		checkNotFrozen();
 		this.decimationFactor = factor;
 	}
 
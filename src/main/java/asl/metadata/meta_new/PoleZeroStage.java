@@ -62,15 +62,18 @@ public class PoleZeroStage extends ResponseStage implements Cloneable, Serializa
 	}
 
 	void addPole(Complex pole) {
+		checkNotFrozen();
 		poles.add(pole);
 		poleAdded = true;
 	}
 
 	void addZero(Complex zero) {
+		checkNotFrozen();
 		zeros.add(zero);
 	}
 
 	public void setNormalization(double A0) {
+		checkNotFrozen();
 		this.normalizationConstant = A0;
 		normalizationSet = true;
 	}
@@ -87,12 +90,20 @@ public class PoleZeroStage extends ResponseStage implements Cloneable, Serializa
 		return zeros.size();
 	}
 
+	/**
+	 * Gets a copy of the zeros, the stage's own can't be changed once it is
+	 * added to a ChannelMeta.
+	 */
 	public ArrayList<Complex> getZeros() {
-		return zeros;
+		return new ArrayList<>(zeros);
 	}
 
+	/**
+	 * Gets a copy of the poles, the stage's own can't be changed once it is
+	 * added to a ChannelMeta.
+	 */
 	public ArrayList<Complex> getPoles() {
-		return poles;
+		return new ArrayList<>(poles);
 	}
 
 	public void print() {
@@ -114,6 +125,33 @@ public class PoleZeroStage extends ResponseStage implements Cloneable, Serializa
 	 * really check that length > 0
 	 */
 	Complex[] getResponse(double[] freqs) throws PoleZeroStageException {
+		double[] real = new double[freqs.length];
+		double[] imaginary = new double[freqs.length];
+		getResponse(freqs, real, imaginary);
+		Complex[] response = new Complex[freqs.length];
+		for (int i = 0; i < freqs.length; i++) {
+			response[i] = new Complex(real[i], imaginary[i]);
+		}
+		return response;
+	}
+
+	/**
+	 * Evaluate the response at given freqs into primitive arrays, without
+	 * allocating per frequency. The zero and pole products of each frequency
+	 * are accumulated in place with the same operations as
+	 * {@link #evalResp(double)}, so results are identical to it.
+	 *
+	 * @param freqs
+	 *            the frequencies
+	 * @param real
+	 *            receives the real parts, at least freqs.length long
+	 * @param imaginary
+	 *            receives the imaginary parts, at least freqs.length long
+	 * @throws PoleZeroStageException
+	 *             if the polezero info isn't loaded or this isn't an analog
+	 *             stage
+	 */
+	void getResponse(double[] freqs, double[] real, double[] imaginary) throws PoleZeroStageException {
 		// Some polezero responses (e.g., ANMO.IU.20.BN?) appear to have NO
 		// zeros
 		if (!poleAdded || !normalizationSet) {
@@ -127,15 +165,76 @@ public class PoleZeroStage extends ResponseStage implements Cloneable, Serializa
 			throw new PoleZeroStageException(
 					"[ PoleZeroStage-->getResponse Error: Input freqs[] has no zero length! ]");
 		}
-		Complex[] response = new Complex[freqs.length];
+
+		double omega;
+		if (getStageType() == 'A') {
+			omega = 2 * Math.PI;
+		} else if (getStageType() == 'B') {
+			omega = 1.0;
+		} else {
+			throw new PoleZeroStageException(
+					"[ PoleZeroStage-->evalResponse Error: Cannot evalResp a non-PoleZero Stage!]");
+		}
+
+		double[] zeroReal = new double[zeros.size()];
+		double[] zeroImaginary = new double[zeros.size()];
+		for (int j = 0; j < zeroReal.length; j++) {
+			zeroReal[j] = zeros.get(j).getReal();
+			zeroImaginary[j] = zeros.get(j).getImaginary();
+		}
+		double[] poleReal = new double[poles.size()];
+		double[] poleImaginary = new double[poles.size()];
+		for (int j = 0; j < poleReal.length; j++) {
+			poleReal[j] = poles.get(j).getReal();
+			poleImaginary[j] = poles.get(j).getImaginary();
+		}
+
 		for (int i = 0; i < freqs.length; i++) {
-			try {
-				response[i] = evalResp(freqs[i]);
-			} catch (PoleZeroStageException e) {
-				logger.error("PoleZeroStageException:", e);
+			double s = omega * freqs[i];
+			double nr = 1.0;
+			double ni = 0.0;
+			for (int j = 0; j < zeroReal.length; j++) {
+				double fr = 0.0 - zeroReal[j];
+				double fi = s - zeroImaginary[j];
+				double t = nr * fr - ni * fi;
+				ni = nr * fi + ni * fr;
+				nr = t;
+			}
+			double dr = 1.0;
+			double di = 0.0;
+			for (int j = 0; j < poleReal.length; j++) {
+				double fr = 0.0 - poleReal[j];
+				double fi = s - poleImaginary[j];
+				double t = dr * fr - di * fi;
+				di = dr * fi + di * fr;
+				dr = t;
+			}
+			nr *= normalizationConstant;
+			ni *= normalizationConstant;
+
+			if (!Double.isFinite(nr) || !Double.isFinite(ni)
+					|| !Double.isFinite(dr) || !Double.isFinite(di)
+					|| (dr == 0.0 && di == 0.0)) {
+				// Leave the special cases of infinite and NaN products to Complex
+				Complex response = evalResp(freqs[i]);
+				real[i] = response.getReal();
+				imaginary[i] = response.getImaginary();
+				continue;
+			}
+
+			// Same scaled division as Complex.divide
+			if (Math.abs(dr) < Math.abs(di)) {
+				double q = dr / di;
+				double denominator = dr * q + di;
+				real[i] = (nr * q + ni) / denominator;
+				imaginary[i] = (ni * q - nr) / denominator;
+			} else {
+				double q = di / dr;
+				double denominator = di * q + dr;
+				real[i] = (ni * q + nr) / denominator;
+				imaginary[i] = (ni - nr * q) / denominator;
 			}
 		}
-		return response;
 	}
 
 	/*
@@ -46,6 +46,7 @@ public class PolynomialStage extends ResponseStage implements Serializable {
 	}
 
 	void addCoefficient(Complex coefficient) {
+		checkNotFrozen();
 		coefficients.add(coefficient);
 	}
 
@@ -54,18 +55,22 @@ public class PolynomialStage extends ResponseStage implements Serializable {
 	}
 
 	public void setLowerFrequencyBound(double lowerBound) {
+		checkNotFrozen();
 		this.lowerFrequencyBound = lowerBound;
 	}
 
 	public void setUpperFrequencyBound(double upperBound) {
+		checkNotFrozen();
 		this.upperFrequencyBound = upperBound;
 	}
 
 	public void setLowerApproximationBound(double lowerBound) {
+		checkNotFrozen();
 		this.lowerApproximationBound = lowerBound;
 	}
 
 	public void setUpperApproximationBound(double upperBound) {
+		checkNotFrozen();
 		this.upperApproximationBound = upperBound;
 	}
 
@@ -0,0 +1,197 @@
+package asl.metadata.meta_new;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import asl.metadata.meta_new.ChannelMeta.ResponseUnits;
+
+/**
+ * Holds evaluated instrument responses, see
+ * {@link ChannelMeta#getResponse(int, double, ResponseUnits)}.
+ *
+ * Responses are evaluated on the same frequency grids for every CrossPower and
+ * instrument removal of a channel, and a channel's response rarely changes
+ * between epochs. Responses are keyed by the digest of the channel metadata, so
+ * every channel epoch with the same response shares them. The least recently
+ * used responses are evicted once the cached responses exceed the budget.
+ */
+class ResponseCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(asl.metadata.meta_new.ResponseCache.class);
+
+	/**
+	 * Bytes the cached responses may hold, at most a sixteenth of the heap. A
+	 * day long 40 Hz grid takes about 55 MB.
+	 */
+	static final long BUDGET = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16);
+
+	private static final ResponseCache instance = new ResponseCache(BUDGET);
+
+	/**
+	 * Identifies an evaluated response.
+	 */
+	static final class Key {
+		private final ByteBuffer digest;
+		private final int inputUnits;
+		private final int n;
+		private final long df;
+		private final ResponseUnits units;
+
+		/**
+		 * @param digest
+		 *            the digest of the channel metadata
+		 * @param inputUnits
+		 *            the input units of the polezero stage, they aren't part
+		 *            of the digest
+		 * @param n
+		 *            the number of frequencies
+		 * @param df
+		 *            the frequency spacing
+		 * @param units
+		 *            the units of the response
+		 */
+		Key(ByteBuffer digest, int inputUnits, int n, double df, ResponseUnits units) {
+			this.digest = digest;
+			this.inputUnits = inputUnits;
+			this.n = n;
+			this.df = Double.doubleToLongBits(df);
+			this.units = units;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return n == other.n && df == other.df && inputUnits == other.inputUnits && units == other.units
+					&& digest.equals(other.digest);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = digest.hashCode();
+			result = 31 * result + inputUnits;
+			result = 31 * result + n;
+			result = 31 * result + Long.hashCode(df);
+			result = 31 * result + units.hashCode();
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("n=%d df=%s units=%s", n, Double.longBitsToDouble(df), units);
+		}
+	}
+
+	/**
+	 * An evaluated response. The arrays are shared and must not be modified.
+	 */
+	static final class Response {
+		final double[] real;
+		final double[] imaginary;
+
+		Response(double[] real, double[] imaginary) {
+			this.real = real;
+			this.imaginary = imaginary;
+		}
+
+		long getSizeInBytes() {
+			return 2L * Double.BYTES * real.length;
+		}
+	}
+
+	private final long budget;
+
+	/** Responses in least recently used order. Guarded by this. */
+	private final LinkedHashMap<Key, Response> responses = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Bytes held by responses. Guarded by this. */
+	private long cachedBytes = 0;
+
+	/**
+	 * Instantiates a new cache.
+	 *
+	 * @param budget
+	 *            bytes the cached responses may hold
+	 */
+	ResponseCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Gets the cache shared by all channel metadata.
+	 *
+	 * @return the cache
+	 */
+	static ResponseCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets a cached response.
+	 *
+	 * @param key
+	 *            identifies the response
+	 * @return the response, null if it isn't cached
+	 */
+	synchronized Response get(Key key) {
+		return responses.get(key);
+	}
+
+	/**
+	 * Cache an evaluated response, evicting the least recently used responses
+	 * until it fits. Responses larger than the whole budget aren't cached.
+	 *
+	 * @param key
+	 *            identifies the response
+	 * @param response
+	 *            the response
+	 * @return the cached response, which is the response cached by another
+	 *         thread if it was evaluated concurrently
+	 */
+	synchronized Response put(Key key, Response response) {
+		Response existing = responses.get(key);
+		if (existing != null) {
+			return existing;
+		}
+		long size = response.getSizeInBytes();
+		if (size > budget) {
+			logger.debug("Response {} ({} bytes) exceeds the cache budget, not caching", key, size);
+			return response;
+		}
+		Iterator<Map.Entry<Key, Response>> eldest = responses.entrySet().iterator();
+		while (cachedBytes + size > budget && eldest.hasNext()) {
+			cachedBytes -= eldest.next().getValue().getSizeInBytes();
+			eldest.remove();
+		}
+		responses.put(key, response);
+		cachedBytes += size;
+		return response;
+	}
+
+	/**
+	 * Gets the bytes held by the cached responses.
+	 *
+	 * @return the cached size in bytes
+	 */
+	synchronized long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	/**
+	 * Drop every cached response.
+	 */
+	synchronized void clear() {
+		responses.clear();
+		cachedBytes = 0;
+	}
+}
@@ -6,6 +6,10 @@ import java.io.Serializable;
  * Every response stage type will contain generic info from SEED Blockette B058
  * (e.g., Stage Gain, Frequency of Gain) here.
  * 
+ * A stage is immutable once it has been added to a ChannelMeta, since the
+ * ChannelMeta's digest covers it. Setters of an added stage throw
+ * IllegalStateException.
+ * 
  * In addition, info that is unique to a particular stage type will be stored in
  * the child class for that type (PoleZeroStage, PolynomialStage, etc.)
  * 
@@ -41,6 +45,9 @@ public abstract class ResponseStage implements Comparable<ResponseStage>, Serial
 	/** The output units string. */
 	protected String outputUnitsString;
 
+	/** Set once the stage has been added to a ChannelMeta. */
+	private boolean frozen;
+
 	/**
 	 * Copy the response stage.
 	 *
@@ -64,6 +71,26 @@ public abstract class ResponseStage implements Comparable<ResponseStage>, Serial
 		stageGainFrequency = frequency;
 	}
 
+	/**
+	 * Marks the stage as added to a ChannelMeta, after which it can no longer
+	 * be changed.
+	 */
+	void freeze() {
+		frozen = true;
+	}
+
+	/**
+	 * Checks that the stage may still be changed.
+	 *
+	 * @throws IllegalStateException if the stage has been added to a ChannelMeta
+	 */
+	protected void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("Stage " + stageNumber
+					+ " has been added to a channel and can't be changed");
+		}
+	}
+
 	/**
 	 * Set inputUnits of this stage: 0 = Unknown 1 = Displacement (m) 2 =
 	 * Velocity (m/s) 3 = Acceleration (m/s^2) 4 = Pressure (Pa) 5 = Pressure
@@ -78,6 +105,7 @@ public abstract class ResponseStage implements Comparable<ResponseStage>, Serial
 	 * @param inputUnitsString the string containing the input units
 	 */
 	public void setInputUnits(String inputUnitsString) {
+		checkNotFrozen();
 		this.inputUnitsString = inputUnitsString.toLowerCase();
 
 		if (this.inputUnitsString.contains("displacement")) {
@@ -119,6 +147,7 @@ public abstract class ResponseStage implements Comparable<ResponseStage>, Serial
 	 * @param outputUnitsString the new output units, this is normalized to lower case
 	 */
 	public void setOutputUnits(String outputUnitsString) {
+		checkNotFrozen();
 		this.outputUnitsString = outputUnitsString.toLowerCase();
 	}
 
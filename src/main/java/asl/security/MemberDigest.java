@@ -23,8 +23,23 @@ public abstract class MemberDigest implements Serializable {
 	/** The digest. */
 	private transient MessageDigest digest = null;
 
-	/** The raw digest, this is inserted into the database. */
-	private transient ByteBuffer raw = null;
+	/**
+	 * The raw digest, this is inserted into the database. It is kept until
+	 * {@link #invalidateDigest()} is called.
+	 */
+	private transient volatile byte[] raw = null;
+
+	/** Count of calls to {@link #invalidateDigest()}. */
+	private transient volatile int changes = 0;
+
+	/** Size in bytes of the scratch buffer. */
+	private static final int SCRATCH_SIZE = 8192;
+
+	/**
+	 * Scratch buffer that members are converted to bytes in before being added
+	 * to the digest. Only used while {@link #computeDigest()} holds the lock.
+	 */
+	private transient byte[] scratch = null;
 
 	/**
 	 * Default Constructor. Uses MD5 as its hashing algorithm.
@@ -51,23 +66,53 @@ public abstract class MemberDigest implements Serializable {
 	protected abstract void addDigestMembers();
 
 	/**
-	 * Compute digest. Calls the abstract {@link #addDigestMembers()};
+	 * Compute digest unless it is already known. Calls the abstract
+	 * {@link #addDigestMembers()};
+	 *
+	 * @return the digest bytes
 	 */
-	private synchronized void computeDigest() {
+	private synchronized byte[] computeDigest() {
+		byte[] bytes = raw;
+		if (bytes != null) {
+			return bytes;
+		}
+		int start = changes;
 		digest.reset();
 		addDigestMembers();
-		raw = ByteBuffer.wrap(digest.digest());
+		bytes = digest.digest();
+		raw = bytes;
+		// Don't keep a digest of members that changed while it was computed.
+		if (changes != start) {
+			raw = null;
+		}
+		return bytes;
 	}
 
 	/**
-	 * Gets the digest bytes. Calls {@link #computeDigest()} which in turn calls
-	 * the abstracted {@link #addDigestMembers()}
+	 * Gets the digest bytes. The digest is computed by
+	 * {@link #computeDigest()} on first use, and again only after
+	 * {@link #invalidateDigest()} has been called.
 	 *
-	 * @return the digest ByteBuffer {@link #raw}
+	 * Each call returns its own copy of the digest, so callers on different
+	 * threads may use and modify it freely.
+	 *
+	 * @return a copy of the digest {@link #raw}
 	 */
 	public ByteBuffer getDigestBytes() {
-		computeDigest();
-		return raw;
+		byte[] bytes = raw;
+		if (bytes == null) {
+			bytes = computeDigest();
+		}
+		return ByteBuffer.wrap(bytes.clone());
+	}
+
+	/**
+	 * Drops the known digest. Subclasses must call this after changing any
+	 * member they add in {@link #addDigestMembers()}.
+	 */
+	protected void invalidateDigest() {
+		changes++;
+		raw = null;
 	}
 
 	/**
@@ -81,28 +126,138 @@ public abstract class MemberDigest implements Serializable {
 	 *            the length
 	 */
 	// Methods for adding member variables' data to the digest
-	private void addToDigest(byte[] data, int offset, int length) {
+	protected void addToDigest(byte[] data, int offset, int length) {
 		digest.update(data, offset, length);
 	}
 
 	/**
-	 * Adds a byte[] to digest.
+	 * Gets the scratch buffer, allocating it on first use. It is transient, so
+	 * it is also missing after deserialization.
+	 *
+	 * @return the scratch buffer {@link #scratch}
+	 */
+	private byte[] getScratch() {
+		if (scratch == null) {
+			scratch = new byte[SCRATCH_SIZE];
+		}
+		return scratch;
+	}
+
+	/**
+	 * Writes a value into the scratch buffer in big-endian order, the order
+	 * ByteBuffer uses by default.
+	 *
+	 * @param buffer
+	 *            the scratch buffer
+	 * @param offset
+	 *            the offset to write at
+	 * @param value
+	 *            the value
+	 */
+	private static void putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Adds a char to digest.
+	 *
+	 * @param data
+	 *            the data
+	 */
+	protected void addToDigest(char data) {
+		byte[] buffer = getScratch();
+		buffer[0] = (byte) (data >>> 8);
+		buffer[1] = (byte) data;
+		addToDigest(buffer, 0, 2);
+	}
+
+	/**
+	 * Adds an int to digest.
+	 *
+	 * @param data
+	 *            the data
+	 */
+	protected void addToDigest(int data) {
+		byte[] buffer = getScratch();
+		putInt(buffer, 0, data);
+		addToDigest(buffer, 0, 4);
+	}
+
+	/**
+	 * Adds a long to digest.
+	 *
+	 * @param data
+	 *            the data
+	 */
+	protected void addToDigest(long data) {
+		byte[] buffer = getScratch();
+		putInt(buffer, 0, (int) (data >>> 32));
+		putInt(buffer, 4, (int) data);
+		addToDigest(buffer, 0, 8);
+	}
+
+	/**
+	 * Adds a double to digest. The raw bits are used, as
+	 * {@link ByteBuffer#putDouble(double)} does.
+	 *
+	 * @param data
+	 *            the data
+	 */
+	protected void addToDigest(double data) {
+		addToDigest(Double.doubleToRawLongBits(data));
+	}
+
+	/**
+	 * Adds a range of an int[] to digest. This digests the same bytes as
+	 * adding each int on its own.
 	 *
 	 * @param data
 	 *            the data
+	 * @param offset
+	 *            the index of the first int
+	 * @param length
+	 *            the number of ints
 	 */
-	private void addToDigest(byte[] data) {
-		addToDigest(data, 0, data.length);
+	protected void addToDigest(int[] data, int offset, int length) {
+		byte[] buffer = getScratch();
+		int end = offset + length;
+		while (offset < end) {
+			int count = Math.min(end - offset, SCRATCH_SIZE / 4);
+			for (int i = 0; i < count; i++) {
+				putInt(buffer, i * 4, data[offset + i]);
+			}
+			addToDigest(buffer, 0, count * 4);
+			offset += count;
+		}
 	}
 
 	/**
-	 * Adds a ByteBuffer to digest.
+	 * Adds a range of a double[] to digest. This digests the same bytes as
+	 * adding each double on its own.
 	 *
 	 * @param data
 	 *            the data
+	 * @param offset
+	 *            the index of the first double
+	 * @param length
+	 *            the number of doubles
 	 */
-	private void addToDigest(ByteBuffer data) {
-		addToDigest(data.array());
+	protected void addToDigest(double[] data, int offset, int length) {
+		byte[] buffer = getScratch();
+		int end = offset + length;
+		while (offset < end) {
+			int count = Math.min(end - offset, SCRATCH_SIZE / 8);
+			for (int i = 0; i < count; i++) {
+				long bits = Double.doubleToRawLongBits(data[offset + i]);
+				putInt(buffer, i * 8, (int) (bits >>> 32));
+				putInt(buffer, i * 8 + 4, (int) bits);
+			}
+			addToDigest(buffer, 0, count * 8);
+			offset += count;
+		}
 	}
 
 	/**
@@ -112,7 +267,7 @@ public abstract class MemberDigest implements Serializable {
 	 *            the data
 	 */
 	protected void addToDigest(Character data) {
-		addToDigest(ByteBuffer.allocate(2).putChar(data));
+		addToDigest(data.charValue());
 	}
 
 	/**
@@ -122,7 +277,7 @@ public abstract class MemberDigest implements Serializable {
 	 *            the data
 	 */
 	protected void addToDigest(Integer data) {
-		addToDigest(ByteBuffer.allocate(4).putInt(data));
+		addToDigest(data.intValue());
 	}
 
 	/**
@@ -132,7 +287,7 @@ public abstract class MemberDigest implements Serializable {
 	 *            the data
 	 */
 	protected void addToDigest(Long data) {
-		addToDigest(ByteBuffer.allocate(8).putLong(data));
+		addToDigest(data.longValue());
 	}
 
 	/**
@@ -142,7 +297,7 @@ public abstract class MemberDigest implements Serializable {
 	 *            the data
 	 */
 	protected void addToDigest(Double data) {
-		addToDigest(ByteBuffer.allocate(8).putDouble(data));
+		addToDigest(data.doubleValue());
 	}
 
 	/**
@@ -53,6 +53,10 @@ public abstract class Global {
   protected static String eventsDir;
   protected static String qualityflags;
   protected static String lockfile;
+  protected static Integer readAheadDays;
+  protected static String indexDir;
+  protected static String journalDir;
+  protected static String resultsDir;
 
 
   /**
@@ -123,6 +127,14 @@ public abstract class Global {
     dataDir = CONFIG.getPath();
 
     eventsDir = CONFIG.getEventsDir();
+
+    readAheadDays = CONFIG.getReadAheadDays();
+
+    indexDir = CONFIG.getIndexDir();
+
+    journalDir = CONFIG.getJournalDir();
+
+    resultsDir = CONFIG.getResultsDir();
   }
 
   public static List<String> getNetworkRestrictions() {
@@ -165,4 +177,44 @@ public abstract class Global {
   public static String getLockfile() {
     return lockfile;
   }
+
+  /**
+   * Number of days beyond the next day that are loaded in the background while a station-day is
+   * scanned.
+   *
+   * @return the configured read ahead, 1 if not configured.
+   */
+  public static int getReadAheadDays() {
+    if (readAheadDays == null || readAheadDays < 0) {
+      return 1;
+    }
+    return readAheadDays;
+  }
+
+  /**
+   * Directory the record indexes of data directories are kept in between scans.
+   *
+   * @return the configured directory, null if indexes are not kept.
+   */
+  public static String getIndexDir() {
+    return indexDir;
+  }
+
+  /**
+   * Directory metric results are journaled in before they are inserted into the database.
+   *
+   * @return the configured directory, null if results are not journaled.
+   */
+  public static String getJournalDir() {
+    return journalDir;
+  }
+
+  /**
+   * Directory metric results are written to as files instead of inserting them into the database.
+   *
+   * @return the configured directory, null if results are inserted into the database.
+   */
+  public static String getResultsDir() {
+    return resultsDir;
+  }
 }
@@ -8,7 +8,14 @@ import asl.util.LockFile;
 import asl.util.Logging;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.xml.bind.JAXBException;
 import org.slf4j.Logger;
@@ -16,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import asl.metadata.MetaGenerator;
 import asl.seedscan.database.MetricDatabase;
+import asl.seedscan.database.MetricFileSink;
 import asl.seedscan.scanner.ScanManager;
 
 /**
@@ -37,7 +45,8 @@ public class SeedScan {
   /**
    * The main method for seedscan.
    *
-   * @param args command line arguments.
+   * @param args command line arguments. If the first is --load-results, the result files and
+   * directories of result files that follow are loaded into the database instead of scanning.
    */
   public static void main(String args[]) {
     /* Some components like JFreeChart try to behave like a GUI, this fixes
@@ -57,8 +66,17 @@ public class SeedScan {
         throw new IOException("Unable to acquire lock.");
       }
 
-      metaGenerator = new MetaGenerator(Global.getDatalessDir(), Global.getNetworkRestrictions());
       database = new MetricDatabase(Global.getDatabase());
+      if (args.length > 0 && args[0].equals("--load-results")) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+          paths.add(args[i]);
+        }
+        loadResults(database, paths);
+        return;
+      }
+
+      metaGenerator = new MetaGenerator(Global.getDatalessDir(), Global.getNetworkRestrictions());
       scanManager = new ScanManager(database, metaGenerator);
 
       logger.info("Handing control to ScanManager");
@@ -94,4 +112,30 @@ public class SeedScan {
     }
   }
 
+  /**
+   * Load result files written while results_dir was configured into the database.
+   *
+   * @param database the database to load into
+   * @param paths result files, or directories searched for result files
+   * @throws IOException if a directory can't be searched
+   */
+  private static void loadResults(MetricDatabase database, List<String> paths)
+      throws IOException {
+    for (String path : paths) {
+      List<Path> files;
+      try (Stream<Path> walk = Files.walk(Paths.get(path))) {
+        files = walk.filter(file -> file.toString().endsWith(MetricFileSink.FILE_SUFFIX))
+            .sorted().collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        long loaded = database.copyMetricData(file);
+        if (loaded < 0) {
+          logger.error("Unable to load results from [{}]", file);
+        } else {
+          logger.info("Loaded [{}] values from [{}]", loaded, file);
+        }
+      }
+    }
+  }
+
 }
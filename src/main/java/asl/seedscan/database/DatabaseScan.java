@@ -38,6 +38,9 @@ public class DatabaseScan {
 	
 	public final int priority;
 
+	/** Compiled metric, location, and channel filters of this scan. */
+	public final ScanFilter filter;
+
 	/**
 	 * Instantiates a new scan.
 	 *
@@ -76,6 +79,7 @@ public class DatabaseScan {
 		this.location = location;
 		this.channel = channel;
 		this.metricName = metricName;
+		this.filter = new ScanFilter(metricName, location, channel);
 	}
 
 	/* (non-Javadoc)
@@ -2,18 +2,33 @@
 package asl.seedscan.database;
 
 import java.beans.PropertyVetoException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
 import com.mchange.v2.c3p0.ComboPooledDataSource;
 
 import asl.metadata.Channel;
@@ -28,7 +43,7 @@ import asl.seedscan.metrics.MetricResult;
  * @author James Holland - USGS
  * @author Joel Edwards - USGS
  */
-public class MetricDatabase {
+public class MetricDatabase implements MetricSink {
 
 	/** The Constant logger. */
 	private static final Logger logger = LoggerFactory.getLogger(asl.seedscan.database.MetricDatabase.class);
@@ -242,6 +257,140 @@ public class MetricDatabase {
 		return digest;
 	}
 
+	/**
+	 * Gets every metric value digest stored for a station-day in a single
+	 * query.
+	 *
+	 * @param date
+	 *            the date
+	 * @param station
+	 *            the network and station information
+	 * @return the digests, keyed by identifiers equal to those metrics create
+	 *         for the day. Null if the query failed.
+	 */
+	public Map<MetricValueIdentifier, ByteBuffer> getMetricValueDigests(LocalDate date, Station station) {
+		Map<MetricValueIdentifier, ByteBuffer> digests = new HashMap<>();
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				statement = connection.prepareStatement("SELECT * FROM spGetMetricValueDigests(?, ?, ?)");
+
+				statement.setObject(1, date);
+				statement.setString(2, station.getNetwork());
+				statement.setString(3, station.getStation());
+
+				resultSet = statement.executeQuery();
+
+				while (resultSet.next()) {
+					byte[] digestIn = resultSet.getBytes("hash");
+					if (digestIn != null) {
+						Channel channel = new Channel(resultSet.getString("location"),
+								resultSet.getString("channel"));
+						digests.put(new MetricValueIdentifier(date, resultSet.getString("metric"), station, channel),
+								ByteBuffer.wrap(digestIn));
+					}
+				}
+			} finally {
+				if (resultSet != null)
+					resultSet.close();
+				if (statement != null)
+					statement.close();
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+			return null;
+		}
+
+		return digests;
+	}
+
+	/**
+	 * Gets the fingerprint stored by the last complete scan of a station-day.
+	 *
+	 * @param date
+	 *            the date
+	 * @param station
+	 *            the network and station information
+	 * @return the fingerprint, null if there is none or the query failed
+	 */
+	public ByteBuffer getStationDayFingerprint(LocalDate date, Station station) {
+		ByteBuffer fingerprint = null;
+		Connection connection = null;
+		CallableStatement callStatement = null;
+		ResultSet resultSet = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				callStatement = connection.prepareCall("SELECT spGetStationDayFingerprint(?, ?, ?)");
+
+				callStatement.setObject(1, date);
+				callStatement.setString(2, station.getNetwork());
+				callStatement.setString(3, station.getStation());
+
+				resultSet = callStatement.executeQuery();
+
+				if (resultSet.next()) {
+					byte[] fingerprintIn = resultSet.getBytes(1);
+
+					if (fingerprintIn != null)
+						fingerprint = ByteBuffer.wrap(fingerprintIn);
+				}
+			} finally {
+				if (resultSet != null)
+					resultSet.close();
+				if (callStatement != null)
+					callStatement.close();
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+		}
+
+		return fingerprint;
+	}
+
+	/**
+	 * Stores the fingerprint of a station-day after all of its metrics were
+	 * computed and stored, replacing any previous fingerprint.
+	 *
+	 * @param date
+	 *            the date
+	 * @param station
+	 *            the network and station information
+	 * @param fingerprint
+	 *            the fingerprint
+	 */
+	public void insertStationDayFingerprint(LocalDate date, Station station, ByteBuffer fingerprint) {
+		Connection connection = null;
+		CallableStatement callStatement = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				callStatement = connection.prepareCall("SELECT spSetStationDayFingerprint(?, ?, ?, ?)");
+
+				callStatement.setObject(1, date);
+				callStatement.setString(2, station.getNetwork());
+				callStatement.setString(3, station.getStation());
+				callStatement.setBytes(4, fingerprint.array());
+
+				callStatement.executeQuery();
+			} finally {
+				if (callStatement != null)
+					callStatement.close();
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+		}
+	}
+
 	public void insertChildScan(UUID parentID, String network, String station, String location, String channel,
 			String metric, LocalDate startDate, LocalDate endDate, int priority, boolean deleteExisting) {
 		Connection connection = null;
@@ -291,6 +440,101 @@ public class MetricDatabase {
 		}
 	}
 
+	/** Child scans sent to the database per batch by {@link #insertChildScans(DatabaseScan, List)}. */
+	private static final int CHILD_SCAN_BATCH_SIZE = 1000;
+
+	/**
+	 * Insert the child scans of a parent scan and mark the parent expanded, in
+	 * a single transaction. Either every child is inserted and the parent is
+	 * expanded or nothing changes. A parent that is not expanded is taken
+	 * again once its lease expires.
+	 * 
+	 * @param parent
+	 *            the parent scan
+	 * @param children
+	 *            the child scans, their scanID and parentScanID are ignored
+	 * @return true, if the children were inserted
+	 */
+	public boolean insertChildScans(DatabaseScan parent, List<DatabaseScan> children) {
+		boolean inserted = false;
+		Connection connection = null;
+		PreparedStatement statement = null;
+		PreparedStatement expandStatement = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				connection.setAutoCommit(false);
+				try {
+					//@formatter:off
+					//We will let the db set the timestamp.
+					statement = connection.prepareStatement(
+						"INSERT INTO tblscan("
+							+ "fkparentscan, "
+							+ "networkfilter, "
+							+ "stationfilter, "
+							+ "locationfilter, "
+							+ "channelfilter, "
+							+ "metricfilter, "
+							+ "startdate, "
+							+ "enddate, "
+							+ "priority, "
+							+ "deleteexisting)"
+							+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?);");
+					int batched = 0;
+					for (DatabaseScan child : children) {
+						int i = 1;
+						statement.setObject( i++, parent.scanID);
+						statement.setString( i++, child.network);
+						statement.setString( i++, child.station);
+						statement.setString( i++, child.location);
+						statement.setString( i++, child.channel);
+						statement.setString( i++, child.metricName);
+						statement.setObject(   i++, child.startDate);
+						statement.setObject(   i++, child.endDate);
+						statement.setInt(    i++, child.priority);
+						statement.setBoolean(i++, child.deleteExisting);
+						statement.addBatch();
+						if (++batched == CHILD_SCAN_BATCH_SIZE) {
+							statement.executeBatch();
+							batched = 0;
+						}
+					}
+					if (batched > 0) {
+						statement.executeBatch();
+					}
+
+					expandStatement = connection.prepareStatement(
+						"UPDATE tblscan "
+						+ "SET expanded = TRUE, lastupdate = current_timestamp "
+						+ "WHERE pkscanid = ?");
+					expandStatement.setObject(1, parent.scanID);
+					//@formatter:on
+					if (expandStatement.executeUpdate() != 1) {
+						throw new SQLException("Failed to mark scan expanded: " + parent.scanID);
+					}
+					connection.commit();
+					inserted = true;
+				} finally {
+					if (!inserted)
+						connection.rollback();
+					connection.setAutoCommit(true);
+				}
+			} finally {
+				if (expandStatement != null)
+					expandStatement.close();
+				if (statement != null)
+					statement.close();
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+			this.insertScanMessage(parent.scanID, parent.network, parent.station, parent.location,
+					parent.channel, parent.metricName, "Unable to add child scans");
+		}
+		return inserted;
+	}
+
 	/**
 	 * Insert a non scan specific error into the database logs.
 	 * 
@@ -370,6 +614,178 @@ public class MetricDatabase {
 		return result;
 	}
 
+	/** Rows inserted per statement by {@link #insertMetricData(List)}. */
+	private static final int ROWS_PER_INSERT = 500;
+
+	/**
+	 * Insert the results of several metrics at once. Rows are inserted with
+	 * multi-row statements in a single transaction, so either every result is
+	 * stored or none is.
+	 * 
+	 * @param resultsList
+	 *            the results to insert, may be of different metrics and
+	 *            station-days.
+	 * @return 0 on success, -1 if nothing was inserted.
+	 */
+	public int insertMetricData(List<MetricResult> resultsList) {
+		List<Object[]> valueRows = new ArrayList<>();
+		List<Object[]> textRows = new ArrayList<>();
+		for (MetricResult results : resultsList) {
+			boolean isText = results.getMetricName().equals("CalibrationMetric");
+			for (String id : results.getIdSet()) {
+				Channel channel = MetricResult.createChannel(id);
+				Object[] row = new Object[] { results.getDate(),
+						results.getMetricName(),
+						results.getStation().getNetwork(),
+						results.getStation().getStation(),
+						channel.getLocation(), channel.getChannel(),
+						isText ? id : results.getResult(id),
+						results.getDigest(id).array() };
+				(isText ? textRows : valueRows).add(row);
+			}
+		}
+
+		int result = -1;
+		Connection connection = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				connection.setAutoCommit(false);
+				try {
+					insertMetricRows(connection, valueRows, "float8");
+					insertMetricRows(connection, textRows, "text");
+					connection.commit();
+					result = 0;
+				} finally {
+					if (result != 0)
+						connection.rollback();
+					connection.setAutoCommit(true);
+				}
+			} finally {
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Call spInsertMetricData for rows of metric values, up to
+	 * {@link #ROWS_PER_INSERT} rows per statement.
+	 * 
+	 * @param connection
+	 *            the connection to insert on
+	 * @param rows
+	 *            date, metric, network, station, location, channel, value and
+	 *            digest of each value
+	 * @param valueType
+	 *            the SQL type of the values
+	 * @throws SQLException
+	 *             if any row couldn't be inserted
+	 */
+	private static void insertMetricRows(Connection connection,
+			List<Object[]> rows, String valueType) throws SQLException {
+		for (int start = 0; start < rows.size(); start += ROWS_PER_INSERT) {
+			List<Object[]> chunk = rows.subList(start,
+					Math.min(rows.size(), start + ROWS_PER_INSERT));
+			StringBuilder query = new StringBuilder(
+					"SELECT spInsertMetricData(d, m, n, s, l, c, v, h) FROM (VALUES ");
+			for (int i = 0; i < chunk.size(); i++) {
+				if (i > 0)
+					query.append(", ");
+				query.append("(?::date, ?::varchar, ?::varchar, ?::varchar, ?::varchar, ?::varchar, ?::")
+						.append(valueType).append(", ?::bytea)");
+			}
+			query.append(") AS r(d, m, n, s, l, c, v, h)");
+
+			PreparedStatement statement = null;
+			try {
+				statement = connection.prepareStatement(query.toString());
+				int index = 1;
+				for (Object[] row : chunk) {
+					statement.setObject(index++, row[0]);
+					for (int i = 1; i < 6; i++) {
+						statement.setString(index++, (String) row[i]);
+					}
+					if (row[6] instanceof Double) {
+						statement.setDouble(index++, (Double) row[6]);
+					} else {
+						statement.setString(index++, (String) row[6]);
+					}
+					statement.setBytes(index++, (byte[]) row[7]);
+				}
+				statement.executeQuery().close();
+			} finally {
+				if (statement != null)
+					statement.close();
+			}
+		}
+	}
+
+	/**
+	 * Load a file written by a {@link MetricFileSink}. The file's values are
+	 * copied into a temporary table with COPY and inserted from there in a
+	 * single transaction, so either every value is loaded or none is.
+	 * 
+	 * @param file
+	 *            the file to load
+	 * @return the number of values loaded, -1 if the file couldn't be loaded.
+	 */
+	public long copyMetricData(Path file) {
+		long result = -1;
+		Connection connection = null;
+		Statement statement = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				connection.setAutoCommit(false);
+				try {
+					statement = connection.createStatement();
+					statement.execute("CREATE TEMPORARY TABLE tmpmetricdata ("
+							+ "date date, metric varchar, network varchar, station varchar, "
+							+ "location varchar, channel varchar, value float8, textvalue text, hash bytea"
+							+ ") ON COMMIT DROP");
+
+					long rows;
+					try (Writer out = new BufferedWriter(new OutputStreamWriter(
+							new PGCopyOutputStream(connection.unwrap(PGConnection.class),
+									"COPY tmpmetricdata (" + MetricFileReader.COPY_COLUMNS + ") FROM STDIN"),
+							StandardCharsets.UTF_8))) {
+						rows = MetricFileReader.writeCopyText(file, out);
+					}
+
+					// Counted so the values don't have to be fetched.
+					statement.executeQuery("SELECT count(*) FROM (SELECT spInsertMetricData(date, metric, "
+							+ "network, station, location, channel, value, hash) FROM tmpmetricdata "
+							+ "WHERE textvalue IS NULL) AS inserted").close();
+					statement.executeQuery("SELECT count(*) FROM (SELECT spInsertMetricData(date, metric, "
+							+ "network, station, location, channel, textvalue, hash) FROM tmpmetricdata "
+							+ "WHERE textvalue IS NOT NULL) AS inserted").close();
+					connection.commit();
+					result = rows;
+				} finally {
+					if (result < 0)
+						connection.rollback();
+					connection.setAutoCommit(true);
+				}
+			} finally {
+				if (statement != null)
+					statement.close();
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+		} catch (IOException e) {
+			logger.error("Unable to load metric results from {}:", file, e);
+		}
+
+		return result;
+	}
+
 	/**
 	 * Insert a message (usually an error message) into the database regarding a
 	 * scan.
@@ -481,20 +897,7 @@ public class MetricDatabase {
 				rs = callStatement.executeQuery();
 				//If we have a scan return it
 				if(rs.next()){
-				//@formatter:off
-					return new DatabaseScan(
-						(java.util.UUID) rs.getObject("pkscanid"),
-						(java.util.UUID) rs.getObject("fkparentscan"),
-						rs.getString("metricfilter"),
-						rs.getString("networkfilter"),
-						rs.getString("stationfilter"),
-						rs.getString("locationfilter"),
-						rs.getString("channelfilter"),
-						rs.getObject("startdate", LocalDate.class),
-						rs.getObject("enddate", LocalDate.class),
-						rs.getInt("priority"),
-						rs.getBoolean("deleteexisting"));
-				//@formatter:on
+					return readScan(rs);
 				}
 				else{
 					return null;
@@ -513,4 +916,163 @@ public class MetricDatabase {
 		return null;
 	}
 
+	/**
+	 * Takes up to count scans from the database in priority order. Rows locked
+	 * by other connections are skipped rather than waited on, so several
+	 * workers can take scans at once without serializing on a table lock.
+	 * 
+	 * Taken child scans whose lease has expired are assumed abandoned and may
+	 * be taken again. Running scans renew their lease with
+	 * {@link #renewScanLeases(List, Duration)}.
+	 * 
+	 * @param count
+	 *            the maximum number of scans to take
+	 * @param lease
+	 *            how long the scans are held before they may be taken again
+	 * @return the taken scans, empty if there are none or the query failed
+	 */
+	public List<DatabaseScan> takeNextScans(int count, Duration lease) {
+		List<DatabaseScan> scans = new ArrayList<>();
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet rs = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				statement = connection.prepareStatement("SELECT * from fntakenextscans(?, ?)");
+				statement.setInt(1, count);
+				statement.setInt(2, (int) Math.min(lease.getSeconds(), Integer.MAX_VALUE));
+
+				rs = statement.executeQuery();
+				while (rs.next()) {
+					scans.add(readScan(rs));
+				}
+			} finally {
+				if (rs != null)
+					rs.close();
+				if (statement != null)
+					statement.close();
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+		}
+		return scans;
+	}
+
+	/**
+	 * Takes the pending child scans which can be run in the same pass as a
+	 * taken scan: scans of the same station, location and channel filters
+	 * starting within the taken scan's dates and ending by windowEnd. Their
+	 * metric filters may differ.
+	 * 
+	 * @param scan
+	 *            the taken scan
+	 * @param windowEnd
+	 *            the last day a taken scan may end on
+	 * @param lease
+	 *            how long the scans are held before they may be taken again
+	 * @return the taken scans, empty if there are none or the query failed
+	 */
+	public List<DatabaseScan> takeOverlappingScans(DatabaseScan scan, LocalDate windowEnd, Duration lease) {
+		List<DatabaseScan> scans = new ArrayList<>();
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet rs = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				statement = connection.prepareStatement("SELECT * from fntakeoverlappingscans(?, ?, ?)");
+				statement.setObject(1, scan.scanID);
+				statement.setObject(2, windowEnd);
+				statement.setInt(3, (int) Math.min(lease.getSeconds(), Integer.MAX_VALUE));
+
+				rs = statement.executeQuery();
+				while (rs.next()) {
+					scans.add(readScan(rs));
+				}
+			} finally {
+				if (rs != null)
+					rs.close();
+				if (statement != null)
+					statement.close();
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+		}
+		return scans;
+	}
+
+	/**
+	 * Extends the leases of taken scans which are still running, so a scan
+	 * working through many days isn't taken again as abandoned.
+	 * 
+	 * @param scanIDs
+	 *            the running scans
+	 * @param lease
+	 *            how long from now the scans are held before they may be
+	 *            taken again
+	 */
+	public void renewScanLeases(List<UUID> scanIDs, Duration lease) {
+		Connection connection = null;
+		PreparedStatement statement = null;
+		try {
+			try {
+				connection = dataSource.getConnection();
+				//@formatter:off
+				statement = connection.prepareStatement(
+						"UPDATE tblscan "
+						+ "SET leaseexpires = current_timestamp + ? * interval '1 second', "
+							+ "lastupdate = current_timestamp "
+						+ "WHERE "
+							+ "pkscanid = ? "
+							+ "AND finished = FALSE");
+				//@formatter:on
+				int leaseSeconds = (int) Math.min(lease.getSeconds(), Integer.MAX_VALUE);
+				for (UUID scanID : scanIDs) {
+					statement.setInt(1, leaseSeconds);
+					statement.setObject(2, scanID);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			} finally {
+				if (statement != null)
+					statement.close();
+				if (connection != null)
+					connection.close();
+			}
+		} catch (SQLException e) {
+			logger.error("SQLException:", e);
+		}
+	}
+
+	/**
+	 * Create a scan from the current row of a tblscan result set.
+	 * 
+	 * @param rs
+	 *            the result set positioned on a tblscan row
+	 * @return the scan
+	 * @throws SQLException
+	 *             if a column is missing
+	 */
+	private static DatabaseScan readScan(ResultSet rs) throws SQLException {
+		//@formatter:off
+		return new DatabaseScan(
+			(java.util.UUID) rs.getObject("pkscanid"),
+			(java.util.UUID) rs.getObject("fkparentscan"),
+			rs.getString("metricfilter"),
+			rs.getString("networkfilter"),
+			rs.getString("stationfilter"),
+			rs.getString("locationfilter"),
+			rs.getString("channelfilter"),
+			rs.getObject("startdate", LocalDate.class),
+			rs.getObject("enddate", LocalDate.class),
+			rs.getInt("priority"),
+			rs.getBoolean("deleteexisting"));
+		//@formatter:on
+	}
+
 }
@@ -0,0 +1,244 @@
+package asl.seedscan.database;
+
+import asl.metadata.Channel;
+import asl.metadata.Station;
+import asl.seedscan.database.MetricFileSink.Row;
+import asl.seedscan.metrics.MetricResult;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the files written by {@link MetricFileSink}.
+ *
+ * Reading stops at a truncated or corrupt block, such as one being written when the process was
+ * killed. Values of earlier blocks are still returned.
+ */
+public class MetricFileReader {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.database.MetricFileReader.class);
+
+  /**
+   * Columns of the rows written by {@link #writeCopyText(Path, Writer)}, in order.
+   */
+  public static final String COPY_COLUMNS =
+      "date, metric, network, station, location, channel, value, textvalue, hash";
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * Read the results held by a file. Consecutive values of the same metric and station-day are
+   * returned as one result.
+   *
+   * @param file a file written by a {@link MetricFileSink}
+   * @param consumer receives each result in the order it was written
+   * @throws IOException if the file can't be read or isn't a result file
+   */
+  public static void read(Path file, Consumer<MetricResult> consumer) throws IOException {
+    MetricResult[] current = new MetricResult[1];
+    readRows(file, row -> {
+      MetricResult results = current[0];
+      if (results == null || !results.getDate().equals(row.date)
+          || !results.getMetricName().equals(row.metric)
+          || !results.getStation().getNetwork().equals(row.network)
+          || !results.getStation().getStation().equals(row.station)) {
+        if (results != null) {
+          consumer.accept(results);
+        }
+        results = new MetricResult(row.metric, row.date, new Station(row.network, row.station));
+        current[0] = results;
+      }
+      String id = row.text != null ? row.text
+          : MetricResult.createResultId(new Channel(row.location, row.channel));
+      results.addResult(id, row.value, ByteBuffer.wrap(row.digest));
+    });
+    if (current[0] != null) {
+      consumer.accept(current[0]);
+    }
+  }
+
+  /**
+   * Read the results held by a file.
+   *
+   * @param file a file written by a {@link MetricFileSink}
+   * @return the results in the order they were written
+   * @throws IOException if the file can't be read or isn't a result file
+   */
+  public static List<MetricResult> read(Path file) throws IOException {
+    List<MetricResult> resultsList = new ArrayList<>();
+    read(file, resultsList::add);
+    return resultsList;
+  }
+
+  /**
+   * Write the values of a file as PostgreSQL COPY text, one row per value with the columns of
+   * {@link #COPY_COLUMNS}. Value is null for text values, textvalue is null for numeric values.
+   *
+   * @param file a file written by a {@link MetricFileSink}
+   * @param out the writer receiving the rows
+   * @return the number of rows written
+   * @throws IOException if the file can't be read or the rows can't be written
+   */
+  public static long writeCopyText(Path file, Writer out) throws IOException {
+    long[] count = new long[1];
+    IOException[] failure = new IOException[1];
+    StringBuilder line = new StringBuilder();
+    readRows(file, row -> {
+      if (failure[0] != null) {
+        return;
+      }
+      line.setLength(0);
+      line.append(row.date).append('\t');
+      appendCopyText(line, row.metric).append('\t');
+      appendCopyText(line, row.network).append('\t');
+      appendCopyText(line, row.station).append('\t');
+      appendCopyText(line, row.location).append('\t');
+      appendCopyText(line, row.channel).append('\t');
+      if (row.text == null) {
+        line.append(row.value).append("\t\\N\t");
+      } else {
+        line.append("\\N\t");
+        appendCopyText(line, row.text).append('\t');
+      }
+      line.append("\\\\x");
+      for (byte b : row.digest) {
+        line.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+      }
+      line.append('\n');
+      try {
+        out.append(line);
+        count[0]++;
+      } catch (IOException e) {
+        failure[0] = e;
+      }
+    });
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+    return count[0];
+  }
+
+  /**
+   * Append a string, escaping the characters COPY text treats specially.
+   */
+  private static StringBuilder appendCopyText(StringBuilder line, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '\\':
+          line.append("\\\\");
+          break;
+        case '\t':
+          line.append("\\t");
+          break;
+        case '\n':
+          line.append("\\n");
+          break;
+        case '\r':
+          line.append("\\r");
+          break;
+        default:
+          line.append(c);
+      }
+    }
+    return line;
+  }
+
+  /**
+   * Decode every block of a file.
+   *
+   * @param file the file
+   * @param consumer receives every value, a block's values once the whole block is read
+   * @throws IOException if the file can't be read or isn't a result file
+   */
+  private static void readRows(Path file, Consumer<Row> consumer) throws IOException {
+    try (InputStream stream = Files.newInputStream(file);
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(stream, 65536), 65536))) {
+      while (true) {
+        int magic;
+        try {
+          magic = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        if (magic != MetricFileSink.MAGIC || in.readInt() != MetricFileSink.VERSION) {
+          throw new IOException("Not a metric result file: " + file);
+        }
+        for (Row row : readBlock(in)) {
+          consumer.accept(row);
+        }
+      }
+    } catch (EOFException | ZipException e) {
+      logger.warn("Truncated or corrupt block in {}, ignoring the remainder", file);
+    }
+  }
+
+  private static List<Row> readBlock(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    LocalDate[] dates = new LocalDate[count];
+    for (int i = 0; i < count; i++) {
+      dates[i] = LocalDate.ofEpochDay(in.readInt());
+    }
+    String[] metrics = readStrings(in, count);
+    String[] networks = readStrings(in, count);
+    String[] stations = readStrings(in, count);
+    String[] locations = readStrings(in, count);
+    String[] channels = readStrings(in, count);
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = in.readDouble();
+    }
+    String[] texts = readStrings(in, count);
+    byte[][] digests = new byte[count][];
+    for (int i = 0; i < count; i++) {
+      digests[i] = new byte[in.readUnsignedShort()];
+    }
+    for (int i = 0; i < count; i++) {
+      in.readFully(digests[i]);
+    }
+
+    List<Row> rows = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      rows.add(new Row(dates[i], metrics[i], networks[i], stations[i], locations[i], channels[i],
+          values[i], texts[i].isEmpty() ? null : texts[i], digests[i]));
+    }
+    return rows;
+  }
+
+  /**
+   * Read a dictionary encoded text column.
+   */
+  private static String[] readStrings(DataInputStream in, int count) throws IOException {
+    String[] dictionary = new String[in.readInt()];
+    for (int i = 0; i < dictionary.length; i++) {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      dictionary[i] = new String(bytes, "UTF-8");
+    }
+    String[] column = new String[count];
+    for (int i = 0; i < count; i++) {
+      int code = in.readInt();
+      if (code < 0 || code >= dictionary.length) {
+        throw new IOException("Invalid dictionary code " + code + " in metric result file");
+      }
+      column[i] = dictionary[code];
+    }
+    return column;
+  }
+}
@@ -0,0 +1,244 @@
+package asl.seedscan.database;
+
+import asl.metadata.Channel;
+import asl.seedscan.metrics.MetricResult;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores metric results in compressed files instead of the database, so results can be computed
+ * without a database and loaded into it later, see {@link MetricDatabase#copyMetricData(Path)}.
+ *
+ * Results are written to one file per network and month, [network]/[network].[yyyy-MM].results
+ * within the sink's directory. Each insert appends one block to every file its results belong to
+ * and syncs it before returning, so results reported as stored survive the process stopping. The
+ * result writer inserts queued results in batches, which keeps the blocks from getting too small.
+ * Each block is a separate gzip member appended to the file, holding the block's values column by
+ * column: date, metric, network, station, location, channel, value, text value and digest. Text
+ * columns are dictionary encoded. The blocks are read back with {@link MetricFileReader}.
+ */
+public class MetricFileSink implements MetricSink {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.database.MetricFileSink.class);
+
+  /**
+   * "SSMR", starts every block.
+   */
+  static final int MAGIC = 0x53534D52;
+  static final int VERSION = 1;
+
+  public static final String FILE_SUFFIX = ".results";
+
+  private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+  private final Path directory;
+
+  /**
+   * A single metric value.
+   */
+  static class Row {
+
+    final LocalDate date;
+    final String metric;
+    final String network;
+    final String station;
+    final String location;
+    final String channel;
+    /**
+     * NaN for text values.
+     */
+    final double value;
+    /**
+     * Null for numeric values.
+     */
+    final String text;
+    final byte[] digest;
+
+    Row(LocalDate date, String metric, String network, String station, String location,
+        String channel, double value, String text, byte[] digest) {
+      this.date = date;
+      this.metric = metric;
+      this.network = network;
+      this.station = station;
+      this.location = location;
+      this.channel = channel;
+      this.value = value;
+      this.text = text;
+      this.digest = digest;
+    }
+  }
+
+  /**
+   * Create a sink writing to a directory.
+   *
+   * @param directory the directory the network directories are created in
+   */
+  public MetricFileSink(Path directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public int insertMetricData(MetricResult results) {
+    List<MetricResult> resultsList = new ArrayList<>(1);
+    resultsList.add(results);
+    return insertMetricData(resultsList);
+  }
+
+  @Override
+  public synchronized int insertMetricData(List<MetricResult> resultsList) {
+    Map<Path, List<Row>> blocks = new LinkedHashMap<>();
+    for (MetricResult results : resultsList) {
+      List<Row> block = blocks.computeIfAbsent(getFile(results), file -> new ArrayList<>());
+      // Same as MetricDatabase, calibration results are stored as text.
+      boolean isText = results.getMetricName().equals("CalibrationMetric");
+      for (String id : results.getIdSortedSet()) {
+        Channel channel = MetricResult.createChannel(id);
+        ByteBuffer digest = results.getDigest(id);
+        byte[] digestBytes = new byte[digest.remaining()];
+        digest.duplicate().get(digestBytes);
+        block.add(new Row(results.getDate(), results.getMetricName(),
+            results.getStation().getNetwork(), results.getStation().getStation(),
+            channel.getLocation(), channel.getChannel(),
+            isText ? Double.NaN : results.getResult(id), isText ? id : null, digestBytes));
+      }
+    }
+
+    // Length of each file before its block, to take written blocks back if a later one fails.
+    Map<Path, Long> written = new LinkedHashMap<>();
+    for (Map.Entry<Path, List<Row>> entry : blocks.entrySet()) {
+      try {
+        written.put(entry.getKey(), writeBlock(entry.getKey(), entry.getValue()));
+      } catch (IOException e) {
+        logger.error("Unable to write metric results to {}:", entry.getKey(), e);
+        for (Map.Entry<Path, Long> block : written.entrySet()) {
+          truncate(block.getKey(), block.getValue());
+        }
+        return -1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Gets the file the results of a station-day are written to.
+   *
+   * @param results the results
+   * @return the network's file for the month
+   */
+  Path getFile(MetricResult results) {
+    String network = results.getStation().getNetwork();
+    return directory.resolve(network)
+        .resolve(network + "." + results.getDate().format(MONTH_FORMAT) + FILE_SUFFIX);
+  }
+
+  /**
+   * Append a block of values to a file and sync it.
+   *
+   * @param file the file to append to
+   * @param rows the values of the block
+   * @return the length of the file before the block
+   * @throws IOException if the block couldn't be written
+   */
+  private static long writeBlock(Path file, List<Row> rows) throws IOException {
+    Files.createDirectories(file.getParent());
+    try (FileOutputStream stream = new FileOutputStream(file.toFile(), true)) {
+      long start = stream.getChannel().size();
+      try {
+        writeColumns(stream, rows);
+      } catch (IOException e) {
+        // Don't leave a partial block that would hide the blocks appended after it.
+        stream.getChannel().truncate(start);
+        throw e;
+      }
+      return start;
+    }
+  }
+
+  /**
+   * Remove a block written by the current insert, since the insert stores all of its results or
+   * none.
+   *
+   * @param file the file the block was appended to
+   * @param length the length of the file before the block
+   */
+  private static void truncate(Path file, long length) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(length);
+      channel.force(true);
+    } catch (IOException e) {
+      logger.error("Unable to remove metric results from {}, they may be stored twice:", file, e);
+    }
+  }
+
+  /**
+   * Write a block as a gzip member at the end of a stream and sync it.
+   */
+  private static void writeColumns(FileOutputStream stream, List<Row> rows) throws IOException {
+    GZIPOutputStream gzip = new GZIPOutputStream(stream, 65536);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip, 65536));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(rows.size());
+    for (Row row : rows) {
+      out.writeInt((int) row.date.toEpochDay());
+    }
+    writeStrings(out, rows, row -> row.metric);
+    writeStrings(out, rows, row -> row.network);
+    writeStrings(out, rows, row -> row.station);
+    writeStrings(out, rows, row -> row.location);
+    writeStrings(out, rows, row -> row.channel);
+    for (Row row : rows) {
+      out.writeDouble(row.value);
+    }
+    writeStrings(out, rows, row -> row.text == null ? "" : row.text);
+    for (Row row : rows) {
+      out.writeShort(row.digest.length);
+    }
+    for (Row row : rows) {
+      out.write(row.digest);
+    }
+    out.flush();
+    gzip.finish();
+    stream.getFD().sync();
+  }
+
+  /**
+   * Write a dictionary encoded text column: the distinct strings followed by the index of each
+   * row's string.
+   */
+  private static void writeStrings(DataOutputStream out, List<Row> rows,
+      Function<Row, String> column) throws IOException {
+    Map<String, Integer> dictionary = new LinkedHashMap<>();
+    int[] codes = new int[rows.size()];
+    for (int i = 0; i < codes.length; i++) {
+      codes[i] = dictionary.computeIfAbsent(column.apply(rows.get(i)), s -> dictionary.size());
+    }
+    out.writeInt(dictionary.size());
+    for (String entry : dictionary.keySet()) {
+      byte[] bytes = entry.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+    for (int code : codes) {
+      out.writeInt(code);
+    }
+  }
+}
@@ -0,0 +1,369 @@
+package asl.seedscan.database;
+
+import asl.seedscan.metrics.MetricResult;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores metric results in a {@link MetricSink}, usually the {@link MetricDatabase}, in the
+ * background.
+ *
+ * Results are queued and written by writer threads, which insert whatever has queued up in one
+ * batch, so results of many metrics and station-days share a transaction. The queue is bounded:
+ * once the sink falls behind, {@link #write(MetricResult)} blocks until there is room.
+ *
+ * Callers that need their results stored, such as a scan about to be finished, wait on the futures
+ * returned by {@link #write(MetricResult)}.
+ *
+ * If the writer has a {@link ResultJournal}, results are appended to it before they are queued.
+ * Results whose insert fails are then left to a replay thread, which inserts them from the journal
+ * once the sink is available again, including results journaled before a restart. Values a later
+ * result has replaced are not replayed, and results aren't inserted while a replay is, so a replay
+ * never overwrites newer values.
+ */
+public class MetricResultWriter {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.database.MetricResultWriter.class);
+
+  /**
+   * Most results inserted in one batch.
+   */
+  private static final int MAX_BATCH_SIZE = 256;
+
+  /**
+   * Milliseconds a writer waits for results before checking if the writer was closed.
+   */
+  private static final long POLL_TIMEOUT = 500;
+
+  /**
+   * Milliseconds the replay thread first waits after the sink failed, doubled on each
+   * consecutive failure up to {@link #MAX_REPLAY_BACKOFF}.
+   */
+  private static final long MIN_REPLAY_BACKOFF = 1000;
+  private static final long MAX_REPLAY_BACKOFF = 300000;
+
+  private final MetricSink sink;
+
+  /**
+   * Journal results are appended to before they are queued, null if results aren't journaled.
+   */
+  private final ResultJournal journal;
+
+  private final BlockingQueue<PendingWrite> queue;
+
+  private final List<Thread> writerThreads = new ArrayList<>();
+
+  private final Thread replayThread;
+
+  /**
+   * Held shared while inserting results and exclusively while replaying, so results written after a
+   * replay checked for newer values are inserted after the replayed ones.
+   */
+  private final ReadWriteLock insertLock = new ReentrantReadWriteLock();
+
+  private volatile boolean closed = false;
+
+  /**
+   * A queued result and the future completed once it is written.
+   */
+  private static class PendingWrite {
+
+    private final MetricResult results;
+    private final ResultJournal.Segment segment;
+    private final CompletableFuture<Boolean> written = new CompletableFuture<>();
+
+    private PendingWrite(MetricResult results, ResultJournal.Segment segment) {
+      this.results = results;
+      this.segment = segment;
+    }
+  }
+
+  /**
+   * Create a writer and start its threads.
+   *
+   * @param sink the sink results are inserted into
+   * @param capacity the number of results that may be queued before writes block
+   * @param threadCount the number of writer threads
+   */
+  public MetricResultWriter(MetricSink sink, int capacity, int threadCount) {
+    this(sink, capacity, threadCount, null);
+  }
+
+  /**
+   * Create a writer journaling its results and start its threads. Segments the journal holds from
+   * a previous run are replayed.
+   *
+   * @param sink the sink results are inserted into
+   * @param capacity the number of results that may be queued before writes block
+   * @param threadCount the number of writer threads
+   * @param journal the journal results are appended to first, may be null
+   */
+  public MetricResultWriter(MetricSink sink, int capacity, int threadCount,
+      ResultJournal journal) {
+    this.sink = sink;
+    this.journal = journal;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    for (int i = 1; i <= threadCount; i++) {
+      Thread thread = new Thread(this::writeResults, "MetricResultWriter-" + i);
+      thread.setDaemon(true);
+      thread.start();
+      writerThreads.add(thread);
+    }
+    if (journal != null) {
+      replayThread = new Thread(this::replayResults, "MetricResultReplay");
+      replayThread.setDaemon(true);
+      replayThread.start();
+    } else {
+      replayThread = null;
+    }
+  }
+
+  /**
+   * Queue results to be inserted, waiting for room in the queue if the sink is behind.
+   *
+   * @param results the results of a metric
+   * @return future completing with true once the results are stored, or false if they couldn't be.
+   * Journaled results that couldn't be stored are replayed later, but still complete with false.
+   * @throws InterruptedException if interrupted while waiting for room
+   * @throws IllegalStateException if the writer was closed
+   */
+  public CompletableFuture<Boolean> write(MetricResult results) throws InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("MetricResultWriter is closed");
+    }
+    ResultJournal.Segment segment = null;
+    if (journal != null) {
+      try {
+        segment = journal.append(results);
+      } catch (IOException e) {
+        logger.error("Unable to journal results of {}:", results.getMetricName(), e);
+      }
+    }
+    PendingWrite write = new PendingWrite(results, segment);
+    try {
+      queue.put(write);
+    } catch (InterruptedException e) {
+      if (segment != null) {
+        journal.acknowledge(segment, false);
+      }
+      throw e;
+    }
+    return write.written;
+  }
+
+  /**
+   * Gets the number of results waiting to be written.
+   *
+   * @return the queued results
+   */
+  public int getQueued() {
+    return queue.size();
+  }
+
+  /**
+   * Stop accepting results and wait for the queued results to be written.
+   *
+   * @param timeout maximum time to wait in milliseconds
+   * @return true, if every queued result was written
+   */
+  public boolean close(long timeout) {
+    closed = true;
+    if (replayThread != null) {
+      replayThread.interrupt();
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    try {
+      for (Thread thread : writerThreads) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining > 0) {
+          thread.join(remaining);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (journal != null) {
+      journal.close();
+    }
+    if (!queue.isEmpty()) {
+      logger.error("MetricResultWriter closed with {} results not written", queue.size());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Body of the writer threads. Inserts batches until the writer is closed and the queue is empty.
+   */
+  private void writeResults() {
+    List<PendingWrite> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    while (!closed || !queue.isEmpty()) {
+      try {
+        PendingWrite first = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+        writeBatch(batch);
+      } catch (InterruptedException e) {
+        logger.info("Interrupt in MetricResultWriter");
+      } catch (RuntimeException e) {
+        logger.error("Unable to write metric results:", e);
+      } finally {
+        for (PendingWrite write : batch) {
+          // Only left incomplete if the insert threw.
+          if (!write.written.isDone()) {
+            finish(write, false);
+          }
+        }
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Insert a batch. If the batch fails each result that isn't journaled is inserted on its own, so
+   * a single bad result doesn't lose the rest of the batch. Journaled results are left to be
+   * replayed.
+   *
+   * @param batch the queued results
+   */
+  private void writeBatch(List<PendingWrite> batch) {
+    insertLock.readLock().lock();
+    try {
+      boolean stored;
+      if (batch.size() == 1) {
+        stored = sink.insertMetricData(batch.get(0).results) == 0;
+      } else {
+        List<MetricResult> resultsList = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+          resultsList.add(write.results);
+        }
+        stored = sink.insertMetricData(resultsList) == 0;
+      }
+      for (PendingWrite write : batch) {
+        boolean written = stored;
+        if (!written && write.segment == null && batch.size() > 1) {
+          written = sink.insertMetricData(write.results) == 0;
+        }
+        finish(write, written);
+      }
+    } finally {
+      insertLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Complete a write, acknowledging it in the journal if it was journaled.
+   *
+   * @param write the queued results
+   * @param stored true, if the results were inserted
+   */
+  private void finish(PendingWrite write, boolean stored) {
+    if (write.segment != null) {
+      // Results that weren't stored are replayed from the journal.
+      journal.acknowledge(write.segment, stored);
+    }
+    write.written.complete(stored);
+  }
+
+  /**
+   * Body of the replay thread. Inserts the results of journal segments handed out for replay,
+   * waiting with increasing delays while the sink is unavailable. Segments are deleted once
+   * replayed, a segment interrupted by closing the writer is replayed again by the next run.
+   */
+  private void replayResults() {
+    long backoff = MIN_REPLAY_BACKOFF;
+    while (!closed) {
+      try {
+        journal.rotateIfFailed();
+        Path segment = journal.pollReplay(POLL_TIMEOUT);
+        if (segment == null) {
+          continue;
+        }
+        List<MetricResult> resultsList = ResultJournal.read(segment);
+        int start = 0;
+        while (start < resultsList.size() && !closed) {
+          List<MetricResult> chunk = resultsList
+              .subList(start, Math.min(resultsList.size(), start + MAX_BATCH_SIZE));
+          if (replay(segment, chunk, start)) {
+            start += chunk.size();
+            backoff = MIN_REPLAY_BACKOFF;
+          } else {
+            logger.warn("Unable to replay journaled results, retrying in {} ms", backoff);
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, MAX_REPLAY_BACKOFF);
+          }
+        }
+        if (start >= resultsList.size()) {
+          logger.info("Replayed {} journaled results from {}", resultsList.size(), segment);
+          journal.delete(segment);
+        }
+      } catch (IOException e) {
+        logger.error("Unable to replay result journal:", e);
+      } catch (InterruptedException e) {
+        logger.info("Interrupt in MetricResultWriter replay");
+      } catch (RuntimeException e) {
+        logger.error("Unable to replay result journal:", e);
+      }
+    }
+  }
+
+  /**
+   * Insert replayed results, leaving out values a later result holds.
+   *
+   * @param segment the journal segment the results were read from
+   * @param journaled the results
+   * @param first the index of the first result in the segment
+   * @return true, if the results were inserted. Results that can't be inserted on their own while
+   * others can are logged and dropped. False if none could be inserted, the sink is likely
+   * unavailable.
+   */
+  private boolean replay(Path segment, List<MetricResult> journaled, int first) {
+    insertLock.writeLock().lock();
+    try {
+      List<MetricResult> resultsList = journal.removeSuperseded(segment, journaled, first);
+      return resultsList.isEmpty() || replay(resultsList);
+    } finally {
+      insertLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Insert replayed results.
+   *
+   * @param resultsList the results
+   * @return true, if the results were inserted, see {@link #replay(Path, List, int)}
+   */
+  private boolean replay(List<MetricResult> resultsList) {
+    if (sink.insertMetricData(resultsList) == 0) {
+      return true;
+    }
+    List<MetricResult> failed = new ArrayList<>();
+    for (MetricResult results : resultsList) {
+      if (sink.insertMetricData(results) != 0) {
+        failed.add(results);
+      }
+    }
+    if (failed.size() == resultsList.size()) {
+      return false;
+    }
+    for (MetricResult results : failed) {
+      logger.error("Dropping journaled results of {} for {} on {}, they can't be inserted",
+          results.getMetricName(), results.getStation(), results.getDate());
+    }
+    return true;
+  }
+}
@@ -0,0 +1,29 @@
+package asl.seedscan.database;
+
+import asl.seedscan.metrics.MetricResult;
+import java.util.List;
+
+/**
+ * Destination metric results are stored in, such as the {@link MetricDatabase} or files written by
+ * {@link MetricFileSink}.
+ *
+ * Implementations must allow results to be inserted from several threads at once.
+ */
+public interface MetricSink {
+
+  /**
+   * Store the results of a metric.
+   *
+   * @param results the results to store
+   * @return 0 once the results are durably stored, -1 if they couldn't be stored
+   */
+  int insertMetricData(MetricResult results);
+
+  /**
+   * Store the results of several metrics, either all of them or none.
+   *
+   * @param resultsList the results to store, may be of different metrics and station-days
+   * @return 0 on success, -1 if nothing was stored
+   */
+  int insertMetricData(List<MetricResult> resultsList);
+}
@@ -0,0 +1,567 @@
+package asl.seedscan.database;
+
+import asl.metadata.Station;
+import asl.seedscan.metrics.MetricResult;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal on local disk that metric results are written to before they are inserted
+ * into the database, so results aren't lost while the database is unavailable.
+ *
+ * The journal is a directory of segment files, results-[sequence].journal. A segment starts with
+ * a magic number and version, followed by records of a payload length, the CRC32 of the payload
+ * and the payload holding one {@link MetricResult}. Appends return once the record is on disk.
+ * Concurrent appends share an fsync, so the cost of syncing is spread over every waiting writer.
+ *
+ * Each appended record is acknowledged once its insert into the database succeeded or failed.
+ * When a segment is full and every record in it is acknowledged, it is deleted if all inserts
+ * succeeded and handed out for replay otherwise. Segments left from a previous run are handed out
+ * for replay when the journal is opened.
+ *
+ * A replayed segment may hold values that a later scan of the same station-day has replaced since.
+ * The journal keeps the position of the latest record of every metric value, identified by date,
+ * metric, station and channel, and {@link #removeSuperseded(Path, List, int)} drops values that a
+ * later record holds. Later records were either stored or are replayed themselves. Segments are
+ * deleted oldest first, so the later records of a segment left from a previous run are still on
+ * disk when the journal is opened again and their positions are read back.
+ */
+public class ResultJournal {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.database.ResultJournal.class);
+
+  private static final String SEGMENT_PREFIX = "results-";
+  private static final String SEGMENT_SUFFIX = ".journal";
+
+  /**
+   * "SSRJ", identifies segment files.
+   */
+  private static final int MAGIC = 0x5353524A;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+
+  /**
+   * Size after which a new segment is started.
+   */
+  private static final long SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * Largest payload accepted when reading, anything larger is treated as corruption.
+   */
+  private static final int MAX_PAYLOAD_SIZE = 64 * 1024 * 1024;
+
+  private final Path directory;
+
+  /**
+   * Segment appends currently go to.
+   */
+  private Segment current;
+
+  private long nextSequence;
+
+  /**
+   * Closed segments with failed inserts, and segments from a previous run.
+   */
+  private final BlockingQueue<Path> replayQueue = new LinkedBlockingQueue<>();
+
+  /**
+   * Sequences of the segments whose files exist.
+   */
+  private final TreeSet<Long> live = new TreeSet<>();
+
+  /**
+   * Segments that no longer need replaying, deleted once every older segment is.
+   */
+  private final Set<Long> done = new HashSet<>();
+
+  /**
+   * Position of the latest record holding each metric value, see {@link #position(long, int)}.
+   * Positions before the oldest live segment are dropped, no record they could supersede is left.
+   */
+  private final Map<String, Long> latest = new HashMap<>();
+
+  /**
+   * A segment file being appended to, or closed and waiting for its records to be acknowledged.
+   */
+  public static class Segment {
+
+    private final Path path;
+    private final long sequence;
+    private final FileChannel channel;
+
+    /**
+     * Bytes written, updated under the journal's lock.
+     */
+    private volatile long written;
+
+    /**
+     * Bytes known to be on disk, updated under the segment's lock.
+     */
+    private long synced;
+
+    private int appended = 0;
+    private int acknowledged = 0;
+    private boolean failed = false;
+    private boolean closed = false;
+
+    private Segment(Path path, long sequence) throws IOException {
+      this.path = path;
+      this.sequence = sequence;
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.WRITE);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).flip();
+      writeFully(channel, header);
+      this.written = HEADER_SIZE;
+      this.synced = 0;
+    }
+
+    /**
+     * Wait until the segment is on disk up to a position. A single fsync covers every record
+     * written before it started.
+     */
+    private synchronized void sync(long position) throws IOException {
+      if (synced >= position) {
+        return;
+      }
+      long target = written;
+      channel.force(false);
+      synced = target;
+    }
+  }
+
+  /**
+   * Open a journal, creating its directory if needed. Segments found in the directory are queued
+   * for replay.
+   *
+   * @param directory the directory holding the segments
+   * @throws IOException if the directory can't be created or read, or the first segment can't be
+   * created
+   */
+  public ResultJournal(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+
+    TreeMap<Long, Path> existing = new TreeMap<>();
+    try (DirectoryStream<Path> stream = Files
+        .newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path path : stream) {
+        Long sequence = sequenceOf(path);
+        if (sequence == null) {
+          logger.warn("Ignoring unexpected journal file {}", path);
+        } else {
+          existing.put(sequence, path);
+        }
+      }
+    }
+    for (Map.Entry<Long, Path> entry : existing.entrySet()) {
+      try {
+        List<MetricResult> resultsList = read(entry.getValue());
+        for (int i = 0; i < resultsList.size(); i++) {
+          for (String key : keys(resultsList.get(i))) {
+            latest.put(key, position(entry.getKey(), i));
+          }
+        }
+      } catch (IOException e) {
+        // Reported again when the segment is replayed.
+        logger.warn("Unable to read result journal segment {}:", entry.getValue(), e);
+      }
+    }
+    nextSequence = existing.isEmpty() ? 1 : existing.lastKey() + 1;
+    live.addAll(existing.keySet());
+    replayQueue.addAll(existing.values());
+    if (!existing.isEmpty()) {
+      logger.info("Found {} result journal segments to replay in {}", existing.size(), directory);
+    }
+
+    current = newSegment();
+  }
+
+  /**
+   * Append results to the journal, returning once they are on disk.
+   *
+   * @param results the results of a metric
+   * @return the segment the results were written to, to be passed to {@link #acknowledge(Segment,
+   * boolean)}
+   * @throws IOException if the results couldn't be written
+   */
+  public Segment append(MetricResult results) throws IOException {
+    byte[] payload = encode(results);
+    List<String> keys = keys(results);
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+    record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+
+    Segment segment;
+    long position;
+    synchronized (this) {
+      if (current.written >= SEGMENT_SIZE) {
+        rotate();
+      }
+      segment = current;
+      writeFully(segment.channel, record);
+      segment.written += record.limit();
+      long recordPosition = position(segment.sequence, segment.appended);
+      for (String key : keys) {
+        latest.put(key, recordPosition);
+      }
+      segment.appended++;
+      position = segment.written;
+    }
+    segment.sync(position);
+    return segment;
+  }
+
+  /**
+   * Record the outcome of inserting appended results.
+   *
+   * @param segment the segment returned by {@link #append(MetricResult)}
+   * @param stored true, if the results were inserted into the database
+   */
+  public synchronized void acknowledge(Segment segment, boolean stored) {
+    segment.acknowledged++;
+    if (!stored) {
+      segment.failed = true;
+    }
+    retireIfDone(segment);
+  }
+
+  /**
+   * Start a new segment if the current one has failed inserts, so they can be replayed without
+   * waiting for the segment to fill up.
+   *
+   * @throws IOException if the new segment can't be created
+   */
+  public synchronized void rotateIfFailed() throws IOException {
+    if (current.failed) {
+      rotate();
+    }
+  }
+
+  /**
+   * Remove the values of replayed records that a later record of the journal holds. Must be called
+   * right before the records are inserted, while no other results are inserted.
+   *
+   * @param path the segment's file
+   * @param resultsList records read from the segment
+   * @param first the index of the first of the records in the segment
+   * @return the results of the records without superseded values, leaving out results with none
+   */
+  public synchronized List<MetricResult> removeSuperseded(Path path,
+      List<MetricResult> resultsList, int first) {
+    Long sequence = sequenceOf(path);
+    if (sequence == null) {
+      return resultsList;
+    }
+    List<MetricResult> current = new ArrayList<>(resultsList.size());
+    for (int i = 0; i < resultsList.size(); i++) {
+      MetricResult results = resultsList.get(i);
+      long recordPosition = position(sequence, first + i);
+      MetricResult kept = new MetricResult(results.getMetricName(), results.getDate(),
+          results.getStation());
+      for (String id : results.getIdSet()) {
+        Long latestPosition = latest.get(key(results, id));
+        if (latestPosition == null || latestPosition <= recordPosition) {
+          kept.addResult(id, results.getResult(id), results.getDigest(id));
+        }
+      }
+      if (!kept.getIdSet().isEmpty()) {
+        current.add(kept);
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Take the next segment that needs to be replayed. Once replayed the caller deletes it with
+   * {@link #delete(Path)}.
+   *
+   * @param timeout maximum time to wait in milliseconds
+   * @return the segment's file or null if none became available
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public Path pollReplay(long timeout) throws InterruptedException {
+    return replayQueue.poll(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Gets the number of segments waiting to be replayed.
+   *
+   * @return the waiting segments
+   */
+  public int getReplayBacklog() {
+    return replayQueue.size();
+  }
+
+  /**
+   * Close the current segment. It is deleted if every record in it was inserted. Segments still
+   * waiting for replay are left for the next run.
+   */
+  public synchronized void close() {
+    try {
+      closeSegment(current);
+    } catch (IOException e) {
+      logger.error("Unable to close result journal segment {}:", current.path, e);
+    }
+  }
+
+  /**
+   * Delete a replayed segment. Its file is kept until every older segment is deleted as well.
+   *
+   * @param path the segment's file
+   */
+  public synchronized void delete(Path path) {
+    Long sequence = sequenceOf(path);
+    if (sequence == null) {
+      deleteFile(path);
+    } else {
+      release(sequence);
+    }
+  }
+
+  /**
+   * Read the results held by a segment file. Reading stops at a truncated or corrupt record, such
+   * as one being written when the process was killed.
+   *
+   * @param path the segment's file
+   * @return the results in the order they were appended
+   * @throws IOException if the file can't be read or isn't a journal segment
+   */
+  public static List<MetricResult> read(Path path) throws IOException {
+    List<MetricResult> resultsList = new ArrayList<>();
+    try (InputStream file = Files.newInputStream(path);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a result journal segment: " + path);
+      }
+      CRC32 crc = new CRC32();
+      while (true) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        try {
+          if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+            logger.warn("Corrupt record in result journal segment {}, ignoring the remainder", path);
+            break;
+          }
+          int checksum = in.readInt();
+          byte[] payload = new byte[length];
+          in.readFully(payload);
+          crc.reset();
+          crc.update(payload);
+          if ((int) crc.getValue() != checksum) {
+            logger.warn("Corrupt record in result journal segment {}, ignoring the remainder", path);
+            break;
+          }
+          resultsList.add(decode(payload));
+        } catch (EOFException e) {
+          logger.warn("Truncated record at the end of result journal segment {}", path);
+          break;
+        }
+      }
+    }
+    return resultsList;
+  }
+
+  /**
+   * Close the current segment and start a new one. Must hold the journal's lock.
+   */
+  private void rotate() throws IOException {
+    Segment previous = current;
+    current = newSegment();
+    closeSegment(previous);
+  }
+
+  /**
+   * Create the next segment. Must hold the journal's lock.
+   */
+  private Segment newSegment() throws IOException {
+    long sequence = nextSequence++;
+    Segment segment = new Segment(segmentPath(sequence), sequence);
+    live.add(sequence);
+    return segment;
+  }
+
+  /**
+   * Sync and close a segment, then retire it if all of its records are acknowledged. Must hold
+   * the journal's lock.
+   */
+  private void closeSegment(Segment segment) throws IOException {
+    segment.sync(segment.written);
+    segment.channel.close();
+    segment.closed = true;
+    retireIfDone(segment);
+  }
+
+  /**
+   * Delete a closed segment whose records were all inserted, or queue it for replay if any of
+   * them failed. Must hold the journal's lock.
+   */
+  private void retireIfDone(Segment segment) {
+    if (!segment.closed || segment.acknowledged < segment.appended) {
+      return;
+    }
+    if (segment.failed) {
+      logger.info("Queueing result journal segment {} for replay", segment.path);
+      replayQueue.add(segment.path);
+    } else {
+      release(segment.sequence);
+    }
+  }
+
+  /**
+   * Mark a segment as no longer needed and delete the segments before the oldest one still
+   * needed. Must hold the journal's lock.
+   */
+  private void release(long sequence) {
+    done.add(sequence);
+    while (!live.isEmpty() && done.contains(live.first())) {
+      long oldest = live.pollFirst();
+      done.remove(oldest);
+      deleteFile(segmentPath(oldest));
+    }
+    long oldestPosition = live.isEmpty() ? Long.MAX_VALUE : position(live.first(), 0);
+    for (Iterator<Long> it = latest.values().iterator(); it.hasNext(); ) {
+      if (it.next() < oldestPosition) {
+        it.remove();
+      }
+    }
+  }
+
+  private static void deleteFile(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      logger.error("Unable to delete result journal segment {}:", path, e);
+    }
+  }
+
+  /**
+   * Position of a record in the journal, ordered by segment and then by index in the segment.
+   */
+  private static long position(long sequence, int index) {
+    return (sequence << 32) | index;
+  }
+
+  /**
+   * Get the sequence of a segment from its file name.
+   *
+   * @return the sequence, null if the file isn't named like a segment
+   */
+  private static Long sequenceOf(Path path) {
+    String name = path.getFileName().toString();
+    if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+      return null;
+    }
+    try {
+      return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+          name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Identify a metric value by date, metric, station and channel.
+   */
+  private static String key(MetricResult results, String id) {
+    return results.getDate() + "\0" + results.getMetricName() + "\0"
+        + results.getStation().getNetwork() + "\0" + results.getStation().getStation()
+        + "\0" + id;
+  }
+
+  private static List<String> keys(MetricResult results) {
+    List<String> keys = new ArrayList<>();
+    for (String id : results.getIdSet()) {
+      keys.add(key(results, id));
+    }
+    return keys;
+  }
+
+  private Path segmentPath(long sequence) {
+    return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static byte[] encode(MetricResult results) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(results.getDate().toEpochDay());
+    out.writeUTF(results.getMetricName());
+    out.writeUTF(results.getStation().getNetwork());
+    out.writeUTF(results.getStation().getStation());
+    List<String> ids = new ArrayList<>(results.getIdSet());
+    out.writeInt(ids.size());
+    for (String id : ids) {
+      // Calibration results are stored as their id, which can exceed writeUTF's limit.
+      byte[] idBytes = id.getBytes("UTF-8");
+      out.writeInt(idBytes.length);
+      out.write(idBytes);
+      out.writeDouble(results.getResult(id));
+      ByteBuffer digest = results.getDigest(id);
+      byte[] digestBytes = new byte[digest.remaining()];
+      digest.duplicate().get(digestBytes);
+      out.writeInt(digestBytes.length);
+      out.write(digestBytes);
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static MetricResult decode(byte[] payload) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    LocalDate date = LocalDate.ofEpochDay(in.readLong());
+    String metricName = in.readUTF();
+    String network = in.readUTF();
+    String station = in.readUTF();
+    MetricResult results = new MetricResult(metricName, date, new Station(network, station));
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      byte[] idBytes = new byte[in.readInt()];
+      in.readFully(idBytes);
+      double value = in.readDouble();
+      byte[] digest = new byte[in.readInt()];
+      in.readFully(digest);
+      results.addResult(new String(idBytes, "UTF-8"), value, ByteBuffer.wrap(digest));
+    }
+    return results;
+  }
+}
@@ -0,0 +1,196 @@
+package asl.seedscan.database;
+
+import java.util.regex.Pattern;
+
+import asl.metadata.Channel;
+
+/**
+ * A compiled form of the metric, location, and channel filters carried on a
+ * {@link DatabaseScan}.
+ *
+ * Filters are comma separated lists as stored in tblscan. Each entry may use
+ * '?' to match a single character and '*' to match any number of characters.
+ * A null or empty filter matches everything.
+ *
+ * Examples: metric "CoherencePBM,AvailabilityMetric", location "00,10",
+ * channel "LH?,BH*".
+ */
+public class ScanFilter {
+
+	/** Filter that accepts every metric and channel. */
+	public static final ScanFilter ALL = new ScanFilter(null, null, null);
+
+	/** Compiled metric filter, null if unrestricted */
+	private final Pattern metricPattern;
+
+	/** Compiled location filter, null if unrestricted */
+	private final Pattern locationPattern;
+
+	/** Compiled channel filter, null if unrestricted */
+	private final Pattern channelPattern;
+
+	/**
+	 * Compiled channel filter matching every orientation of a requested band
+	 * and instrument. Data for derived channels (e.g. LHND) must be rotated
+	 * from their horizontal components, so loading is restricted on band and
+	 * instrument only. Null if unrestricted.
+	 */
+	private final Pattern bandPattern;
+
+	/**
+	 * Compile the given filters.
+	 *
+	 * @param metricFilter
+	 *            comma separated metric names. Names may be either the full
+	 *            metric name (CoherencePBM:4-8) or the name without its power
+	 *            band (CoherencePBM).
+	 * @param locationFilter
+	 *            comma separated location codes
+	 * @param channelFilter
+	 *            comma separated channel codes
+	 */
+	public ScanFilter(String metricFilter, String locationFilter, String channelFilter) {
+		this.metricPattern = compile(metricFilter, false);
+		this.locationPattern = compile(locationFilter, false);
+		this.channelPattern = compile(channelFilter, false);
+		this.bandPattern = compile(channelFilter, true);
+	}
+
+	/**
+	 * Checks if no filtering is done by this filter.
+	 *
+	 * @return true, if every metric and channel will be accepted.
+	 */
+	public boolean isUnrestricted() {
+		return metricPattern == null && locationPattern == null && channelPattern == null;
+	}
+
+	/**
+	 * Checks if a metric should be computed.
+	 *
+	 * @param metricName
+	 *            the metric name as returned by Metric.getName()
+	 * @return true, if the metric passes the filter
+	 */
+	public boolean acceptsMetric(String metricName) {
+		if (metricPattern == null) {
+			return true;
+		}
+		if (metricName == null) {
+			return false;
+		}
+		if (metricPattern.matcher(metricName).matches()) {
+			return true;
+		}
+		// PowerBand metrics are named BaseName:low-high
+		int split = metricName.indexOf(':');
+		return split > 0 && metricPattern.matcher(metricName.substring(0, split)).matches();
+	}
+
+	/**
+	 * Checks if results should be computed for a channel.
+	 *
+	 * @param channel
+	 *            the channel
+	 * @return true, if both location and channel pass the filter
+	 */
+	public boolean acceptsChannel(Channel channel) {
+		return acceptsLocation(channel.getLocation())
+				&& (channelPattern == null || channelPattern.matcher(channel.getChannel()).matches());
+	}
+
+	/**
+	 * Checks if data for a channel should be loaded. This is looser than
+	 * {@link #acceptsChannel(Channel)} so that rotated channels can still be
+	 * derived. The location is not restricted, pair metrics such as
+	 * CoherencePBM compare an accepted location against the other locations
+	 * of the station.
+	 *
+	 * @param location
+	 *            the location code
+	 * @param channel
+	 *            the channel code
+	 * @return true, if the data is needed by this filter
+	 */
+	public boolean acceptsData(String location, String channel) {
+		return bandPattern == null || bandPattern.matcher(channel).matches();
+	}
+
+	/**
+	 * Gets the pattern used to restrict loading by channel code.
+	 *
+	 * @return the band and instrument pattern, or null if unrestricted
+	 */
+	public Pattern getDataChannelPattern() {
+		return bandPattern;
+	}
+
+	/**
+	 * Checks the location code against the location filter.
+	 *
+	 * @param location
+	 *            the location code
+	 * @return true, if it passes
+	 */
+	private boolean acceptsLocation(String location) {
+		return locationPattern == null || locationPattern.matcher(location).matches();
+	}
+
+	/**
+	 * Translate a comma separated wildcard list into a single regular
+	 * expression.
+	 *
+	 * @param filter
+	 *            the filter as stored in the database
+	 * @param bandOnly
+	 *            true to only keep the first two characters (band and
+	 *            instrument) of each entry
+	 * @return the compiled pattern or null if the filter is empty
+	 */
+	private static Pattern compile(String filter, boolean bandOnly) {
+		if (filter == null || filter.trim().isEmpty()) {
+			return null;
+		}
+		StringBuilder regex = new StringBuilder();
+		for (String entry : filter.split(",")) {
+			entry = entry.trim();
+			if (entry.isEmpty()) {
+				continue;
+			}
+			if (bandOnly && entry.length() > 2) {
+				entry = entry.substring(0, 2) + "*";
+			}
+			if (regex.length() > 0) {
+				regex.append('|');
+			}
+			StringBuilder literal = new StringBuilder();
+			for (char c : entry.toCharArray()) {
+				if (c == '?' || c == '*') {
+					if (literal.length() > 0) {
+						regex.append(Pattern.quote(literal.toString()));
+						literal.setLength(0);
+					}
+					regex.append(c == '?' ? "." : ".*");
+				} else {
+					literal.append(c);
+				}
+			}
+			if (literal.length() > 0) {
+				regex.append(Pattern.quote(literal.toString()));
+			}
+		}
+		if (regex.length() == 0) {
+			return null;
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ScanFilter [metric=" + metricPattern + ", location=" + locationPattern + ", channel="
+				+ channelPattern + "]";
+	}
+}
@@ -2,6 +2,7 @@ package asl.seedscan.metrics;
 
 import java.nio.ByteBuffer;
 import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -31,6 +32,15 @@ public class DeadChannelMetric extends PowerBandMetric {
 		return "DeadChannelMetric";
 	}
 
+	/**
+	 * Requires the NLNMDeviationMetric of the same power band, which is read
+	 * from the database.
+	 */
+	@Override
+	public List<String> getDependencies() {
+		return Collections.singletonList("NLNMDeviationMetric:" + getName().split("[:]")[1]);
+	}
+
 	public void process() {
 		logger.info("-Enter- [ Station {} ] [ Day {} ]", getStation(), getDay());
 
@@ -1,8 +1,10 @@
 
 package asl.seedscan.metrics;
 
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,7 +16,6 @@ import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.database.MetricValueIdentifier;
 import asl.seedscan.event.EventCMT;
 import asl.timeseries.CrossPower;
-import asl.timeseries.CrossPowerKey;
 import sac.SacTimeSeries;
 
 /**
@@ -32,9 +33,6 @@ public abstract class Metric {
 	/** The arguments. */
 	private Hashtable<String, String> arguments;
 	
-	/** The cross power map. */
-	private Hashtable<CrossPowerKey, CrossPower> crossPowerMap;
-
 	/** Determines if metric will be forced to recompute and update the database.*/
 	private boolean forceUpdate = false;
 	
@@ -67,7 +65,6 @@ public abstract class Metric {
 	 */
 	public Metric() {
 		arguments = new Hashtable<>();
-		crossPowerMap = new Hashtable<>();
 
 		// MTH: 03-18-13: Added to allow these optional arguments to each
 		// cfg:metric in config.xml
@@ -106,6 +103,17 @@ public abstract class Metric {
 	 */
 	public abstract void process();
 
+	/**
+	 * Gets the names of metrics whose results this metric reads from the
+	 * database. When scanned together, those metrics are computed and stored
+	 * before this metric is processed.
+	 *
+	 * @return the full names (as returned by getName()) of required metrics
+	 */
+	public List<String> getDependencies() {
+		return Collections.emptyList();
+	}
+
 	/**
 	 * Creates the identifier.
 	 *
@@ -132,47 +140,21 @@ public abstract class Metric {
 	}
 
 	/**
-	 * Gets the cross power map.
-	 *
-	 * @return the cross power map
-	 */
-	public Hashtable<CrossPowerKey, CrossPower> getCrossPowerMap() {
-		return crossPowerMap;
-	}
-
-	/**
-	 * Sets the cross power map.
-	 *
-	 * @param crossPowerMap the cross power map
-	 */
-	public void setCrossPowerMap(
-			Hashtable<CrossPowerKey, CrossPower> crossPowerMap) {
-		this.crossPowerMap = crossPowerMap;
-	}
-
-	/**
-	 * Gets the cross power.
+	 * Gets the cross power. CrossPowers are cached by the metric data, so
+	 * every metric of the day shares them.
 	 *
 	 * @param channelA first channel
 	 * @param channelB second channel
 	 * @return the cross power
 	 * @throws MetricException when CrossPower cannot be created.
+	 * @see MetricData#getCrossPower(Channel, Channel)
 	 */
 	protected CrossPower getCrossPower(Channel channelA, Channel channelB) throws MetricException {
-		CrossPowerKey key = new CrossPowerKey(channelA, channelB);
-		CrossPower crossPower = null;
-
-		if (crossPowerMap.containsKey(key)) {
-			crossPower = crossPowerMap.get(key);
-		} else {
-			try {
-				crossPower = new CrossPower(channelA, channelB, metricData);
-				crossPowerMap.put(key, crossPower);
-			} catch (MetricPSDException | ChannelMetaException e) {
-				throw new MetricException("Unable to create CrossPower", e);
-			}
+		try {
+			return metricData.getCrossPower(channelA, channelB);
+		} catch (MetricPSDException | ChannelMetaException e) {
+			throw new MetricException("Unable to create CrossPower", e);
 		}
-		return crossPower;
 	}
 
 	/**
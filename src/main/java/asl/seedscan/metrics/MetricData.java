@@ -6,9 +6,12 @@ import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
 
 import org.apache.commons.math3.complex.Complex;
 import org.slf4j.Logger;
@@ -25,14 +28,23 @@ import asl.metadata.meta_new.StationMeta;
 import asl.security.MemberDigest;
 import asl.seedscan.database.MetricDatabase;
 import asl.seedscan.database.MetricValueIdentifier;
+import asl.seedscan.database.ScanFilter;
 import asl.seedsplitter.BlockLocator;
 import asl.seedsplitter.ContiguousBlock;
 import asl.seedsplitter.DataSet;
 import asl.seedsplitter.IllegalSampleRateException;
+import asl.seedsplitter.SeedIndex;
+import asl.seedsplitter.SeedSplitProcessor;
 import asl.seedsplitter.SequenceRangeException;
+import asl.timeseries.CrossPower;
+import asl.timeseries.CrossPowerCache;
+import asl.timeseries.CrossPowerKey;
 import asl.timeseries.FFTUtils;
+import asl.timeseries.SegmentSpectra;
+import asl.timeseries.SegmentSpectraCache;
 import asl.timeseries.TimeseriesException;
 import asl.timeseries.TimeseriesUtils;
+import asl.timeseries.WelchPSD;
 import asl.util.Time;
 import seed.Blockette320;
 
@@ -54,10 +66,21 @@ public class MetricData implements Serializable {
       .getLogger(asl.seedscan.metrics.MetricData.class);
 
   /**
-   * The data.
+   * The data. When loaded through a {@link SeedIndex} this only holds the channels decoded so far.
+   * Iterating over it requires holding its lock.
    */
   private Hashtable<String, ArrayList<DataSet>> data;
 
+  /**
+   * Index of channels that are decoded on first access, null if all data was decoded on loading.
+   */
+  private transient SeedIndex index;
+
+  /**
+   * Decodes of indexed channels that have been started, by key.
+   */
+  private transient Map<String, CompletableFuture<Void>> decodes;
+
   /**
    * The quality data.
    */
@@ -87,6 +110,120 @@ public class MetricData implements Serializable {
     this.metricReader = metricReader;
   }
 
+  /**
+   * Restricts which channels metrics will compute results for.
+   */
+  private transient ScanFilter channelFilter;
+
+  /**
+   * Digests stored in the database for the station-day of {@link #storedDigestsDate} and
+   * {@link #storedDigestsStation}, null if they haven't been loaded.
+   */
+  private transient Map<MetricValueIdentifier, ByteBuffer> storedDigests;
+
+  /**
+   * The day the stored digests were loaded for.
+   */
+  private transient LocalDate storedDigestsDate;
+
+  /**
+   * The station the stored digests were loaded for.
+   */
+  private transient Station storedDigestsStation;
+
+  /**
+   * Restrict metric computation to the channels accepted by a scan filter. Channels outside of
+   * the filter are reported as unchanged by valueDigestChanged, so metrics skip them.
+   *
+   * @param channelFilter the filter, null for no restriction
+   */
+  public void setChannelFilter(ScanFilter channelFilter) {
+    this.channelFilter = channelFilter;
+  }
+
+  /**
+   * Load every digest stored in the database for a station-day with one query. valueDigestChanged
+   * then compares against these instead of querying each metric and channel on its own.
+   *
+   * @param date the day
+   * @param station the station
+   */
+  public void loadStoredDigests(LocalDate date, Station station) {
+    if (metricReader == null || !metricReader.isConnected()) {
+      return;
+    }
+    Map<MetricValueIdentifier, ByteBuffer> digests = metricReader
+        .getMetricValueDigests(date, station);
+    if (digests == null) {
+      // valueDigestChanged falls back to single queries.
+      logger.warn("Unable to load stored digests of [{}]:[{}]", station,
+          date.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+      return;
+    }
+    synchronized (this) {
+      storedDigests = digests;
+      storedDigestsDate = date;
+      storedDigestsStation = station;
+    }
+  }
+
+  /**
+   * Get the digest stored in the database for a metric value, from the loaded stored digests when
+   * they cover its station-day. The database is queried without holding this object's lock.
+   *
+   * @param id the metric value
+   * @return the stored digest, null if there is none
+   */
+  private ByteBuffer getStoredDigest(MetricValueIdentifier id) {
+    synchronized (this) {
+      if (storedDigests != null && id.getDate().equals(storedDigestsDate)
+          && id.getStation().equals(storedDigestsStation)) {
+        return storedDigests.get(id);
+      }
+    }
+    return metricReader
+        .getMetricValueDigest(id.getDate(), id.getMetricName(), id.getStation(), id.getChannel());
+  }
+
+  /**
+   * Estimated heap held by the data, computed on first request.
+   */
+  private transient Long estimatedSize;
+
+  /**
+   * Approximate heap held by each DataSet beyond its samples.
+   */
+  private static final long DATASET_OVERHEAD = 512;
+
+  /**
+   * Bytes the cached segment spectra of a day may hold. A 1 Hz channel's spectra take about 3 MB,
+   * a 40 Hz channel's about 110 MB. Spectra of channels with higher sample rates are larger than
+   * the whole budget, so they are never built and CrossPowers of those channels stream their
+   * segments instead.
+   */
+  static final long SEGMENT_SPECTRA_BUDGET = 256L * 1024 * 1024;
+
+  /**
+   * Segment spectra of channels, created when first requested.
+   */
+  private transient SegmentSpectraCache segmentSpectra;
+
+  /**
+   * Bytes the cached CrossPowers of a day may hold. A 40 Hz channel's CrossPower takes about 1 MB.
+   */
+  static final long CROSS_POWER_BUDGET = 64L * 1024 * 1024;
+
+  /**
+   * CrossPowers of channel pairs shared by every metric of the day, created when first requested.
+   */
+  private transient CrossPowerCache crossPowers;
+
+  /**
+   * Told of every change in the bytes held by {@link #segmentSpectra} and {@link #crossPowers},
+   * null if they aren't counted anywhere.
+   */
+  private transient LongConsumer cacheUsage;
+
   /**
    * The next metric data.
    */
@@ -127,6 +264,20 @@ public class MetricData implements Serializable {
     this.metadata = metadata;
   }
 
+  /**
+   * Instantiates a new metric data whose channels are decoded from their files when first
+   * requested. Checking whether a channel has data only consults the index.
+   *
+   * @param metricReader the metric reader
+   * @param index the index of the day's records, null if there is no data
+   * @param metadata the metadata
+   */
+  public MetricData(MetricDatabase metricReader, SeedIndex index, StationMeta metadata) {
+    this(metricReader, new Hashtable<>(), null, metadata, null);
+    this.index = index;
+    this.decodes = new HashMap<>();
+  }
+
   /**
    * Instantiates a new metric data.
    *
@@ -138,6 +289,38 @@ public class MetricData implements Serializable {
     this.metricReader = metricReader;
   }
 
+  /**
+   * Estimate the heap held by this day's data from the number of samples of each channel. The
+   * estimate is computed once so the same value can be reserved and later released. Cached spectra
+   * aren't included, they are reported as they change, see {@link #setCacheUsage(LongConsumer)}.
+   *
+   * @return the estimated size in bytes
+   */
+  public synchronized long getEstimatedSize() {
+    if (estimatedSize == null) {
+      long size = 0;
+      if (data != null) {
+        synchronized (data) {
+          for (ArrayList<DataSet> datasets : data.values()) {
+            for (DataSet dataset : datasets) {
+              size += (long) dataset.getLength() * Integer.BYTES + DATASET_OVERHEAD;
+            }
+          }
+          if (index != null) {
+            // Channels not decoded yet are counted as if they were.
+            for (String key : index.getKeys()) {
+              if (!data.containsKey(key)) {
+                size += index.getSampleCount(key) * Integer.BYTES + DATASET_OVERHEAD;
+              }
+            }
+          }
+        }
+      }
+      estimatedSize = size;
+    }
+    return estimatedSize;
+  }
+
   /**
    * Gets the metadata.
    *
@@ -214,13 +397,7 @@ public class MetricData implements Serializable {
       return false;
     }
     String locationName = location + "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return true;
-      }
-    }
-    return false;
+    return findKey(data, locationName) != null || findIndexedKey(locationName) != null;
   }
 
   /**
@@ -235,13 +412,135 @@ public class MetricData implements Serializable {
       return false;
     }
     String locationName = "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
+    return findKey(data, locationName) != null || findIndexedKey(locationName) != null;
+  }
+
+  /**
+   * Finds the first key of a table containing a location-channel name.
+   *
+   * @param table the table, data or one of the tables decoded alongside it
+   * @param locationName the name, such as "00-BHZ" or "-BC0"
+   * @return the key, null if not found
+   */
+  private String findKey(Hashtable<String, ?> table, String locationName) {
+    synchronized (data) {
+      for (String key : table.keySet()) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
+        if (key.contains(locationName)) {
+          return key;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the first indexed key containing a location-channel name, whether or not it has been
+   * decoded.
+   *
+   * @param locationName the name, such as "00-BHZ" or "-BC0"
+   * @return the key, null if not found or there is no index
+   */
+  private String findIndexedKey(String locationName) {
+    if (index == null) {
+      return null;
+    }
+    for (String key : index.getKeys()) {
       if (key.contains(locationName)) {
-        return true;
+        return key;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Decodes every indexed channel whose key contains a location-channel name, unless already
+   * decoded, so lookups of the name find the same data as if everything had been decoded on
+   * loading.
+   *
+   * @param locationName the name, such as "00-BHZ"
+   */
+  private void decodeIndexedChannels(String locationName) {
+    if (index == null) {
+      return;
+    }
+    for (String key : index.getKeys()) {
+      if (key.contains(locationName)) {
+        decodeIndexedChannel(key);
+      }
+    }
+  }
+
+  /**
+   * Decodes an indexed channel into data and its quality and calibration tables. A channel is
+   * decoded once, threads requesting it meanwhile wait for the first.
+   *
+   * Only the lock of data is taken, not this object's, since callers may hold that while waiting
+   * for a decode started elsewhere.
+   *
+   * @param key the channel's key
+   */
+  private void decodeIndexedChannel(String key) {
+    CompletableFuture<Void> decode;
+    boolean started;
+    synchronized (decodes) {
+      decode = decodes.get(key);
+      started = (decode != null);
+      if (!started) {
+        decode = new CompletableFuture<>();
+        decodes.put(key, decode);
+      }
+    }
+    if (started) {
+      decode.join();
+      return;
+    }
+    try {
+      SeedSplitProcessor processor = index.decode(key);
+      synchronized (data) {
+        data.putAll(processor.getTable());
+        if (processor.getQualityTable() != null) {
+          if (qualityData == null) {
+            qualityData = new Hashtable<>();
+          }
+          qualityData.putAll(processor.getQualityTable());
+        }
+        if (processor.getCalTable() != null) {
+          if (randomCal == null) {
+            randomCal = new Hashtable<>();
+          }
+          randomCal.putAll(processor.getCalTable());
+        }
+      }
+      decode.complete(null);
+    } catch (RuntimeException e) {
+      decode.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Decodes the indexed data a digest of a channel array is computed from, including the
+   * horizontal components derived channels are rotated from. Done before valueDigestChanged takes
+   * this object's lock, so other threads aren't held up while channels are decoded.
+   *
+   * @param channelArray the channel array
+   */
+  private void decodeIndexedChannels(ChannelArray channelArray) {
+    if (index == null) {
+      return;
+    }
+    for (Channel channel : channelArray.getChannels()) {
+      String location = channel.getLocation();
+      String name = channel.getChannel();
+      if (name.contains("ND") || name.contains("ED")) {
+        String channelPrefix = name.replace("ND", "").replace("ED", "");
+        for (String component : new String[]{"1", "2", "N", "E"}) {
+          decodeIndexedChannels(location + "-" + channelPrefix + component);
+        }
+      } else {
+        decodeIndexedChannels(location + "-" + name);
       }
     }
-    return false;
   }
 
   /**
@@ -255,7 +554,7 @@ public class MetricData implements Serializable {
    */
   Double getMetricValue(LocalDate date, String metricName, Station station, Channel channel) {
     // Retrieve metric value from Database
-    if (metricReader.isConnected()) {
+    if (metricReader != null && metricReader.isConnected()) {
       return metricReader.getMetricValue(date, metricName, station, channel);
     } else {
       logger.warn("getMetricValue: Metric Reader is not connected");
@@ -272,14 +571,9 @@ public class MetricData implements Serializable {
    */
   private ArrayList<DataSet> getChannelData(String location, String name) {
     String locationName = location + "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) {
-      // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return data.get(key);
-      }
-    }
-    return null;
+    decodeIndexedChannels(locationName);
+    String key = findKey(data, locationName);
+    return (key == null) ? null : data.get(key);
   }
 
   /**
@@ -303,7 +597,7 @@ public class MetricData implements Serializable {
    * @return true, if either the calibration blockette exists or Calibration channels exist
    */
   boolean hasCalibrationData() {
-    if (randomCal != null) {
+    if (randomCal != null || (index != null && index.hasCalibration())) {
       return true;
     } else if (metadata.getNetwork()
         .equals("II")) { //This hardcoded station needs to be address (Ticket 9727)
@@ -338,13 +632,16 @@ public class MetricData implements Serializable {
     }
     // calibration day
     String locationName = location + "-" + name;
-    Set<String> keys = randomCal.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return randomCal.get(key);
-      }
+    decodeIndexedChannels(locationName);
+    Hashtable<String, ArrayList<Blockette320>> calTable;
+    synchronized (data) {
+      calTable = randomCal;
     }
-    return null;
+    if (calTable == null) {
+      return null; // Only II calibration channels, or the blockettes couldn't be decoded
+    }
+    String key = findKey(calTable, locationName);
+    return (key == null) ? null : calTable.get(key);
   }
 
   /**
@@ -366,13 +663,16 @@ public class MetricData implements Serializable {
    */
   private ArrayList<Integer> getChannelTimingQualityData(String location, String name) {
     String locationName = location + "-" + name;
-    Set<String> keys = qualityData.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return qualityData.get(key);
-      }
+    decodeIndexedChannels(locationName);
+    Hashtable<String, ArrayList<Integer>> qualityTable;
+    synchronized (data) {
+      qualityTable = qualityData;
     }
-    return null;
+    if (qualityTable == null) {
+      return null;
+    }
+    String key = findKey(qualityTable, locationName);
+    return (key == null) ? null : qualityTable.get(key);
   }
 
   /**
@@ -499,13 +799,8 @@ public class MetricData implements Serializable {
     TimeseriesUtils.demean(data);
     TimeseriesUtils.costaper(data, .01);
 
-    double[] freq = new double[nf];
-    for (int k = 0; k < nf; k++) {
-      freq[k] = (double) k * df;
-    }
-
     // Get the instrument response for requested ResponseUnits
-    Complex[] instrumentResponse = chanMeta.getResponse(freq, responseUnits);
+    Complex[] instrumentResponse = chanMeta.getResponse(nf, df, responseUnits);
 
     // fft2 returns just the (nf = nfft/2 + 1) positive frequencies
     Complex[] xfft = FFTUtils.singleSidedFFT(data);
@@ -685,6 +980,92 @@ public class MetricData implements Serializable {
 
   }
 
+  /**
+   * Get the tapered segment spectra of a channel's day, see {@link WelchPSD}. Spectra are computed
+   * on first request and cached for the day, so every power and cross power spectrum of the
+   * channel shares them.
+   *
+   * @param channel the channel
+   * @return the segment spectra of {@link #getDetrendedPaddedDayData(Channel)}, null if they are
+   * larger than {@link #SEGMENT_SPECTRA_BUDGET}. They are then never built, callers compute their
+   * spectra from the day data segment by segment.
+   * @throws RuntimeException if the channel has no data or too little to form segments
+   */
+  public SegmentSpectra getSegmentSpectra(Channel channel) throws RuntimeException {
+    if (!hasChannelData(channel)) {
+      throw new IllegalStateException("No data for channel " + channel);
+    }
+    // Same length as the day data
+    int dataSize = (int) (86400000000L / getChannelData(channel).get(0).getInterval());
+    SegmentSpectraCache cache;
+    synchronized (this) {
+      if (segmentSpectra == null) {
+        segmentSpectra = cacheUsage == null ? new SegmentSpectraCache(SEGMENT_SPECTRA_BUDGET)
+            : new SegmentSpectraCache(SEGMENT_SPECTRA_BUDGET, cacheUsage);
+      }
+      cache = segmentSpectra;
+    }
+    return cache.get(channel.toString(), dataSize, () -> {
+      double[] dayData = getDetrendedPaddedDayData(channel);
+      if (dayData == null) {
+        throw new IllegalStateException("No data for channel " + channel);
+      }
+      return dayData;
+    });
+  }
+
+  /**
+   * Get the CrossPower of two channels. CrossPowers are computed on first request and cached for
+   * the day, so metrics requesting the same pair share one computation.
+   *
+   * @param channelX the X channel
+   * @param channelY the Y channel
+   * @return the CrossPower
+   * @throws MetricPSDException if the CrossPower can't be computed
+   * @throws ChannelMetaException if the channel metadata is unusable
+   */
+  public CrossPower getCrossPower(Channel channelX, Channel channelY)
+      throws MetricPSDException, ChannelMetaException {
+    return getCrossPowerCache().get(new CrossPowerKey(channelX, channelY),
+        () -> new CrossPower(channelX, channelY, this));
+  }
+
+  /**
+   * Get the CrossPowers cached for the day, see {@link #getCrossPower(Channel, Channel)}.
+   *
+   * @return the cache
+   */
+  public synchronized CrossPowerCache getCrossPowerCache() {
+    if (crossPowers == null) {
+      crossPowers = cacheUsage == null ? new CrossPowerCache(CROSS_POWER_BUDGET)
+          : new CrossPowerCache(CROSS_POWER_BUDGET, cacheUsage);
+    }
+    return crossPowers;
+  }
+
+  /**
+   * Report the bytes held by the day's cached segment spectra and CrossPowers, so they can be
+   * counted with the data in a memory budget. Must be set before the caches are first used.
+   *
+   * @param cacheUsage accepts the change in bytes whenever the caches grow or shrink
+   */
+  public synchronized void setCacheUsage(LongConsumer cacheUsage) {
+    this.cacheUsage = cacheUsage;
+  }
+
+  /**
+   * Drop the day's cached segment spectra and CrossPowers once its metrics are done, reporting
+   * their bytes as released. The caches are refilled if used again.
+   */
+  public synchronized void clearCaches() {
+    if (segmentSpectra != null) {
+      segmentSpectra.clear();
+    }
+    if (crossPowers != null) {
+      crossPowers.clear();
+    }
+  }
+
   /**
    * Return a demeaned full day (86400 sec) array of data assembled from a channel's
    * DataSets<br>
@@ -895,11 +1276,12 @@ public class MetricData implements Serializable {
       String eastString = location + "-" + channelPrefix + "ED"; // e.g.,
       // "10-BHED"
 
-      Set<String> keys = data.keySet();
-      for (String key : keys) {
-        if (key.contains(lookupString)) { // "LH1" --> "LHND" and "LHED"
-          northKey = key.replaceAll(lookupString, northString);
-          eastKey = key.replaceAll(lookupString, eastString);
+      synchronized (data) {
+        for (String key : data.keySet()) {
+          if (key.contains(lookupString)) { // "LH1" --> "LHND" and "LHED"
+            northKey = key.replaceAll(lookupString, northString);
+            eastKey = key.replaceAll(lookupString, eastString);
+          }
         }
       }
 
@@ -1054,7 +1436,7 @@ public class MetricData implements Serializable {
    * @param forceUpdate set in config.xml. True forces a recompute if old and new digests match.
    * @return hashed digest in a ByteBuffer or null if computation isn't warranted.
    */
-  synchronized ByteBuffer valueDigestChanged(Channel channel, MetricValueIdentifier id,
+  ByteBuffer valueDigestChanged(Channel channel, MetricValueIdentifier id,
       boolean forceUpdate) {
     ChannelArray channelArray = new ChannelArray(channel.getLocation(), channel.getChannel());
     return valueDigestChanged(channelArray, id, forceUpdate);
@@ -1067,12 +1449,15 @@ public class MetricData implements Serializable {
    * If a rotated channel is not located in the metadata, this method will
    * attempt to rotate the data.
    *
+   * Data is decoded and stored digests are queried without holding this object's lock, only the
+   * digest itself is computed under it.
+   *
    * @param channelArray Array of 2 or 3 component channels for a single location.
    * @param id contains Network, Station, Location, Channel information for identification.
    * @param forceUpdate set in config.xml. True forces a recompute if old and new digests match.
    * @return hashed digest in a ByteBuffer or null if computation isn't warranted.
    */
-  synchronized ByteBuffer valueDigestChanged(ChannelArray channelArray, MetricValueIdentifier id,
+  ByteBuffer valueDigestChanged(ChannelArray channelArray, MetricValueIdentifier id,
       boolean forceUpdate) {
     String metricName = id.getMetricName();
     Station station = id.getStation();
@@ -1080,47 +1465,66 @@ public class MetricData implements Serializable {
     String strdate = date.format(DateTimeFormatter.ISO_ORDINAL_DATE);
     String channelId = MetricResult.createResultId(id.getChannel());
 
-
-		/*
-		 * We need at least metadata to compute a digest. If it doesn't exist,
-		 * then maybe this is a rotated channel (e.g., "00-LHND") and we need to
-		 * first try to make the metadata + data for it.
-		 */
-    if (!metadata.hasChannels(channelArray)) {
-      checkForRotatedChannels(channelArray);
+    /*
+     * Skip results excluded by the scan's filters. Only the primary channel, which the result is
+     * stored under, is filtered so pairs can compare against other locations.
+     */
+    if (channelFilter != null && !channelFilter.isUnrestricted()) {
+      Channel primary = channelArray.getChannels().get(0);
+      if (!channelFilter.acceptsChannel(primary)) {
+        logger.debug("valueDigestChanged: [{}, {}, {}] excluded by scan filter.", strdate,
+            metricName, primary);
+        return null;
+      }
     }
 
-		/*
-		 * Check again for metadata. If we still don't have it (e.g., we weren't
-		 * able to rotate) --> return null digest
-		 */
-    if (!metadata.hasChannels(channelArray)) {
-      logger.warn(
-          "valueDigestChanged (date=[{}]): We don't have metadata to compute the digest for this channelArray "
-              + " --> return null digest\n",
-          strdate);
-      return null;
-    }
+    decodeIndexedChannels(channelArray);
 
-		/*
-		 * At this point we have the metadata but we may still not have any data
-		 * for this channel(s). Check for data and if it doesn't exist, then
-		 * return a null digest, EXCEPT if this is the AvailabilityMetric that
-		 * is requesting the digest (in which case return a digest for the
-		 * metadata alone)
-		 */
+    ByteBuffer newDigest;
+    boolean hasData;
+    synchronized (this) {
+			/*
+			 * We need at least metadata to compute a digest. If it doesn't exist,
+			 * then maybe this is a rotated channel (e.g., "00-LHND") and we need to
+			 * first try to make the metadata + data for it.
+			 */
+      if (!metadata.hasChannels(channelArray)) {
+        checkForRotatedChannels(channelArray);
+      }
 
-    boolean availabilityMetric = false;
-    if (id.getMetricName().equals("AvailabilityMetric")) {
-      availabilityMetric = true;
-    }
+			/*
+			 * Check again for metadata. If we still don't have it (e.g., we weren't
+			 * able to rotate) --> return null digest
+			 */
+      if (!metadata.hasChannels(channelArray)) {
+        logger.warn(
+            "valueDigestChanged (date=[{}]): We don't have metadata to compute the digest for this channelArray "
+                + " --> return null digest\n",
+            strdate);
+        return null;
+      }
 
-		/* Return null to skip non availability metric. */
-    if (!hasChannelArrayData(channelArray) && !availabilityMetric) { // Return
-      return null;
-    }
+			/*
+			 * At this point we have the metadata but we may still not have any data
+			 * for this channel(s). Check for data and if it doesn't exist, then
+			 * return a null digest, EXCEPT if this is the AvailabilityMetric that
+			 * is requesting the digest (in which case return a digest for the
+			 * metadata alone)
+			 */
 
-    ByteBuffer newDigest = getHash(channelArray);
+      boolean availabilityMetric = false;
+      if (id.getMetricName().equals("AvailabilityMetric")) {
+        availabilityMetric = true;
+      }
+
+			/* Return null to skip non availability metric. */
+      hasData = hasChannelArrayData(channelArray);
+      if (!hasData && !availabilityMetric) { // Return
+        return null;
+      }
+
+      newDigest = getHash(channelArray);
+    }
     if (newDigest == null) {
       logger.warn("Digest of [{}, {}, {}, {}] = null", strdate, metricName, station, channelId);
     }
@@ -1134,9 +1538,7 @@ public class MetricData implements Serializable {
 			/*
 			 * Retrieve old Digest from Database and compare to new Digest
 			 */
-      ByteBuffer oldDigest = metricReader
-          .getMetricValueDigest(id.getDate(), id.getMetricName(), id.getStation(),
-              id.getChannel());
+      ByteBuffer oldDigest = getStoredDigest(id);
       if (oldDigest != null) {
         if (newDigest.compareTo(oldDigest) == 0) {
           if (forceUpdate) {
@@ -1150,7 +1552,7 @@ public class MetricData implements Serializable {
           } else {
             newDigest = null;
           }
-        } else if (!hasChannelArrayData(channelArray) && !forceUpdate) {
+        } else if (!hasData && !forceUpdate) {
 					/*
 					 * This should catch availability metrics without data, but
 					 * have precomputed values. If forceUpdate then drop out to
@@ -28,6 +28,25 @@ public class MetricResult {
 		this.digestMap = new Hashtable<>();
 	}
 
+	/**
+	 * Create empty results for a metric of a station-day, such as results
+	 * read back from storage.
+	 * 
+	 * @param metricName
+	 *            the name of the metric
+	 * @param date
+	 *            the day the results are for
+	 * @param station
+	 *            the station the results are for
+	 */
+	public MetricResult(String metricName, LocalDate date, Station station) {
+		this.metricName = metricName;
+		this.date = date;
+		this.station = station;
+		this.valueMap = new Hashtable<>();
+		this.digestMap = new Hashtable<>();
+	}
+
 	public String getMetricName() {
 		return metricName;
 	}
@@ -4,17 +4,18 @@ import asl.metadata.Station;
 import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.ArchivePath;
 import asl.seedscan.Global;
+import asl.seedscan.database.ScanFilter;
 import asl.seedscan.metrics.MetricData;
-import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SeedIndex;
+import asl.seedsplitter.SeedIndexStore;
 import asl.seedsplitter.SeedSplitter;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -22,27 +23,14 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import seed.Blockette320;
 
 public abstract class DataLoader {
 
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedscan.scanner.DataLoader.class);
 
-  // Class to assign seedplitter object and seedsplitter table
-  private static class SplitterObject {
-
-    private SeedSplitter splitter;
-    private Hashtable<String, ArrayList<DataSet>> table;
-
-    private SplitterObject(SeedSplitter splitter, Hashtable<String, ArrayList<DataSet>> table) {
-      this.splitter = splitter;
-      this.table = table;
-    }
-  }
-
-  // Class to run Future task (seedplitter.doInBackground())
-  private static class Task implements Callable<Hashtable<String, ArrayList<DataSet>>> {
+  // Class to run Future task (seedplitter.buildIndex())
+  private static class Task implements Callable<SeedIndex> {
 
     private SeedSplitter splitter;
 
@@ -50,26 +38,33 @@ public abstract class DataLoader {
       this.splitter = splitter;
     }
 
-    public Hashtable<String, ArrayList<DataSet>> call() throws Exception {
-      Hashtable<String, ArrayList<DataSet>> table = null;
-      table = splitter.doInBackground();
-      return table;
+    public SeedIndex call() throws Exception {
+      return splitter.buildIndex();
     }
   }
 
   /**
-   * SeedSplitter function: processing times greater than 3 min. will move to
-   * the next day
+   * SeedSplitter function: indexes the records of the files, channels are decoded later when
+   * first used. Unchanged files are not read again if an index directory is configured.
+   * Indexing times greater than the timeout will move to the next day. Decoding only reads the
+   * indexed records from the mapped files again and isn't bounded by the timeout.
    */
-  private static SplitterObject executeSplitter(File[] files, int timeout, LocalDate timestamp)
+  private static SeedIndex executeSplitter(File[] files, int timeout, LocalDate timestamp,
+      ScanFilter filter, Executor indexExecutor)
       throws TimeoutException, ExecutionException, InterruptedException {
-    Hashtable<String, ArrayList<DataSet>> table = null;
+    SeedIndex index = null;
     SeedSplitter splitter = new SeedSplitter(files);
+    // Don't index records the scan has no use for. Every location is kept for pair metrics.
+    splitter.setChannelPattern(filter.getDataChannelPattern());
+    splitter.setExecutor(indexExecutor);
+    if (Global.getIndexDir() != null) {
+      splitter.setIndexStore(new SeedIndexStore(new File(Global.getIndexDir())));
+    }
     ExecutorService executor = Executors.newSingleThreadExecutor();
-    Future<Hashtable<String, ArrayList<DataSet>>> future = executor.submit(new Task(splitter));
+    Future<SeedIndex> future = executor.submit(new Task(splitter));
 
     try {
-      table = future.get(timeout, TimeUnit.SECONDS);
+      index = future.get(timeout, TimeUnit.SECONDS);
     } catch (TimeoutException | ExecutionException | InterruptedException e) {
       future.cancel(true);
       throw e;
@@ -77,25 +72,18 @@ public abstract class DataLoader {
     executor.shutdown();
     executor.awaitTermination(300, TimeUnit.SECONDS);
 
-    return new SplitterObject(splitter, table);
+    return index;
   }
 
 
   /**
-   * Return a MetricData object for the station + timestamp
+   * Find the seed files of a station-day in the data directory.
    *
-   * @param date The date to load
-   * @param station Station to load
-   * @param manager ScanManager that contains metadata and database for the MetricData
-   * @return complete MetricData object for station day.
+   * @param date The date to find
+   * @param station Station to find
+   * @return the non-empty .seed files of the day or null if there are none
    */
-  public static MetricData getMetricData(LocalDate date, Station station, ScanManager manager) {
-
-    StationMeta stationMeta = manager.metaGenerator.getStationMeta(station, date.atStartOfDay());
-    if (stationMeta == null) {
-      return null;
-    }
-
+  public static File[] getSeedFiles(LocalDate date, Station station) {
     ArchivePath pathEngine = new ArchivePath(date.atStartOfDay(), station);
     String path = pathEngine.makePath(Global.getDataDir());
     File dir = new File(path);
@@ -134,23 +122,56 @@ public abstract class DataLoader {
     if (!dataExists) {
       return null;
     }
+    return files;
+  }
 
-    logger.info(dir.getPath() + " contains " + files.length + " files.");
+  /**
+   * Return a MetricData object for the station + timestamp
+   *
+   * @param date The date to load
+   * @param station Station to load
+   * @param manager ScanManager that contains metadata and database for the MetricData
+   * @return complete MetricData object for station day.
+   */
+  public static MetricData getMetricData(LocalDate date, Station station, ScanManager manager) {
+    return getMetricData(date, station, manager, ScanFilter.ALL);
+  }
 
-    // execute SeedSplitter process (180 sec timer will be issued)
-    try {
-      int timeout = 180;
-      SplitterObject splitObj = executeSplitter(files, timeout, date);
-      SeedSplitter splitter = splitObj.splitter;
-      Hashtable<String, ArrayList<DataSet>> table = splitObj.table;
+  /**
+   * Return a MetricData object for the station + timestamp containing only the channels a scan's
+   * filter needs.
+   *
+   * @param date The date to load
+   * @param station Station to load
+   * @param manager ScanManager that contains metadata and database for the MetricData
+   * @param filter Location and channel restrictions of the scan.
+   * @return MetricData object for station day restricted to the filter.
+   */
+  public static MetricData getMetricData(LocalDate date, Station station, ScanManager manager,
+      ScanFilter filter) {
+
+    StationMeta stationMeta = manager.metaGenerator.getStationMeta(station, date.atStartOfDay());
+    if (stationMeta == null) {
+      return null;
+    }
+
+    File[] files = getSeedFiles(date, station);
+    if (files == null) {
+      return null;
+    }
 
-      Hashtable<String, ArrayList<Integer>> qualityTable = null;
-      qualityTable = splitter.getQualityTable();
+    logger.info(files[0].getParent() + " contains " + files.length + " files.");
 
-      Hashtable<String, ArrayList<Blockette320>> calibrationTable = null;
-      calibrationTable = splitter.getCalTable();
+    // execute SeedSplitter indexing (180 sec timer will be issued)
+    try {
+      int timeout = 180;
+      // Files are indexed in parallel alongside the metrics of other days.
+      SeedIndex index = executeSplitter(files, timeout, date, filter,
+          manager.getMetricExecutor());
 
-      return new MetricData(manager.database, table, qualityTable, stationMeta, calibrationTable);
+      MetricData metricData = new MetricData(manager.metricReader, index, stationMeta);
+      metricData.setChannelFilter(filter);
+      return metricData;
     } catch (TimeoutException e) {
       logger.error("== TimeoutException: Skipping to next day for [{}]:[{}]\n", station,
           date.format(DateTimeFormatter.ISO_ORDINAL_DATE));
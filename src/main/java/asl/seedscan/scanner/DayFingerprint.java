@@ -0,0 +1,181 @@
+package asl.seedscan.scanner;
+
+import asl.metadata.ChannelKey;
+import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
+import asl.security.MemberDigest;
+import asl.seedscan.database.ScanFilter;
+import asl.seedscan.metrics.Metric;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fingerprint of what the metric results of a station-day are computed from, that can be taken
+ * without reading the day's data. It covers the channel metadata, the seed files of the day and
+ * of the following day, the metrics with their arguments and the scan's filter.
+ *
+ * Files are fingerprinted by name, size, modification time and a CRC32 of their first and last
+ * {@value #SAMPLE_SIZE} bytes. A file rewritten in place with the same size, modification time,
+ * head and tail goes unnoticed.
+ */
+public class DayFingerprint extends MemberDigest {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.DayFingerprint.class);
+
+  /**
+   * Bytes read from each end of a file for its checksum.
+   */
+  private static final int SAMPLE_SIZE = 64 * 1024;
+
+  /**
+   * The day's metadata.
+   */
+  private final StationMeta metadata;
+
+  /**
+   * Descriptions of the filter, metrics and files.
+   */
+  private final ArrayList<String> members = new ArrayList<>();
+
+  private DayFingerprint(StationMeta metadata) {
+    this.metadata = metadata;
+  }
+
+  /**
+   * Take the fingerprint of a station-day.
+   *
+   * @param date the day
+   * @param station the station
+   * @param metadata the day's metadata
+   * @param metrics the metrics that would be computed
+   * @param filter the scan's filter
+   * @return the fingerprint or null if the day's files couldn't be read
+   */
+  public static DayFingerprint create(LocalDate date, Station station, StationMeta metadata,
+      List<Metric> metrics, ScanFilter filter) {
+    DayFingerprint fingerprint = new DayFingerprint(metadata);
+    fingerprint.members.add(filter.toString());
+
+    List<String> metricMembers = new ArrayList<>();
+    for (Metric metric : metrics) {
+      metricMembers.add(describe(metric));
+    }
+    Collections.sort(metricMembers);
+    fingerprint.members.addAll(metricMembers);
+
+    try {
+      fingerprint.addFiles(date, DataLoader.getSeedFiles(date, station));
+      LocalDate nextDate = date.plusDays(1);
+      fingerprint.addFiles(nextDate, DataLoader.getSeedFiles(nextDate, station));
+    } catch (IOException e) {
+      logger.error("Unable to fingerprint the files of [{}]:[{}]", station, date, e);
+      return null;
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Describe a metric by its class, name, version and arguments.
+   */
+  private static String describe(Metric metric) {
+    StringBuilder description = new StringBuilder();
+    description.append(metric.getClass().getName()).append(' ').append(metric.getName())
+        .append(' ').append(metric.getVersion());
+    TreeSet<String> names = new TreeSet<>();
+    for (Enumeration<String> e = metric.names(); e.hasMoreElements(); ) {
+      names.add(e.nextElement());
+    }
+    for (String name : names) {
+      try {
+        description.append(' ').append(name).append('=').append(metric.get(name));
+      } catch (NoSuchFieldException e) {
+        // Only names the metric listed itself are asked for.
+      }
+    }
+    return description.toString();
+  }
+
+  /**
+   * Add the files of a day.
+   *
+   * @param date the day
+   * @param files the day's files, null if there are none
+   * @throws IOException if a file couldn't be read
+   */
+  private void addFiles(LocalDate date, File[] files) throws IOException {
+    members.add(date.toString());
+    if (files == null) {
+      return;
+    }
+    File[] sorted = files.clone();
+    Arrays.sort(sorted, Comparator.comparing(File::getName));
+    for (File file : sorted) {
+      members.add(file.getName() + " " + file.length() + " " + file.lastModified() + " "
+          + sampleChecksum(file));
+    }
+  }
+
+  /**
+   * Compute the CRC32 of the first and last {@link #SAMPLE_SIZE} bytes of a file.
+   *
+   * @param file the file
+   * @return the checksum
+   * @throws IOException if the file couldn't be read
+   */
+  private static long sampleChecksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[SAMPLE_SIZE];
+    try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+      long size = input.length();
+      int head = (int) Math.min(size, SAMPLE_SIZE);
+      input.readFully(buffer, 0, head);
+      crc.update(buffer, 0, head);
+      if (size > SAMPLE_SIZE) {
+        long tailStart = Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE);
+        int tail = (int) (size - tailStart);
+        input.seek(tailStart);
+        input.readFully(buffer, 0, tail);
+        crc.update(buffer, 0, tail);
+      }
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Adds the descriptions, the station's location and the digest of each channel's metadata.
+   */
+  @Override
+  protected void addDigestMembers() {
+    for (String member : members) {
+      byte[] bytes = member.getBytes(StandardCharsets.UTF_8);
+      addToDigest(bytes.length);
+      addToDigest(bytes, 0, bytes.length);
+    }
+    addToDigest(metadata.getLatitude());
+    addToDigest(metadata.getLongitude());
+    addToDigest(metadata.getElevation());
+    for (ChannelKey key : new TreeSet<>(metadata.getChannelHashTable().keySet())) {
+      byte[] name = key.toString().getBytes(StandardCharsets.UTF_8);
+      addToDigest(name.length);
+      addToDigest(name, 0, name.length);
+      byte[] channelDigest = metadata.getChannelHashTable().get(key).getDigestBytes().array();
+      addToDigest(channelDigest, 0, channelDigest.length);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package asl.seedscan.scanner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the estimated heap held by loaded station-day data and the caches computed from it, so
+ * scans can hold back on loading more data when the heap is filling up.
+ *
+ * The budget is advisory: reservations always succeed, callers check {@link #hasRoom()} before
+ * loading data they can do without.
+ */
+public class MemoryBudget {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.MemoryBudget.class);
+
+  /**
+   * Bytes of data that may be held before the budget is exceeded.
+   */
+  private final long limit;
+
+  /**
+   * Bytes of data currently held.
+   */
+  private long used = 0;
+
+  /**
+   * Create a budget.
+   *
+   * @param limit bytes of data that may be held
+   */
+  public MemoryBudget(long limit) {
+    this.limit = limit;
+    logger.info("Station data memory budget = [{} MB]", limit / (1024 * 1024));
+  }
+
+  /**
+   * Record that data has been loaded.
+   *
+   * @param bytes the estimated size of the data
+   */
+  public synchronized void reserve(long bytes) {
+    used += bytes;
+  }
+
+  /**
+   * Record that data has been dropped.
+   *
+   * @param bytes the estimated size of the data, as previously reserved
+   */
+  public synchronized void release(long bytes) {
+    used = Math.max(0, used - bytes);
+  }
+
+  /**
+   * Record that data held by a cache grew or shrank.
+   *
+   * @param bytes the change in bytes, negative if data was dropped
+   */
+  public synchronized void adjust(long bytes) {
+    used = Math.max(0, used + bytes);
+  }
+
+  /**
+   * Checks if more data can be loaded.
+   *
+   * @return true, if less data than the limit is held
+   */
+  public synchronized boolean hasRoom() {
+    return used < limit;
+  }
+
+  /**
+   * Gets the bytes of data currently held.
+   *
+   * @return the used bytes
+   */
+  public synchronized long getUsed() {
+    return used;
+  }
+
+  /**
+   * Gets the limit.
+   *
+   * @return the limit in bytes
+   */
+  public long getLimit() {
+    return limit;
+  }
+}
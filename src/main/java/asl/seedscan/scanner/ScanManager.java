@@ -1,13 +1,32 @@
 package asl.seedscan.scanner;
 
 import asl.metadata.MetaGenerator;
+import asl.metadata.Station;
+import asl.metadata.meta_new.ChannelMeta;
+import asl.seedscan.Global;
 import asl.seedscan.database.MetricDatabase;
+import asl.seedscan.database.MetricFileSink;
+import asl.seedscan.database.MetricResultWriter;
+import asl.seedscan.database.MetricSink;
+import asl.seedscan.database.ResultJournal;
+import asl.seedscan.database.ScanFilter;
+import asl.seedscan.metrics.MetricData;
 import asl.seedscan.scanner.scanworker.RetrieveScan;
 import asl.seedscan.scanner.scanworker.ScanWorker;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +38,44 @@ public class ScanManager {
   public final MetricDatabase database;
   public final MetaGenerator metaGenerator;
 
+  /**
+   * Estimated heap held by loaded station-day data. Loaded data is reserved by
+   * {@link #loadMetricData(LocalDate, Station, ScanFilter)} and must be released by its user.
+   */
+  public final MemoryBudget memoryBudget;
+
+  /**
+   * Stores metric results in the background, in {@link #database} unless results are written to
+   * files. Scans must wait for their
+   * results to be written before they are finished.
+   */
+  public final MetricResultWriter resultWriter;
+
+  /**
+   * Database metrics read stored digests and results of other metrics from, null when results are
+   * written to files. The database then doesn't hold the scan's results, so reading them back
+   * would compare against or compute from outdated values.
+   */
+  public final MetricDatabase metricReader;
+
+  /**
+   * Fraction of the maximum heap that loaded station-day data may occupy. The rest is left for
+   * metric computations.
+   */
+  private static final double DATA_HEAP_FRACTION = 0.5;
+
+  /**
+   * Metric results that may wait to be written before metrics are held back.
+   */
+  private static final int RESULT_QUEUE_CAPACITY = 4096;
+
+  private static final int RESULT_WRITER_THREADS = 2;
+
+  /**
+   * Milliseconds to wait for queued results to be written when halting.
+   */
+  private static final long RESULT_WRITER_TIMEOUT = 60000;
+
   private long queryWaitTime = 300000;
   private Boolean running = false;
   private Thread scanThread;
@@ -32,9 +89,31 @@ public class ScanManager {
 
   private final BlockingQueue<Runnable> workQueue;
 
+  /**
+   * Pool of threads that read and decode data ahead of the scanning threads. Kept separate so
+   * waiting on the archive doesn't occupy scanning threads.
+   */
+  private final ExecutorService dataLoaderPool;
+
+  /**
+   * Holds tasks added with a delay until they are due, see {@link #addTask(ScanWorker, long)}.
+   */
+  private final ScheduledExecutorService delayedTasks;
+
+  /**
+   * Pool the metrics of a station-day are run on. Metrics of every station-day being scanned
+   * share it, so a few station scans can still occupy every processor. The channels of loaded
+   * station-days are decoded on it as well.
+   */
+  private final ForkJoinPool metricPool;
+
   public ScanManager(MetricDatabase database, MetaGenerator metaGenerator) {
     this.database = database;
     this.metaGenerator = metaGenerator;
+    this.memoryBudget = new MemoryBudget(
+        (long) (Runtime.getRuntime().maxMemory() * DATA_HEAP_FRACTION));
+    // Evaluated responses are cached for the whole run, so their budget is held from the start.
+    memoryBudget.reserve(ChannelMeta.getResponseCacheBudget());
 
     int threadCount = Runtime.getRuntime().availableProcessors();
     logger.info("Number of Threads to Use = [{}]", threadCount);
@@ -43,6 +122,40 @@ public class ScanManager {
 
     this.threadPool = new ThreadPoolExecutor(threadCount, threadCount, 10, TimeUnit.MINUTES,
         workQueue);
+
+    AtomicInteger loaderCount = new AtomicInteger();
+    this.dataLoaderPool = Executors.newFixedThreadPool(threadCount, runnable -> {
+      Thread thread = new Thread(runnable, "DataLoader-" + loaderCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    this.metricPool = new ForkJoinPool(threadCount);
+
+    this.delayedTasks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "DelayedTasks");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    ResultJournal journal = null;
+    if (Global.getJournalDir() != null) {
+      try {
+        journal = new ResultJournal(Paths.get(Global.getJournalDir()));
+      } catch (IOException e) {
+        logger.error("Unable to open result journal, results won't be journaled:", e);
+      }
+    }
+    MetricSink sink = database;
+    if (Global.getResultsDir() != null) {
+      logger.info("Writing metric results to files in [{}]", Global.getResultsDir());
+      sink = new MetricFileSink(Paths.get(Global.getResultsDir()));
+      this.metricReader = null;
+    } else {
+      this.metricReader = database;
+    }
+    this.resultWriter = new MetricResultWriter(sink, RESULT_QUEUE_CAPACITY,
+        RESULT_WRITER_THREADS, journal);
   }
 
   /**
@@ -101,6 +214,48 @@ public class ScanManager {
     threadPool.execute(task);
   }
 
+  /**
+   * Add a task once a delay has passed. The task doesn't occupy a scan thread while it waits.
+   *
+   * @param task the task
+   * @param delay milliseconds to wait before adding it
+   */
+  public void addTask(ScanWorker task, long delay) {
+    delayedTasks.schedule(() -> addTask(task), delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Load a station-day in the background on the data loader pool. The loaded data is reserved
+   * in {@link #memoryBudget} before the future completes, spectra cached for it are reserved as
+   * they are computed.
+   *
+   * @param date The date to load
+   * @param station Station to load
+   * @param filter Location and channel restrictions of the scan
+   * @return future holding the loaded data, the result is null if there is no data for the day
+   */
+  public CompletableFuture<MetricData> loadMetricData(LocalDate date, Station station,
+      ScanFilter filter) {
+    return CompletableFuture.supplyAsync(() -> {
+      MetricData metricData = DataLoader.getMetricData(date, station, this, filter);
+      if (metricData != null) {
+        memoryBudget.reserve(metricData.getEstimatedSize());
+        metricData.setCacheUsage(memoryBudget::adjust);
+      }
+      return metricData;
+    }, dataLoaderPool);
+  }
+
+  /**
+   * Gets the executor metrics are run on. Compute bound work such as decoding waveforms is run
+   * on it too.
+   *
+   * @return the metric executor
+   */
+  public Executor getMetricExecutor() {
+    return metricPool;
+  }
+
   /**
    * Used for testing
    *
@@ -118,5 +273,9 @@ public class ScanManager {
       scanThread.interrupt();
     }
     threadPool.shutdownNow();
+    dataLoaderPool.shutdownNow();
+    metricPool.shutdownNow();
+    delayedTasks.shutdownNow();
+    resultWriter.close(RESULT_WRITER_TIMEOUT);
   }
 }
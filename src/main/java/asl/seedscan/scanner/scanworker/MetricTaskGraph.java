@@ -0,0 +1,117 @@
+package asl.seedscan.scanner.scanworker;
+
+import asl.seedscan.metrics.Metric;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the metrics of a station-day in parallel while respecting their declared dependencies.
+ *
+ * A metric is started once every metric it depends on ({@link Metric#getDependencies()}) has
+ * finished and its results are stored, since dependent metrics read those results back from the
+ * database. Metrics without dependencies between them run concurrently. Dependencies on metrics
+ * that are not part of the graph are ignored, as are dependency cycles.
+ */
+class MetricTaskGraph {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.scanworker.MetricTaskGraph.class);
+
+  /**
+   * Metrics in configuration order.
+   */
+  private final List<Metric> metrics;
+
+  /**
+   * Metrics by name. Lists since a metric can be configured more than once.
+   */
+  private final Map<String, List<Metric>> metricsByName = new HashMap<>();
+
+  /**
+   * Build the graph for a set of metrics.
+   *
+   * @param metrics the metrics, each already given its data
+   */
+  MetricTaskGraph(List<Metric> metrics) {
+    this.metrics = metrics;
+    for (Metric metric : metrics) {
+      metricsByName.computeIfAbsent(metric.getName(), name -> new ArrayList<>()).add(metric);
+    }
+  }
+
+  /**
+   * Run the task for every metric on the executor and wait for all of them to finish. Writes
+   * returned by the tasks are only waited on by dependent metrics.
+   *
+   * @param executor the executor to run the tasks on
+   * @param task the work to do for each metric, returning a future completing once its results are
+   * stored or null if there is nothing to wait for. Exceptions thrown and failed writes are logged
+   * and do not stop dependent metrics from running.
+   */
+  void execute(Executor executor, Function<Metric, CompletableFuture<?>> task) {
+    Map<Metric, CompletableFuture<Void>> scheduled = new IdentityHashMap<>();
+    List<CompletableFuture<?>> tasks = new ArrayList<>();
+    Set<Metric> visiting = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Metric metric : metrics) {
+      schedule(metric, executor, task, scheduled, tasks, visiting);
+    }
+    CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+  }
+
+  /**
+   * Schedule a metric after scheduling its dependencies.
+   *
+   * @return future completing when the metric's task is done and its results are stored
+   */
+  private CompletableFuture<Void> schedule(Metric metric, Executor executor,
+      Function<Metric, CompletableFuture<?>> task, Map<Metric, CompletableFuture<Void>> scheduled,
+      List<CompletableFuture<?>> tasks, Set<Metric> visiting) {
+    CompletableFuture<Void> future = scheduled.get(metric);
+    if (future != null) {
+      return future;
+    }
+    if (!visiting.add(metric)) {
+      logger.warn("Dependency cycle found at metric {}, ignoring dependency.", metric.getName());
+      return CompletableFuture.completedFuture(null);
+    }
+
+    List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+    for (String name : metric.getDependencies()) {
+      for (Metric dependency : metricsByName.getOrDefault(name, Collections.emptyList())) {
+        if (dependency != metric) {
+          dependencies.add(schedule(dependency, executor, task, scheduled, tasks, visiting));
+        }
+      }
+    }
+    visiting.remove(metric);
+
+    CompletableFuture<CompletableFuture<?>> computed = CompletableFuture
+        .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+        // A failed dependency still lets this metric run, as it would have sequentially.
+        .handle((result, throwable) -> null)
+        .thenApplyAsync(ignored -> {
+          try {
+            return task.apply(metric);
+          } catch (RuntimeException e) {
+            logger.error("Metric {} failed:", metric.getName(), e);
+            return null;
+          }
+        }, executor);
+    tasks.add(computed);
+    future = computed.thenCompose(written -> written == null
+        ? CompletableFuture.<Void>completedFuture(null)
+        : written.handle((result, throwable) -> (Void) null));
+    scheduled.put(metric, future);
+    return future;
+  }
+}
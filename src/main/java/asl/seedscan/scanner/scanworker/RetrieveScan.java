@@ -4,9 +4,15 @@ import asl.metadata.Station;
 import asl.seedscan.database.DatabaseScan;
 import asl.seedscan.scanner.ScanManager;
 import asl.util.Logging;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +27,18 @@ public class RetrieveScan extends ScanWorker {
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedscan.scanner.scanworker.RetrieveScan.class);
 
+  /**
+   * Maximum number of scans taken from the database at once.
+   */
+  static final int SCAN_BATCH_SIZE = 8;
+
+  /**
+   * How long a taken scan is held before the database considers it abandoned. Station scans renew
+   * it as each day finishes, so it only needs to cover a day waiting in the queue and being
+   * scanned.
+   */
+  static final Duration SCAN_LEASE = Duration.ofDays(2);
+
   public RetrieveScan(ScanManager manager) {
     super(manager);
   }
@@ -29,10 +47,20 @@ public class RetrieveScan extends ScanWorker {
   public void run() {
     //Runtime Exceptions thrown here are not caught anywhere else.
     try {
-      DatabaseScan newScan = manager.database.takeNextScan();
+      List<DatabaseScan> newScans = manager.database.takeNextScans(SCAN_BATCH_SIZE, SCAN_LEASE);
 
-      if (newScan != null) {
-        parseScan(newScan);
+      if (!newScans.isEmpty()) {
+        List<DatabaseScan> stationScans = new ArrayList<>();
+        for (DatabaseScan newScan : newScans) {
+          if (isStationScan(newScan)) {
+            stationScans.add(newScan);
+          } else {
+            parseScan(newScan);
+          }
+        }
+        for (List<DatabaseScan> group : coalesce(stationScans)) {
+          startStationScan(group);
+        }
         // Add new Retriever to queue since we know more probably exist.
         manager.addTask(new RetrieveScan(manager));
       } else {
@@ -50,8 +78,86 @@ public class RetrieveScan extends ScanWorker {
     }
   }
 
+  /**
+   * Checks if a scan covers a single station and few enough days to be run without splitting.
+   *
+   * @param scan the scan
+   * @return true, if the scan can be run as a {@link StationScan}
+   */
+  static boolean isStationScan(DatabaseScan scan) {
+    long dayLength = ChronoUnit.DAYS.between(scan.startDate, scan.endDate);
+    return scan.network != null && scan.station != null && scan.network.split(",").length == 1
+        && scan.station.split(",").length == 1 && dayLength <= 30;
+  }
+
+  /**
+   * Checks if a scan can be run in the same pass as another scan of the same station, so the
+   * days they share are only loaded once. Mirrors the conditions of fntakeoverlappingscans.
+   *
+   * @param first the scan the pass starts with
+   * @param other a scan starting no earlier than first
+   * @return true, if other has the same station, channel filters and deleteExisting and its
+   * days start within first and end within the 31 days of a station scan
+   */
+  static boolean canCoalesce(DatabaseScan first, DatabaseScan other) {
+    return first.network.equals(other.network)
+        && first.station.equals(other.station)
+        && Objects.equals(first.location, other.location)
+        && Objects.equals(first.channel, other.channel)
+        && first.deleteExisting == other.deleteExisting
+        && other.startDate.compareTo(first.startDate) >= 0
+        && other.startDate.compareTo(first.endDate) <= 0
+        && other.endDate.compareTo(first.startDate.plusDays(30)) <= 0;
+  }
+
+  /**
+   * Group station scans which can run in the same pass.
+   *
+   * @param stationScans scans passing {@link #isStationScan(DatabaseScan)}
+   * @return the groups, each starting with its earliest scan
+   */
+  static List<List<DatabaseScan>> coalesce(List<DatabaseScan> stationScans) {
+    List<DatabaseScan> remaining = new ArrayList<>(stationScans);
+    remaining.sort(Comparator.comparing((DatabaseScan scan) -> scan.startDate));
+    List<List<DatabaseScan>> groups = new ArrayList<>();
+    while (!remaining.isEmpty()) {
+      DatabaseScan first = remaining.remove(0);
+      List<DatabaseScan> group = new ArrayList<>();
+      group.add(first);
+      Iterator<DatabaseScan> iterator = remaining.iterator();
+      while (iterator.hasNext()) {
+        DatabaseScan other = iterator.next();
+        if (canCoalesce(first, other)) {
+          group.add(other);
+          iterator.remove();
+        }
+      }
+      groups.add(group);
+    }
+    return groups;
+  }
+
+  /**
+   * Start a pass over a station's days, taking any pending scans of the station that can share
+   * it. Operators often queue several scans of the same stations and days with different metrics,
+   * this way each day is only loaded once.
+   *
+   * @param group scans which can run in the same pass, starting with the earliest
+   */
+  private void startStationScan(List<DatabaseScan> group) {
+    DatabaseScan first = group.get(0);
+    List<DatabaseScan> overlapping = manager.database
+        .takeOverlappingScans(first, first.startDate.plusDays(30), SCAN_LEASE);
+    if (!overlapping.isEmpty() || group.size() > 1) {
+      group = new ArrayList<>(group);
+      group.addAll(overlapping);
+      logger.info("Coalesced {} scans of {}.{} starting {}", group.size(), first.network,
+          first.station, first.startDate);
+    }
+    manager.addTask(new StationScan(manager, group));
+  }
+
   void parseScan(DatabaseScan newScan) {
-    long dayLength = ChronoUnit.DAYS.between(newScan.startDate, newScan.endDate);
     String[] networks = null;
     if (newScan.network != null) {
       networks = newScan.network.split(",");
@@ -62,13 +168,13 @@ public class RetrieveScan extends ScanWorker {
     }
 
     // Check if it is a Station Scan.
-    if (networks != null && stations != null && stations.length == 1 && networks.length == 1
-        && dayLength <= 30) {
-      manager.addTask(new StationScan(manager, newScan));
+    if (isStationScan(newScan)) {
+      startStationScan(Collections.singletonList(newScan));
     }
     // Split the non Station Scan into Station Scans
     else {
       List<Station> possibleStations = manager.metaGenerator.getStationList(networks, stations);
+      List<DatabaseScan> childScans = new ArrayList<>();
       LocalDate start = newScan.startDate;
       LocalDate end;
       do {
@@ -77,20 +183,27 @@ public class RetrieveScan extends ScanWorker {
           end = newScan.endDate;
         }
         for (Station station : possibleStations) {
-          manager.database.insertChildScan(
+          childScans.add(new DatabaseScan(
+              null,
               newScan.scanID,
+              newScan.metricName,
               station.getNetwork(),
               station.getStation(),
               newScan.location,
               newScan.channel,
-              newScan.metricName,
               start, end,
               newScan.priority,
-              newScan.deleteExisting);
+              newScan.deleteExisting));
         }
 
         start = end.plusDays(1);
       } while (!end.equals(newScan.endDate));
+
+      // All children are inserted at once, the parent is only expanded if all of them are.
+      if (!manager.database.insertChildScans(newScan, childScans)) {
+        logger.error("Unable to split scan {}, it is retried once its lease expires.",
+            newScan.scanID);
+      }
     }
   }
 
@@ -0,0 +1,197 @@
+package asl.seedscan.scanner.scanworker;
+
+import asl.metadata.Station;
+import asl.seedscan.database.ScanFilter;
+import asl.seedscan.metrics.MetricData;
+import asl.seedscan.scanner.ScanManager;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the station-days a station scan has loaded or is loading ahead of the day being scanned.
+ *
+ * The pipeline is handed from each day's {@link StationScan} to the next, so days are loaded on
+ * the manager's data loader pool while earlier days are scanned. Only one StationScan uses a
+ * pipeline at a time.
+ *
+ * Loaded data is reserved in the manager's {@link asl.seedscan.scanner.MemoryBudget}, as are the
+ * spectra later cached for it. Data held by the pipeline is released when dropped, data taken out
+ * of it must be released by the taker with {@link #release(MetricData)}.
+ */
+class StationDataPipeline {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.scanner.scanworker.StationDataPipeline.class);
+
+  private final ScanManager manager;
+  private final Station station;
+  private final ScanFilter filter;
+
+  /**
+   * Last day that will be requested. This is the day after the scan's end date, since the final
+   * day still needs its following day.
+   */
+  private final LocalDate lastDate;
+
+  /**
+   * Loads that have been started, by date. A null result means there was no data.
+   */
+  private final Map<LocalDate, CompletableFuture<MetricData>> loads = new HashMap<>();
+
+  /**
+   * Create an empty pipeline.
+   *
+   * @param manager the manager owning the data loader pool
+   * @param station the station to load
+   * @param filter the scan's filter, restricting which channels are loaded
+   * @param endDate the last day scanned
+   */
+  StationDataPipeline(ScanManager manager, Station station, ScanFilter filter,
+      LocalDate endDate) {
+    this.manager = manager;
+    this.station = station;
+    this.filter = filter;
+    this.lastDate = endDate.plusDays(1);
+  }
+
+  /**
+   * Add data that was already loaded.
+   *
+   * @param date the day of the data
+   * @param metricData the loaded data
+   */
+  synchronized void put(LocalDate date, MetricData metricData) {
+    if (metricData != null) {
+      manager.memoryBudget.reserve(metricData.getEstimatedSize());
+      metricData.setCacheUsage(manager.memoryBudget::adjust);
+    }
+    loads.put(date, CompletableFuture.completedFuture(metricData));
+  }
+
+  /**
+   * Start loading any of the days starting at date that aren't already loaded or loading.
+   *
+   * @param date the first day to load
+   * @param days the number of days to load
+   */
+  synchronized void prefetch(LocalDate date, int days) {
+    for (int i = 0; i < days; i++) {
+      LocalDate day = date.plusDays(i);
+      if (day.isAfter(lastDate)) {
+        break;
+      }
+      if (!loads.containsKey(day)) {
+        loads.put(day, manager.loadMetricData(day, station, filter));
+      }
+    }
+  }
+
+  /**
+   * Start loading days that aren't needed yet, as long as the memory budget has room. Days that
+   * are skipped are loaded when requested.
+   *
+   * @param date the first day to load
+   * @param days the maximum number of days to load
+   */
+  synchronized void readAhead(LocalDate date, int days) {
+    for (int i = 0; i < days && manager.memoryBudget.hasRoom(); i++) {
+      prefetch(date.plusDays(i), 1);
+    }
+  }
+
+  /**
+   * Checks if a day is loaded or loading.
+   *
+   * @param date the day
+   * @return true, if the day's load has been started
+   */
+  synchronized boolean contains(LocalDate date) {
+    return loads.containsKey(date);
+  }
+
+  /**
+   * Get the data for a day, waiting for it to load if needed. The day is kept in the pipeline.
+   *
+   * @param date the day
+   * @return the data for the day or null if none was found
+   */
+  MetricData get(LocalDate date) {
+    CompletableFuture<MetricData> load;
+    synchronized (this) {
+      prefetch(date, 1);
+      load = loads.get(date);
+    }
+    if (load == null) {
+      // Outside of the scan range
+      return null;
+    }
+    try {
+      return load.get();
+    } catch (ExecutionException e) {
+      logger.error("== ExecutionException: Unable to load [{}]:[{}]", station,
+          date.format(DateTimeFormatter.ISO_ORDINAL_DATE), e.getCause());
+    } catch (InterruptedException e) {
+      logger.error("== InterruptedException: Unable to load [{}]:[{}]", station,
+          date.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+      Thread.currentThread().interrupt();
+    }
+    return null;
+  }
+
+  /**
+   * Get the data for a day and remove it from the pipeline. The caller must
+   * {@link #release(MetricData)} it once done.
+   *
+   * @param date the day
+   * @return the data for the day or null if none was found
+   */
+  MetricData take(LocalDate date) {
+    MetricData metricData = get(date);
+    synchronized (this) {
+      loads.remove(date);
+    }
+    return metricData;
+  }
+
+  /**
+   * Remove a day from the pipeline without loading it. If it is loaded or loading it is released
+   * once done.
+   *
+   * @param date the day
+   */
+  synchronized void drop(LocalDate date) {
+    CompletableFuture<MetricData> load = loads.remove(date);
+    if (load != null) {
+      load.thenAccept(this::release);
+    }
+  }
+
+  /**
+   * Release data previously taken from the pipeline, along with the spectra cached for it.
+   *
+   * @param metricData the data, may be null
+   */
+  void release(MetricData metricData) {
+    if (metricData != null) {
+      metricData.clearCaches();
+      manager.memoryBudget.release(metricData.getEstimatedSize());
+    }
+  }
+
+  /**
+   * Drop all held data. Outstanding loads are left to finish and are released when they do.
+   * Dropped days are loaded again if requested later.
+   */
+  synchronized void clear() {
+    for (CompletableFuture<MetricData> load : loads.values()) {
+      load.thenAccept(this::release);
+    }
+    loads.clear();
+  }
+}
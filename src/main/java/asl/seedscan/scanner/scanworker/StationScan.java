@@ -10,14 +10,23 @@ import asl.seedscan.metrics.Metric;
 import asl.seedscan.metrics.MetricData;
 import asl.seedscan.metrics.MetricResult;
 import asl.seedscan.metrics.MetricWrapper;
-import asl.seedscan.scanner.DataLoader;
+import asl.seedscan.scanner.DayFingerprint;
 import asl.seedscan.scanner.ScanManager;
-import asl.timeseries.CrossPower;
-import asl.timeseries.CrossPowerKey;
 import asl.util.Logging;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sac.SacTimeSeries;
@@ -31,10 +40,57 @@ public class StationScan extends ScanWorker {
       .getLogger(asl.seedscan.scanner.scanworker.StationScan.class);
 
   final Station station;
+  /**
+   * The scan the station, channel filter and settings are taken from, the first of
+   * {@link #databaseScans}.
+   */
   final DatabaseScan databaseScan;
 
+  /**
+   * Scans of the station run in this pass. They share the station and channel filters but may
+   * select different metrics and days.
+   */
+  final List<DatabaseScan> databaseScans;
+
   final LocalDate currentDate;
 
+  /**
+   * Last day of any of the scans.
+   */
+  final LocalDate endDate;
+
+  /**
+   * Maximum milliseconds to defer a day for room in the memory budget before loading it anyway.
+   */
+  private static final long ADMISSION_TIMEOUT = 600000;
+
+  /**
+   * Milliseconds a day waiting for room in the memory budget is deferred before checking again.
+   */
+  private static final long ADMISSION_RETRY_DELAY = 5000;
+
+  /**
+   * {@link System#nanoTime()} after which the day is loaded even if the memory budget is exceeded.
+   * Zero until the day is first deferred.
+   */
+  private final long admissionDeadline;
+
+  /**
+   * Metrics which pass the metric filter of each scan, in the order of {@link #databaseScans}.
+   */
+  final List<List<MetricWrapper>> metrics;
+
+  /**
+   * Scan ID messages about a metric of the day are recorded under.
+   */
+  private final Map<Metric, UUID> messageScanIDs = Collections
+      .synchronizedMap(new IdentityHashMap<>());
+
+  /**
+   * Days loaded or loading ahead of the current day. Shared with the following day's scan.
+   */
+  private final StationDataPipeline pipeline;
+
   /**
    * Data for the day being scanned.
    */
@@ -44,6 +100,22 @@ public class StationScan extends ScanWorker {
    */
   private MetricData nextMetricData;
 
+  /**
+   * Set when a metric of the day failed or its results couldn't be stored.
+   */
+  private final AtomicBoolean metricFailed = new AtomicBoolean();
+
+  /**
+   * Results of the day queued in the manager's result writer.
+   */
+  private final List<CompletableFuture<Boolean>> dayWrites = Collections
+      .synchronizedList(new ArrayList<>());
+
+  /**
+   * Completes once the results of this and every earlier day of the scan are written. Shared with
+   * the following day's scan.
+   */
+  private CompletableFuture<Void> scanWrites;
 
   /**
    * Start the first day of the scan
@@ -52,10 +124,32 @@ public class StationScan extends ScanWorker {
    * @param databaseScan The correct database for results.
    */
   StationScan(ScanManager manager, DatabaseScan databaseScan) {
+    this(manager, Collections.singletonList(databaseScan));
+  }
+
+  /**
+   * Start the first day of several scans of the same station run as one pass. Each day is loaded
+   * once and the metrics of every scan including the day are computed from it. Every scan is
+   * finished once the pass is done.
+   *
+   * @param manager The managing object
+   * @param databaseScans The scans, with the same station, channel filters and deleteExisting.
+   * The first one has the earliest start date.
+   */
+  StationScan(ScanManager manager, List<DatabaseScan> databaseScans) {
     super(manager);
+    this.databaseScan = databaseScans.get(0);
+    this.databaseScans = databaseScans;
     this.station = new Station(databaseScan.network, databaseScan.station);
-    this.databaseScan = databaseScan;
     this.currentDate = databaseScan.startDate;
+    this.endDate = lastEndDate(databaseScans);
+    this.metrics = new ArrayList<>();
+    for (DatabaseScan scan : databaseScans) {
+      metrics.add(selectMetrics(scan));
+    }
+    this.pipeline = new StationDataPipeline(manager, station, databaseScan.filter, endDate);
+    this.scanWrites = CompletableFuture.completedFuture(null);
+    this.admissionDeadline = 0;
   }
 
   /**
@@ -71,8 +165,121 @@ public class StationScan extends ScanWorker {
     super(manager);
     this.station = new Station(databaseScan.network, databaseScan.station);
     this.databaseScan = databaseScan;
+    this.databaseScans = Collections.singletonList(databaseScan);
+    this.currentDate = date;
+    this.endDate = databaseScan.endDate;
+    this.metrics = Collections.singletonList(selectMetrics(databaseScan));
+    this.pipeline = new StationDataPipeline(manager, station, databaseScan.filter, endDate);
+    if (metricData != null) {
+      pipeline.put(date, metricData);
+    }
+    this.scanWrites = CompletableFuture.completedFuture(null);
+    this.admissionDeadline = 0;
+  }
+
+  /**
+   * Scan a specified day continuing from a previous day's scan
+   *
+   * @param previous The scan of the previous day
+   * @param date The day to scan
+   */
+  private StationScan(StationScan previous, LocalDate date) {
+    this(previous, date, 0);
+  }
+
+  /**
+   * Scan a specified day continuing from a previous day's scan, or retry a deferred day.
+   *
+   * @param previous The scan of the previous day, or the deferred scan of the day
+   * @param date The day to scan
+   * @param admissionDeadline {@link System#nanoTime()} after which the day is loaded regardless
+   * of the memory budget, zero if it hasn't been deferred
+   */
+  private StationScan(StationScan previous, LocalDate date, long admissionDeadline) {
+    super(previous.manager);
+    this.station = previous.station;
+    this.databaseScan = previous.databaseScan;
+    this.databaseScans = previous.databaseScans;
     this.currentDate = date;
-    this.currentMetricData = metricData;
+    this.endDate = previous.endDate;
+    this.metrics = previous.metrics;
+    this.pipeline = previous.pipeline;
+    this.scanWrites = previous.scanWrites;
+    this.admissionDeadline = admissionDeadline;
+  }
+
+  /**
+   * Gets the last day of several scans.
+   */
+  private static LocalDate lastEndDate(List<DatabaseScan> databaseScans) {
+    LocalDate last = databaseScans.get(0).endDate;
+    for (DatabaseScan scan : databaseScans) {
+      if (scan.endDate.isAfter(last)) {
+        last = scan.endDate;
+      }
+    }
+    return last;
+  }
+
+  /**
+   * Create the metrics of every scan including the current day. A metric selected by several
+   * scans is computed once, scan messages about it go to the first of them. Metrics reading the
+   * results of other metrics are left out when results are written to files.
+   *
+   * @return new instances of the day's metrics
+   */
+  private List<Metric> createDayMetrics()
+      throws InstantiationException, IllegalAccessException, NoSuchFieldException {
+    List<Metric> dayMetrics = new ArrayList<>();
+    Set<MetricWrapper> added = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (int i = 0; i < databaseScans.size(); i++) {
+      DatabaseScan scan = databaseScans.get(i);
+      // Null if no metrics are configured.
+      if (metrics.get(i) == null
+          || currentDate.isBefore(scan.startDate) || currentDate.isAfter(scan.endDate)) {
+        continue;
+      }
+      for (MetricWrapper wrapper : metrics.get(i)) {
+        if (added.add(wrapper)) {
+          Metric metric = wrapper.getNewInstance();
+          if (manager.metricReader == null && !metric.getDependencies().isEmpty()) {
+            logger.warn("Skipping {}, it reads results from the database but results are "
+                + "written to files", metric.getName());
+            continue;
+          }
+          messageScanIDs.put(metric, scan.parentScanID);
+          dayMetrics.add(metric);
+        }
+      }
+    }
+    return dayMetrics;
+  }
+
+  /**
+   * Select the configured metrics which pass the metric filter of a scan.
+   *
+   * @param databaseScan the scan containing the filter
+   * @return the matching metric wrappers
+   */
+  static List<MetricWrapper> selectMetrics(DatabaseScan databaseScan) {
+    List<MetricWrapper> allMetrics = Global.getMetrics();
+    if (allMetrics == null || databaseScan.filter.isUnrestricted()) {
+      return allMetrics;
+    }
+    List<MetricWrapper> selected = new ArrayList<>();
+    for (MetricWrapper wrapper : allMetrics) {
+      try {
+        if (databaseScan.filter.acceptsMetric(wrapper.getNewInstance().getName())) {
+          selected.add(wrapper);
+        }
+      } catch (InstantiationException | IllegalAccessException | NoSuchFieldException e) {
+        // Keep it so the failure is reported when the scan runs.
+        selected.add(wrapper);
+      }
+    }
+    logger.debug("Scan {} selected {} of {} metrics", databaseScan.scanID, selected.size(),
+        allMetrics.size());
+    return selected;
   }
 
   @Override
@@ -97,88 +304,237 @@ public class StationScan extends ScanWorker {
         eventSynthetics = eventLoader.getDaySynthetics(currentDate, station);
       }
 
-      // May have been passed from previous day
-      if (currentMetricData == null) {
-        currentMetricData = DataLoader.getMetricData(currentDate, station, manager);
-      }
-      nextMetricData = DataLoader.getMetricData(nextDayTimestamp, station, manager);
+      List<Metric> dayMetrics = createDayMetrics();
 
-      if (currentMetricData != null) {
-        // This doesn't mean nextMetricData isn't null!
-        currentMetricData.setNextMetricData(nextMetricData);
+      // Skip the day without loading its data if nothing its metrics are computed from changed
+      // since it was last scanned completely.
+      ByteBuffer fingerprint = null;
+      if (stnMeta != null && maySkip(eventCMTs, dayMetrics)) {
+        DayFingerprint dayFingerprint = DayFingerprint
+            .create(currentDate, station, stnMeta, dayMetrics, databaseScan.filter);
+        if (dayFingerprint != null) {
+          fingerprint = dayFingerprint.getDigestBytes();
+        }
       }
 
-      // No Metadata found for this station-day --> skip day
-      if (stnMeta == null) {
-        logger.info("== Scanner: No Metadata found for Station:{}_{} for Day:{} --> Skipping",
+      if (fingerprint != null && fingerprint
+          .equals(manager.database.getStationDayFingerprint(currentDate, station))) {
+        logger.info("== Scanner: Nothing changed for Station:{}_{} Day:{} --> Skipping",
             station.getNetwork(), station.getStation(),
             currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+        pipeline.drop(currentDate);
+      } else if (deferAdmission()) {
+        // Retried later, without holding a scan thread meanwhile.
+        return;
       } else {
-        stnMeta.printStationInfo();
 
-        // Loop over Metrics to compute, for this station, for this day
-        Hashtable<CrossPowerKey, CrossPower> crossPowerMap = null;
+        // Start loading the following days while this day is scanned.
+        // Current and next day may already have been loaded by the previous day.
+        pipeline.prefetch(currentDate, 2);
+        pipeline.readAhead(currentDate.plusDays(2), Global.getReadAheadDays());
+        currentMetricData = pipeline.take(currentDate);
+        nextMetricData = pipeline.get(nextDayTimestamp);
 
-				/*
-         * TODO: The contents of this for loop should be extracted out into a task and run in the pool.
-				 * Skipping adding tests for it now.
-				 */
-        for (MetricWrapper wrapper : Global.getMetrics()) {
-          Metric metric = wrapper.getNewInstance();
-          metric.setBaseOutputDir(Global.getPlotsDir());
+        if (currentMetricData != null) {
+          // This doesn't mean nextMetricData isn't null!
+          currentMetricData.setNextMetricData(nextMetricData);
+        }
 
-          if (currentMetricData == null) {
-            metric.setData(new MetricData(manager.database, stnMeta));
-          } else {
-            metric.setData(currentMetricData);
+        // No Metadata found for this station-day --> skip day
+        if (stnMeta == null) {
+          logger.info("== Scanner: No Metadata found for Station:{}_{} for Day:{} --> Skipping",
+              station.getNetwork(), station.getStation(),
+              currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+        } else {
+          stnMeta.printStationInfo();
+
+          MetricData dayData = currentMetricData;
+          if (dayData == null) {
+            dayData = new MetricData(manager.metricReader, stnMeta);
+            dayData.setChannelFilter(databaseScan.filter);
           }
-          if (eventCMTs != null) {
-            metric.setEventTable(eventCMTs);
-            if (eventSynthetics != null) {
-              metric.setEventSynthetics(eventSynthetics);
+          dayData.loadStoredDigests(currentDate, station);
+
+          for (Metric metric : dayMetrics) {
+            metric.setBaseOutputDir(Global.getPlotsDir());
+            metric.setData(dayData);
+            if (eventCMTs != null) {
+              metric.setEventTable(eventCMTs);
+              if (eventSynthetics != null) {
+                metric.setEventSynthetics(eventSynthetics);
+              }
             }
           }
 
-          // Hand off the crossPowerMap from metric to metric,
-          // adding to it each time
-          if (crossPowerMap != null) {
-            metric.setCrossPowerMap(crossPowerMap);
-          }
-          metric.process();
-          // Save the current crossPowerMap for the next metric:
-          crossPowerMap = metric.getCrossPowerMap();
-
-          MetricResult results = metric.getMetricResult();
-          if (results != null) {
-            if (manager.database.isConnected()) {
-              manager.database.insertMetricData(results);
-            }
+          // Run metrics in parallel, waiting on the stored results of any metrics they depend on.
+          new MetricTaskGraph(dayMetrics).execute(manager.getMetricExecutor(), this::computeMetric);
+          logger.debug("Station={} Day={} {}", station,
+              currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE), dayData.getCrossPowerCache());
+
+          // Only store the fingerprint once every result of the day is stored.
+          CompletableFuture<Boolean> dayWritten = allWritten(dayWrites);
+          if (fingerprint != null) {
+            final ByteBuffer dayFingerprint = fingerprint;
+            dayWritten = dayWritten.thenApply(written -> {
+              if (written && !metricFailed.get()) {
+                manager.database.insertStationDayFingerprint(currentDate, station, dayFingerprint);
+              }
+              return written;
+            });
           }
-        } // end loop over metrics
+          scanWrites = CompletableFuture.allOf(scanWrites, dayWritten);
+        }
       }
       // Insert Next Day task
-      if (nextDayTimestamp.compareTo(databaseScan.endDate) <= 0) {
-        manager.addTask(
-            new StationScan(this.manager, this.databaseScan, nextDayTimestamp,
-                this.nextMetricData));
+      if (nextDayTimestamp.compareTo(endDate) <= 0) {
+        // Don't park loaded days in the queue when memory is short, they're reloaded when needed.
+        if (!manager.memoryBudget.hasRoom()) {
+          logger.info("Memory budget exceeded, dropping loaded data of Station={} after Day={}",
+              station, currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+          pipeline.clear();
+        }
+        renewLeases();
+        manager.addTask(new StationScan(this, nextDayTimestamp));
       } else {
         // We have finished this station
-        manager.database.finishScan(databaseScan.scanID);
+        pipeline.clear();
+        // Results are written in the background, don't finish the scan until they are stored.
+        scanWrites.join();
+        for (DatabaseScan scan : databaseScans) {
+          manager.database.finishScan(scan.scanID);
+        }
       }
 
     } catch (Exception e) {
       String message = Logging.prettyExceptionWithCause(e);
       logger.error(message);
+      pipeline.clear();
       manager.database
           .insertScanMessage(databaseScan.parentScanID, station.getNetwork(), station.getStation(),
               null, null, null, message);
     } finally {
       // Cleanup
+      pipeline.release(currentMetricData);
       currentMetricData = null;
       nextMetricData = null;
     }
   }
 
+  /**
+   * Defer the day while loaded data fills the heap. Running scans release their data when done,
+   * so the day is requeued after a delay rather than waiting on a scan thread, which would keep
+   * those scans from running. Days already loaded ahead are scanned right away since their data
+   * is already held, and a day isn't deferred indefinitely so a single large station can't stall
+   * the scan.
+   *
+   * @return true, if the day was requeued
+   */
+  private boolean deferAdmission() {
+    if (pipeline.contains(currentDate) || manager.memoryBudget.hasRoom()) {
+      return false;
+    }
+    long deadline = admissionDeadline;
+    if (deadline == 0) {
+      deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ADMISSION_TIMEOUT);
+    } else if (System.nanoTime() - deadline >= 0) {
+      logger.warn("Memory budget still exceeded after {} ms, loading Station={} Day={} anyway",
+          ADMISSION_TIMEOUT, station, currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+      return false;
+    }
+    logger.debug("Memory budget exceeded, deferring Station={} Day={}", station,
+        currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+    manager.addTask(new StationScan(this, currentDate, deadline), ADMISSION_RETRY_DELAY);
+    return true;
+  }
+
+  /**
+   * Renew the leases of the scans in this pass before the next day is queued, so long scans
+   * aren't taken again by another worker while they are still running.
+   */
+  private void renewLeases() {
+    List<UUID> scanIDs = new ArrayList<>();
+    for (DatabaseScan scan : databaseScans) {
+      scanIDs.add(scan.scanID);
+    }
+    manager.database.renewScanLeases(scanIDs, RetrieveScan.SCAN_LEASE);
+  }
+
+  /**
+   * Checks if the day may be skipped when its fingerprint is unchanged. Days with events aren't
+   * skipped since event files aren't part of the fingerprint. Neither are days whose results are
+   * written to files, which the fingerprints in the database don't account for.
+   *
+   * @param eventCMTs the day's events, null if there are none
+   * @param dayMetrics the metrics of the day
+   * @return true, if no metric forces an update and the scan doesn't replace existing results
+   */
+  boolean maySkip(Hashtable<String, EventCMT> eventCMTs, List<Metric> dayMetrics) {
+    if (manager.metricReader == null || !manager.database.isConnected()
+        || databaseScan.deleteExisting || eventCMTs != null) {
+      return false;
+    }
+    for (Metric metric : dayMetrics) {
+      if (metric.getForceUpdate()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Combine the writes of a day.
+   *
+   * @param writes the futures returned by the result writer
+   * @return future completing once every write is done, with true if all of them were stored
+   */
+  private static CompletableFuture<Boolean> allWritten(List<CompletableFuture<Boolean>> writes) {
+    CompletableFuture<Boolean> all = CompletableFuture.completedFuture(true);
+    synchronized (writes) {
+      for (CompletableFuture<Boolean> written : writes) {
+        all = all.thenCombine(written, Boolean::logicalAnd);
+      }
+    }
+    return all;
+  }
+
+  /**
+   * Compute a metric and queue its results to be stored. Failures are recorded as a scan message for the metric
+   * without stopping the other metrics of the day.
+   *
+   * @param metric the metric with its data already set
+   * @return future completing once the results are stored, null if nothing was queued
+   */
+  private CompletableFuture<Boolean> computeMetric(Metric metric) {
+    try {
+      metric.process();
+
+      MetricResult results = metric.getMetricResult();
+      if (results != null) {
+        // Result files don't need the database.
+        if (manager.metricReader == null || manager.database.isConnected()) {
+          CompletableFuture<Boolean> written = manager.resultWriter.write(results);
+          written.thenAccept(stored -> {
+            if (!stored) {
+              metricFailed.set(true);
+            }
+          });
+          dayWrites.add(written);
+          return written;
+        } else {
+          metricFailed.set(true);
+        }
+      }
+    } catch (Exception e) {
+      metricFailed.set(true);
+      String message = Logging.prettyExceptionWithCause(e);
+      logger.error(message);
+      manager.database
+          .insertScanMessage(messageScanIDs.get(metric), station.getNetwork(),
+              station.getStation(), null, null, metric.getName(), message);
+    }
+    return null;
+  }
+
   @Override
   public Integer getBasePriority() {
     //Average StationScan priority.
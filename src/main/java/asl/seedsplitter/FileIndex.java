@@ -0,0 +1,192 @@
+package asl.seedsplitter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The index of a single MiniSEED file along with the size, modification time
+ * and checksum of the file it was built from, so it can be stored by a
+ * {@link SeedIndexStore} and reused while the file is unchanged.
+ */
+class FileIndex {
+
+	/** Largest region of a file that is mapped at once. */
+	private static final int MAX_MAP_SIZE = 1 << 30;
+
+	private final String m_name;
+	private final long m_size;
+	private final long m_lastModified;
+	private final long m_checksum;
+	private final Map<String, IndexedRecords> m_channels;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param name
+	 *            The name of the file within its directory.
+	 * @param size
+	 *            The size of the file in bytes.
+	 * @param lastModified
+	 *            The modification time of the file in milliseconds.
+	 * @param checksum
+	 *            The CRC32 of the file's content.
+	 * @param channels
+	 *            The file's records by key, all in file 0.
+	 */
+	FileIndex(String name, long size, long lastModified, long checksum,
+			Map<String, IndexedRecords> channels) {
+		m_name = name;
+		m_size = size;
+		m_lastModified = lastModified;
+		m_checksum = checksum;
+		m_channels = channels;
+	}
+
+	String getName() {
+		return m_name;
+	}
+
+	long getSize() {
+		return m_size;
+	}
+
+	long getLastModified() {
+		return m_lastModified;
+	}
+
+	long getChecksum() {
+		return m_checksum;
+	}
+
+	Map<String, IndexedRecords> getChannels() {
+		return m_channels;
+	}
+
+	/**
+	 * Checks that the file still has the size and modification time it was
+	 * indexed with. This is cheap and is normally enough to reuse the index.
+	 * 
+	 * @param file
+	 *            The file on disk.
+	 * @return true, if neither changed
+	 */
+	boolean isCurrent(File file) {
+		return file.length() == m_size && file.lastModified() == m_lastModified;
+	}
+
+	/**
+	 * Copies the index for a file whose modification time changed but whose
+	 * content did not.
+	 * 
+	 * @param lastModified
+	 *            The new modification time.
+	 * @return The index with the new modification time.
+	 */
+	FileIndex withLastModified(long lastModified) {
+		return new FileIndex(m_name, m_size, lastModified, m_checksum,
+				m_channels);
+	}
+
+	/**
+	 * Computes the CRC32 of a file's content.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return The checksum.
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += MAX_MAP_SIZE) {
+				MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, position,
+						Math.min(MAX_MAP_SIZE, size - position));
+				crc.update(buffer);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Writes the index.
+	 * 
+	 * @param out
+	 *            The stream to write to.
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeUTF(m_name);
+		out.writeLong(m_size);
+		out.writeLong(m_lastModified);
+		out.writeLong(m_checksum);
+		out.writeInt(m_channels.size());
+		for (Map.Entry<String, IndexedRecords> entry : m_channels.entrySet()) {
+			IndexedRecords records = entry.getValue();
+			out.writeUTF(entry.getKey());
+			out.writeUTF(records.getNetwork());
+			out.writeUTF(records.getStation());
+			out.writeUTF(records.getLocation());
+			out.writeUTF(records.getChannel());
+			out.writeBoolean(records.hasCalibration());
+			out.writeInt(records.size());
+			for (int i = 0; i < records.size(); i++) {
+				out.writeLong(records.getOffset(i));
+				out.writeInt(records.getLength(i));
+				out.writeLong(records.getStartTime(i));
+				out.writeInt(records.getSamples(i));
+			}
+		}
+	}
+
+	/**
+	 * Reads an index written by {@link #write(DataOutputStream)}.
+	 * 
+	 * @param in
+	 *            The stream to read from.
+	 * @return The index.
+	 * @throws IOException
+	 *             if reading fails or the data is malformed
+	 */
+	static FileIndex read(DataInputStream in) throws IOException {
+		String name = in.readUTF();
+		long size = in.readLong();
+		long lastModified = in.readLong();
+		long checksum = in.readLong();
+		int channelCount = in.readInt();
+		if (channelCount < 0) {
+			throw new IOException("Invalid channel count " + channelCount);
+		}
+		Map<String, IndexedRecords> channels = new LinkedHashMap<>();
+		for (int c = 0; c < channelCount; c++) {
+			String key = in.readUTF();
+			IndexedRecords records = new IndexedRecords(in.readUTF(),
+					in.readUTF(), in.readUTF(), in.readUTF());
+			if (in.readBoolean()) {
+				records.setCalibration();
+			}
+			int count = in.readInt();
+			if (count < 0) {
+				throw new IOException("Invalid record count " + count);
+			}
+			for (int i = 0; i < count; i++) {
+				records.add(0, in.readLong(), in.readInt(), in.readLong(),
+						in.readInt());
+			}
+			channels.put(key, records);
+		}
+		return new FileIndex(name, size, lastModified, checksum, channels);
+	}
+}
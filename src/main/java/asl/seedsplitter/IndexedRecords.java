@@ -0,0 +1,141 @@
+package asl.seedsplitter;
+
+import java.util.Arrays;
+
+/**
+ * The records of one channel key in the order they were read, kept as their
+ * position in the files along with what their headers say about them. Built
+ * by a {@link SeedIndexer} and held by a {@link SeedIndex}.
+ */
+class IndexedRecords {
+	private final String m_network;
+	private final String m_station;
+	private final String m_location;
+	private final String m_channel;
+
+	private int[] m_files = new int[16];
+	private long[] m_offsets = new long[16];
+	private int[] m_lengths = new int[16];
+	private long[] m_startTimes = new long[16];
+	private int[] m_samples = new int[16];
+	private int m_count = 0;
+	private boolean m_calibration = false;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param network
+	 *            The network code.
+	 * @param station
+	 *            The station code.
+	 * @param location
+	 *            The location code, defaulted as it is stored.
+	 * @param channel
+	 *            The channel code.
+	 */
+	IndexedRecords(String network, String station, String location,
+			String channel) {
+		m_network = network;
+		m_station = station;
+		m_location = location;
+		m_channel = channel;
+	}
+
+	/**
+	 * Adds a record to the end of the channel.
+	 * 
+	 * @param file
+	 *            The index of the file in the index's file list.
+	 * @param offset
+	 *            The position of the record in the file.
+	 * @param length
+	 *            The length of the record in bytes.
+	 * @param startTime
+	 *            The start time of the record in microseconds since the epoch.
+	 * @param samples
+	 *            The number of samples in the record.
+	 */
+	void add(int file, long offset, int length, long startTime, int samples) {
+		if (m_count == m_offsets.length) {
+			int capacity = m_count * 2;
+			m_files = Arrays.copyOf(m_files, capacity);
+			m_offsets = Arrays.copyOf(m_offsets, capacity);
+			m_lengths = Arrays.copyOf(m_lengths, capacity);
+			m_startTimes = Arrays.copyOf(m_startTimes, capacity);
+			m_samples = Arrays.copyOf(m_samples, capacity);
+		}
+		m_files[m_count] = file;
+		m_offsets[m_count] = offset;
+		m_lengths[m_count] = length;
+		m_startTimes[m_count] = startTime;
+		m_samples[m_count] = samples;
+		m_count++;
+	}
+
+	/**
+	 * Appends all records of another collection of the same channel.
+	 * 
+	 * @param other
+	 *            The records read after these.
+	 * @param file
+	 *            The index of the file the other records are in.
+	 */
+	void addAll(IndexedRecords other, int file) {
+		for (int i = 0; i < other.m_count; i++) {
+			add(file, other.m_offsets[i], other.m_lengths[i],
+					other.m_startTimes[i], other.m_samples[i]);
+		}
+		m_calibration |= other.m_calibration;
+	}
+
+	/**
+	 * Notes that a record of the channel holds a calibration blockette.
+	 */
+	void setCalibration() {
+		m_calibration = true;
+	}
+
+	String getNetwork() {
+		return m_network;
+	}
+
+	String getStation() {
+		return m_station;
+	}
+
+	String getLocation() {
+		return m_location;
+	}
+
+	String getChannel() {
+		return m_channel;
+	}
+
+	boolean hasCalibration() {
+		return m_calibration;
+	}
+
+	int size() {
+		return m_count;
+	}
+
+	int getFile(int index) {
+		return m_files[index];
+	}
+
+	long getOffset(int index) {
+		return m_offsets[index];
+	}
+
+	int getLength(int index) {
+		return m_lengths[index];
+	}
+
+	long getStartTime(int index) {
+		return m_startTimes[index];
+	}
+
+	int getSamples(int index) {
+		return m_samples[index];
+	}
+}
@@ -0,0 +1,162 @@
+package asl.seedsplitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import seed.BlockSizeException;
+import seed.IllegalSeednameException;
+import seed.MiniSeed;
+
+/**
+ * Reads MiniSEED records from files by memory mapping them and hands each
+ * record to a {@link SeedSplitProcessor} where it lies in the mapped file.
+ * Records are not copied into blocks of their own or passed to another thread.
+ */
+public class MappedSeedReader {
+
+	/**
+	 * Receives the records found by a {@link MappedSeedReader}.
+	 */
+	public interface RecordHandler {
+		/**
+		 * Handle a single record. The buffer holds the mapped file, it may be
+		 * kept to read the record again later but must not be modified.
+		 * 
+		 * @param buffer
+		 *            The buffer containing the record.
+		 * @param offset
+		 *            The offset of the record within the buffer.
+		 * @param length
+		 *            The length of the record in bytes.
+		 */
+		void processRecord(ByteBuffer buffer, int offset, int length);
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(asl.seedsplitter.MappedSeedReader.class);
+
+	/** Records start on boundaries of this many bytes. */
+	private static final int BLOCK_SIZE = 256;
+	private static final int MAX_RECORD_SIZE = 16384;
+
+	/** Largest region of a file that is mapped at once. */
+	private static final int MAX_MAP_SIZE = 1 << 30;
+
+	private long m_skippedBytes = 0;
+	private long m_mapStart = 0;
+
+	/**
+	 * Reads every record of a file into a handler, such as a
+	 * {@link SeedSplitProcessor}.
+	 *
+	 * @param file
+	 *            The file from which to read MiniSEED records.
+	 * @param handler
+	 *            The handler which the records are handed to.
+	 * @throws IOException
+	 *             if the file can't be mapped, or the reading thread is
+	 *             interrupted.
+	 */
+	public void read(File file, RecordHandler handler)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			long mapStart = 0;
+			while (size - mapStart >= BLOCK_SIZE) {
+				int mapLength = (int) Math.min(size - mapStart, MAX_MAP_SIZE);
+				MappedByteBuffer buffer = channel.map(
+						FileChannel.MapMode.READ_ONLY, mapStart, mapLength);
+				m_mapStart = mapStart;
+				int consumed = readRecords(buffer, mapLength, handler);
+				if (mapStart + mapLength == size) {
+					if (size - mapStart - consumed >= BLOCK_SIZE) {
+						logger.debug("Incomplete record at the end of {}",
+								file.getName());
+					}
+					break;
+				}
+				// Remap starting with the record that didn't fit.
+				mapStart += consumed;
+			}
+		}
+	}
+
+	/**
+	 * Walks the record boundaries of a mapped region.
+	 *
+	 * @return the number of bytes consumed, the remainder holds at most a
+	 *         partial record.
+	 */
+	private int readRecords(ByteBuffer buffer, int length,
+			RecordHandler handler) throws InterruptedIOException {
+		int position = 0;
+		while (length - position >= BLOCK_SIZE) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException(
+						"Interrupted while reading records");
+			}
+			byte indicator = buffer.get(position + 6);
+			//Restrict the data to the allowed quality flags.
+			if (!MiniSeed.isAcceptedIndicator(indicator)) {
+				logger.error("Skipping bad indicator: 0x{}",
+						Integer.toHexString(indicator & 0xFF));
+				m_skippedBytes += BLOCK_SIZE;
+				position += BLOCK_SIZE;
+				continue;
+			}
+			int recordLength;
+			try {
+				recordLength = MiniSeed.crackBlockSize(buffer, position);
+			} catch (IllegalSeednameException | BlockSizeException e) {
+				logger.debug("Invalid Format, Skipping Chunk.");
+				logger.error(e.getMessage());
+				m_skippedBytes += BLOCK_SIZE;
+				position += BLOCK_SIZE;
+				continue;
+			}
+			if (recordLength < BLOCK_SIZE || recordLength > MAX_RECORD_SIZE) {
+				logger.error("Unsupported record length {}, Skipping Chunk.",
+						recordLength);
+				m_skippedBytes += BLOCK_SIZE;
+				position += BLOCK_SIZE;
+				continue;
+			}
+			if (length - position < recordLength) {
+				break;
+			}
+			handler.processRecord(buffer, position, recordLength);
+			position += recordLength;
+		}
+		return position;
+	}
+
+	/**
+	 * Gets the position in the file of the buffer records are currently
+	 * handed out from, so a handler can turn a record's offset into its
+	 * position in the file.
+	 *
+	 * @return the file position of offset 0 of the current buffer
+	 */
+	public long getMapStart() {
+		return m_mapStart;
+	}
+
+	/**
+	 * Gets the number of bytes skipped because they did not hold a readable
+	 * record.
+	 *
+	 * @return the skipped bytes
+	 */
+	public long getSkippedBytes() {
+		return m_skippedBytes;
+	}
+}
@@ -0,0 +1,169 @@
+package asl.seedsplitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the records in a set of MiniSEED files by the key their data
+ * is stored under, such as "IU_ANMO 00-BHZ (20.0 Hz)". It is built by
+ * {@link SeedSplitter#buildIndex()} from the record headers alone, so
+ * channels can be decoded on their own when first needed with
+ * {@link #decode(String)}.
+ * 
+ * An index is not changed once built and may be used from several threads.
+ */
+public class SeedIndex {
+	private static final Logger logger = LoggerFactory
+			.getLogger(asl.seedsplitter.SeedIndex.class);
+
+	/** Largest region of a file that is mapped at once. */
+	private static final int MAX_MAP_SIZE = 1 << 30;
+
+	private final File[] m_files;
+	private final Map<String, IndexedRecords> m_channels;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param files
+	 *            The indexed files.
+	 * @param channels
+	 *            The records by key, referring to files by their index in
+	 *            files.
+	 */
+	SeedIndex(File[] files, Map<String, IndexedRecords> channels) {
+		m_files = files;
+		m_channels = channels;
+	}
+
+	/**
+	 * Gets the keys of the indexed channels.
+	 * 
+	 * @return The keys, in the order they were found.
+	 */
+	public Set<String> getKeys() {
+		return Collections.unmodifiableSet(m_channels.keySet());
+	}
+
+	/**
+	 * Gets the number of samples the records of a channel hold according to
+	 * their headers. Overlapping records are counted in full.
+	 * 
+	 * @param key
+	 *            The channel's key.
+	 * @return The number of samples, 0 if the channel isn't indexed.
+	 */
+	public long getSampleCount(String key) {
+		IndexedRecords records = m_channels.get(key);
+		long count = 0;
+		if (records != null) {
+			for (int i = 0; i < records.size(); i++) {
+				count += records.getSamples(i);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Checks whether any record of any channel holds a calibration blockette
+	 * (320).
+	 * 
+	 * @return true, if calibration blockettes were found
+	 */
+	public boolean hasCalibration() {
+		for (IndexedRecords records : m_channels.values()) {
+			if (records.hasCalibration()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes the records of one channel. The records are read from the
+	 * files again, which must not have changed since they were indexed.
+	 * Files which can no longer be read are logged and skipped.
+	 * 
+	 * @param key
+	 *            The channel's key.
+	 * @return A finished processor holding the channel's data, quality and
+	 *         calibration tables. Its tables are empty if the key isn't
+	 *         indexed.
+	 */
+	public SeedSplitProcessor decode(String key) {
+		SeedSplitProcessor processor = new SeedSplitProcessor();
+		IndexedRecords records = m_channels.get(key);
+		if (records != null) {
+			int start = 0;
+			while (start < records.size()) {
+				int end = start + 1;
+				while (end < records.size()
+						&& records.getFile(end) == records.getFile(start)) {
+					end++;
+				}
+				File file = m_files[records.getFile(start)];
+				try {
+					read(file, records, start, end, processor);
+				} catch (IOException e) {
+					String message = "IOException: File '" + file.getName()
+							+ "' could not be read\n";
+					logger.error(message, e);
+				}
+				start = end;
+			}
+		}
+		processor.finish();
+		return processor;
+	}
+
+	/**
+	 * Hands a run of records from the same file to the processor.
+	 */
+	private void read(File file, IndexedRecords records, int start, int end,
+			SeedSplitProcessor processor) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			long first = records.getOffset(start);
+			long last = first;
+			for (int i = start; i < end; i++) {
+				last = Math.max(last, records.getOffset(i) + records.getLength(i));
+			}
+			if (last - first <= MAX_MAP_SIZE && last <= channel.size()) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						first, last - first);
+				for (int i = start; i < end; i++) {
+					processor.processRecord(buffer,
+							(int) (records.getOffset(i) - first),
+							records.getLength(i));
+				}
+				return;
+			}
+			// Records spread too widely to map at once, or the file shrank.
+			ByteBuffer buffer = ByteBuffer.allocate(0);
+			for (int i = start; i < end; i++) {
+				int length = records.getLength(i);
+				if (buffer.capacity() < length) {
+					buffer = ByteBuffer.allocate(length);
+				}
+				buffer.clear().limit(length);
+				long position = records.getOffset(i);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, position + buffer.position()) < 0) {
+						throw new IOException("Record at " + position
+								+ " is past the end of the file");
+					}
+				}
+				processor.processRecord(buffer, 0, length);
+			}
+		}
+	}
+}
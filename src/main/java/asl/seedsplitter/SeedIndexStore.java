@@ -0,0 +1,159 @@
+package asl.seedsplitter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the indexes of data directories in a cache directory, one binary file
+ * per data directory named by a hash of the directory's path. Each holds the
+ * index of every MiniSEED file in the data directory along with the file's
+ * size, modification time and checksum, so a {@link SeedSplitter} only has to
+ * read the headers of files that changed since they were last indexed.
+ * 
+ * A store may be shared between threads. Indexes are replaced atomically, so
+ * a concurrent reader sees either the old or the new index.
+ */
+public class SeedIndexStore {
+	private static final Logger logger = LoggerFactory
+			.getLogger(asl.seedsplitter.SeedIndexStore.class);
+
+	/** "SIDX" */
+	private static final int MAGIC = 0x53494458;
+	private static final int VERSION = 1;
+
+	private final File m_directory;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param directory
+	 *            The cache directory, created when first written to.
+	 */
+	public SeedIndexStore(File directory) {
+		m_directory = directory;
+	}
+
+	/**
+	 * Loads the stored indexes of a data directory's files.
+	 * 
+	 * @param dataDir
+	 *            The data directory.
+	 * @return The file indexes by file name, empty if there are none or they
+	 *         can't be read.
+	 */
+	Map<String, FileIndex> load(File dataDir) {
+		Map<String, FileIndex> files = new HashMap<>();
+		File indexFile = getIndexFile(dataDir);
+		if (!indexFile.exists()) {
+			return files;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				logger.warn("Ignoring index [{}] of unknown format", indexFile);
+				return files;
+			}
+			if (!in.readUTF().equals(dataDir.getAbsolutePath())) {
+				// Two paths with the same hash, the index is rebuilt
+				return files;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				FileIndex file = FileIndex.read(in);
+				files.put(file.getName(), file);
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to read index [{}], it will be rebuilt:",
+					indexFile, e);
+			files.clear();
+		}
+		return files;
+	}
+
+	/**
+	 * Stores the indexes of a data directory's files, replacing any stored
+	 * before. Failures are logged, the index is then rebuilt next time.
+	 * 
+	 * @param dataDir
+	 *            The data directory.
+	 * @param files
+	 *            The indexes of the directory's files.
+	 */
+	void save(File dataDir, Collection<FileIndex> files) {
+		File indexFile = getIndexFile(dataDir);
+		File temp = null;
+		try {
+			if (!m_directory.isDirectory() && !m_directory.mkdirs()
+					&& !m_directory.isDirectory()) {
+				throw new IOException("Unable to create " + m_directory);
+			}
+			temp = File.createTempFile(indexFile.getName(), ".tmp", m_directory);
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(dataDir.getAbsolutePath());
+				out.writeInt(files.size());
+				for (FileIndex file : files) {
+					file.write(out);
+				}
+			}
+			try {
+				Files.move(temp.toPath(), indexFile.toPath(),
+						StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), indexFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+		} catch (IOException e) {
+			logger.error("Unable to store index [{}]:", indexFile, e);
+		} finally {
+			if (temp != null && !temp.delete()) {
+				logger.warn("Unable to remove [{}]", temp);
+			}
+		}
+	}
+
+	/**
+	 * Gets the file a data directory's index is kept in.
+	 * 
+	 * @param dataDir
+	 *            The data directory.
+	 * @return The index file in the cache directory.
+	 */
+	File getIndexFile(File dataDir) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] hash = digest.digest(dataDir.getAbsolutePath().getBytes(
+					StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder(hash.length * 2 + 4);
+			for (byte b : hash) {
+				name.append(String.format("%02x", b));
+			}
+			return new File(m_directory, name.append(".idx").toString());
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support MD5
+			throw new RuntimeException(e);
+		}
+	}
+}
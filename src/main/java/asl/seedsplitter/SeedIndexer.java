@@ -0,0 +1,79 @@
+package asl.seedsplitter;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import seed.IllegalSeednameException;
+import seed.MiniSeedView;
+
+/**
+ * Indexes the records of one file by the key their data is stored under,
+ * reading only the record headers. Records are indexed as being in file 0.
+ */
+class SeedIndexer implements MappedSeedReader.RecordHandler {
+	private static final Logger logger = LoggerFactory
+			.getLogger(asl.seedsplitter.SeedIndexer.class);
+
+	private final MappedSeedReader m_reader;
+
+	/** Resolves the keys. Never handed any records. */
+	private final SeedSplitProcessor m_keys;
+	private final MiniSeedView m_view = new MiniSeedView();
+	private final Map<String, IndexedRecords> m_channels = new LinkedHashMap<>();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param reader
+	 *            The reader the records are read with.
+	 * @param keys
+	 *            A processor used to find the keys.
+	 */
+	SeedIndexer(MappedSeedReader reader, SeedSplitProcessor keys) {
+		m_reader = reader;
+		m_keys = keys;
+	}
+
+	@Override
+	public void processRecord(ByteBuffer buffer, int offset, int length) {
+		try {
+			m_view.reset(buffer, offset, length);
+		} catch (IllegalSeednameException e) {
+			logger.error("IllegalSeednameException:", e.getMessage());
+			return;
+		}
+		if (m_view.isHeartBeat()) {
+			return;
+		}
+		String key = m_keys.getKey(m_view);
+		if (key == null) {
+			return;
+		}
+		IndexedRecords records = m_channels.get(key);
+		if (records == null) {
+			records = new IndexedRecords(m_view.getNetwork(),
+					m_view.getStation(),
+					SeedSplitProcessor.defaultLocation(m_view.getLocation()),
+					m_view.getChannel());
+			m_channels.put(key, records);
+		}
+		records.add(0, m_reader.getMapStart() + offset, length,
+				m_view.getStartTime(), m_view.getNsamp());
+		if (m_view.hasBlockette320()) {
+			records.setCalibration();
+		}
+	}
+
+	/**
+	 * Gets the indexed records.
+	 * 
+	 * @return The records by key, in the order the keys were first found.
+	 */
+	Map<String, IndexedRecords> getChannels() {
+		return m_channels;
+	}
+}
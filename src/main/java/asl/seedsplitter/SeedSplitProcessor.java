@@ -1,38 +1,35 @@
 package asl.seedsplitter;
 
-import asl.util.Time;
 import edu.iris.dmc.seedcodec.SteimException;
-import java.time.LocalDateTime;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.TreeSet;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import seed.BlockSizeException;
 import seed.Blockette320;
 import seed.IllegalSeednameException;
-import seed.MiniSeed;
+import seed.MiniSeedView;
 
 /**
  * @author Joel D. Edwards
  * 
- *         The SeedSplitProcessor receives MiniSEED records via a Queue, and
- *         splits them up by channel into trees. All of the channel trees are
+ *         The SeedSplitProcessor receives MiniSEED records through
+ *         {@link #processRecord(ByteBuffer, int, int)} and splits them up by
+ *         channel into trees. All of the channel trees are
  *         stored in the hash table. Each tree is an ordered group of DataSet
  *         objects, each containing a contiguous block of data outside of the
  *         time range of any other DataSet in the same tree.
  */
 @SuppressWarnings("cast")
-public class SeedSplitProcessor implements Runnable {
+public class SeedSplitProcessor implements MappedSeedReader.RecordHandler {
 	private static final Logger logger = LoggerFactory
 			.getLogger(asl.seedsplitter.SeedSplitProcessor.class);
 
-	private LinkedBlockingQueue<ByteBlock> m_queue;
-	private boolean m_running;
 	private Hashtable<String, TreeSet<DataSet>> m_trees = null;
 	private Hashtable<String, ArrayList<DataSet>> m_table = null;
 
@@ -46,30 +43,13 @@ public class SeedSplitProcessor implements Runnable {
 	private Pattern m_patternChannel = null;
 
 	/**
-	 * Constructor.
-	 * 
-	 * @param queue
-	 *            The queue from which MiniSEED records are received.
-	 */
-	public SeedSplitProcessor(LinkedBlockingQueue<ByteBlock> queue) {
-		_construct(queue, new Hashtable<>());
-	}
-
-	/**
-	 * Hidden initializer called by every constructor.
-	 * 
-	 * @param queue
-	 *            The queue from which MiniSEED records are received.
-	 * @param table
-	 *            An initial hash table to which new data should be added.
+	 * Constructor for a processor which is handed records with
+	 * {@link #processRecord(ByteBuffer, int, int)} and completed with
+	 * {@link #finish()}.
 	 */
-	private void _construct(LinkedBlockingQueue<ByteBlock> queue,
-			Hashtable<String, ArrayList<DataSet>> table) {
-		m_queue = queue;
-		m_running = false;
-		m_table = table;
+	public SeedSplitProcessor() {
+		m_table = new Hashtable<>();
 		m_trees = new Hashtable<>();
-
 	}
 
 	/**
@@ -132,331 +112,413 @@ public class SeedSplitProcessor implements Runnable {
 	private volatile int lastSequenceNumber = 0;
 
 	/**
-	 * Pulls {@link ByteBlock}s from the queue and converts the contained SEED
-	 * records into one or more {@link DataSet} object.
+	 * State shared by every record of a channel and sample rate, under the
+	 * key the channel's data is stored with.
+	 */
+	private static class Track {
+		private final String key;
+		private final String network;
+		private final String station;
+		private final String location;
+		private final String channel;
+		private final double sampleRate;
+		private final long interval;
+
+		/** The DataSet currently being extended. */
+		private DataSet temp = null;
+		private TreeSet<DataSet> tree = null;
+		private ArrayList<Integer> quality = null;
+		private ArrayList<Blockette320> calibration = null;
+		private int records = 0;
+
+		private Track(String key, String network, String station,
+				String location, String channel, double sampleRate,
+				long interval) {
+			this.key = key;
+			this.network = network;
+			this.station = station;
+			this.location = location;
+			this.channel = channel;
+			this.sampleRate = sampleRate;
+			this.interval = interval;
+		}
+	}
+
+	/**
+	 * The outcome of reading a record's raw name and rate fields, so the
+	 * filters, key and sample interval are worked out once per channel rather
+	 * than once per record.
+	 */
+	private static class RawChannel {
+		private final long stationKey;
+		private final long channelKey;
+		private final int rate;
+
+		/** null if the channel is filtered out or has an illegal rate. */
+		private Track track = null;
+		private boolean illegalRate = false;
+		private double sampleRate = 0.0;
+		private RawChannel next = null;
+
+		private RawChannel(long stationKey, long channelKey, int rate) {
+			this.stationKey = stationKey;
+			this.channelKey = channelKey;
+			this.rate = rate;
+		}
+	}
+
+	/** Hash buckets of RawChannels, always a power of two long. */
+	private RawChannel[] m_rawChannels = new RawChannel[64];
+	private int m_rawChannelCount = 0;
+	private RawChannel m_lastRawChannel = null;
+
+	/** Tracks by the key their data is stored under. */
+	private LinkedHashMap<String, Track> m_tracks = new LinkedHashMap<>();
+
+	private final MiniSeedView m_view = new MiniSeedView();
+	private int m_kept = 0;
+	private int m_discarded = 0;
+
+	/**
+	 * Converts a single MiniSEED record into samples of the channel's current
+	 * {@link DataSet}. The record is read from the buffer in place and is not
+	 * referenced after this returns, so the buffer may be reused.
+	 * 
+	 * @param buffer
+	 *            The buffer containing the record.
+	 * @param offset
+	 *            The offset of the record within the buffer.
+	 * @param length
+	 *            The length of the record in bytes.
 	 */
 	@Override
-	public void run() {
-
-		ByteBlock block = null;
-		MiniSeed record = null;
-		DataSet tempData = null;
-
-		String network = null;
-		String station = null;
-		String location = null;
-		String channel = null;
-		double sampleRate = 0.0;
-		long interval = 0;
-
-		long startTime = 0;
-
-		byte[] recordBytes = null;
-		int[] samples = null;
-
-		String seedstring = null;
-		// total number of bytes that have been received from the queue
-		long byteTotal = 0;
-		SeedSplitProgress progress = null;
-		String key = null;
-		TreeSet<DataSet> tree = null;
-		Hashtable<String, DataSet> temps = new Hashtable<>();
-		Hashtable<String, Integer> recordCounts = new Hashtable<>();
-
-		Matcher matcher = null;
-
-		int kept = 0;
-		int discarded = 0;
-
-		m_running = true;
-		while (m_running) {
-			progress: {
-				try {
-					block = m_queue.take();
-					// even if we don't end up using this data, it counts toward
-					// our progress
-					byteTotal += block.getLength();
-					byteTotal += block.getSkippedBytes();
-					progress = new SeedSplitProgress(byteTotal);
-					recordBytes = block.getData();
-					if (block.isLast()) {
-						m_running = false;
-					} else if (block.isEnd()) {
-						progress.setFileDone(true);
-					} else if (MiniSeed.crackIsHeartBeat(recordBytes)) {
-						logger.debug("Found HEARTBEAT record!");
-					} else { // MTH
-						seedstring = MiniSeed.crackSeedname(recordBytes);
-						network = seedstring.substring(0, 2).trim();
-						if (m_patternNetwork != null) {
-							matcher = m_patternNetwork.matcher(network);
-							if (!matcher.matches()) {
-								discarded++;
-								break progress;
-							}
-						}
-						station = seedstring.substring(2, 7).trim();
-						if (m_patternStation != null) {
-							matcher = m_patternStation.matcher(station);
-							if (!matcher.matches()) {
-								discarded++;
-								break progress;
-							}
-						}
-						location = seedstring.substring(10, 12).trim();
-						if (m_patternLocation != null) {
-							matcher = m_patternLocation.matcher(location);
-							if (!matcher.matches()) {
-								discarded++;
-								break progress;
-							}
-						}
-						channel = seedstring.substring(7, 10).trim();
-						if (m_patternChannel != null) {
-							matcher = m_patternChannel.matcher(channel);
-							if (!matcher.matches()) {
-								discarded++;
-								break progress;
-							}
-						}
-
-						// Set the default location codes
-						if (location.equals("--") || location.equals("")
-								|| location == null) {
-							logger.debug("miniseed channel=[{}] location=[{}] was changed to [00]",
-											channel, location);
-							location = "00";
-						}
-						if (location.equals("HR")) {
-							logger.debug("miniseed channel=[{}] location=[{}] was changed to [10]",
-											channel, location);
-							location = "10";
-						}
-
-						sampleRate = MiniSeed.crackRate(recordBytes);
-						try {
-							interval = DataSet.sampleRateToInterval(sampleRate);
-						} catch (IllegalSampleRateException e) {
-							MiniSeed ms = new MiniSeed(recordBytes);
-							logger.error("Illegal Sample Rate: sequence #{}, rate = {}", ms.getSequence(), sampleRate);
-							discarded++;
-							break progress;
-						}
-						kept++;
-						logger.debug(String.format("%s_%s %s-%s", network,
-								station, location, channel));
-						key = String.format("%s_%s %s-%s (%.1f Hz)", network,
-								station, location, channel, sampleRate);
-
-						if (!recordCounts.containsKey(key)) {
-							recordCounts.put(key, 1);
-						} else {
-							recordCounts.put(key, recordCounts.get(key) + 1);
-						}
-
-						int year = MiniSeed.crackYear(recordBytes);
-						int doy = MiniSeed.crackDOY(recordBytes);
-
-						/*See SEED manual Chapter 3*/
-						int[] btime = MiniSeed.crackTime(recordBytes);
-
-						LocalDateTime dateTime = Time.btimeToLocalDateTime(year, doy, btime[0], btime[1], btime[2], btime[3]);
-
-						startTime = Time.calculateEpochMicroSeconds(dateTime);
-
-						tempData = temps.getOrDefault(key, null);
-
-						if (!m_trees.containsKey(key)) {
-							tree = new TreeSet<>();
-							m_trees.put(key, tree);
-						} else {
-							tree = m_trees.get(key);
-						}
-
-						// Allow for a fudge factor of 1 millisecond if sample
-						// rate is less than 100 Hz.
-						//
-						// Is this a good idea, or would it be better to simply
-						// report a gap so the user is aware of the jump?
-						//
-						// long intervalAdjustment = (interval > 10000 ? 1000 :
-						// 0);
-						long intervalAdjustment = interval / 1;
-
-						boolean replaceDataSet = false;
-						// Temporarily disabled fudge factor
-
-						if ((tempData == null)
-								|| ((startTime - tempData.getEndTime()) > (interval + intervalAdjustment))) {
-							// if ((tempData == null) || ((startTime -
-							// tempData.getEndTime()) > interval)) {
-							// (VIM-HACK) }
-							replaceDataSet = true;
-						} else {
-							MiniSeed ms = new MiniSeed(recordBytes);
-							if ((startTime - tempData.getEndTime()) < (interval - intervalAdjustment)) {
-								// if ((startTime - tempData.getEndTime()) <
-								// interval) {
-								// (VIM-HACK) }
-								replaceDataSet = true;
-								logger
-										.error("Found data overlap <{}] - [{}> sequence #{}.!\n",
-														DataSet.timestampToString(tempData
-																.getEndTime()),
-														DataSet.timestampToString(startTime),
-														ms.getSequence());
-								if (ms.getSequence() <= lastSequenceNumber) {
-									logger
-											.error("Out of sequence last={} current={}",
-															lastSequenceNumber,
-															ms.getSequence());
-								}
-								// throw new SeedRecordOverlapException();
-							}
-						}
-						try {
-							if (replaceDataSet) {
-								if (tempData != null) {
-									tree.add(tempData);
-									logger.debug("Adding DataSet to TreeSet.");
-									logger.debug("  Range: {} - {} ({} data points {CHECK: {}})",
-													DataSet.timestampToString(tempData
-															.getStartTime()),
-													DataSet.timestampToString(tempData
-															.getEndTime()),
-													((tempData.getEndTime() - tempData
-															.getStartTime())
-															/ tempData
-																	.getInterval() + 1),
-													tempData.getLength());
-									tempData = null;
-									temps.remove(key);
-								}
-								logger.debug("Creating new DataSet");
-								tempData = new DataSet();
-								tempData.setNetwork(network);
-								tempData.setStation(station);
-								tempData.setLocation(location);
-								tempData.setChannel(channel);
-								tempData.setStartTime(startTime);
-								try {
-									tempData.setSampleRate(sampleRate);
-								} catch (RuntimeException e) {
-									MiniSeed ms = new MiniSeed(recordBytes);
-									logger.error(String.format(
-											"Invalid Start Time: sequence #%d",
-											ms.getSequence()), e.getMessage());
-									tempData = null;
-									break progress;
-								} catch (IllegalSampleRateException e) {
-									MiniSeed ms = new MiniSeed(recordBytes);
-									logger
-											.error(String
-													.format("Invalid Sample Rate: sequence #%d, rate = %f",
-															ms.getSequence(),
-															ms.getRate()), e.getMessage());
-									tempData = null;
-									break progress;
-								}
-								temps.put(key, tempData);
-							} // replaceDataSet
-						} catch (RuntimeException e) {
-							logger.error("RuntimeException:", e.getMessage());
-						}
-
-						record = new MiniSeed(recordBytes);
-
-						samples = record.decomp();
-
-						// blockettes = record.getBlockettes();
-						lastSequenceNumber = record.getSequence();
-						tempData.extend(samples, 0, samples.length);
-
-						// MTH: Get timing quality from the current miniseed
-						// block and store it for this key
-						int quality = record.getTimingQuality();
-
-						if (m_qualityTable == null) {
-							m_qualityTable = new Hashtable<>();
-						}
-
-						ArrayList<Integer> qualityArray = null;
-						if (m_qualityTable.get(key) == null) {
-							qualityArray = new ArrayList<>();
-							m_qualityTable.put(key, qualityArray);
-						} else {
-							qualityArray = m_qualityTable.get(key);
-						}
-						if (quality >= 0) { // getTimingQuality() return -1
-							// if no B1001 block found
-							qualityArray.add(quality);
-						}
-
-						// MTH: Get calibration block from the current
-						// miniseed block and store it for this key
-						// byteBuf320 = 64-byte Blockette320 as per SEED
-						// Manual HOWEVER, D. Ketcham's
-						// MiniSeed.getBlockette320()
-						// only returns 32-bytes ?? --> modified to return
-						// 64-bytes
-						byte[] byteBuf320 = record.getBlockette320();
-						if (byteBuf320 != null) {
-							// System.out.format("== SeedSplitProcessor: Blockette320 found for key=%s kept=[%d] discarded=[%d]\n",
-							// key, kept, discarded);
-							Blockette320 blockette320 = new Blockette320(
-									byteBuf320);
-							// System.out.format("== blockette320: epoch secs=[%d]\n",
-							// blockette320.getCalibrationEpoch() );
-
-							if (m_calTable == null) {
-								m_calTable = new Hashtable<>();
-							}
-
-							ArrayList<Blockette320> calBlock = null;
-							if (m_calTable.get(key) == null) {
-								calBlock = new ArrayList<>();
-								m_calTable.put(key, calBlock);
-							} else {
-								calBlock = m_calTable.get(key);
-							}
-							calBlock.add(blockette320);
-						}
+	public void processRecord(ByteBuffer buffer, int offset, int length) {
+		MiniSeedView record = m_view;
+		try {
+			record.reset(buffer, offset, length);
+			if (record.isHeartBeat()) {
+				logger.debug("Found HEARTBEAT record!");
+				return;
+			}
+
+			RawChannel raw = findRawChannel(record);
+			Track track = raw.track;
+			if (track == null) {
+				if (raw.illegalRate) {
+					logger.error("Illegal Sample Rate: sequence #{}, rate = {}",
+							record.getSequence(), raw.sampleRate);
+				}
+				m_discarded++;
+				return;
+			}
+			// Reject undecodable records before their DataSet is created.
+			record.checkDecompressible();
+			m_kept++;
+			track.records++;
+
+			/*See SEED manual Chapter 3*/
+			long startTime = record.getStartTime();
+			long interval = track.interval;
+
+			DataSet tempData = track.temp;
+			if (track.tree == null) {
+				track.tree = new TreeSet<>();
+				m_trees.put(track.key, track.tree);
+			}
+
+			// Allow for a fudge factor of 1 millisecond if sample
+			// rate is less than 100 Hz.
+			//
+			// Is this a good idea, or would it be better to simply
+			// report a gap so the user is aware of the jump?
+			//
+			// long intervalAdjustment = (interval > 10000 ? 1000 :
+			// 0);
+			long intervalAdjustment = interval / 1;
+
+			boolean replaceDataSet = false;
+			// Temporarily disabled fudge factor
+
+			if ((tempData == null)
+					|| ((startTime - tempData.getEndTime()) > (interval + intervalAdjustment))) {
+				replaceDataSet = true;
+			} else if ((startTime - tempData.getEndTime()) < (interval - intervalAdjustment)) {
+				replaceDataSet = true;
+				logger.error("Found data overlap <{}] - [{}> sequence #{}.!\n",
+						DataSet.timestampToString(tempData.getEndTime()),
+						DataSet.timestampToString(startTime),
+						record.getSequence());
+				if (record.getSequence() <= lastSequenceNumber) {
+					logger.error("Out of sequence last={} current={}",
+							lastSequenceNumber, record.getSequence());
+				}
+			}
+			try {
+				if (replaceDataSet) {
+					if (tempData != null) {
+						track.tree.add(tempData);
+						logger.debug("Adding DataSet to TreeSet.");
+						logger.debug("  Range: {} - {} ({} data points {CHECK: {}})",
+										DataSet.timestampToString(tempData
+												.getStartTime()),
+										DataSet.timestampToString(tempData
+												.getEndTime()),
+										((tempData.getEndTime() - tempData
+												.getStartTime())
+												/ tempData
+														.getInterval() + 1),
+										tempData.getLength());
+						tempData = null;
+						track.temp = null;
 					}
+					logger.debug("Creating new DataSet");
+					tempData = new DataSet();
+					tempData.setNetwork(track.network);
+					tempData.setStation(track.station);
+					tempData.setLocation(track.location);
+					tempData.setChannel(track.channel);
+					tempData.setStartTime(startTime);
+					try {
+						tempData.setSampleRate(track.sampleRate);
+					} catch (RuntimeException e) {
+						logger.error(String.format(
+								"Invalid Start Time: sequence #%d",
+								record.getSequence()), e.getMessage());
+						return;
+					} catch (IllegalSampleRateException e) {
+						logger.error(String.format(
+								"Invalid Sample Rate: sequence #%d, rate = %f",
+								record.getSequence(), record.getSampleRate()),
+								e.getMessage());
+						return;
+					}
+					track.temp = tempData;
+				} // replaceDataSet
+			} catch (RuntimeException e) {
+				logger.error("RuntimeException:", e.getMessage());
+			}
 
-				} catch (SteimException e) {
-					logger.error("SteimException:", e.getMessage());
-				} catch (BlockSizeException e) {
-					logger.error("BlockSizeException:", e.getMessage());
-				} catch (InterruptedException e) {
-					logger.error("InterruptedException:", e.getMessage());
-				} catch (IllegalSeednameException e) {
-					logger.error("IllegalSeednameException:", e.getMessage());
+			record.decompress(tempData);
+
+			lastSequenceNumber = record.getSequence();
+
+			// MTH: Get timing quality from the current miniseed
+			// block and store it for this key
+			if (m_qualityTable == null) {
+				m_qualityTable = new Hashtable<>();
+			}
+			if (track.quality == null) {
+				track.quality = new ArrayList<>();
+				m_qualityTable.put(track.key, track.quality);
+			}
+			int quality = record.getTimingQuality();
+			if (quality >= 0) { // getTimingQuality() return -1
+				// if no B1001 block found
+				track.quality.add(quality);
+			}
+
+			// MTH: Get calibration block from the current
+			// miniseed block and store it for this key
+			// byteBuf320 = 64-byte Blockette320 as per SEED
+			// Manual
+			if (record.hasBlockette320()) {
+				Blockette320 blockette320 = new Blockette320(
+						record.getBlockette320());
+				if (m_calTable == null) {
+					m_calTable = new Hashtable<>();
 				}
+				if (track.calibration == null) {
+					track.calibration = new ArrayList<>();
+					m_calTable.put(track.key, track.calibration);
+				}
+				track.calibration.add(blockette320);
+			}
+
+		} catch (SteimException e) {
+			logger.error("SteimException:", e.getMessage());
+		} catch (BlockSizeException e) {
+			logger.error("BlockSizeException:", e.getMessage());
+		} catch (IllegalSeednameException e) {
+			logger.error("IllegalSeednameException:", e.getMessage());
+		}
+	}
+
+	/**
+	 * Finds the key the data of a record is stored under, without decoding
+	 * it. Records are matched against the filters as when processed.
+	 * 
+	 * @param record
+	 *            The record, already reset.
+	 * @return The key, null if the record is filtered out or has an illegal
+	 *         sample rate.
+	 */
+	String getKey(MiniSeedView record) {
+		RawChannel raw = findRawChannel(record);
+		if (raw.track == null) {
+			if (raw.illegalRate) {
+				logger.error("Illegal Sample Rate: sequence #{}, rate = {}",
+						record.getSequence(), raw.sampleRate);
 			}
+			return null;
 		}
-		for (String tempKey : temps.keySet()) {
-			tempData = null;
-			tree = null;
-			if (temps.containsKey(tempKey)) {
-				tempData = temps.get(tempKey);
+		return raw.track.key;
+	}
+
+	/**
+	 * Finds the state for the record's raw name and rate fields, creating it
+	 * the first time they are seen. Records of a channel usually come in
+	 * runs, so the previous channel is checked first.
+	 * 
+	 * @param record
+	 *            The record, already reset.
+	 * @return The channel state.
+	 */
+	private RawChannel findRawChannel(MiniSeedView record) {
+		long stationKey = record.getStationKey();
+		long channelKey = record.getChannelKey();
+		int rate = record.getRateKey();
+		RawChannel raw = m_lastRawChannel;
+		if (raw != null && raw.stationKey == stationKey
+				&& raw.channelKey == channelKey && raw.rate == rate) {
+			return raw;
+		}
+		long hash = (stationKey * 31 + channelKey) * 31 + rate;
+		int bucket = (int) (hash ^ (hash >>> 32)) & (m_rawChannels.length - 1);
+		for (raw = m_rawChannels[bucket]; raw != null; raw = raw.next) {
+			if (raw.stationKey == stationKey && raw.channelKey == channelKey
+					&& raw.rate == rate) {
+				m_lastRawChannel = raw;
+				return raw;
 			}
-			if (m_trees.containsKey(tempKey)) {
-				tree = m_trees.get(tempKey);
+		}
+
+		raw = new RawChannel(stationKey, channelKey, rate);
+		resolve(raw, record);
+		raw.next = m_rawChannels[bucket];
+		m_rawChannels[bucket] = raw;
+		if (++m_rawChannelCount > m_rawChannels.length) {
+			rehash();
+		}
+		m_lastRawChannel = raw;
+		return raw;
+	}
+
+	/**
+	 * Doubles the number of RawChannel buckets.
+	 */
+	private void rehash() {
+		RawChannel[] old = m_rawChannels;
+		m_rawChannels = new RawChannel[old.length * 2];
+		for (RawChannel head : old) {
+			RawChannel raw = head;
+			while (raw != null) {
+				RawChannel next = raw.next;
+				long hash = (raw.stationKey * 31 + raw.channelKey) * 31 + raw.rate;
+				int bucket = (int) (hash ^ (hash >>> 32))
+						& (m_rawChannels.length - 1);
+				raw.next = m_rawChannels[bucket];
+				m_rawChannels[bucket] = raw;
+				raw = next;
 			}
+		}
+	}
+
+	/**
+	 * Applies the filters to a newly seen channel and finds the track its
+	 * records are stored in.
+	 */
+	private void resolve(RawChannel raw, MiniSeedView record) {
+		String network = record.getNetwork();
+		if (m_patternNetwork != null
+				&& !m_patternNetwork.matcher(network).matches()) {
+			return;
+		}
+		String station = record.getStation();
+		if (m_patternStation != null
+				&& !m_patternStation.matcher(station).matches()) {
+			return;
+		}
+		String location = record.getLocation();
+		String channel = record.getChannel();
+		if (m_patternChannel != null
+				&& !m_patternChannel.matcher(channel).matches()) {
+			return;
+		}
+
+		// Set the default location codes
+		String defaultLocation = defaultLocation(location);
+		if (!defaultLocation.equals(location)) {
+			logger.debug("miniseed channel=[{}] location=[{}] was changed to [{}]",
+							channel, location, defaultLocation);
+			location = defaultLocation;
+		}
+		// Location filter is compared against the default codes
+		if (m_patternLocation != null
+				&& !m_patternLocation.matcher(location).matches()) {
+			return;
+		}
+
+		double sampleRate = record.getSampleRate();
+		long interval;
+		try {
+			interval = DataSet.sampleRateToInterval(sampleRate);
+		} catch (IllegalSampleRateException e) {
+			raw.illegalRate = true;
+			raw.sampleRate = sampleRate;
+			return;
+		}
+		String key = String.format("%s_%s %s-%s (%.1f Hz)", network, station,
+				location, channel, sampleRate);
+		Track track = m_tracks.get(key);
+		if (track == null) {
+			track = new Track(key, network, station, location, channel,
+					sampleRate, interval);
+			m_tracks.put(key, track);
+		}
+		raw.track = track;
+	}
+
+	/**
+	 * Replaces blank and placeholder location codes with the default codes
+	 * the data is stored under.
+	 * 
+	 * @param location
+	 *            The trimmed location code of a record.
+	 * @return "00" for blank or "--" codes, "10" for "HR", otherwise the
+	 *         location unchanged.
+	 */
+	static String defaultLocation(String location) {
+		if (location.equals("--") || location.equals("")) {
+			return "00";
+		}
+		if (location.equals("HR")) {
+			return "10";
+		}
+		return location;
+	}
+
+	/**
+	 * Closes the DataSets still being extended and merges each channel's tree
+	 * into the table. Called once after the last record has been processed.
+	 */
+	public void finish() {
+		DataSet tempData;
+		TreeSet<DataSet> tree;
+		for (Track track : m_tracks.values()) {
+			tempData = track.temp;
+			tree = track.tree;
 			if ((tempData != null) && (tree != null)) {
 				tree.add(tempData);
-				tree.size();
-				
+
 				logger.debug("Adding DataSet to TreeSet.");
-				logger.debug(String.format(
-						"  Range: %s - %s (%d data points {CHECK: %d})",
+				logger.debug("  Range: {} - {} ({} data points {CHECK: {}})",
 						DataSet.timestampToString(tempData.getStartTime()),
 						DataSet.timestampToString(tempData.getEndTime()),
 						((tempData.getEndTime() - tempData.getStartTime())
 								/ tempData.getInterval() + 1),
-						tempData.getLength()));
-				tempData = null;
+						tempData.getLength());
 			}
+			track.temp = null;
 		}
 
 		// The following block loops through the contents of the tree in order
@@ -519,11 +581,13 @@ public class SeedSplitProcessor implements Runnable {
 		}
 
 		logger.debug("<SeedSplitProcessor Thread> Yeah, we're done.");
-		logger.debug("Kept " + kept + " records");
-		logger.debug("Discarded " + discarded + " records");
-		for (String countKey : recordCounts.keySet()) {
-			logger.debug("  " + countKey + ": " + recordCounts.get(key)
-					+ " records");
+		logger.debug("Kept " + m_kept + " records");
+		logger.debug("Discarded " + m_discarded + " records");
+		for (Track track : m_tracks.values()) {
+			if (track.records > 0) {
+				logger.debug("  " + track.key + ": " + track.records
+						+ " records");
+			}
 		}
 	}
 
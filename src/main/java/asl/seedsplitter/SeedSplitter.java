@@ -18,14 +18,16 @@
  */
 package asl.seedsplitter;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Hashtable;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.swing.SwingWorker;
@@ -33,18 +35,15 @@ import javax.swing.SwingWorker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import seed.Blockette320;
-
 /**
  * @author Joel D. Edwards
  * 
  *         The SeedSplitter class reads MiniSEED records from a list of files,
- *         filters out records that don't match the filters (if supplied),
- *         de-duplicates the data, orders it based on date, and breaks it up
- *         into DataSets based on continuity and station/channel info.
+ *         filters out records that don't match the filters (if supplied) and
+ *         indexes them by station/channel info. The {@link SeedIndex} decodes
+ *         a channel's records into DataSets based on continuity when asked.
  */
-public class SeedSplitter extends
-		SwingWorker<Hashtable<String, ArrayList<DataSet>>, SeedSplitProgress> {
+public class SeedSplitter extends SwingWorker<SeedIndex, SeedSplitProgress> {
 	private static final Logger datalogger = LoggerFactory.getLogger("DataLog");
 	private static final Logger logger = LoggerFactory
 			.getLogger(asl.seedsplitter.SeedSplitter.class);
@@ -54,8 +53,6 @@ public class SeedSplitter extends
 	// along the lines of (file # out of total, byte count out of total, percent
 	// complete)
 	private File[] m_files;
-	private Hashtable<String, ArrayList<DataSet>> m_table;
-	private LinkedBlockingQueue<ByteBlock> m_recordQueue;
 	private SeedSplitProgress m_lastProgress = null;
 
 	private Pattern m_patternNetwork = null;
@@ -63,9 +60,12 @@ public class SeedSplitter extends
 	private Pattern m_patternLocation = null;
 	private Pattern m_patternChannel = null;
 
-	// MTH
-	private Hashtable<String, ArrayList<Integer>> m_qualityTable;
-	private Hashtable<String, ArrayList<Blockette320>> m_calTable;
+	/** Executor files are indexed on, null to index on the calling thread. */
+	private Executor m_executor = null;
+	/** Stores file indexes between runs, null to always index the files. */
+	private SeedIndexStore m_indexStore = null;
+	/** Set when indexing is abandoned, stops its remaining tasks. */
+	private volatile boolean m_aborted = false;
 
 	/**
 	 * Hidden initializer which is called by all constructors.
@@ -75,11 +75,6 @@ public class SeedSplitter extends
 	 */
 	private void _construct(File[] fileList) {
 		m_files = fileList;
-		m_table = null;
-
-		m_recordQueue = new LinkedBlockingQueue<>(1024);
-		// m_dataQueue = new LinkedBlockingQueue<DataSet>(64);
-
 	}
 
 	/**
@@ -94,21 +89,48 @@ public class SeedSplitter extends
 	}
 
 	/**
-	 * Get the results after the SeedSplitter has finished processing all files.
+	 * Filter pattern for the MiniSEED record's Location field. Records which
+	 * don't match are discarded before being decoded.
+	 * 
+	 * @param pattern
+	 *            Filter pattern for the MiniSEED record's Location field.
+	 */
+	public void setLocationPattern(Pattern pattern) {
+		m_patternLocation = pattern;
+	}
+
+	/**
+	 * Filter pattern for the MiniSEED record's Channel field. Records which
+	 * don't match are discarded before being decoded.
 	 * 
-	 * @return The hash table containing all of the data post filtering and
-	 *         re-ordering.
+	 * @param pattern
+	 *            Filter pattern for the MiniSEED record's Channel field.
 	 */
-	public Hashtable<String, ArrayList<DataSet>> getTable() {
-		return m_table;
+	public void setChannelPattern(Pattern pattern) {
+		m_patternChannel = pattern;
 	}
 
-	public Hashtable<String, ArrayList<Integer>> getQualityTable() {
-		return m_qualityTable;
+	/**
+	 * Index the files in parallel on an executor, each file in a task of its
+	 * own. The index is the same as when indexing on the calling thread.
+	 * 
+	 * @param executor
+	 *            The executor to run the tasks on, null to index on the
+	 *            calling thread.
+	 */
+	public void setExecutor(Executor executor) {
+		m_executor = executor;
 	}
 
-	public Hashtable<String, ArrayList<Blockette320>> getCalTable() {
-		return m_calTable;
+	/**
+	 * Keep the indexes built by {@link #buildIndex()} in a store, so files
+	 * that haven't changed aren't read again the next time they are indexed.
+	 * 
+	 * @param store
+	 *            The store, null to always index the files.
+	 */
+	public void setIndexStore(SeedIndexStore store) {
+		m_indexStore = store;
 	}
 
 	/**
@@ -122,95 +144,187 @@ public class SeedSplitter extends
 	}
 
 	/**
-	 * Overrides the doInBackground method of SwingWorker, launching and
-	 * monitoring two threads which read the files and process MiniSEED Data.
+	 * Overrides the doInBackground method of SwingWorker, indexing the files
+	 * with {@link #buildIndex()}.
 	 * 
-	 * @return A hash table containing all of the data acquired from the file
-	 *         list.
+	 * @return The index, null if interrupted.
 	 */
 	@Override
-	public Hashtable<String, ArrayList<DataSet>> doInBackground() {
-		int progressPercent = 0; // 0 - 100
-		int lastPercent = 0;
-		long totalBytes = 0;
-		long progressBytes = 0;
-		long stageBytes = 0;
-		boolean finalFile = false;
-		for (File file : m_files) {
-			totalBytes += file.length();
+	public SeedIndex doInBackground() {
+		SeedIndex index = buildIndex();
+		if (index != null) {
+			this.setProgress(100);
 		}
+		return index;
+	}
 
-		// Initialize new logging for data errors
-		/*
-		 * String errorLogFile = appender.getFile(); String[] logsplit =
-		 * errorLogFile.split("ERROR"); String dataLogFile = logsplit[0] +
-		 * "DATA" + logsplit[1]; appender.setFile(dataLogFile);
-		 * appender.activateOptions();
-		 */
-
-		SeedSplitProcessor processor = new SeedSplitProcessor(m_recordQueue);
-		processor.setNetworkPattern(m_patternNetwork);
-		processor.setStationPattern(m_patternStation);
-		processor.setLocationPattern(m_patternLocation);
-		processor.setChannelPattern(m_patternChannel);
-		Thread processorThread = new Thread(processor);
-		processorThread.start();
-		for (int i = 0; i < m_files.length; i++) {
-			if (i == (m_files.length - 1)) {
-				finalFile = true;
+	/**
+	 * Indexes the records of the files by the key their data is stored
+	 * under, reading only the record headers and applying the filters. The
+	 * files are indexed in parallel if an executor was set with
+	 * {@link #setExecutor(Executor)}.
+	 * 
+	 * If a store was set with {@link #setIndexStore(SeedIndexStore)}, files
+	 * whose size and modification time, or failing that content, are
+	 * unchanged since they were stored are not read again. The store is
+	 * updated with the files that changed.
+	 * 
+	 * @return The index, null if interrupted.
+	 */
+	public SeedIndex buildIndex() {
+		// Stored file indexes, by data directory and file name
+		Map<File, Map<String, FileIndex>> stored = new HashMap<>();
+		List<CompletableFuture<FileIndex>> reads = new ArrayList<>();
+		for (File file : m_files) {
+			FileIndex cached = null;
+			if (m_indexStore != null) {
+				cached = stored.computeIfAbsent(getDirectory(file),
+						m_indexStore::load).get(file.getName());
 			}
-			File file = m_files[i];
-			// MTH: SeedSplitProcessor hangs if seed filesize = 0 --> Handled in
-			// Scanner.java instead
-			// MTH: Skip this file if size = 0:
-			// if (file.length() == 0) {
-			// continue;
-			// }
-			DataInputStream inputStream;
-			Thread inputThread = null;
-			try {
-				inputStream = new DataInputStream(new BufferedInputStream(
-						new FileInputStream(file)));
-				SeedInputStream stream = new SeedInputStream(inputStream,
-						m_recordQueue, finalFile);
-				inputThread = new Thread(stream);
-				logger.debug("Processing file " + file.getName() + "...");
-				inputThread.start();
-			} catch (FileNotFoundException e) {
-				// logger.debug("File '" +file.getName()+ "' not found\n");
-				String message = "FileNotFoundException: File '"
-						+ file.getName() + "' not found\n";
-				datalogger.error(message, e);
-				// Should we do something more? Throw an exception?
+			FileIndex previous = cached;
+			if (m_executor != null) {
+				reads.add(CompletableFuture.supplyAsync(
+						() -> index(file, previous), m_executor));
+			} else {
+				reads.add(CompletableFuture.completedFuture(index(file,
+						previous)));
 			}
-			m_table = processor.getTable();
-			// MTH:
-			m_qualityTable = processor.getQualityTable();
-			m_calTable = processor.getCalTable();
-			if (this.isCancelled()) {
-				m_table = null;
+			if (this.isCancelled() || Thread.currentThread().isInterrupted()) {
+				m_aborted = true;
 				return null;
 			}
-			if (inputThread != null) {
-				try {
-					inputThread.join();
-				} catch (InterruptedException e) {
-					datalogger.error("InterruptedException:", e);
+		}
+		List<FileIndex> fileIndexes = new ArrayList<>();
+		try {
+			for (CompletableFuture<FileIndex> read : reads) {
+				fileIndexes.add(read.get());
+			}
+		} catch (InterruptedException e) {
+			datalogger.error("InterruptedException:", e);
+			m_aborted = true;
+			return null;
+		} catch (ExecutionException e) {
+			m_aborted = true;
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		if (m_indexStore != null) {
+			store(stored, fileIndexes);
+		}
+
+		// Records are merged in file order, so each channel's records are
+		// decoded in the same order as when read serially.
+		Map<String, IndexedRecords> channels = new LinkedHashMap<>();
+		for (int i = 0; i < fileIndexes.size(); i++) {
+			for (Map.Entry<String, IndexedRecords> entry : fileIndexes.get(i)
+					.getChannels().entrySet()) {
+				IndexedRecords records = entry.getValue();
+				if (!accepts(records)) {
+					continue;
+				}
+				IndexedRecords merged = channels.get(entry.getKey());
+				if (merged == null) {
+					merged = new IndexedRecords(records.getNetwork(),
+							records.getStation(), records.getLocation(),
+							records.getChannel());
+					channels.put(entry.getKey(), merged);
 				}
+				merged.addAll(records, i);
+			}
+		}
+		return new SeedIndex(m_files, channels);
+	}
+
+	/**
+	 * Stores the file indexes of each data directory in which a file was
+	 * indexed again, added or removed.
+	 */
+	private void store(Map<File, Map<String, FileIndex>> stored,
+			List<FileIndex> fileIndexes) {
+		Map<File, Map<String, FileIndex>> current = new LinkedHashMap<>();
+		for (int i = 0; i < m_files.length; i++) {
+			current.computeIfAbsent(getDirectory(m_files[i]),
+					dir -> new LinkedHashMap<>()).put(m_files[i].getName(),
+					fileIndexes.get(i));
+		}
+		for (Map.Entry<File, Map<String, FileIndex>> entry : current.entrySet()) {
+			Map<String, FileIndex> before = stored.get(entry.getKey());
+			boolean changed = before.size() != entry.getValue().size();
+			for (FileIndex file : entry.getValue().values()) {
+				changed |= (before.get(file.getName()) != file);
+			}
+			if (changed) {
+				m_indexStore.save(entry.getKey(), entry.getValue().values());
 			}
-			if (finalFile) {
-				try {
-					processorThread.join();
-				} catch (InterruptedException e) {
-					datalogger.error("InterruptedException:", e);
+		}
+	}
+
+	/**
+	 * Gets the directory a file is in, which its index is stored by.
+	 */
+	private static File getDirectory(File file) {
+		return file.getAbsoluteFile().getParentFile();
+	}
+
+	/**
+	 * Checks indexed records against the filters, as a processor would.
+	 */
+	private boolean accepts(IndexedRecords records) {
+		return (m_patternNetwork == null || m_patternNetwork.matcher(
+				records.getNetwork()).matches())
+				&& (m_patternStation == null || m_patternStation.matcher(
+						records.getStation()).matches())
+				&& (m_patternChannel == null || m_patternChannel.matcher(
+						records.getChannel()).matches())
+				&& (m_patternLocation == null || m_patternLocation.matcher(
+						records.getLocation()).matches());
+	}
+
+	/**
+	 * Indexes the records of a file, unless its stored index is still
+	 * current. Records are indexed without applying the filters so the index
+	 * can be stored for any scan.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param stored
+	 *            The file's stored index, null if there is none.
+	 * @return The file's index. If the file couldn't be read it holds the
+	 *         records read before the error and is never current.
+	 */
+	private FileIndex index(File file, FileIndex stored) {
+		if (stored != null && stored.isCurrent(file)) {
+			return stored;
+		}
+		long size = file.length();
+		long lastModified = file.lastModified();
+		MappedSeedReader reader = new MappedSeedReader();
+		SeedIndexer indexer = new SeedIndexer(reader, new SeedSplitProcessor());
+		if (m_aborted) {
+			return new FileIndex(file.getName(), -1, -1, 0,
+					indexer.getChannels());
+		}
+		try {
+			long checksum = 0;
+			if (m_indexStore != null) {
+				checksum = FileIndex.checksum(file);
+				if (stored != null && stored.getSize() == size
+						&& stored.getChecksum() == checksum) {
+					return stored.withLastModified(lastModified);
 				}
 			}
-			logger.debug("Finished processing file " + file.getName() + "  "
-					+ progressPercent + "% complete");
-			stageBytes += file.length();
+			logger.debug("Indexing file " + file.getName() + "...");
+			reader.read(file, indexer);
+			return new FileIndex(file.getName(), size, lastModified, checksum,
+					indexer.getChannels());
+		} catch (IOException e) {
+			String message = "IOException: File '" + file.getName()
+					+ "' could not be read\n";
+			datalogger.error(message, e);
+			return new FileIndex(file.getName(), -1, -1, 0,
+					indexer.getChannels());
 		}
-		logger.debug("All done. Setting progress to 100%");
-		this.setProgress(100);
-		return m_table;
 	}
 }
@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import asl.security.MemberDigest;
+import seed.SampleSink;
 
 /**
  * The Class Sequence. Extends MemberDigest
@@ -19,7 +20,7 @@ import asl.security.MemberDigest;
  * @author James Holland - USGS jholland@usgs.gov
  * @author Joel D. Edwards - USGS
  */
-public class Sequence extends MemberDigest implements Comparable<Sequence>, Serializable {
+public class Sequence extends MemberDigest implements Comparable<Sequence>, Serializable, SampleSink {
 
 	/**
 	 * Serial Version UID
@@ -79,6 +80,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		m_length = 0;
 		m_blocks = new ArrayList<>(8);
 		this._addBlock();
+		invalidateDigest();
 	}
 
 	/**
@@ -102,9 +104,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		int remaining = m_blocks.size();
 		for (int[] block : m_blocks) {
 			int numSamples = (--remaining > 0) ? BLOCK_SIZE : (BLOCK_SIZE - m_remainder);
-			for (int i = 0; i < numSamples; i++) {
-				addToDigest(block[i]);
-			}
+			addToDigest(block, 0, numSamples);
 		}
 	}
 
@@ -116,6 +116,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 	 */
 	public void setStartTime(long startTime) {
 		m_startTime = startTime;
+		invalidateDigest();
 	}
 
 	/**
@@ -129,6 +130,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 	public void setSampleRate(double sampleRate) throws IllegalSampleRateException {
 		m_interval = sampleRateToInterval(sampleRate);
 		m_sampleRate = sampleRate;
+		invalidateDigest();
 	}
 
 	/**
@@ -139,6 +141,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		m_startTime = 0;
 		m_sampleRate = 0.0;
 		m_interval = 0;
+		invalidateDigest();
 	}
 
 	/**
@@ -174,6 +177,81 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 			m_length += copySize;
 			length -= copySize;
 		}
+		invalidateDigest();
+	}
+
+	/**
+	 * Gets the block the next data points are written to, for decoders writing
+	 * in place.
+	 * 
+	 * @return the tail block, with room for at least one data point
+	 */
+	@Override
+	public int[] getTailBlock() {
+		return m_block;
+	}
+
+	/**
+	 * Gets the index in the tail block of the next data point.
+	 * 
+	 * @return the tail offset
+	 */
+	@Override
+	public int getTailOffset() {
+		return BLOCK_SIZE - m_remainder;
+	}
+
+	/**
+	 * Extends the time-series by data points written directly into the tail
+	 * block.
+	 * 
+	 * @param count
+	 *            The number of data points written from the tail offset.
+	 * @throws IndexOutOfBoundsException
+	 *             if count is negative or goes past the end of the tail block
+	 */
+	@Override
+	public void commitTail(int count) {
+		if (count < 0 || count > m_remainder) {
+			throw new IndexOutOfBoundsException("Commit of " + count
+					+ " data points with " + m_remainder + " remaining");
+		}
+		m_length += count;
+		if (m_remainder == count) {
+			this._addBlock();
+		} else {
+			m_remainder -= count;
+		}
+		invalidateDigest();
+	}
+
+	/**
+	 * Drops the data points after the first length data points. Blocks which
+	 * are no longer needed are returned to the BlockPool.
+	 * 
+	 * @param length
+	 *            The number of data points to keep.
+	 * @throws IndexOutOfBoundsException
+	 *             if length is negative or more than the current length
+	 */
+	@Override
+	public void truncate(int length) {
+		if (length < 0 || length > m_length) {
+			throw new IndexOutOfBoundsException("Truncate to " + length
+					+ " of " + m_length + " data points");
+		}
+		int blockCount = length / BLOCK_SIZE + 1;
+		while (m_blocks.size() > blockCount) {
+			try {
+				m_pool.addBlock(m_blocks.remove(m_blocks.size() - 1));
+			} catch (BlockSizeMismatchException e) {
+				logger.error("BlockSizeMismatchException:", e);
+			}
+		}
+		m_block = m_blocks.get(blockCount - 1);
+		m_remainder = BLOCK_SIZE - length % BLOCK_SIZE;
+		m_length = length;
+		invalidateDigest();
 	}
 
 	/**
@@ -259,6 +337,9 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		seq.m_startTime = tempStartTime;
 		seq.m_sampleRate = tempSampleRate;
 		seq.m_interval = tempInterval;
+
+		invalidateDigest();
+		seq.invalidateDigest();
 	}
 
 	/**
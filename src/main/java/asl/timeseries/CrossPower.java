@@ -46,29 +46,50 @@ public class CrossPower {
 		if (sampleRate == 0)
 			throw new MetricPSDException("Got srate=0");
 
-		PSD psdRaw = new PSD(metricData.getDetrendedPaddedDayData(channelX), metricData.getDetrendedPaddedDayData(channelY),
-				(1. / sampleRate));
-		Complex[] spectrumRaw = psdRaw.getSpectrum();
-		double[] frequencyRaw = psdRaw.getFreq();
+		// The segment spectra of each channel are shared by all of its spectra.
+		SegmentSpectra spectraX = metricData.getSegmentSpectra(channelX);
+		SegmentSpectra spectraY = channelX.equals(channelY) ? spectraX : metricData.getSegmentSpectra(channelY);
+		int dataSize;
+		double[] spectrumReal;
+		double[] spectrumImaginary;
+		if (spectraX != null && spectraY != null) {
+			dataSize = spectraX.getDataSize();
+			spectrumReal = new double[spectraX.getSpectrumSize()];
+			spectrumImaginary = new double[spectrumReal.length];
+			WelchPSD.compute(spectraX, spectraY, 1. / sampleRate, spectrumReal, spectrumImaginary);
+		} else {
+			// Too large to hold every segment, stream them from the day data.
+			double[] dataX = metricData.getDetrendedPaddedDayData(channelX);
+			double[] dataY = channelX.equals(channelY) ? null : metricData.getDetrendedPaddedDayData(channelY);
+			dataSize = dataX.length;
+			spectrumReal = new double[WelchPSD.getSpectrumSize(dataSize)];
+			spectrumImaginary = new double[spectrumReal.length];
+			WelchPSD.compute(dataX, dataY, 1. / sampleRate, spectrumReal, spectrumImaginary, false);
+		}
+		int spectrumSize = spectrumReal.length;
 
-		this.spectrumDeltaF = psdRaw.getDeltaF();
+		this.spectrumDeltaF = WelchPSD.getDeltaF(dataSize, 1. / sampleRate);
+		Complex[] spectrumRaw = new Complex[spectrumSize];
+		for (int k = 0; k < spectrumSize; k++) {
+			spectrumRaw[k] = new Complex(spectrumReal[k], spectrumImaginary[k]);
+		}
 
 		// Get the instrument response for Acceleration and remove it from the
 		// PSD
 		Complex[] instrumentResponseX = metricData.getMetaData().getChannelMetadata(channelX)
-                .getResponse(frequencyRaw, ResponseUnits.ACCELERATION);
+                .getResponse(spectrumSize, spectrumDeltaF, ResponseUnits.ACCELERATION);
 		Complex[] instrumentResponseY = metricData.getMetaData().getChannelMetadata(channelY)
-                .getResponse(frequencyRaw, ResponseUnits.ACCELERATION);
+                .getResponse(spectrumSize, spectrumDeltaF, ResponseUnits.ACCELERATION);
 
 		// Will hold the 1-sided PSD magnitude
-		this.powerSpectrum = new double[frequencyRaw.length];
+		this.powerSpectrum = new double[spectrumSize];
 		this.powerSpectrum[0] = 0;
 
 			/*
 			 * We're computing the squared magnitude as we did with the FFT
 			 * above Start from k=1 to skip DC (k=0) where the response=0
 			 */
-		for (int k = 1; k < frequencyRaw.length; k++) {
+		for (int k = 1; k < spectrumSize; k++) {
             Complex responseMagnitude = instrumentResponseX[k].multiply(instrumentResponseY[k].conjugate());
             if (responseMagnitude.abs() == 0) {
                 throw new MetricPSDException("responseMagC[k]=0 --> divide by zero!\n");
@@ -83,6 +104,15 @@ public class CrossPower {
 		return Arrays.copyOf(powerSpectrum, powerSpectrum.length);
 	}
 
+	/**
+	 * Gets the number of frequencies of the spectrum without copying it.
+	 *
+	 * @return the spectrum length
+	 */
+	public int getSpectrumLength() {
+		return powerSpectrum.length;
+	}
+
 	public double getSpectrumDeltaF() {
 		return spectrumDeltaF;
 	}
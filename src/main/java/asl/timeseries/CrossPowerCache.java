@@ -0,0 +1,232 @@
+package asl.timeseries;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import asl.metadata.meta_new.ChannelMetaException;
+import asl.seedscan.metrics.MetricPSDException;
+
+/**
+ * Holds the CrossPowers of a day, shared by every metric of the day.
+ *
+ * Each CrossPower is computed once by whichever metric requests it first,
+ * metrics requesting it meanwhile wait for that computation. Failed
+ * computations aren't cached so later requests retry them.
+ *
+ * The heap held by the spectra is bounded. Once computed spectra exceed the
+ * budget the oldest are evicted and recomputed if requested again. Every
+ * change in the bytes held is reported, so the owner can count them against a
+ * wider memory budget.
+ */
+public class CrossPowerCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(asl.timeseries.CrossPowerCache.class);
+
+	/**
+	 * Computes a CrossPower missing from the cache.
+	 */
+	@FunctionalInterface
+	public interface Computation {
+		CrossPower compute() throws MetricPSDException, ChannelMetaException;
+	}
+
+	/** CrossPowers computed or being computed. */
+	private final ConcurrentHashMap<CrossPowerKey, CompletableFuture<CrossPower>> crossPowers = new ConcurrentHashMap<>();
+
+	/** Keys of computed CrossPowers, oldest first. */
+	private final ConcurrentLinkedQueue<CrossPowerKey> computed = new ConcurrentLinkedQueue<>();
+
+	/** Bytes the computed spectra may hold. */
+	private final long budget;
+
+	/** Bytes held by the computed spectra. Changed while holding this. */
+	private final AtomicLong cachedBytes = new AtomicLong();
+
+	/** Told of every change in cachedBytes. */
+	private final LongConsumer usage;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Instantiates a new cache.
+	 *
+	 * @param budget
+	 *            bytes the cached spectra may hold
+	 */
+	public CrossPowerCache(long budget) {
+		this(budget, bytes -> {
+		});
+	}
+
+	/**
+	 * Instantiates a new cache reporting the bytes it holds.
+	 *
+	 * @param budget
+	 *            bytes the cached spectra may hold
+	 * @param usage
+	 *            accepts the change in bytes held whenever CrossPowers are
+	 *            cached or dropped, negative when they are dropped
+	 */
+	public CrossPowerCache(long budget, LongConsumer usage) {
+		this.budget = budget;
+		this.usage = usage;
+	}
+
+	/**
+	 * Gets a CrossPower, computing it if it isn't cached.
+	 *
+	 * @param key
+	 *            the channels of the CrossPower
+	 * @param computation
+	 *            computes the CrossPower if it isn't cached
+	 * @return the CrossPower
+	 * @throws MetricPSDException
+	 *             if the CrossPower can't be computed
+	 * @throws ChannelMetaException
+	 *             if the channel metadata is unusable
+	 */
+	public CrossPower get(CrossPowerKey key, Computation computation)
+			throws MetricPSDException, ChannelMetaException {
+		CompletableFuture<CrossPower> future = new CompletableFuture<>();
+		CompletableFuture<CrossPower> existing = crossPowers.putIfAbsent(key, future);
+
+		if (existing != null) {
+			// Computed or being computed by another metric
+			hits.incrementAndGet();
+			try {
+				return existing.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof MetricPSDException) {
+					throw (MetricPSDException) cause;
+				} else if (cause instanceof ChannelMetaException) {
+					throw (ChannelMetaException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IllegalStateException("Unable to create CrossPower", cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MetricPSDException("Interrupted waiting for CrossPower " + key);
+			}
+		}
+
+		misses.incrementAndGet();
+		CrossPower crossPower;
+		try {
+			crossPower = computation.compute();
+		} catch (MetricPSDException | ChannelMetaException | RuntimeException e) {
+			// Let later requests retry
+			crossPowers.remove(key, future);
+			future.completeExceptionally(e);
+			throw e;
+		}
+		future.complete(crossPower);
+		store(key, future, crossPower);
+		return crossPower;
+	}
+
+	/**
+	 * Account for a newly computed CrossPower, evicting the oldest until the
+	 * rest fit the budget.
+	 */
+	private synchronized void store(CrossPowerKey key, CompletableFuture<CrossPower> future,
+			CrossPower crossPower) {
+		if (crossPowers.get(key) != future) {
+			// Cleared while computing
+			return;
+		}
+		computed.add(key);
+		long size = getSize(crossPower);
+		cachedBytes.addAndGet(size);
+		usage.accept(size);
+		evict();
+	}
+
+	/**
+	 * Evict the oldest CrossPowers until the rest fit the budget. Must hold
+	 * this.
+	 */
+	private void evict() {
+		while (cachedBytes.get() > budget) {
+			CrossPowerKey oldest = computed.poll();
+			if (oldest == null) {
+				return;
+			}
+			CompletableFuture<CrossPower> evicted = crossPowers.remove(oldest);
+			if (evicted != null) {
+				long size = getSize(evicted.join());
+				cachedBytes.addAndGet(-size);
+				usage.accept(-size);
+				evictions.incrementAndGet();
+				logger.debug("Evicted CrossPower {}", oldest);
+			}
+		}
+	}
+
+	private static long getSize(CrossPower crossPower) {
+		return (long) Double.BYTES * crossPower.getSpectrumLength();
+	}
+
+	/**
+	 * Gets the number of requests served from the cache, including requests
+	 * that waited for another request's computation.
+	 *
+	 * @return the hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of requests that computed their CrossPower.
+	 *
+	 * @return the misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of CrossPowers evicted to stay within the budget.
+	 *
+	 * @return the evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the bytes held by the cached spectra.
+	 *
+	 * @return the cached size in bytes
+	 */
+	public long getCachedBytes() {
+		return cachedBytes.get();
+	}
+
+	/**
+	 * Drop every cached CrossPower. CrossPowers being computed are still
+	 * handed to the metrics waiting for them.
+	 */
+	public synchronized void clear() {
+		crossPowers.clear();
+		computed.clear();
+		usage.accept(-cachedBytes.getAndSet(0));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CrossPowerCache hits=%d misses=%d evictions=%d bytes=%d", getHits(), getMisses(),
+				getEvictions(), getCachedBytes());
+	}
+}
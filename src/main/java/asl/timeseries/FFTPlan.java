@@ -0,0 +1,234 @@
+package asl.timeseries;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Radix-2 FFT of a fixed power of 2 size operating in place on separate real
+ * and imaginary arrays.
+ *
+ * A plan holds the twiddle factors and bit reversal permutation of its size.
+ * Plans are immutable once created, so the cached plan of a size is shared by
+ * all threads, see {@link #getPlan(int)}. Transforms don't allocate.
+ *
+ * Forward transforms are unnormalized and inverse transforms are scaled by
+ * 1/n, the same as the standard normalization of the Apache FFT.
+ */
+public final class FFTPlan {
+
+	private static final ConcurrentHashMap<Integer, FFTPlan> plans = new ConcurrentHashMap<>();
+
+	private final int size;
+
+	/**
+	 * cos(2 pi k / size) for k &lt; size / 2.
+	 */
+	private final double[] cos;
+
+	/**
+	 * sin(2 pi k / size) for k &lt; size / 2.
+	 */
+	private final double[] sin;
+
+	/**
+	 * Bit reversal permutation of size. The permutation of size / 2, used by
+	 * {@link #realForward(double[], int, double[], double[])}, is every
+	 * second entry.
+	 */
+	private final int[] reversed;
+
+	private FFTPlan(int size) {
+		this.size = size;
+		int half = size / 2;
+		cos = new double[half];
+		sin = new double[half];
+		for (int k = 0; k < half; k++) {
+			double angle = 2 * Math.PI * k / size;
+			cos[k] = Math.cos(angle);
+			sin[k] = Math.sin(angle);
+		}
+		reversed = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 1; i < size; i++) {
+			reversed[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+	}
+
+	/**
+	 * Gets the plan of a size, creating it on first use.
+	 *
+	 * @param size
+	 *            the transform size, a power of 2. See
+	 *            {@link FFTUtils#getPaddedSize(int)}
+	 * @return the shared plan
+	 * @throws IllegalArgumentException
+	 *             if size isn't a power of 2
+	 */
+	public static FFTPlan getPlan(int size) {
+		if (size < 1 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size must be a power of 2: " + size);
+		}
+		FFTPlan plan = plans.get(size);
+		if (plan == null) {
+			plan = plans.computeIfAbsent(size, FFTPlan::new);
+		}
+		return plan;
+	}
+
+	/**
+	 * Gets the transform size.
+	 *
+	 * @return the number of points transformed
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Forward complex FFT in place.
+	 *
+	 * @param re
+	 *            real parts, at least size long
+	 * @param im
+	 *            imaginary parts, at least size long
+	 */
+	public void forward(double[] re, double[] im) {
+		checkLength(re, im, size);
+		transform(re, im, size, 1, false);
+	}
+
+	/**
+	 * Inverse complex FFT in place, scaled by 1/size.
+	 *
+	 * @param re
+	 *            real parts, at least size long
+	 * @param im
+	 *            imaginary parts, at least size long
+	 */
+	public void inverse(double[] re, double[] im) {
+		checkLength(re, im, size);
+		transform(re, im, size, 1, true);
+		double scale = 1.0 / size;
+		for (int i = 0; i < size; i++) {
+			re[i] *= scale;
+			im[i] *= scale;
+		}
+	}
+
+	/**
+	 * Forward FFT of real data, returning the non-negative frequencies. The
+	 * data is packed into a complex transform of half the size, which is then
+	 * separated into the spectrum of the real data.
+	 *
+	 * @param data
+	 *            the real data
+	 * @param length
+	 *            number of points of data used, at most size. The rest is
+	 *            zero padded.
+	 * @param re
+	 *            receives the real parts of bins 0 to size / 2, at least
+	 *            size / 2 + 1 long
+	 * @param im
+	 *            receives the imaginary parts of bins 0 to size / 2, at least
+	 *            size / 2 + 1 long
+	 */
+	public void realForward(double[] data, int length, double[] re, double[] im) {
+		if (length > size || length > data.length) {
+			throw new IllegalArgumentException(
+					"Data length " + length + " exceeds FFT size " + size + " or data");
+		}
+		int half = size / 2;
+		checkLength(re, im, half + 1);
+		if (size == 1) {
+			re[0] = length > 0 ? data[0] : 0;
+			im[0] = 0;
+			return;
+		}
+
+		// Even points become the real parts, odd points the imaginary parts.
+		for (int k = 0; k < half; k++) {
+			int even = 2 * k;
+			re[k] = even < length ? data[even] : 0;
+			im[k] = even + 1 < length ? data[even + 1] : 0;
+		}
+		transform(re, im, half, 2, false);
+
+		// X[k] = E[k] + W^k O[k] and X[half - k] = conj(E[k] - W^k O[k]),
+		// where E and O are the transforms of the even and odd points.
+		double z0r = re[0];
+		double z0i = im[0];
+		re[0] = z0r + z0i;
+		im[0] = 0;
+		re[half] = z0r - z0i;
+		im[half] = 0;
+		for (int k = 1, j = half - 1; k <= j; k++, j--) {
+			double ar = re[k];
+			double ai = im[k];
+			double br = re[j];
+			double bi = im[j];
+			double er = 0.5 * (ar + br);
+			double ei = 0.5 * (ai - bi);
+			double or = 0.5 * (ai + bi);
+			double oi = -0.5 * (ar - br);
+			double wr = cos[k];
+			double wi = -sin[k];
+			double tr = wr * or - wi * oi;
+			double ti = wr * oi + wi * or;
+			re[k] = er + tr;
+			im[k] = ei + ti;
+			re[j] = er - tr;
+			im[j] = ti - ei;
+		}
+	}
+
+	/**
+	 * Unnormalized complex transform of the first n points.
+	 *
+	 * @param n
+	 *            size / stride
+	 * @param stride
+	 *            1 for a transform of the plan's size, 2 for half of it
+	 * @param inverse
+	 *            true for the inverse transform
+	 */
+	private void transform(double[] re, double[] im, int n, int stride, boolean inverse) {
+		for (int i = 0; i < n; i++) {
+			int j = reversed[i * stride];
+			if (i < j) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+
+		double sign = inverse ? 1 : -1;
+		for (int span = 1; span < n; span <<= 1) {
+			// Twiddles of a 2 * span transform are every step'th twiddle of
+			// the plan.
+			int step = size / (2 * span);
+			for (int start = 0; start < n; start += 2 * span) {
+				for (int k = 0; k < span; k++) {
+					double wr = cos[k * step];
+					double wi = sign * sin[k * step];
+					int even = start + k;
+					int odd = even + span;
+					double hr = wr * re[odd] - wi * im[odd];
+					double hi = wr * im[odd] + wi * re[odd];
+					re[odd] = re[even] - hr;
+					im[odd] = im[even] - hi;
+					re[even] += hr;
+					im[even] += hi;
+				}
+			}
+		}
+	}
+
+	private static void checkLength(double[] re, double[] im, int length) {
+		if (re.length < length || im.length < length) {
+			throw new IllegalArgumentException(
+					"FFT arrays must have at least " + length + " points");
+		}
+	}
+}
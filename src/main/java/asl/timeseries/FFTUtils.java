@@ -1,67 +1,16 @@
 package asl.timeseries;
 
 import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 
 /**
- * FFTUtils is a wrapper for the Apache FFT library.
+ * FFTUtils adapts {@link FFTPlan} to callers using Complex arrays. New code
+ * should use the plans directly, which avoid allocating a Complex per point.
  * 
  * @author James Holland - USGS
  *
  */
 public class FFTUtils {
 
-	/**
-	 * Returns the first half + 1 of the FFT.
-	 *
-	 * @param fullFFT
-	 *            the full fft
-	 * @return first half of the FFT
-	 */
-	private static Complex[] getFirstSide(Complex[] fullFFT) {
-
-		Complex[] halfFFT = new Complex[fullFFT.length / 2 + 1];
-
-		System.arraycopy(fullFFT, 0, halfFFT, 0, halfFFT.length);
-
-		return halfFFT;
-	}
-
-	/**
-	 * Zero pads an array of doubles to a length that is a power of 2.
-	 * 
-	 * @param data
-	 *            Complex[] to pad
-	 * @return the new 0 padded Complex[]
-	 */
-	private static Complex[] getPaddedData(Complex[] data) {
-		Complex[] paddedData = new Complex[getPaddedSize(data.length)];
-		System.arraycopy(data, 0, paddedData, 0, data.length);
-
-		for (int i = data.length; i < paddedData.length; i++) {
-			paddedData[i] = Complex.ZERO;
-		}
-
-		return paddedData;
-	}
-
-	/**
-	 * Zero pads an array of doubles to a length that is a power of 2.
-	 * 
-	 * @param data
-	 *            double[] to pad
-	 * @return the new 0 padded double[]
-	 */
-	private static double[] getPaddedData(double[] data) {
-		double[] paddedData = new double[getPaddedSize(data.length)];
-		// Default value of double is 0 in java.
-		System.arraycopy(data, 0, paddedData, 0, data.length);
-
-		return paddedData;
-	}
-
 	/**
 	 * Calculates the next largest or equal power of 2 based on a length.
 	 * 
@@ -103,9 +52,15 @@ public class FFTUtils {
 	 * @return padded inverse FFT
 	 */
 	public static Complex[] inverseFFT(Complex[] data) {
-		Complex[] paddedData = getPaddedData(data);
-		FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
-		return fft.transform(paddedData, TransformType.INVERSE);
+		int paddedSize = getPaddedSize(data.length);
+		double[] re = new double[paddedSize];
+		double[] im = new double[paddedSize];
+		for (int i = 0; i < data.length; i++) {
+			re[i] = data[i].getReal();
+			im[i] = data[i].getImaginary();
+		}
+		FFTPlan.getPlan(paddedSize).inverse(re, im);
+		return toComplex(re, im, paddedSize);
 	}
 
 	/**
@@ -116,12 +71,30 @@ public class FFTUtils {
 	 * @return one side of a padded FFT.
 	 */
 	public static Complex[] singleSidedFFT(double[] data) {
-		double[] paddedData = getPaddedData(data);
-
-		FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
-		Complex[] fullFFT = fft.transform(paddedData, TransformType.FORWARD);
+		int paddedSize = getPaddedSize(data.length);
+		double[] re = new double[paddedSize / 2 + 1];
+		double[] im = new double[paddedSize / 2 + 1];
+		FFTPlan.getPlan(paddedSize).realForward(data, data.length, re, im);
+		return toComplex(re, im, re.length);
+	}
 
-		return getFirstSide(fullFFT);
+	/**
+	 * Combines separate real and imaginary parts.
+	 * 
+	 * @param re
+	 *            real parts
+	 * @param im
+	 *            imaginary parts
+	 * @param length
+	 *            number of points to combine
+	 * @return Complex[] of the points
+	 */
+	private static Complex[] toComplex(double[] re, double[] im, int length) {
+		Complex[] data = new Complex[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = new Complex(re[i], im[i]);
+		}
+		return data;
 	}
 
 }
@@ -6,15 +6,22 @@ import org.apache.commons.math3.complex.Complex;
 
 /**
  * The Class PSD.
- * This computes PSDs and stores their outputs.
+ * This computes PSDs and stores their outputs. The computation is done by
+ * {@link WelchPSD} on primitive arrays.
  *
  * @author Mike Hagerty  - hagertmb@bc.edu
  * @author James Holland - USGS
  */
 public class PSD {
 	
-	/** The powers of the PSD. */
-	private Complex[] psd = null;
+	/** The real parts of the powers of the PSD. */
+	private double[] psdReal = null;
+
+	/** The imaginary parts of the powers of the PSD. */
+	private double[] psdImaginary = null;
+
+	/** The powers of the PSD, created from psdReal and psdImaginary when first requested. */
+	private volatile Complex[] psd = null;
 	
 	/** The frequencies that correspond with psd. */
 	private double[] frequencies = null;
@@ -44,6 +51,20 @@ public class PSD {
 	 * @throws RuntimeException if dataX.length != dataY.length or period <= 0
 	 */
 	public PSD(double[] dataX, double[] dataY, double period) throws RuntimeException {
+		this(dataX, dataY, period, false);
+	}
+
+	/**
+	 * Instantiates a new PSD, optionally transforming its segments in parallel.
+	 * Also computes the PSD based on the passed data.
+	 *
+	 * @param dataX the x data array
+	 * @param dataY the y data array, if this is identical to dataX it is not stored. The PSD is computed using dataX only.
+	 * @param period the period, must be greater than 0.
+	 * @param parallel true to transform the segments on the common fork join pool
+	 * @throws RuntimeException if dataX.length != dataY.length or period <= 0
+	 */
+	public PSD(double[] dataX, double[] dataY, double period, boolean parallel) throws RuntimeException {
 		if (dataX.length != dataY.length) {
 			throw new RuntimeException("== ndataX != ndataY --> Can't create new PSD");
 		}
@@ -61,7 +82,7 @@ public class PSD {
 		}
 		this.dataSize = dataX.length;
 		this.period = period;
-		computePSD();
+		computePSD(parallel);
 	}
 
 	/**
@@ -70,7 +91,33 @@ public class PSD {
 	 * @return the spectrum
 	 */
 	public final Complex[] getSpectrum() {
-		return psd;
+		Complex[] spectrum = psd;
+		if (spectrum == null) {
+			spectrum = new Complex[psdReal.length];
+			for (int k = 0; k < spectrum.length; k++) {
+				spectrum[k] = new Complex(psdReal[k], psdImaginary[k]);
+			}
+			psd = spectrum;
+		}
+		return spectrum;
+	}
+
+	/**
+	 * Gets the real parts of the spectrum without creating Complex objects.
+	 *
+	 * @return the real parts, indexed the same as getFreq()
+	 */
+	public final double[] getSpectrumReal() {
+		return psdReal;
+	}
+
+	/**
+	 * Gets the imaginary parts of the spectrum without creating Complex objects.
+	 *
+	 * @return the imaginary parts, indexed the same as getFreq()
+	 */
+	public final double[] getSpectrumImaginary() {
+		return psdImaginary;
 	}
 
 	/**
@@ -98,9 +145,10 @@ public class PSD {
 	 * @return the magnitude
 	 */
 	public double[] getMagnitude() {
+		Complex[] spectrum = getSpectrum();
 		double[] specMag = new double[frequencies.length];
 		for (int k = 0; k < frequencies.length; k++) {
-			specMag[k] = psd[k].abs();
+			specMag[k] = spectrum[k].abs();
 		}
 		return specMag;
 	}
@@ -119,8 +167,9 @@ public class PSD {
 	 * psd[f] - Contains smoothed crosspower-spectral density computed for nf =
 	 * nfft/2 + 1 frequencies (+ve freqs + DC + Nyq)
 	 * 
+	 * @param parallel true to transform the segments in parallel
 	 */
-	private void computePSD() {
+	private void computePSD(boolean parallel) {
 
 		// Compute PSD using the following algorithm:
 		// Break up the data (one day) into 13 overlapping segments of 75%
@@ -129,117 +178,20 @@ public class PSD {
 		// Zero pad to a power of 2
 		// Compute FFT
 		// Average all 13 FFTs
+		// Smooth over 11 neighboring frequencies
 		// Remove response (not done in this routine)
-
-		// For 13 windows with 75% overlap, each window will contain dataSize/4
-		// points
 		// TODO: Still need to handle the case of multiple datasets with gaps!
 
-		int segmentSize = dataSize / 4;
-		int segmentOffsetSize = segmentSize / 4;
-
-		// Find smallest power of 2 >= segmentSize:
-		int paddedSegmentSize = FFTUtils.getPaddedSize(segmentSize);
+		int singleSideSize = WelchPSD.getSpectrumSize(dataSize);
+		deltaFrequency = WelchPSD.getDeltaF(dataSize, period);
 
-		int singleSideSize = paddedSegmentSize / 2 + 1;
-		deltaFrequency = 1. / (paddedSegmentSize * period);
-
-		psd = new Complex[singleSideSize];
-		double wss = 0.;
-
-		int numberSegmentsProcessed = 0;
-		int segmentLastIndex = segmentSize;
-		int offset = 0;
-
-		for (int k = 0; k < singleSideSize; k++) {
-			psd[k] = Complex.ZERO;
-		}
-
-		while (segmentLastIndex <= dataSize)
-		{
-			Complex[] xfft = null;
-			Complex[] yfft = null;
-			
-			//Using Arrays.copyOfRange() is better than a loop when dealing with HH data.
-			double[] xseg = Arrays.copyOfRange(dataX, offset, segmentLastIndex);
-			TimeseriesUtils.detrend(xseg);
-			TimeseriesUtils.demean(xseg);
-			wss = TimeseriesUtils.costaper(xseg, .10);
-			xfft = FFTUtils.singleSidedFFT(xseg);
-			
-			//Only use yseg if dataY actually exists. Cuts computation time in half.
-			if(dataY != null){
-				double[] yseg = Arrays.copyOfRange(dataY, offset, segmentLastIndex);
-				TimeseriesUtils.detrend(yseg);
-				TimeseriesUtils.demean(yseg);
-				wss = TimeseriesUtils.costaper(yseg, .10);
-				yfft = FFTUtils.singleSidedFFT(yseg);
-			}
-			else{
-				//Since dataY is null, dataY must have been equal to dataX
-				yfft = xfft;
-			}
-
-			// Load up the 1-sided PSD:
-			for (int k = 0; k < singleSideSize; k++) {
-				psd[k] = psd[k].add(xfft[k].multiply(yfft[k].conjugate()));
-			}
-
-			numberSegmentsProcessed++;
-			offset += segmentOffsetSize;
-			segmentLastIndex += segmentOffsetSize;
-		}
-
-		// Divide the summed psd[]'s by the number of windows (=13) AND
-		// Normalize the PSD ala Bendat & Piersol, to units of (time series)^2 /
-		// Hz AND
-		// At same time, correct for loss of power in window due to 10% cosine
-		// taper
-
-		double psdNormalization = 2.0 * period / (double) paddedSegmentSize;
-		double windowCorrection = wss / (double) segmentSize; // =.875 for 10%
-															// cosine taper
-		psdNormalization = psdNormalization / windowCorrection;
-		psdNormalization = psdNormalization / (double) numberSegmentsProcessed;
+		psdReal = new double[singleSideSize];
+		psdImaginary = new double[singleSideSize];
+		WelchPSD.compute(dataX, dataY, period, psdReal, psdImaginary, parallel);
 
 		frequencies = new double[singleSideSize];
-
 		for (int k = 0; k < singleSideSize; k++) {
-			psd[k] = psd[k].multiply(psdNormalization);
 			frequencies[k] = (double) k * deltaFrequency;
 		}
-
-		// We have psdC[f] so this is a good point to do any smoothing over
-		// neighboring frequencies:
-		int nsmooth = 11;
-		int nhalf = 5;
-		Complex[] psdCFsmooth = new Complex[singleSideSize];
-
-		int iw = 0;
-
-		for (iw = 0; iw < nhalf; iw++) {
-			psdCFsmooth[iw] = psd[iw];
-		}
-
-		// iw is really icenter of nsmooth point window
-		for (; iw < singleSideSize - nhalf; iw++) {
-			int k1 = iw - nhalf;
-			int k2 = iw + nhalf;
-
-			Complex sumC = Complex.ZERO;
-			for (int k = k1; k < k2; k++) {
-				sumC = sumC.add(psd[k]);
-			}
-			psdCFsmooth[iw] = sumC.divide((double) nsmooth);
-		}
-
-		// Copy the remaining point into the smoothed array
-		for (; iw < singleSideSize; iw++) {
-			psdCFsmooth[iw] = psd[iw];
-		}
-
-		// Copy Frequency smoothed spectrum back into psd[f] and proceed as
-		// before
-		System.arraycopy(psdCFsmooth, 0, psd, 0, singleSideSize);
 	}
 }
@@ -0,0 +1,77 @@
+package asl.timeseries;
+
+/**
+ * The tapered segment spectra of one series, computed by
+ * {@link WelchPSD#computeSegments(double[])}. Power and cross power spectral
+ * densities of series are formed from their segment spectra by
+ * {@link WelchPSD#compute(SegmentSpectra, SegmentSpectra, double, double[], double[])},
+ * so a series shared by several spectra is only transformed once.
+ *
+ * Instances are immutable once computed and may be shared between threads.
+ */
+public final class SegmentSpectra {
+
+	/** The number of points of the series. */
+	final int dataSize;
+
+	/** The number of points of each segment before padding. */
+	final int segmentSize;
+
+	/** The size each segment was padded to. */
+	final int paddedSegmentSize;
+
+	/** The power of the cosine taper, the same for every segment. */
+	final double wss;
+
+	/** Real parts of the spectra, by segment and frequency. */
+	final double[][] re;
+
+	/** Imaginary parts of the spectra, by segment and frequency. */
+	final double[][] im;
+
+	SegmentSpectra(int dataSize, int segmentSize, int paddedSegmentSize, double wss, double[][] re,
+			double[][] im) {
+		this.dataSize = dataSize;
+		this.segmentSize = segmentSize;
+		this.paddedSegmentSize = paddedSegmentSize;
+		this.wss = wss;
+		this.re = re;
+		this.im = im;
+	}
+
+	/**
+	 * Gets the number of points of the series.
+	 *
+	 * @return the series length
+	 */
+	public int getDataSize() {
+		return dataSize;
+	}
+
+	/**
+	 * Gets the number of segments.
+	 *
+	 * @return the number of overlapping segments
+	 */
+	public int getNumberSegments() {
+		return re.length;
+	}
+
+	/**
+	 * Gets the number of frequencies of each segment spectrum.
+	 *
+	 * @return the padded segment size / 2 + 1
+	 */
+	public int getSpectrumSize() {
+		return paddedSegmentSize / 2 + 1;
+	}
+
+	/**
+	 * Gets the approximate heap held by the spectra.
+	 *
+	 * @return the size in bytes
+	 */
+	public long getSizeInBytes() {
+		return 2L * Double.BYTES * getNumberSegments() * getSpectrumSize();
+	}
+}
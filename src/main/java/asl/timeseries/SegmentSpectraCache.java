@@ -0,0 +1,193 @@
+package asl.timeseries;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the {@link SegmentSpectra} of a day's channels, so the power spectra
+ * of a channel and its cross power spectra with other channels share the
+ * transforms of its segments.
+ *
+ * Each channel's spectra are computed once, threads requesting spectra being
+ * computed wait for them. The heap held by computed spectra is bounded: when
+ * new spectra don't fit, the largest cached spectra are evicted first, since
+ * they free the most memory and the channels of lower sample rates are cheap
+ * to keep. Spectra larger than the whole budget aren't computed at all, their
+ * size is known from the data length, and callers compute their spectra
+ * segment by segment instead. Every change
+ * in the bytes held is reported, so the owner can count them against a wider
+ * memory budget.
+ */
+public class SegmentSpectraCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(asl.timeseries.SegmentSpectraCache.class);
+
+	/** Bytes computed spectra may hold. */
+	private final long budget;
+
+	/** Spectra computed or being computed, by channel. Guarded by this. */
+	private final Map<String, CompletableFuture<SegmentSpectra>> entries = new HashMap<>();
+
+	/** Bytes held by the computed spectra in entries. Guarded by this. */
+	private long cachedBytes = 0;
+
+	/** Told of every change in cachedBytes. */
+	private final LongConsumer usage;
+
+	/**
+	 * Instantiates a new cache.
+	 *
+	 * @param budget
+	 *            bytes the cached spectra may hold
+	 */
+	public SegmentSpectraCache(long budget) {
+		this(budget, bytes -> {
+		});
+	}
+
+	/**
+	 * Instantiates a new cache reporting the bytes it holds.
+	 *
+	 * @param budget
+	 *            bytes the cached spectra may hold
+	 * @param usage
+	 *            accepts the change in bytes held whenever spectra are cached
+	 *            or dropped, negative when they are dropped
+	 */
+	public SegmentSpectraCache(long budget, LongConsumer usage) {
+		this.budget = budget;
+		this.usage = usage;
+	}
+
+	/**
+	 * Gets the spectra of a channel, computing them if they aren't cached.
+	 *
+	 * @param key
+	 *            identifies the channel
+	 * @param dataSize
+	 *            the length of the channel's series
+	 * @param data
+	 *            supplies the channel's series if the spectra must be computed
+	 * @return the segment spectra, null if they would be larger than the
+	 *         whole budget
+	 * @throws RuntimeException
+	 *             if the spectra can't be computed
+	 */
+	public SegmentSpectra get(String key, int dataSize, Supplier<double[]> data) throws RuntimeException {
+		long size = WelchPSD.getSegmentSpectraSize(dataSize);
+		if (size > budget) {
+			logger.debug("Segment spectra of {} ({} bytes) exceed the cache budget, not computing", key, size);
+			return null;
+		}
+
+		CompletableFuture<SegmentSpectra> future;
+		boolean compute = false;
+		synchronized (this) {
+			future = entries.get(key);
+			if (future == null) {
+				future = new CompletableFuture<>();
+				entries.put(key, future);
+				compute = true;
+			}
+		}
+
+		if (!compute) {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+
+		SegmentSpectra spectra;
+		try {
+			spectra = WelchPSD.computeSegments(data.get());
+		} catch (RuntimeException e) {
+			// Let later requests retry
+			synchronized (this) {
+				entries.remove(key, future);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		}
+		store(key, future, spectra);
+		future.complete(spectra);
+		return spectra;
+	}
+
+	/**
+	 * Account for newly computed spectra, evicting the largest cached spectra
+	 * until they fit.
+	 */
+	private synchronized void store(String key, CompletableFuture<SegmentSpectra> future, SegmentSpectra spectra) {
+		long size = spectra.getSizeInBytes();
+		if (entries.get(key) != future) {
+			// Cleared while computing
+			return;
+		}
+		while (cachedBytes + size > budget) {
+			String largestKey = null;
+			long largestSize = -1;
+			for (Map.Entry<String, CompletableFuture<SegmentSpectra>> entry : entries.entrySet()) {
+				CompletableFuture<SegmentSpectra> cached = entry.getValue();
+				if (cached != future && cached.isDone() && !cached.isCompletedExceptionally()) {
+					long cachedSize = cached.join().getSizeInBytes();
+					if (cachedSize > largestSize) {
+						largestKey = entry.getKey();
+						largestSize = cachedSize;
+					}
+				}
+			}
+			if (largestKey == null) {
+				break;
+			}
+			logger.debug("Evicting segment spectra of {} ({} bytes)", largestKey, largestSize);
+			entries.remove(largestKey);
+			cachedBytes -= largestSize;
+			usage.accept(-largestSize);
+		}
+		cachedBytes += size;
+		usage.accept(size);
+	}
+
+	/**
+	 * Gets the bytes held by the cached spectra.
+	 *
+	 * @return the cached size in bytes
+	 */
+	public synchronized long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	/**
+	 * Checks if the spectra of a channel are cached.
+	 *
+	 * @param key
+	 *            identifies the channel
+	 * @return true, if the spectra are computed and cached
+	 */
+	public synchronized boolean contains(String key) {
+		CompletableFuture<SegmentSpectra> future = entries.get(key);
+		return future != null && future.isDone() && !future.isCompletedExceptionally();
+	}
+
+	/**
+	 * Drop every cached spectrum.
+	 */
+	public synchronized void clear() {
+		// Spectra being computed are still handed to the threads waiting for them.
+		entries.clear();
+		usage.accept(-cachedBytes);
+		cachedBytes = 0;
+	}
+}
@@ -13,7 +13,18 @@ public class TimeseriesUtils {
 	 *            array to detrend.
 	 */
 	public static void detrend(double[] timeseries) {
-		int ndata = timeseries.length;
+		detrend(timeseries, timeseries.length);
+	}
+
+	/**
+	 * Performs an in place detrend on the first ndata points of an array.
+	 * 
+	 * @param timeseries
+	 *            array to detrend.
+	 * @param ndata
+	 *            number of points to detrend
+	 */
+	public static void detrend(double[] timeseries, int ndata) {
 		double sumx = 0.0;
 		double sumxx = 0.0;
 		double sumy = 0.0;
@@ -46,15 +57,29 @@ public class TimeseriesUtils {
 	 *             if timeseries.length == 0
 	 */
 	public static void demean(double[] timeseries) throws RuntimeException {
+		demean(timeseries, timeseries.length);
+	}
+
+	/**
+	 * Performs an in place demean on the first ndata points of an array.
+	 * 
+	 * @param timeseries
+	 *            demeaned in place.
+	 * @param ndata
+	 *            number of points to demean
+	 * @throws RuntimeException
+	 *             if ndata == 0
+	 */
+	public static void demean(double[] timeseries, int ndata) throws RuntimeException {
 		double mean = 0;
-		for (int i = 0; i < timeseries.length; i++) {
+		for (int i = 0; i < ndata; i++) {
 			mean += timeseries[i];
 		}
-		if (timeseries.length == 0) {
+		if (ndata == 0) {
 			throw new RuntimeException("debias: timeseries.length=0 --> No data!");
 		} else {
-			mean /= (double) timeseries.length;
-			for (int i = 0; i < timeseries.length; i++) {
+			mean /= (double) ndata;
+			for (int i = 0; i < ndata; i++) {
 				timeseries[i] -= mean;
 			}
 		}
@@ -68,7 +93,18 @@ public class TimeseriesUtils {
 	 * @return double related to power loss from taper.
 	 */
 	public static double costaper(double[] timeseries, double width) {
-		int n = timeseries.length;
+		return costaper(timeseries, timeseries.length, width);
+	}
+
+	/**
+	 * Performs an in place cosine taper on the first n points of an array.
+	 * 
+	 * @param timeseries time series
+	 * @param n number of points to taper
+	 * @param width width of cosine taper
+	 * @return double related to power loss from taper.
+	 */
+	public static double costaper(double[] timeseries, int n, double width) {
 		double ramp = width * (double) n;
 		double taper;
 		double Wss = 0;
@@ -0,0 +1,431 @@
+package asl.timeseries;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Computes smoothed cross power spectral densities on primitive arrays. This is
+ * the engine behind {@link PSD}, see {@link PSD} for the algorithm.
+ *
+ * Segments are prepared and transformed in per-thread workspaces that are
+ * reused between calls, so apart from the output a computation doesn't
+ * allocate. Workspaces are softly referenced and may be reclaimed when memory
+ * is short.
+ *
+ * Series used by several spectra can instead be transformed once with
+ * {@link #computeSegments(double[])}, forming each spectrum from the stored
+ * segment spectra.
+ *
+ * @author James Holland - USGS
+ */
+public final class WelchPSD {
+
+	/**
+	 * Width of the cosine taper applied to each segment.
+	 */
+	private static final double TAPER_WIDTH = .10;
+
+	/**
+	 * Divisor of the frequency smoothing. Only NSMOOTH - 1 neighboring
+	 * frequencies are summed, as the original implementation did.
+	 */
+	private static final int NSMOOTH = 11;
+
+	/**
+	 * Frequencies at either end which aren't smoothed.
+	 */
+	private static final int NHALF = 5;
+
+	private static final ThreadLocal<SoftReference<Workspace>> workspaces = new ThreadLocal<>();
+
+	/**
+	 * Buffers of one thread.
+	 */
+	private static class Workspace {
+
+		private double[] segmentX = new double[0];
+		private double[] segmentY = new double[0];
+		private double[] fftXRe = new double[0];
+		private double[] fftXIm = new double[0];
+		private double[] fftYRe = new double[0];
+		private double[] fftYIm = new double[0];
+		private double[] prefixRe = new double[0];
+		private double[] prefixIm = new double[0];
+		private double[] suffixRe = new double[0];
+		private double[] suffixIm = new double[0];
+
+		private void ensureSegment(int segmentSize, int singleSideSize) {
+			if (segmentX.length < segmentSize) {
+				segmentX = new double[segmentSize];
+				segmentY = new double[segmentSize];
+			}
+			if (fftXRe.length < singleSideSize) {
+				fftXRe = new double[singleSideSize];
+				fftXIm = new double[singleSideSize];
+				fftYRe = new double[singleSideSize];
+				fftYIm = new double[singleSideSize];
+			}
+		}
+
+		private void ensureSmoothing(int singleSideSize) {
+			if (prefixRe.length < singleSideSize) {
+				prefixRe = new double[singleSideSize];
+				prefixIm = new double[singleSideSize];
+				suffixRe = new double[singleSideSize];
+				suffixIm = new double[singleSideSize];
+			}
+		}
+	}
+
+	private WelchPSD() {
+	}
+
+	/**
+	 * Gets the calling thread's workspace.
+	 */
+	private static Workspace getWorkspace() {
+		SoftReference<Workspace> reference = workspaces.get();
+		Workspace workspace = reference != null ? reference.get() : null;
+		if (workspace == null) {
+			workspace = new Workspace();
+			workspaces.set(new SoftReference<>(workspace));
+		}
+		return workspace;
+	}
+
+	/**
+	 * Gets the number of frequencies of the spectrum of a data length.
+	 *
+	 * @param dataSize
+	 *            the number of data points
+	 * @return the padded segment size / 2 + 1
+	 */
+	public static int getSpectrumSize(int dataSize) {
+		return FFTUtils.getPaddedSize(dataSize / 4) / 2 + 1;
+	}
+
+	/**
+	 * Gets the frequency delta of the spectrum of a data length.
+	 *
+	 * @param dataSize
+	 *            the number of data points
+	 * @param period
+	 *            the sample period
+	 * @return the change in frequency between spectral densities
+	 */
+	public static double getDeltaF(int dataSize, double period) {
+		return 1. / (FFTUtils.getPaddedSize(dataSize / 4) * period);
+	}
+
+	/**
+	 * Compute the smoothed cross power spectral density of two series.
+	 *
+	 * @param dataX
+	 *            the x data
+	 * @param dataY
+	 *            the y data, same length as dataX. Null to compute the power
+	 *            spectral density of dataX.
+	 * @param period
+	 *            the sample period, greater than 0
+	 * @param re
+	 *            receives the real parts of the spectrum, at least
+	 *            {@link #getSpectrumSize(int)} long
+	 * @param im
+	 *            receives the imaginary parts of the spectrum, at least
+	 *            {@link #getSpectrumSize(int)} long
+	 * @param parallel
+	 *            true to transform the segments on the common fork join pool.
+	 *            The result may then differ in the last bits.
+	 * @throws RuntimeException
+	 *             if there is too little data to form overlapping segments
+	 */
+	public static void compute(double[] dataX, double[] dataY, double period, double[] re, double[] im,
+			boolean parallel) throws RuntimeException {
+		int dataSize = dataX.length;
+		int segmentSize = dataSize / 4;
+		int segmentOffsetSize = getSegmentOffsetSize(dataSize);
+
+		int paddedSegmentSize = FFTUtils.getPaddedSize(segmentSize);
+		int singleSideSize = paddedSegmentSize / 2 + 1;
+		FFTPlan plan = FFTPlan.getPlan(paddedSegmentSize);
+		int numberSegments = (dataSize - segmentSize) / segmentOffsetSize + 1;
+
+		Arrays.fill(re, 0, singleSideSize, 0.);
+		Arrays.fill(im, 0, singleSideSize, 0.);
+		double wss;
+		if (parallel && numberSegments > 1) {
+			int chunks = Math.min(numberSegments, Runtime.getRuntime().availableProcessors());
+			double[][] chunkRe = new double[chunks][];
+			double[][] chunkIm = new double[chunks][];
+			chunkRe[0] = re;
+			chunkIm[0] = im;
+			for (int c = 1; c < chunks; c++) {
+				chunkRe[c] = new double[singleSideSize];
+				chunkIm[c] = new double[singleSideSize];
+			}
+			double[] chunkWss = new double[chunks];
+			IntStream.range(0, chunks).parallel().forEach(c -> chunkWss[c] = accumulate(dataX, dataY,
+					c * numberSegments / chunks, (c + 1) * numberSegments / chunks, segmentSize,
+					segmentOffsetSize, plan, chunkRe[c], chunkIm[c]));
+			// Combine in a fixed order so the result doesn't depend on scheduling.
+			for (int c = 1; c < chunks; c++) {
+				for (int k = 0; k < singleSideSize; k++) {
+					re[k] += chunkRe[c][k];
+					im[k] += chunkIm[c][k];
+				}
+			}
+			wss = chunkWss[chunks - 1];
+		} else {
+			wss = accumulate(dataX, dataY, 0, numberSegments, segmentSize, segmentOffsetSize, plan, re, im);
+		}
+
+		normalize(re, im, period, segmentSize, paddedSegmentSize, wss, numberSegments);
+	}
+
+	/**
+	 * Gets the heap {@link #computeSegments(double[])} needs for the segment
+	 * spectra of a data length, without computing them.
+	 *
+	 * @param dataSize
+	 *            the number of data points
+	 * @return the size of the segment spectra in bytes, see
+	 *         {@link SegmentSpectra#getSizeInBytes()}
+	 * @throws RuntimeException
+	 *             if there is too little data to form overlapping segments
+	 */
+	public static long getSegmentSpectraSize(int dataSize) throws RuntimeException {
+		int segmentSize = dataSize / 4;
+		int segmentOffsetSize = getSegmentOffsetSize(dataSize);
+		int singleSideSize = FFTUtils.getPaddedSize(segmentSize) / 2 + 1;
+		int numberSegments = (dataSize - segmentSize) / segmentOffsetSize + 1;
+		return 2L * Double.BYTES * numberSegments * singleSideSize;
+	}
+
+	/**
+	 * Transform the tapered segments of a series, to be combined into spectra
+	 * by {@link #compute(SegmentSpectra, SegmentSpectra, double, double[], double[])}.
+	 *
+	 * @param data
+	 *            the series
+	 * @return the spectrum of each segment
+	 * @throws RuntimeException
+	 *             if there is too little data to form overlapping segments
+	 */
+	public static SegmentSpectra computeSegments(double[] data) throws RuntimeException {
+		int dataSize = data.length;
+		int segmentSize = dataSize / 4;
+		int segmentOffsetSize = getSegmentOffsetSize(dataSize);
+		int paddedSegmentSize = FFTUtils.getPaddedSize(segmentSize);
+		int singleSideSize = paddedSegmentSize / 2 + 1;
+		FFTPlan plan = FFTPlan.getPlan(paddedSegmentSize);
+		int numberSegments = (dataSize - segmentSize) / segmentOffsetSize + 1;
+
+		Workspace workspace = getWorkspace();
+		workspace.ensureSegment(segmentSize, singleSideSize);
+		double[][] re = new double[numberSegments][singleSideSize];
+		double[][] im = new double[numberSegments][singleSideSize];
+		double wss = 0.;
+		for (int segment = 0; segment < numberSegments; segment++) {
+			wss = prepareSegment(data, segment * segmentOffsetSize, segmentSize, workspace.segmentX);
+			plan.realForward(workspace.segmentX, segmentSize, re[segment], im[segment]);
+		}
+		return new SegmentSpectra(dataSize, segmentSize, paddedSegmentSize, wss, re, im);
+	}
+
+	/**
+	 * Compute the smoothed cross power spectral density of two series from
+	 * their segment spectra. The result is the same as
+	 * {@link #compute(double[], double[], double, double[], double[], boolean)}
+	 * on the series.
+	 *
+	 * @param spectraX
+	 *            the segment spectra of the x data
+	 * @param spectraY
+	 *            the segment spectra of the y data, may be spectraX
+	 * @param period
+	 *            the sample period, greater than 0
+	 * @param re
+	 *            receives the real parts of the spectrum, at least
+	 *            {@link SegmentSpectra#getSpectrumSize()} long
+	 * @param im
+	 *            receives the imaginary parts of the spectrum, at least
+	 *            {@link SegmentSpectra#getSpectrumSize()} long
+	 * @throws RuntimeException
+	 *             if the series have different lengths
+	 */
+	public static void compute(SegmentSpectra spectraX, SegmentSpectra spectraY, double period, double[] re,
+			double[] im) throws RuntimeException {
+		if (spectraX.dataSize != spectraY.dataSize) {
+			throw new RuntimeException("== ndataX != ndataY --> Can't create new PSD");
+		}
+		int singleSideSize = spectraX.getSpectrumSize();
+		Arrays.fill(re, 0, singleSideSize, 0.);
+		Arrays.fill(im, 0, singleSideSize, 0.);
+		for (int segment = 0; segment < spectraX.getNumberSegments(); segment++) {
+			double[] xRe = spectraX.re[segment];
+			double[] xIm = spectraX.im[segment];
+			double[] yRe = spectraY.re[segment];
+			double[] yIm = spectraY.im[segment];
+			// X * conj(Y)
+			for (int k = 0; k < singleSideSize; k++) {
+				re[k] += xRe[k] * yRe[k] + xIm[k] * yIm[k];
+				im[k] += xIm[k] * yRe[k] - xRe[k] * yIm[k];
+			}
+		}
+		normalize(re, im, period, spectraX.segmentSize, spectraX.paddedSegmentSize, spectraY.wss,
+				spectraX.getNumberSegments());
+	}
+
+	/**
+	 * Gets the offset between the overlapping segments of a series.
+	 *
+	 * @throws RuntimeException
+	 *             if there is too little data to form overlapping segments
+	 */
+	private static int getSegmentOffsetSize(int dataSize) throws RuntimeException {
+		int segmentSize = dataSize / 4;
+		if (segmentSize == 0) {
+			throw new RuntimeException("debias: timeseries.length=0 --> No data!");
+		}
+		if (segmentSize / 4 == 0) {
+			throw new RuntimeException("== ndata=" + dataSize + " too short for overlapping segments --> Can't create new PSD");
+		}
+		return segmentSize / 4;
+	}
+
+	/**
+	 * Normalize summed segment spectra and smooth them.
+	 */
+	private static void normalize(double[] re, double[] im, double period, int segmentSize, int paddedSegmentSize,
+			double wss, int numberSegments) {
+		int singleSideSize = paddedSegmentSize / 2 + 1;
+
+		// Divide the summed spectra by the number of segments AND normalize ala
+		// Bendat & Piersol, to units of (time series)^2 / Hz AND correct for
+		// the loss of power in the cosine taper.
+		double psdNormalization = 2.0 * period / (double) paddedSegmentSize;
+		double windowCorrection = wss / (double) segmentSize;
+		psdNormalization = psdNormalization / windowCorrection;
+		psdNormalization = psdNormalization / (double) numberSegments;
+		for (int k = 0; k < singleSideSize; k++) {
+			re[k] *= psdNormalization;
+			im[k] *= psdNormalization;
+		}
+
+		smooth(re, im, singleSideSize);
+	}
+
+	/**
+	 * Sum the cross spectra of a range of segments.
+	 *
+	 * @param first
+	 *            index of the first segment
+	 * @param last
+	 *            index after the last segment
+	 * @param re
+	 *            real parts the spectra are added to
+	 * @param im
+	 *            imaginary parts the spectra are added to
+	 * @return the power of the cosine taper, the same for every segment
+	 */
+	private static double accumulate(double[] dataX, double[] dataY, int first, int last, int segmentSize,
+			int segmentOffsetSize, FFTPlan plan, double[] re, double[] im) {
+		int singleSideSize = plan.getSize() / 2 + 1;
+		Workspace workspace = getWorkspace();
+		workspace.ensureSegment(segmentSize, singleSideSize);
+		double wss = 0.;
+		for (int segment = first; segment < last; segment++) {
+			int offset = segment * segmentOffsetSize;
+			wss = prepareSegment(dataX, offset, segmentSize, workspace.segmentX);
+			plan.realForward(workspace.segmentX, segmentSize, workspace.fftXRe, workspace.fftXIm);
+			double[] yRe = workspace.fftXRe;
+			double[] yIm = workspace.fftXIm;
+			if (dataY != null) {
+				wss = prepareSegment(dataY, offset, segmentSize, workspace.segmentY);
+				plan.realForward(workspace.segmentY, segmentSize, workspace.fftYRe, workspace.fftYIm);
+				yRe = workspace.fftYRe;
+				yIm = workspace.fftYIm;
+			}
+
+			// X * conj(Y)
+			double[] xRe = workspace.fftXRe;
+			double[] xIm = workspace.fftXIm;
+			for (int k = 0; k < singleSideSize; k++) {
+				re[k] += xRe[k] * yRe[k] + xIm[k] * yIm[k];
+				im[k] += xIm[k] * yRe[k] - xRe[k] * yIm[k];
+			}
+		}
+		return wss;
+	}
+
+	/**
+	 * Copy a segment, remove its trend and mean and taper it.
+	 *
+	 * @return the power of the taper
+	 */
+	private static double prepareSegment(double[] data, int offset, int segmentSize, double[] segment) {
+		System.arraycopy(data, offset, segment, 0, segmentSize);
+		TimeseriesUtils.detrend(segment, segmentSize);
+		TimeseriesUtils.demean(segment, segmentSize);
+		return TimeseriesUtils.costaper(segment, segmentSize, TAPER_WIDTH);
+	}
+
+	/**
+	 * Average neighboring frequencies in place. Each window sum is formed from
+	 * block prefix and suffix sums, so it costs O(1) per frequency without the
+	 * cancellation a running sum suffers over a spectrum spanning many orders
+	 * of magnitude.
+	 *
+	 * @param n
+	 *            the number of frequencies
+	 */
+	private static void smooth(double[] re, double[] im, int n) {
+		int window = NSMOOTH - 1;
+		if (n - NHALF <= NHALF) {
+			return;
+		}
+		Workspace workspace = getWorkspace();
+		workspace.ensureSmoothing(n);
+		double[] prefixRe = workspace.prefixRe;
+		double[] prefixIm = workspace.prefixIm;
+		double[] suffixRe = workspace.suffixRe;
+		double[] suffixIm = workspace.suffixIm;
+
+		for (int i = 0; i < n; i++) {
+			if (i % window == 0) {
+				prefixRe[i] = re[i];
+				prefixIm[i] = im[i];
+			} else {
+				prefixRe[i] = prefixRe[i - 1] + re[i];
+				prefixIm[i] = prefixIm[i - 1] + im[i];
+			}
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			if (i % window == window - 1 || i == n - 1) {
+				suffixRe[i] = re[i];
+				suffixIm[i] = im[i];
+			} else {
+				suffixRe[i] = re[i] + suffixRe[i + 1];
+				suffixIm[i] = im[i] + suffixIm[i + 1];
+			}
+		}
+
+		// The window of center iw spans iw - NHALF to iw + NHALF - 1.
+		for (int iw = NHALF; iw < n - NHALF; iw++) {
+			int start = iw - NHALF;
+			int end = start + window - 1;
+			double sumRe;
+			double sumIm;
+			if (start % window == 0) {
+				sumRe = prefixRe[end];
+				sumIm = prefixIm[end];
+			} else {
+				sumRe = suffixRe[start] + prefixRe[end];
+				sumIm = suffixIm[start] + prefixIm[end];
+			}
+			re[iw] = sumRe / (double) NSMOOTH;
+			im[iw] = sumIm / (double) NSMOOTH;
+		}
+	}
+}
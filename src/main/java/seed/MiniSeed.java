@@ -16,7 +16,6 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.GregorianCalendar;
-import java.util.List;
 import edu.iris.dmc.seedcodec.*;
 
 import org.slf4j.Logger;
@@ -664,8 +663,156 @@ public class MiniSeed {
 	 */
 	private static boolean swapNeeded(byte[] buf)
 			throws IllegalSeednameException {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		return swapNeeded(buf, bb);
+		return swapNeeded(ByteBuffer.wrap(buf), 0);
+	}
+
+	/**
+	 * Swap needed for a record at an offset into a buffer. This reads the
+	 * buffer with absolute gets, so neither its position nor its order are
+	 * changed.
+	 *
+	 * @param buf the buffer holding the record
+	 * @param offset the offset of the record in the buffer
+	 * @return true, if the record is little endian
+	 * @throws IllegalSeednameException the illegal seedname exception
+	 */
+	static boolean swapNeeded(ByteBuffer buf, int offset)
+			throws IllegalSeednameException {
+		boolean swap = false;
+		// The order the header is currently read in, this can be little endian
+		// even when the record is decided not to be swapped.
+		boolean little = false;
+
+		for (int i = 0; i < 4; i++) {
+			byte b = buf.get(offset + i);
+			if (b < '0' || b > '9') {
+				throw new IllegalSeednameException("Bad seq # or [DQR] "
+						+ toStringRaw(copyHeader(buf, offset)));
+			}
+		}
+		if (buf.get(offset + 7) != ' ' || !isAcceptedIndicator(buf.get(offset + 6))) {
+			throw new IllegalSeednameException("Bad seq # or [DQR] "
+					+ toStringRaw(copyHeader(buf, offset)));
+		}
+
+		int nblks = buf.get(offset + 39);
+		int blocketteOffset;
+		if (nblks > 0) {
+			blocketteOffset = getShort(buf, offset + 46, little);
+			if (blocketteOffset > 64 || blocketteOffset < 48) { // This looks like swap is needed
+				little = true;
+				blocketteOffset = getShort(buf, offset + 46, little);
+				if (blocketteOffset > 200 || blocketteOffset < 0) {
+					datalogger.error("MiniSEED: cannot figure out if this is swapped or not!!! Assume not. offset="
+							+ blocketteOffset + " " + toStringRaw(copyHeader(buf, offset)));
+					RuntimeException e = new RuntimeException(
+							"Cannot figure swap from offset ");
+					datalogger.error("RuntimeException:", e);
+				} else
+					swap = true;
+			}
+			for (int i = 0; i < nblks; i++) {
+				if (blocketteOffset < 48 || blocketteOffset > 64) {
+					byte[] header = copyHeader(buf, offset);
+					logger.error("Illegal offset trying to figure swapping off="
+							+ Util.toHex(blocketteOffset) + " nblks=" + nblks
+							+ " seedname="
+							+ Util.toAllPrintable(crackSeedname(header)) + " "
+							+ toStringRaw(header));
+					break;
+				}
+				int type = getShort(buf, offset + blocketteOffset, little);
+				int oldoffset = blocketteOffset;
+				blocketteOffset = getShort(buf, offset + blocketteOffset + 2, little);
+				if (type == 1000) {
+					// this should be word order
+					if (buf.get(offset + oldoffset + 5) == 0) {
+						if (swap)
+							return true;
+						logger.error("Offset said swap but order byte in b1000 said not to! "
+								+ toStringRaw(copyHeader(buf, offset)));
+						return false;
+					} else
+						return false;
+				}
+			}
+		} else { // This block does not have blockette 1000, so make decision
+					// based on where the data starts!
+			int dataOffset = getShort(buf, offset + 44, little);
+			return dataOffset < 0 || dataOffset > 512;
+		}
+		return swap;
+	}
+
+	/**
+	 * Read a short from a buffer without changing the buffer's order.
+	 *
+	 * @param buf the buffer
+	 * @param index the absolute index of the short
+	 * @param littleEndian true to read the short as little endian
+	 * @return the short
+	 */
+	static short getShort(ByteBuffer buf, int index, boolean littleEndian) {
+		short value = buf.getShort(index);
+		if ((buf.order() == ByteOrder.LITTLE_ENDIAN) == littleEndian)
+			return value;
+		return Short.reverseBytes(value);
+	}
+
+	/**
+	 * Copy the fixed header of a record so it can be described in messages.
+	 *
+	 * @param buf the buffer holding the record
+	 * @param offset the offset of the record in the buffer
+	 * @return the first 64 bytes of the record
+	 */
+	private static byte[] copyHeader(ByteBuffer buf, int offset) {
+		byte[] header = new byte[64];
+		for (int i = 0; i < header.length && offset + i < buf.limit(); i++)
+			header[i] = buf.get(offset + i);
+		return header;
+	}
+
+	/**
+	 * Parsed form of the configured data quality flags.
+	 */
+	private static final class QualityFlags {
+		/** The configured flags these were parsed from. */
+		private final String flags;
+		/** Accepted data quality indicators, by indicator byte. */
+		private final boolean[] accepted = new boolean[256];
+
+		private QualityFlags(String flags) {
+			this.flags = flags;
+			for (String flag : flags.split(",")) {
+				if (flag.equals("All")) {
+					Arrays.fill(accepted, true);
+				} else if (flag.length() == 1 && flag.charAt(0) < 256) {
+					accepted[flag.charAt(0)] = true;
+				}
+			}
+		}
+	}
+
+	/** The quality flags last parsed. */
+	private static volatile QualityFlags qualityFlags;
+
+	/**
+	 * Checks a record's data quality indicator against the configured quality
+	 * flags, typically 'D' 'M' 'Q' 'R'. The flags are only parsed again if the
+	 * configuration changes.
+	 *
+	 * @param indicator the data quality indicator, byte 6 of the record
+	 * @return true, if records with this indicator should be read
+	 */
+	public static boolean isAcceptedIndicator(byte indicator) {
+		String flags = Global.getQualityflags();
+		QualityFlags parsed = qualityFlags;
+		if (parsed == null || !parsed.flags.equals(flags)) {
+			parsed = new QualityFlags(flags);
+			qualityFlags = parsed;
+		}
+		return parsed.accepted[indicator & 0xFF];
 	}
 
 	/**
@@ -678,18 +825,10 @@ public class MiniSeed {
 	 */
 	private static Boolean swapNeeded(byte[] buf, ByteBuffer bb)
 			throws IllegalSeednameException {
-		
-		String qualityFlagsStr = Global.getQualityflags();
-		List<String> qualityFlags = Arrays.asList(qualityFlagsStr.split(","));
-		
 		boolean swap = false;
 
 		if( (buf[0] >= '0' && buf[0] <= '9') && (buf[1] >= '0' && buf[1] <= '9') && (buf[2] >= '0' && buf[2] <= '9') && (buf[3] >= '0' && buf[3] <= '9') && buf[7] == ' ' &&
-		  (
-				  qualityFlags.contains("All") || 
-				  qualityFlags.contains(String.valueOf((char)buf[6]))
-		  )
-		)
+				isAcceptedIndicator(buf[6]))
 		{
 			
 			bb.position(39); // position # of blockettes that follow
@@ -771,41 +910,56 @@ public class MiniSeed {
 	 */
 	public static int crackBlockSize(byte[] buf)
 			throws IllegalSeednameException, BlockSizeException {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		if (swapNeeded(buf))
-			bb.order(ByteOrder.LITTLE_ENDIAN);
-		bb.position(39); // position # of blockettes that follow
-		int nblks = bb.get(); // get it
-		bb.position(44); //The position of the data offset and end of data header.
-		int dataOffset = bb.getShort();
+		return crackBlockSize(ByteBuffer.wrap(buf), 0);
+	}
+
+	/**
+	 * Crack block size of a record at an offset into a buffer, such as a
+	 * memory mapped file. The buffer's position and order are not changed.
+	 *
+	 * @param buf
+	 *            the buffer holding the record
+	 * @param offset
+	 *            the offset of the record in the buffer
+	 * @return the block size
+	 * @throws IllegalSeednameException
+	 *             if the record has a bad sequence number or quality indicator
+	 * @throws BlockSizeException
+	 *             occurs if either a blockette Offset is too small or too large
+	 *             OR if there is no blockette 1000.
+	 * @see #crackBlockSize(byte[])
+	 */
+	public static int crackBlockSize(ByteBuffer buf, int offset)
+			throws IllegalSeednameException, BlockSizeException {
+		boolean swap = swapNeeded(buf, offset);
+		int nblks = buf.get(offset + 39); // # of blockettes that follow
+		//The position of the data offset and end of data header.
+		int dataOffset = getShort(buf, offset + 44, swap);
 		if(dataOffset == 0){
 			logger.warn("Data Offset is 0. Either there is no data or there is a problem. Treating as if it was 64.");
 			dataOffset = 64; //If it is a record with no data, set to 64.
 		}
-		bb.position(46); // position offset to first blockette and end of fixed data header
-		int offset = bb.getShort();
+		// offset to first blockette and end of fixed data header
+		int blocketteOffset = getShort(buf, offset + 46, swap);
 		for (int i = 0; i < nblks; i++) {
-			if (offset < 48 || offset >= dataOffset) {
+			if (blocketteOffset < 48 || blocketteOffset >= dataOffset) {
 				String message = "Illegal offset trying to crackBlockSize() blocketteOffset="
-						+ offset + " dataOffset= " + dataOffset + " nblks=" + nblks + " seedname="
-						+ crackSeedname(buf);
+						+ blocketteOffset + " dataOffset= " + dataOffset + " nblks=" + nblks + " seedname="
+						+ crackSeedname(copyHeader(buf, offset));
 				throw new BlockSizeException(message);
 			}
-			bb.position(offset);
-			int type = bb.getShort();
-			int oldoffset = offset;
-			offset = bb.getShort();
+			int type = getShort(buf, offset + blocketteOffset, swap);
+			int oldoffset = blocketteOffset;
+			blocketteOffset = getShort(buf, offset + blocketteOffset + 2, swap);
 			if (type == 1000) {
-				bb.position(oldoffset + 6);
-				return 1 << bb.get();
+				return 1 << buf.get(offset + oldoffset + 6);
 			}
 		}
 		/*If we got here we never found a blockette 1000*/
 		String message = "Missing blockette 1000 trying to crackBlockSize() blocketteOffset="
-				+ offset + " dataOffset= " + dataOffset + " nblks=" + nblks + " seedname="
-				+ crackSeedname(buf);
+				+ blocketteOffset + " dataOffset= " + dataOffset + " nblks=" + nblks + " seedname="
+				+ crackSeedname(copyHeader(buf, offset));
 		throw new BlockSizeException(message);
-
 	}
 
 	/**
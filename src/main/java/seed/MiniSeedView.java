@@ -0,0 +1,443 @@
+package seed;
+
+import java.nio.ByteBuffer;
+
+import asl.util.Time;
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.SteimException;
+
+/**
+ * A reusable view of a mini-seed record held in a buffer. Unlike
+ * {@link MiniSeed}, the record isn't copied. The fixed data header and the
+ * blockette chain are parsed once by {@link #reset(ByteBuffer, int, int)} into
+ * primitive fields, and the view is then reset onto the next record, so
+ * reading headers allocates nothing.
+ * 
+ * The station, location, channel and network codes are available as packed
+ * keys, the raw code bytes in a long each, for use as map keys without
+ * building Strings. A view is not thread safe.
+ */
+public class MiniSeedView {
+
+	/** Microseconds in a day. */
+	private static final long DAY_MICROSECONDS = 86400L * 1000000L;
+
+	/** Days from 0000-01-01 to 1970-01-01. */
+	private static final long DAYS_0000_TO_1970 = 719528L;
+
+	private ByteBuffer buf;
+	private int offset;
+	private int length;
+
+	private boolean heartBeat;
+	private boolean swap;
+
+	private int sequence;
+	private byte indicator;
+	private long stationKey;
+	private long channelKey;
+
+	private int year, day, hour, minute, second, husec;
+	private int nsamp;
+	private short rateFactor;
+	private short rateMultiplier;
+	private int dataOffset;
+
+	private int encoding;
+	private int recLength;
+	private int timingQuality;
+	private int blockette320Offset;
+
+	/** Start time in epoch microseconds, computed when first requested. */
+	private long startTime;
+	private boolean startTimeKnown;
+
+	private final SteimDecoder decoder = new SteimDecoder();
+
+	/**
+	 * Point the view at a record and parse its header and blockettes.
+	 * 
+	 * @param buffer
+	 *            the buffer holding the record. Its position and order are not
+	 *            changed, and it must not change while the view is on it.
+	 * @param offset
+	 *            the offset of the record in the buffer
+	 * @param length
+	 *            the length of the record in bytes
+	 * @throws IllegalSeednameException
+	 *             if the record has a bad sequence number or quality indicator
+	 */
+	public void reset(ByteBuffer buffer, int offset, int length)
+			throws IllegalSeednameException {
+		this.buf = buffer;
+		this.offset = offset;
+		this.length = length;
+		encoding = 0;
+		recLength = length; // overridden by blockette 1000 if present
+		timingQuality = -1;
+		blockette320Offset = -1;
+		startTimeKnown = false;
+
+		heartBeat = true;
+		for (int i = 0; i < 6; i++)
+			if (byteAt(i) != 48 || byteAt(i + 6) != 32 || byteAt(i + 12) != 32) {
+				heartBeat = false;
+				break;
+			}
+		if (heartBeat)
+			return;
+
+		swap = MiniSeed.swapNeeded(buf, offset);
+
+		sequence = 0;
+		for (int i = 0; i < 6; i++) {
+			byte digit = byteAt(i);
+			if (digit >= '0' && digit <= '9')
+				sequence = sequence * 10 + digit - '0';
+		}
+		indicator = byteAt(6);
+
+		// Station and location+channel bytes, then network in the low bits.
+		stationKey = 0;
+		for (int i = 18; i < 20; i++)
+			stationKey = stationKey << 8 | (byteAt(i) & 0xFF);
+		for (int i = 8; i < 13; i++)
+			stationKey = stationKey << 8 | (byteAt(i) & 0xFF);
+		channelKey = 0;
+		for (int i = 13; i < 18; i++)
+			channelKey = channelKey << 8 | (byteAt(i) & 0xFF);
+
+		year = shortAt(20);
+		day = shortAt(22);
+		hour = byteAt(24) & 0xFF;
+		minute = byteAt(25) & 0xFF;
+		second = byteAt(26) & 0xFF;
+		husec = shortAt(28) & 0xFFFF;
+		nsamp = shortAt(30);
+		rateFactor = shortAt(32);
+		rateMultiplier = shortAt(34);
+		int nblockettes = byteAt(39);
+		dataOffset = shortAt(44);
+		int next = shortAt(46);
+
+		// This is the "terminator" blocks for rerequests for the GSN, most
+		// LOGS have nsamp set to number of characters in buffer!
+		if (byteAt(15) == 'L' && byteAt(16) == 'O' && byteAt(17) == 'G'
+				&& nsamp == 0)
+			nblockettes = 0;
+
+		for (int blk = 0; blk < nblockettes; blk++) {
+			if (next < 48 || next >= 400 || next + 4 > length)
+				break;
+			int type = shortAt(next);
+			// Blockette 1001 was not swapped for a short time 2009,128-133
+			if (type == -5885 && year == 2009 && day >= 128 && day <= 133)
+				type = 1001;
+			switch (type) {
+			case 1000:
+				encoding = byteAt(next + 4);
+				recLength = 1 << byteAt(next + 6);
+				break;
+			case 1001:
+				timingQuality = byteAt(next + 4) & 0xFF;
+				break;
+			case 320:
+				blockette320Offset = next;
+				break;
+			default:
+				break;
+			}
+			next = shortAt(next + 2);
+		}
+	}
+
+	/**
+	 * Is this record a heart beat. These packets have all zero sequence #
+	 * and all spaces in the net/station/location/channel. Nothing else is
+	 * parsed for them.
+	 * 
+	 * @return true if sequences is all zero and first 12 chars are blanks
+	 */
+	public boolean isHeartBeat() {
+		return heartBeat;
+	}
+
+	/**
+	 * Get the sequence number.
+	 * 
+	 * @return the sequence number
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Get the data quality indicator, normally 'D', 'Q', etc.
+	 * 
+	 * @return the indicator byte
+	 */
+	public byte getIndicator() {
+		return indicator;
+	}
+
+	/**
+	 * Get the raw network and station codes packed into a long, the network
+	 * in the upper bytes. Codes are not trimmed.
+	 * 
+	 * @return the packed network and station codes
+	 */
+	public long getStationKey() {
+		return stationKey;
+	}
+
+	/**
+	 * Get the raw location and channel codes packed into a long, the
+	 * location in the upper bytes. Codes are not trimmed.
+	 * 
+	 * @return the packed location and channel codes
+	 */
+	public long getChannelKey() {
+		return channelKey;
+	}
+
+	/**
+	 * Get the trimmed network code. This allocates a String.
+	 * 
+	 * @return the network code
+	 */
+	public String getNetwork() {
+		return codeAt(18, 2);
+	}
+
+	/**
+	 * Get the trimmed station code. This allocates a String.
+	 * 
+	 * @return the station code
+	 */
+	public String getStation() {
+		return codeAt(8, 5);
+	}
+
+	/**
+	 * Get the trimmed location code as it is in the record. This allocates a
+	 * String.
+	 * 
+	 * @return the location code
+	 */
+	public String getLocation() {
+		return codeAt(13, 2);
+	}
+
+	/**
+	 * Get the trimmed channel code. This allocates a String.
+	 * 
+	 * @return the channel code
+	 */
+	public String getChannel() {
+		return codeAt(15, 3);
+	}
+
+	/**
+	 * Get the raw rate factor and multiplier packed into an int, the factor
+	 * in the upper half.
+	 * 
+	 * @return the packed rate fields
+	 */
+	public int getRateKey() {
+		return rateFactor << 16 | (rateMultiplier & 0xFFFF);
+	}
+
+	/**
+	 * Get the digitizing rate from the rate factor and multiplier.
+	 * 
+	 * @return The digitizing rate in Hz. 0. if the factor and multipler are
+	 *         invalid.
+	 */
+	public double getSampleRate() {
+		double rate = rateFactor;
+		// if rate > 0 its in hz, < 0 its period.
+		// if multiplier > 0 it multiplies, if < 0 it divides.
+		if (rateFactor == 0 || rateMultiplier == 0)
+			return 0;
+		if (rate >= 0) {
+			if (rateMultiplier > 0)
+				rate *= rateMultiplier;
+			else
+				rate /= -rateMultiplier;
+		} else {
+			if (rateMultiplier > 0)
+				rate = -rateMultiplier / rate;
+			else
+				rate = -1. / (-rateMultiplier) / rate;
+		}
+		return rate;
+	}
+
+	/**
+	 * Get the time of the first sample.
+	 * 
+	 * @return microseconds since 1970-01-01:00:00:00.0 UTC
+	 * @throws java.time.DateTimeException
+	 *             if the start time is not a valid time
+	 * @see Time#btimeToLocalDateTime(int, int, int, int, int, int)
+	 */
+	public long getStartTime() {
+		if (!startTimeKnown) {
+			boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+			if (year >= 0 && day >= 1 && day <= (leap ? 366 : 365)
+					&& hour <= 23 && minute <= 59 && second <= 59
+					&& husec <= 9999) {
+				long y = year;
+				long epochDay = 365 * y + (y + 3) / 4 - (y + 99) / 100
+						+ (y + 399) / 400 - DAYS_0000_TO_1970 + day - 1;
+				startTime = epochDay * DAY_MICROSECONDS
+						+ ((hour * 60L + minute) * 60L + second) * 1000000L
+						+ husec * 100L;
+			} else {
+				// Leap seconds and invalid times are left to java.time.
+				startTime = Time.calculateEpochMicroSeconds(Time
+						.btimeToLocalDateTime(year, day, hour, minute, second,
+								husec));
+			}
+			startTimeKnown = true;
+		}
+		return startTime;
+	}
+
+	/**
+	 * retun number of samples in packet.
+	 * 
+	 * @return # of samples
+	 */
+	public int getNsamp() {
+		return nsamp;
+	}
+
+	/**
+	 * return the encoding from blockette 1000.
+	 * 
+	 * @return the encoding, 0 if there is no blockette 1000
+	 */
+	public int getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * return the blocksize or record length of this mini-seed.
+	 * 
+	 * @return the record length from blockette 1000, or the length the view
+	 *         was reset with.
+	 */
+	public int getBlockSize() {
+		return recLength;
+	}
+
+	/**
+	 * return the offset to the data.
+	 * 
+	 * @return the offset to the data in bytes
+	 */
+	public int getDataOffset() {
+		return dataOffset;
+	}
+
+	/**
+	 * return state of swap as required by the Steim decompression routines.
+	 * 
+	 * @return True if bytes need to be swapped
+	 */
+	public boolean isSwapBytes() {
+		return swap;
+	}
+
+	/**
+	 * return the timing quality byte from blockette 1001.
+	 * 
+	 * @return the timing quality from blockette 1001 or -1 if it does not
+	 *         exist
+	 */
+	public int getTimingQuality() {
+		return timingQuality;
+	}
+
+	/**
+	 * Checks for a calibration blockette.
+	 * 
+	 * @return true, if the record has a blockette 320
+	 */
+	public boolean hasBlockette320() {
+		return blockette320Offset >= 0;
+	}
+
+	/**
+	 * Copy the blockette 320 out of the record. Unlike the header fields,
+	 * this allocates.
+	 * 
+	 * @return 64 bytes of blockette 320 or null if the record has none
+	 */
+	public byte[] getBlockette320() {
+		if (blockette320Offset < 0)
+			return null;
+		byte[] b320 = new byte[64];
+		for (int i = 0; i < b320.length && blockette320Offset + i < length; i++)
+			b320[i] = byteAt(blockette320Offset + i);
+		return b320;
+	}
+
+	/**
+	 * Decompress the samples of a Steim1 or Steim2 record into a sink. The
+	 * samples are decoded straight from the record's buffer.
+	 * 
+	 * @param sink
+	 *            the sink the samples are added to. Nothing is added if the
+	 *            record can't be decompressed.
+	 * @throws SteimException
+	 *             if the data can't be decompressed or has another encoding
+	 * @throws BlockSizeException
+	 *             if the data offset is beyond the record
+	 */
+	public void decompress(SampleSink sink) throws SteimException,
+			BlockSizeException {
+		checkDecompressible();
+		if (encoding == B1000Types.STEIM1)
+			decoder.decodeSteim1(buf, offset + dataOffset, recLength
+					- dataOffset, nsamp, swap, sink);
+		else
+			decoder.decodeSteim2(buf, offset + dataOffset, recLength
+					- dataOffset, nsamp, swap, sink);
+	}
+
+	/**
+	 * Check the record's encoding and data offset, so callers can reject a
+	 * record before preparing a sink for its samples.
+	 * 
+	 * @throws SteimException
+	 *             if the record isn't Steim1 or Steim2 encoded
+	 * @throws BlockSizeException
+	 *             if the data offset is beyond the record
+	 */
+	public void checkDecompressible() throws SteimException,
+			BlockSizeException {
+		if (recLength <= dataOffset || recLength > length)
+			throw new BlockSizeException(String.format(
+					"BlockSizeException: (blockSize:[{%s}]) > (dataOffset:[{%s}])",
+					recLength, dataOffset));
+		if (encoding != B1000Types.STEIM1 && encoding != B1000Types.STEIM2)
+			throw new SteimException("Unsupported encoding " + encoding);
+	}
+
+	private byte byteAt(int index) {
+		return buf.get(offset + index);
+	}
+
+	private short shortAt(int index) {
+		return MiniSeed.getShort(buf, offset + index, swap);
+	}
+
+	private String codeAt(int index, int count) {
+		byte[] code = new byte[count];
+		for (int i = 0; i < count; i++)
+			code[i] = byteAt(index + i);
+		return new String(code).trim();
+	}
+}
@@ -0,0 +1,54 @@
+package seed;
+
+/**
+ * A destination for decoded samples which hands out the block they are
+ * written into, so decoders can store samples in place instead of returning
+ * a new array for every record.
+ * 
+ * Samples are written into {@link #getTailBlock()} starting at
+ * {@link #getTailOffset()} and accepted with {@link #commitTail(int)}. Once
+ * the tail block is full the sink moves on to a new one.
+ */
+public interface SampleSink {
+
+	/**
+	 * Get the block the next samples are written into. It always has room
+	 * for at least one sample.
+	 * 
+	 * @return the tail block
+	 */
+	int[] getTailBlock();
+
+	/**
+	 * Get the index in the tail block the next sample is written to.
+	 * 
+	 * @return the tail offset
+	 */
+	int getTailOffset();
+
+	/**
+	 * Accepts samples written into the tail block. If they fill the block, a
+	 * new tail block is started.
+	 * 
+	 * @param count
+	 *            the number of samples written from the tail offset, at most
+	 *            to the end of the tail block
+	 */
+	void commitTail(int count);
+
+	/**
+	 * Get the number of samples held.
+	 * 
+	 * @return the number of samples
+	 */
+	int getLength();
+
+	/**
+	 * Drops the samples after the first length samples, so a decoder can
+	 * undo a partly written record.
+	 * 
+	 * @param length
+	 *            the number of samples to keep
+	 */
+	void truncate(int length);
+}
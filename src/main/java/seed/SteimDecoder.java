@@ -0,0 +1,275 @@
+package seed;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import edu.iris.dmc.seedcodec.SteimException;
+
+/**
+ * Decodes Steim1 and Steim2 frames straight from a record's buffer into a
+ * {@link SampleSink}. Nothing is allocated per record, the differences are
+ * integrated as they are unpacked and stored into the sink's tail block.
+ * 
+ * The results and errors match the seedCodec Steim1.decode and Steim2.decode
+ * routines with a bias of 0. A decoder is reused for many records but is not
+ * thread safe.
+ */
+public class SteimDecoder {
+
+	/** Bytes in a Steim frame. */
+	private static final int FRAME_SIZE = 64;
+
+	private ByteBuffer buf;
+	private boolean reverse;
+
+	private SampleSink sink;
+	private int[] block;
+	private int blockStart;
+	private int position;
+
+	private int nsamp;
+	private int current;
+	private int lastValue;
+
+	/** Index of the next value of the first frame, 4 once past the header. */
+	private int headerValue;
+	private int start;
+
+	/**
+	 * Decode Steim1 frames.
+	 * 
+	 * @param buffer
+	 *            the buffer holding the frames
+	 * @param offset
+	 *            the offset of the first frame
+	 * @param length
+	 *            the length of the frames in bytes
+	 * @param numSamples
+	 *            the number of samples in the frames
+	 * @param swapBytes
+	 *            true if the frames are little endian
+	 * @param target
+	 *            the sink the samples are added to. Nothing is added if
+	 *            decoding fails.
+	 * @throws SteimException
+	 *             if the frames are malformed or don't hold numSamples
+	 */
+	public void decodeSteim1(ByteBuffer buffer, int offset, int length,
+			int numSamples, boolean swapBytes, SampleSink target)
+			throws SteimException {
+		decode(buffer, offset, length, numSamples, swapBytes, target, false);
+	}
+
+	/**
+	 * Decode Steim2 frames.
+	 * 
+	 * @param buffer
+	 *            the buffer holding the frames
+	 * @param offset
+	 *            the offset of the first frame
+	 * @param length
+	 *            the length of the frames in bytes
+	 * @param numSamples
+	 *            the number of samples in the frames
+	 * @param swapBytes
+	 *            true if the frames are little endian
+	 * @param target
+	 *            the sink the samples are added to. Nothing is added if
+	 *            decoding fails.
+	 * @throws SteimException
+	 *             if the frames are malformed or don't hold numSamples
+	 */
+	public void decodeSteim2(ByteBuffer buffer, int offset, int length,
+			int numSamples, boolean swapBytes, SampleSink target)
+			throws SteimException {
+		decode(buffer, offset, length, numSamples, swapBytes, target, true);
+	}
+
+	private void decode(ByteBuffer buffer, int offset, int length,
+			int numSamples, boolean swapBytes, SampleSink target,
+			boolean steim2) throws SteimException {
+		if (length % FRAME_SIZE != 0) {
+			throw new SteimException(
+					"encoded data length is not multiple of 64 bytes ("
+							+ length + ")");
+		}
+		buf = buffer;
+		reverse = swapBytes != (buffer.order() == ByteOrder.LITTLE_ENDIAN);
+		sink = target;
+		nsamp = numSamples;
+		current = 0;
+		lastValue = 0;
+		headerValue = 0;
+		int mark = target.getLength();
+		block = target.getTailBlock();
+		blockStart = target.getTailOffset();
+		position = blockStart;
+		try {
+			for (int frame = offset; frame < offset + length; frame += FRAME_SIZE) {
+				if (steim2) {
+					frameSteim2(frame, frame == offset);
+				} else {
+					frameSteim1(frame, frame == offset);
+				}
+				if (headerValue < 4) {
+					throw new SteimException(
+							"First frame is missing its integration constants");
+				}
+			}
+			if (current != nsamp) {
+				throw new SteimException(
+						"Number of samples decompressed doesn't match number in header: "
+								+ current + " != " + nsamp);
+			}
+			if (position > blockStart) {
+				sink.commitTail(position - blockStart);
+			}
+		} catch (SteimException e) {
+			target.truncate(mark);
+			throw e;
+		} finally {
+			buf = null;
+			sink = null;
+			block = null;
+		}
+	}
+
+	private void frameSteim1(int frame, boolean first) {
+		int nibbles = word(frame);
+		for (int i = 0; i < 16; i++) {
+			int w = frame + i * 4;
+			switch ((nibbles >>> (30 - i * 2)) & 3) {
+			case 0:
+				if (first) {
+					value(word(w));
+				}
+				break;
+			case 1:
+				value(buf.get(w));
+				value(buf.get(w + 1));
+				value(buf.get(w + 2));
+				value(buf.get(w + 3));
+				break;
+			case 2:
+				value(half(w));
+				value(half(w + 2));
+				break;
+			default:
+				value(word(w));
+				break;
+			}
+		}
+	}
+
+	private void frameSteim2(int frame, boolean first) throws SteimException {
+		int nibbles = word(frame);
+		for (int i = 0; i < 16; i++) {
+			int w = frame + i * 4;
+			int c = (nibbles >>> (30 - i * 2)) & 3;
+			if (c == 1) {
+				value(buf.get(w));
+				value(buf.get(w + 1));
+				value(buf.get(w + 2));
+				value(buf.get(w + 3));
+				continue;
+			}
+			int v = word(w);
+			if (c == 0) {
+				if (first) {
+					value(v);
+				}
+				continue;
+			}
+			int dnib = v >>> 30;
+			if (c == 2) {
+				switch (dnib) {
+				case 1:
+					value((v << 2) >> 2);
+					break;
+				case 2:
+					value((v << 2) >> 17);
+					value((v << 17) >> 17);
+					break;
+				case 3:
+					value((v << 2) >> 22);
+					value((v << 12) >> 22);
+					value((v << 22) >> 22);
+					break;
+				default:
+					throw new SteimException(
+							"Steim2 decode: invalid dnib for nibble 2: " + dnib);
+				}
+			} else {
+				switch (dnib) {
+				case 0:
+					value((v << 2) >> 26);
+					value((v << 8) >> 26);
+					value((v << 14) >> 26);
+					value((v << 20) >> 26);
+					value((v << 26) >> 26);
+					break;
+				case 1:
+					value((v << 2) >> 27);
+					value((v << 7) >> 27);
+					value((v << 12) >> 27);
+					value((v << 17) >> 27);
+					value((v << 22) >> 27);
+					value((v << 27) >> 27);
+					break;
+				case 2:
+					value((v << 4) >> 28);
+					value((v << 8) >> 28);
+					value((v << 12) >> 28);
+					value((v << 16) >> 28);
+					value((v << 20) >> 28);
+					value((v << 24) >> 28);
+					value((v << 28) >> 28);
+					break;
+				default:
+					throw new SteimException(
+							"Steim2 decode: invalid dnib for nibble 3: " + dnib);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Handles the next unpacked value. The first frame starts with the
+	 * nibble word and the forward and reverse integration constants, the
+	 * rest are differences.
+	 */
+	private void value(int v) {
+		if (headerValue < 4) {
+			if (headerValue == 1) {
+				start = v;
+			} else if (headerValue == 3) {
+				lastValue = start - v;
+			}
+			if (++headerValue < 4) {
+				return;
+			}
+		}
+		if (current >= nsamp) {
+			return;
+		}
+		lastValue += v;
+		block[position++] = lastValue;
+		current++;
+		if (position == block.length) {
+			sink.commitTail(position - blockStart);
+			block = sink.getTailBlock();
+			blockStart = sink.getTailOffset();
+			position = blockStart;
+		}
+	}
+
+	private int word(int index) {
+		int w = buf.getInt(index);
+		return reverse ? Integer.reverseBytes(w) : w;
+	}
+
+	private short half(int index) {
+		short h = buf.getShort(index);
+		return reverse ? Short.reverseBytes(h) : h;
+	}
+}
@@ -28,6 +28,8 @@ pkscanid = scanid;
   AND
   taken = TRUE --Must have been processed
   AND
+  expanded = TRUE --All children must have been inserted
+  AND
   pkscanid NOT IN (
   --List of all parents with unfinished children
       select distinct fkparentscan
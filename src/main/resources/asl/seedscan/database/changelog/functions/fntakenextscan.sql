@@ -40,7 +40,7 @@ BEGIN
 RETURN QUERY
 SELECT pkscanid, fkparentscan, lastupdate, metricfilter, networkfilter,
        stationfilter, channelfilter, startdate, enddate, priority, deleteexisting,
-       scheduledrun, finished, taken, locationfilter
+       scheduledrun, finished, taken, locationfilter, leaseexpires, expanded
   FROM tblscan
   WHERE
   pkscanid = scanID;
@@ -0,0 +1,57 @@
+-- Function: fntakenextscans(integer, integer)
+
+-- DROP FUNCTION fntakenextscans(integer, integer);
+
+CREATE OR REPLACE FUNCTION fntakenextscans(scancount integer, leaseseconds integer)
+  RETURNS SETOF tblscan AS
+$BODY$
+BEGIN
+--Rows locked by another connection are skipped instead of waited on,
+--so multiple connections never take the same scan.
+RETURN QUERY
+  UPDATE tblscan scan
+    SET taken = TRUE,
+        lastupdate = current_timestamp,
+        leaseexpires = current_timestamp + leaseseconds * interval '1 second'
+  FROM (
+    SELECT pkscanid
+      FROM tblscan
+      WHERE
+          finished = FALSE
+          AND
+          (
+          scheduledrun < current_date
+          OR
+          scheduledrun IS NULL
+          )
+          AND
+          (
+          taken = FALSE
+          OR
+          --Child scans whose lease ran out were abandoned.
+          --Expanded parent scans are never retaken since they would be expanded again.
+          --A parent isn't expanded until all of its children are inserted,
+          --so one that isn't expanded when its lease ran out has no children.
+          (
+          (fkparentscan IS NOT NULL OR expanded = FALSE)
+          AND
+          leaseexpires < current_timestamp
+          )
+          )
+      ORDER BY
+          priority desc,
+          enddate desc,
+          startdate desc
+      LIMIT scancount
+      FOR UPDATE SKIP LOCKED
+  ) nextscan
+  WHERE
+    scan.pkscanid = nextscan.pkscanid
+  RETURNING scan.*;
+
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100
+  ROWS 1000;
+
@@ -0,0 +1,63 @@
+-- Function: fntakeoverlappingscans(uuid, date, integer)
+
+-- DROP FUNCTION fntakeoverlappingscans(uuid, date, integer);
+
+CREATE OR REPLACE FUNCTION fntakeoverlappingscans(scanid uuid, windowend date, leaseseconds integer)
+  RETURNS SETOF tblscan AS
+$BODY$
+BEGIN
+--Takes the pending child scans of the same station and channels as a taken scan
+--whose days lie within the taken scan's pass, so they can be run along with it.
+--Only scans starting within the taken scan and ending by windowend qualify,
+--so the pass never starts earlier and stays within the lease.
+RETURN QUERY
+  UPDATE tblscan scan
+    SET taken = TRUE,
+        lastupdate = current_timestamp,
+        leaseexpires = current_timestamp + leaseseconds * interval '1 second'
+  FROM (
+    SELECT other.pkscanid
+      FROM tblscan other, tblscan seed
+      WHERE
+          seed.pkscanid = scanid
+          AND
+          other.pkscanid <> seed.pkscanid
+          AND
+          other.fkparentscan IS NOT NULL
+          AND
+          other.finished = FALSE
+          AND
+          other.taken = FALSE
+          AND
+          (
+          other.scheduledrun < current_date
+          OR
+          other.scheduledrun IS NULL
+          )
+          AND
+          other.networkfilter = seed.networkfilter
+          AND
+          other.stationfilter = seed.stationfilter
+          AND
+          other.locationfilter IS NOT DISTINCT FROM seed.locationfilter
+          AND
+          other.channelfilter IS NOT DISTINCT FROM seed.channelfilter
+          AND
+          other.deleteexisting = seed.deleteexisting
+          AND
+          other.startdate >= seed.startdate
+          AND
+          other.startdate <= seed.enddate
+          AND
+          other.enddate <= windowend
+      FOR UPDATE OF other SKIP LOCKED
+  ) overlapping
+  WHERE
+    scan.pkscanid = overlapping.pkscanid
+  RETURNING scan.*;
+
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100
+  ROWS 10;
@@ -0,0 +1,45 @@
+-- Function: spgetmetricvaluedigests(date, character varying, character varying)
+
+-- DROP FUNCTION spgetmetricvaluedigests(date, character varying, character varying);
+
+CREATE OR REPLACE FUNCTION spgetmetricvaluedigests(
+    IN ndate date,
+    IN networkname character varying,
+    IN stationname character varying)
+  RETURNS TABLE(metric character varying, location character varying, channel character varying, hash bytea) AS
+$BODY$
+BEGIN
+--Every stored digest of a station-day, so a scan doesn't need
+--a spgetmetricvaluedigest call per metric and channel.
+RETURN QUERY
+	SELECT
+	  tblmetric.name,
+	  tblsensor.location,
+	  tblchannel.name,
+	  tblhash.hash
+	FROM
+	  public.tblhash,
+	  public.tblmetricdata,
+	  public.tblmetric,
+	  public.tblchannel,
+	  public.tblsensor,
+	  public.tblstation,
+	  public."tblGroup"
+	WHERE
+	  --JOINS
+	  tblmetricdata."fkHashID" = tblhash."pkHashID" AND
+	  tblmetricdata.fkmetricid = tblmetric.pkmetricid AND
+	  tblmetricdata.fkchannelid = tblchannel.pkchannelid AND
+	  tblchannel.fksensorid = tblsensor.pksensorid AND
+	  tblsensor.fkstationid = tblstation.pkstationid AND
+	  tblstation.fknetworkid = "tblGroup".pkgroupid AND
+	  --Criteria
+	  "tblGroup".name = networkname AND
+	  tblstation.name = stationname AND
+	  tblmetricdata.date = to_char(ndate, 'J')::INT;
+
+END
+$BODY$
+  LANGUAGE plpgsql STABLE
+  COST 100
+  ROWS 500;
@@ -0,0 +1,19 @@
+-- Function: spgetstationdayfingerprint(date, character varying, character varying)
+
+-- DROP FUNCTION spgetstationdayfingerprint(date, character varying, character varying);
+
+CREATE OR REPLACE FUNCTION spgetstationdayfingerprint(
+    IN ndate date,
+    IN networkname character varying,
+    IN stationname character varying)
+  RETURNS bytea AS
+$BODY$
+	SELECT fingerprint
+	FROM tblstationdayfingerprint
+	WHERE
+	  network = networkname AND
+	  station = stationname AND
+	  date = ndate;
+$BODY$
+  LANGUAGE sql STABLE
+  COST 100;
@@ -0,0 +1,21 @@
+-- Function: spsetstationdayfingerprint(date, character varying, character varying, bytea)
+
+-- DROP FUNCTION spsetstationdayfingerprint(date, character varying, character varying, bytea);
+
+CREATE OR REPLACE FUNCTION spsetstationdayfingerprint(
+    ndate date,
+    networkname character varying,
+    stationname character varying,
+    newfingerprint bytea)
+  RETURNS void AS
+$BODY$
+BEGIN
+	INSERT INTO tblstationdayfingerprint (network, station, date, fingerprint, lastupdate)
+	VALUES (networkname, stationname, ndate, newfingerprint, current_timestamp)
+	ON CONFLICT (network, station, date) DO UPDATE
+	  SET fingerprint = EXCLUDED.fingerprint,
+	      lastupdate = EXCLUDED.lastupdate;
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100;
@@ -0,0 +1,102 @@
+package asl.metadata.meta_new;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+public class PoleZeroStageTest {
+
+  /**
+   * STS-2 like velocity response.
+   */
+  private static PoleZeroStage createStage(char type) {
+    PoleZeroStage stage = new PoleZeroStage(1, type, 1500, 0.02);
+    stage.addZero(new Complex(0, 0));
+    stage.addZero(new Complex(0, 0));
+    stage.addPole(new Complex(-0.037004, 0.037016));
+    stage.addPole(new Complex(-0.037004, -0.037016));
+    stage.addPole(new Complex(-251.33, 0));
+    stage.addPole(new Complex(-131.04, -467.29));
+    stage.addPole(new Complex(-131.04, 467.29));
+    stage.setNormalization(60077000.0);
+    stage.setInputUnits("M/S - Velocity in Meters Per Second");
+    return stage;
+  }
+
+  /**
+   * The response evaluated with Complex arithmetic.
+   */
+  private static Complex evaluate(PoleZeroStage stage, double f) {
+    Complex s = new Complex(0.0, (stage.getStageType() == 'A' ? 2 * Math.PI : 1.0) * f);
+    Complex numerator = Complex.ONE;
+    Complex denominator = Complex.ONE;
+    for (Complex zero : stage.getZeros()) {
+      numerator = numerator.multiply(s.subtract(zero));
+    }
+    for (Complex pole : stage.getPoles()) {
+      denominator = denominator.multiply(s.subtract(pole));
+    }
+    return numerator.multiply(stage.getNormalization()).divide(denominator);
+  }
+
+  @Test
+  public final void getResponse_MatchesComplexEvaluation() throws Exception {
+    for (char type : new char[]{'A', 'B'}) {
+      PoleZeroStage stage = createStage(type);
+      double[] freqs = new double[2049];
+      for (int k = 0; k < freqs.length; k++) {
+        freqs[k] = (double) k * 0.01;
+      }
+      double[] real = new double[freqs.length];
+      double[] imaginary = new double[freqs.length];
+      stage.getResponse(freqs, real, imaginary);
+
+      for (int k = 0; k < freqs.length; k++) {
+        Complex expected = evaluate(stage, freqs[k]);
+        assertEquals(expected.getReal(), real[k], 0);
+        assertEquals(expected.getImaginary(), imaginary[k], 0);
+      }
+    }
+  }
+
+  @Test
+  public final void getResponse_PoleAtZeroFrequency() throws Exception {
+    PoleZeroStage stage = createStage('A');
+    stage.addPole(new Complex(0, 0));
+    double[] real = new double[2];
+    double[] imaginary = new double[2];
+    stage.getResponse(new double[]{0, 1}, real, imaginary);
+
+    // Division by zero is left to Complex
+    assertTrue(Double.isNaN(real[0]));
+    assertTrue(Double.isNaN(imaginary[0]));
+    Complex expected = evaluate(stage, 1);
+    assertEquals(expected.getReal(), real[1], 0);
+    assertEquals(expected.getImaginary(), imaginary[1], 0);
+  }
+
+  @Test(expected = PoleZeroStageException.class)
+  public final void getResponse_NotLoaded() throws Exception {
+    PoleZeroStage stage = new PoleZeroStage(1, 'A', 1500, 0.02);
+    stage.getResponse(new double[]{1}, new double[1], new double[1]);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public final void setNormalization_FrozenRejected() throws Exception {
+    PoleZeroStage stage = createStage('A');
+    stage.freeze();
+    stage.setNormalization(1.0);
+  }
+
+  @Test
+  public final void getPoles_FrozenUnchanged() throws Exception {
+    PoleZeroStage stage = createStage('A');
+    stage.freeze();
+    stage.getPoles().add(new Complex(0, 0));
+    stage.getZeros().clear();
+    assertEquals(5, stage.getNumberOfPoles());
+    assertEquals(2, stage.getNumberOfZeros());
+  }
+}
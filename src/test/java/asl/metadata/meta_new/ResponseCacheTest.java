@@ -0,0 +1,80 @@
+package asl.metadata.meta_new;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import asl.metadata.meta_new.ChannelMeta.ResponseUnits;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+  private static final ByteBuffer DIGEST = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+
+  private static ResponseCache.Key createKey(int n) {
+    return new ResponseCache.Key(DIGEST.duplicate(), 2, n, 0.01, ResponseUnits.ACCELERATION);
+  }
+
+  private static ResponseCache.Response createResponse(int n) {
+    return new ResponseCache.Response(new double[n], new double[n]);
+  }
+
+  @Test
+  public final void key_Equality() throws Exception {
+    ResponseCache.Key key = createKey(100);
+    assertEquals(key, new ResponseCache.Key(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), 2, 100, 0.01,
+        ResponseUnits.ACCELERATION));
+    assertEquals(key.hashCode(), createKey(100).hashCode());
+
+    assertNotEquals(key, createKey(101));
+    assertNotEquals(key,
+        new ResponseCache.Key(DIGEST.duplicate(), 2, 100, 0.02, ResponseUnits.ACCELERATION));
+    assertNotEquals(key,
+        new ResponseCache.Key(DIGEST.duplicate(), 2, 100, 0.01, ResponseUnits.VELOCITY));
+    assertNotEquals(key,
+        new ResponseCache.Key(DIGEST.duplicate(), 1, 100, 0.01, ResponseUnits.ACCELERATION));
+    assertNotEquals(key, new ResponseCache.Key(ByteBuffer.wrap(new byte[]{1, 2, 3, 5}), 2, 100,
+        0.01, ResponseUnits.ACCELERATION));
+  }
+
+  @Test
+  public final void put_ReturnsCachedResponse() throws Exception {
+    ResponseCache cache = new ResponseCache(Long.MAX_VALUE);
+    ResponseCache.Response first = createResponse(100);
+
+    assertNull(cache.get(createKey(100)));
+    assertSame(first, cache.put(createKey(100), first));
+    // Evaluated concurrently by another thread
+    assertSame(first, cache.put(createKey(100), createResponse(100)));
+    assertSame(first, cache.get(createKey(100)));
+    assertEquals(1600, cache.getCachedBytes());
+  }
+
+  @Test
+  public final void put_LeastRecentlyUsedEvicted() throws Exception {
+    // Room for two responses
+    ResponseCache cache = new ResponseCache(3200);
+    cache.put(createKey(100), createResponse(100));
+    cache.put(createKey(101), createResponse(100));
+    cache.get(createKey(100));
+
+    cache.put(createKey(102), createResponse(100));
+    assertNotNull(cache.get(createKey(100)));
+    assertNull(cache.get(createKey(101)));
+    assertNotNull(cache.get(createKey(102)));
+    assertEquals(3200, cache.getCachedBytes());
+  }
+
+  @Test
+  public final void put_LargerThanBudgetNotCached() throws Exception {
+    ResponseCache cache = new ResponseCache(1000);
+    ResponseCache.Response response = createResponse(100);
+
+    assertSame(response, cache.put(createKey(100), response));
+    assertNull(cache.get(createKey(100)));
+    assertEquals(0, cache.getCachedBytes());
+  }
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import javax.xml.bind.DatatypeConverter;
 import org.junit.Test;
@@ -304,4 +305,112 @@ public class MemberDigestTest {
     String hex = DatatypeConverter.printHexBinary(bytes.array());
     assertEquals(expected, hex);
   }
+
+  /**
+   * Tests that adding arrays in bulk digests the same bytes as adding each
+   * value as a ByteBuffer, the way values were digested before.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testAddToDigestArrays() throws Exception {
+    // Longer than the scratch buffer, so it is filled more than once.
+    int[] ints = new int[5000];
+    double[] doubles = new double[3000];
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = i * 7919 - 1000000;
+    }
+    for (int i = 0; i < doubles.length; i++) {
+      doubles[i] = Math.sin(i) * 1.0e6;
+    }
+    doubles[0] = Double.NaN;
+
+    MessageDigest expected = MessageDigest.getInstance("MD5");
+    expected.update(ByteBuffer.allocate(8).putLong(-42L).array());
+    for (int i = 3; i < ints.length; i++) {
+      expected.update(ByteBuffer.allocate(4).putInt(ints[i]).array());
+    }
+    for (double value : doubles) {
+      expected.update(ByteBuffer.allocate(8).putDouble(value).array());
+    }
+
+    BlockDigest digest = new BlockDigest(-42L, ints, 3, doubles);
+    assertEquals(DatatypeConverter.printHexBinary(expected.digest()),
+        DatatypeConverter.printHexBinary(digest.getDigestBytes().array()));
+    /* Recomputing reuses the scratch buffer */
+    assertEquals(DatatypeConverter.printHexBinary(digest.getDigestBytes().array()),
+        DatatypeConverter.printHexBinary(
+            new BlockDigest(-42L, ints, 3, doubles).getDigestBytes().array()));
+  }
+
+  /**
+   * The Class BlockDigest, adds arrays with the bulk overloads.
+   */
+  private class BlockDigest extends MemberDigest {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long start;
+    private final int[] ints;
+    private final int offset;
+    private final double[] doubles;
+
+    BlockDigest(long start, int[] ints, int offset, double[] doubles) {
+      this.start = start;
+      this.ints = ints;
+      this.offset = offset;
+      this.doubles = doubles;
+    }
+
+    @Override
+    protected void addDigestMembers() {
+      addToDigest(start);
+      addToDigest(ints, offset, ints.length - offset);
+      addToDigest(doubles, 0, doubles.length);
+    }
+  }
+
+  /**
+   * Tests that the digest is computed once and again only after being
+   * invalidated, and that callers get their own copy of it.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testDigestCachedUntilInvalidated() throws Exception {
+    CountingDigest digest = new CountingDigest();
+    ByteBuffer bytes1 = digest.getDigestBytes();
+    String hex1 = DatatypeConverter.printHexBinary(bytes1.array());
+    bytes1.array()[0] ^= 0xFF;
+    ByteBuffer bytes2 = digest.getDigestBytes();
+    assertEquals(1, digest.computed);
+    assertEquals(hex1, DatatypeConverter.printHexBinary(bytes2.array()));
+
+    digest.setValue(2);
+    ByteBuffer bytes3 = digest.getDigestBytes();
+    assertEquals(2, digest.computed);
+    assertNotEquals(hex1, DatatypeConverter.printHexBinary(bytes3.array()));
+  }
+
+  /**
+   * The Class CountingDigest, counts how often its members are added.
+   */
+  private class CountingDigest extends MemberDigest {
+
+    private static final long serialVersionUID = 1L;
+
+    private int value = 1;
+    private int computed = 0;
+
+    void setValue(int value) {
+      this.value = value;
+      invalidateDigest();
+    }
+
+    @Override
+    protected void addDigestMembers() {
+      computed++;
+      addToDigest(value);
+    }
+  }
 }
@@ -2,12 +2,17 @@ package asl.seedscan.database;
 
 import asl.metadata.Channel;
 import asl.metadata.Station;
+import asl.seedscan.metrics.MetricResult;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -18,16 +23,26 @@ public class MetricDatabaseMock extends MetricDatabase {
 
   private HashMap<MetricValueIdentifier, Double> values = new HashMap<>();
   private HashMap<MetricValueIdentifier, ByteBuffer> digests = new HashMap<>();
+  private Map<String, ByteBuffer> fingerprints = new HashMap<>();
 
   private Queue<DatabaseScan> newScans = new LinkedBlockingQueue<>();
   private Map<UUID, DatabaseScan> takenScans = new HashMap<>();
   private Map<UUID, DatabaseScan> finishedScans = new HashMap<>();
   private List<DatabaseScan> childScans = new LinkedList<>();
+  private Map<UUID, Integer> leaseRenewals = new HashMap<>();
 
   private int scanRequests = 0;
   private int errorsInserted = 0;
   private int messagesInserted = 0;
   private int numberOfInsertedChildScans = 0;
+  private int expandedScans = 0;
+  private int digestQueries = 0;
+  private int singleDigestQueries = 0;
+  private int resultInserts = 0;
+  private int batchInserts = 0;
+  private boolean failBatchInserts = false;
+  private boolean failInserts = false;
+  private List<MetricResult> insertedResults = new ArrayList<>();
 
   public MetricDatabaseMock() {
     super(); //Call required because of extension.
@@ -68,9 +83,82 @@ public class MetricDatabaseMock extends MetricDatabase {
   @Override
   public ByteBuffer getMetricValueDigest(LocalDate date, String metricName, Station station,
       Channel channel) {
+    singleDigestQueries++;
     return digests.get(new MetricValueIdentifier(date, metricName, station, channel));
   }
 
+  @Override
+  public Map<MetricValueIdentifier, ByteBuffer> getMetricValueDigests(LocalDate date,
+      Station station) {
+    digestQueries++;
+    Map<MetricValueIdentifier, ByteBuffer> dayDigests = new HashMap<>();
+    for (Map.Entry<MetricValueIdentifier, ByteBuffer> entry : digests.entrySet()) {
+      if (entry.getKey().getDate().equals(date) && entry.getKey().getStation().equals(station)) {
+        dayDigests.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return dayDigests;
+  }
+
+  @Override
+  public synchronized int insertMetricData(MetricResult results) {
+    if (failInserts) {
+      return -1;
+    }
+    resultInserts++;
+    insertedResults.add(results);
+    return 0;
+  }
+
+  @Override
+  public synchronized int insertMetricData(List<MetricResult> resultsList) {
+    if (failBatchInserts || failInserts) {
+      return -1;
+    }
+    batchInserts++;
+    insertedResults.addAll(resultsList);
+    return 0;
+  }
+
+  public synchronized void setFailBatchInserts(boolean failBatchInserts) {
+    this.failBatchInserts = failBatchInserts;
+  }
+
+  public synchronized void setFailInserts(boolean failInserts) {
+    this.failInserts = failInserts;
+  }
+
+  public synchronized List<MetricResult> getInsertedResults() {
+    return new ArrayList<>(insertedResults);
+  }
+
+  public synchronized int getNumberOfResultInserts() {
+    return resultInserts;
+  }
+
+  public synchronized int getNumberOfBatchInserts() {
+    return batchInserts;
+  }
+
+  @Override
+  public synchronized ByteBuffer getStationDayFingerprint(LocalDate date, Station station) {
+    return fingerprints.get(date + " " + station);
+  }
+
+  @Override
+  public synchronized void insertStationDayFingerprint(LocalDate date, Station station,
+      ByteBuffer fingerprint) {
+    fingerprints.put(date + " " + station, fingerprint);
+  }
+
+  public int getNumberOfDigestQueries() {
+    return digestQueries;
+  }
+
+  public int getNumberOfSingleDigestQueries() {
+    return singleDigestQueries;
+  }
+
 
   @Override
   public synchronized DatabaseScan takeNextScan() {
@@ -84,6 +172,41 @@ public class MetricDatabaseMock extends MetricDatabase {
     return scan;
   }
 
+  @Override
+  public synchronized List<DatabaseScan> takeNextScans(int count, Duration lease) {
+    scanRequests++;
+    List<DatabaseScan> scans = new ArrayList<>();
+    while (scans.size() < count && !newScans.isEmpty()) {
+      DatabaseScan scan = newScans.poll();
+      takenScans.put(scan.scanID, scan);
+      scans.add(scan);
+    }
+    return scans;
+  }
+
+  @Override
+  public synchronized List<DatabaseScan> takeOverlappingScans(DatabaseScan scan,
+      LocalDate windowEnd, Duration lease) {
+    List<DatabaseScan> scans = new ArrayList<>();
+    Iterator<DatabaseScan> iterator = newScans.iterator();
+    while (iterator.hasNext()) {
+      DatabaseScan other = iterator.next();
+      if (other.parentScanID != null && other.network.equals(scan.network)
+          && other.station.equals(scan.station)
+          && Objects.equals(other.location, scan.location)
+          && Objects.equals(other.channel, scan.channel)
+          && other.deleteExisting == scan.deleteExisting
+          && other.startDate.compareTo(scan.startDate) >= 0
+          && other.startDate.compareTo(scan.endDate) <= 0
+          && other.endDate.compareTo(windowEnd) <= 0) {
+        iterator.remove();
+        takenScans.put(other.scanID, other);
+        scans.add(other);
+      }
+    }
+    return scans;
+  }
+
   public void offerNewScan(DatabaseScan scan) {
     newScans.offer(scan);
   }
@@ -123,18 +246,47 @@ public class MetricDatabaseMock extends MetricDatabase {
         deleteExisting));
   }
 
+  @Override
+  public synchronized boolean insertChildScans(DatabaseScan parent, List<DatabaseScan> children) {
+    for (DatabaseScan child : children) {
+      insertChildScan(parent.scanID, child.network, child.station, child.location, child.channel,
+          child.metricName, child.startDate, child.endDate, child.priority, child.deleteExisting);
+    }
+    expandedScans++;
+    return true;
+  }
+
+  public synchronized int getNumberOfExpandedScans() {
+    return expandedScans;
+  }
+
   public synchronized int getNumberScanMessages() {
     return messagesInserted;
   }
 
   @Override
-  public void finishScan(UUID pkScanID) {
+  public synchronized void finishScan(UUID pkScanID) {
     DatabaseScan scan = takenScans.get(pkScanID);
     takenScans.remove(pkScanID);
     finishedScans.put(scan.scanID, scan);
 
   }
 
+  public synchronized boolean isScanFinished(UUID pkScanID) {
+    return finishedScans.containsKey(pkScanID);
+  }
+
+  @Override
+  public synchronized void renewScanLeases(List<UUID> scanIDs, Duration lease) {
+    for (UUID scanID : scanIDs) {
+      leaseRenewals.merge(scanID, 1, Integer::sum);
+    }
+  }
+
+  public synchronized int getNumberOfLeaseRenewals(UUID pkScanID) {
+    return leaseRenewals.getOrDefault(pkScanID, 0);
+  }
+
   public int getNumberOfInsertedChildScans() {
     return numberOfInsertedChildScans;
   }
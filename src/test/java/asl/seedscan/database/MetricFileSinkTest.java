@@ -0,0 +1,161 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.Station;
+import asl.seedscan.metrics.MetricResult;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricFileSinkTest {
+
+  private static final String CALIBRATION_ID = "{ channelId:00-BHZ, band: { period:long } }";
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("results");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    List<Path> paths = new ArrayList<>();
+    Files.walk(directory).forEach(paths::add);
+    for (int i = paths.size() - 1; i >= 0; i--) {
+      Files.delete(paths.get(i));
+    }
+  }
+
+  private static MetricResult createResult(String metricName, LocalDate date, String station) {
+    MetricResult result = new MetricResult(metricName, date, new Station("IU", station));
+    result.addResult("00,LHZ", 1.5, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+    result.addResult("10,LHZ", 2.5, ByteBuffer.wrap(new byte[]{(byte) 0xAB}));
+    return result;
+  }
+
+  @Test
+  public void insertMetricData_ReadBack() throws Exception {
+    MetricFileSink sink = new MetricFileSink(directory);
+    MetricResult calibration = new MetricResult("CalibrationMetric", LocalDate.of(2015, 8, 16),
+        new Station("IU", "ANMO"));
+    calibration.addResult(CALIBRATION_ID, 0.0, ByteBuffer.wrap(new byte[]{9}));
+    assertEquals(0, sink.insertMetricData(Arrays.asList(
+        createResult("AvailabilityMetric", LocalDate.of(2015, 8, 16), "ANMO"),
+        createResult("AvailabilityMetric", LocalDate.of(2015, 8, 16), "FURI"),
+        calibration)));
+    // A second block appended to the same file.
+    assertEquals(0,
+        sink.insertMetricData(createResult("GapCountMetric", LocalDate.of(2015, 8, 17), "ANMO")));
+
+    Path file = directory.resolve("IU").resolve("IU.2015-08" + MetricFileSink.FILE_SUFFIX);
+    List<MetricResult> read = MetricFileReader.read(file);
+    assertEquals(4, read.size());
+    MetricResult first = read.get(0);
+    assertEquals("AvailabilityMetric", first.getMetricName());
+    assertEquals(new Station("IU", "ANMO"), first.getStation());
+    assertEquals(LocalDate.of(2015, 8, 16), first.getDate());
+    assertEquals(1.5, first.getResult("00,LHZ"), 0);
+    assertEquals(2.5, first.getResult("10,LHZ"), 0);
+    assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), first.getDigest("00,LHZ"));
+    assertEquals(new Station("IU", "FURI"), read.get(1).getStation());
+    assertTrue(read.get(2).getIdSet().contains(CALIBRATION_ID));
+    assertEquals("GapCountMetric", read.get(3).getMetricName());
+    assertEquals(LocalDate.of(2015, 8, 17), read.get(3).getDate());
+  }
+
+  @Test
+  public void insertMetricData_FilePerNetworkMonth() throws Exception {
+    MetricFileSink sink = new MetricFileSink(directory);
+    sink.insertMetricData(createResult("AvailabilityMetric", LocalDate.of(2015, 8, 31), "ANMO"));
+    sink.insertMetricData(createResult("AvailabilityMetric", LocalDate.of(2015, 9, 1), "ANMO"));
+    MetricResult other = new MetricResult("AvailabilityMetric", LocalDate.of(2015, 8, 31),
+        new Station("CU", "ANWB"));
+    other.addResult("00,LHZ", 1.0, ByteBuffer.wrap(new byte[]{1}));
+    sink.insertMetricData(other);
+
+    assertEquals(1, MetricFileReader
+        .read(directory.resolve("IU").resolve("IU.2015-08" + MetricFileSink.FILE_SUFFIX)).size());
+    assertEquals(1, MetricFileReader
+        .read(directory.resolve("IU").resolve("IU.2015-09" + MetricFileSink.FILE_SUFFIX)).size());
+    assertEquals(1, MetricFileReader
+        .read(directory.resolve("CU").resolve("CU.2015-08" + MetricFileSink.FILE_SUFFIX)).size());
+  }
+
+  @Test
+  public void insertMetricData_StoredBeforeReturning() throws Exception {
+    MetricFileSink sink = new MetricFileSink(directory);
+    MetricResult result = createResult("AvailabilityMetric", LocalDate.of(2015, 8, 16), "ANMO");
+    assertEquals(0, sink.insertMetricData(result));
+    // Readable without closing or flushing anything.
+    assertEquals(1, MetricFileReader
+        .read(directory.resolve("IU").resolve("IU.2015-08" + MetricFileSink.FILE_SUFFIX)).size());
+  }
+
+  @Test
+  public void insertMetricData_FailedInsertStoresNothing() throws Exception {
+    MetricFileSink sink = new MetricFileSink(directory);
+    MetricResult other = new MetricResult("AvailabilityMetric", LocalDate.of(2015, 8, 16),
+        new Station("CU", "ANWB"));
+    other.addResult("00,LHZ", 1.0, ByteBuffer.wrap(new byte[]{1}));
+    assertEquals(0, sink.insertMetricData(other));
+    // A file in place of the network directory, so the IU block can't be written.
+    Files.createFile(directory.resolve("IU"));
+
+    assertEquals(-1, sink.insertMetricData(Arrays.asList(other,
+        createResult("AvailabilityMetric", LocalDate.of(2015, 8, 16), "ANMO"))));
+    // The CU block written before the failure is taken back.
+    assertEquals(1, MetricFileReader
+        .read(directory.resolve("CU").resolve("CU.2015-08" + MetricFileSink.FILE_SUFFIX)).size());
+  }
+
+  @Test
+  public void writeCopyText() throws Exception {
+    MetricFileSink sink = new MetricFileSink(directory);
+    MetricResult calibration = new MetricResult("CalibrationMetric", LocalDate.of(2015, 8, 16),
+        new Station("IU", "ANMO"));
+    calibration.addResult(CALIBRATION_ID, 0.0, ByteBuffer.wrap(new byte[]{9}));
+    sink.insertMetricData(createResult("AvailabilityMetric", LocalDate.of(2015, 8, 16), "ANMO"));
+    sink.insertMetricData(calibration);
+
+    StringWriter out = new StringWriter();
+    long rows = MetricFileReader
+        .writeCopyText(directory.resolve("IU").resolve("IU.2015-08" + MetricFileSink.FILE_SUFFIX),
+            out);
+    assertEquals(3, rows);
+    String[] lines = out.toString().split("\n");
+    assertEquals("2015-08-16\tAvailabilityMetric\tIU\tANMO\t00\tLHZ\t1.5\t\\N\t\\\\x010203",
+        lines[0]);
+    assertEquals("2015-08-16\tAvailabilityMetric\tIU\tANMO\t10\tLHZ\t2.5\t\\N\t\\\\xab", lines[1]);
+    assertEquals("2015-08-16\tCalibrationMetric\tIU\tANMO\t00\tBHZ\t\\N\t" + CALIBRATION_ID
+        + "\t\\\\x09", lines[2]);
+  }
+
+  @Test
+  public void read_TruncatedBlockIgnored() throws Exception {
+    MetricFileSink sink = new MetricFileSink(directory);
+    sink.insertMetricData(createResult("AvailabilityMetric", LocalDate.of(2015, 8, 16), "ANMO"));
+    sink.insertMetricData(createResult("GapCountMetric", LocalDate.of(2015, 8, 16), "ANMO"));
+
+    Path file = directory.resolve("IU").resolve("IU.2015-08" + MetricFileSink.FILE_SUFFIX);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 10);
+    }
+    List<MetricResult> read = MetricFileReader.read(file);
+    assertEquals(1, read.size());
+    assertEquals("AvailabilityMetric", read.get(0).getMetricName());
+  }
+}
@@ -0,0 +1,130 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.Blockette;
+import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
+import asl.seedscan.metrics.MetricResult;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricResultWriterTest {
+
+  private Path directory;
+
+  private StationMeta stationMeta;
+
+  @Before
+  public void setUp() throws Exception {
+    Blockette blockette = new Blockette(50);
+    blockette.addFieldData("3", "Station call letters: ANMO");
+    blockette.addFieldData("4", "Latitude: 34.9459");
+    blockette.addFieldData("5", "Longitude: -106.4572");
+    blockette.addFieldData("6", "Elevation: 1820.0");
+    blockette.addFieldData("16", "Network Code: IU");
+    stationMeta = new StationMeta(blockette, LocalDateTime.of(2015, 8, 16, 0, 0));
+    directory = Files.createTempDirectory("journal");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (File file : directory.toFile().listFiles()) {
+      Files.delete(file.toPath());
+    }
+    Files.delete(directory);
+  }
+
+  private MetricResult createResult(String metricName) {
+    MetricResult result = new MetricResult(stationMeta, metricName);
+    result.addResult(new Channel("00", "LHZ"), 1.0, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+    return result;
+  }
+
+  @Test(timeout = 20000)
+  public void write_AllResultsStored() throws Exception {
+    MetricDatabaseMock database = new MetricDatabaseMock();
+    MetricResultWriter writer = new MetricResultWriter(database, 16, 2);
+    List<CompletableFuture<Boolean>> writes = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      writes.add(writer.write(createResult("AvailabilityMetric")));
+    }
+    for (CompletableFuture<Boolean> written : writes) {
+      assertTrue(written.get());
+    }
+    assertTrue(writer.close(10000));
+    assertEquals(100, database.getInsertedResults().size());
+  }
+
+  @Test(timeout = 20000)
+  public void write_FailedBatchRetriedPerResult() throws Exception {
+    MetricDatabaseMock database = new MetricDatabaseMock();
+    database.setFailBatchInserts(true);
+    MetricResultWriter writer = new MetricResultWriter(database, 64, 1);
+    List<CompletableFuture<Boolean>> writes = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      writes.add(writer.write(createResult("AvailabilityMetric")));
+    }
+    for (CompletableFuture<Boolean> written : writes) {
+      assertTrue(written.get());
+    }
+    assertTrue(writer.close(10000));
+    assertEquals(0, database.getNumberOfBatchInserts());
+    assertEquals(20, database.getNumberOfResultInserts());
+  }
+
+  @Test(timeout = 20000)
+  public void close_QueuedResultsWritten() throws Exception {
+    MetricDatabaseMock database = new MetricDatabaseMock();
+    MetricResultWriter writer = new MetricResultWriter(database, 64, 1);
+    for (int i = 0; i < 50; i++) {
+      writer.write(createResult("AvailabilityMetric"));
+    }
+    assertTrue(writer.close(10000));
+    assertEquals(0, writer.getQueued());
+    assertEquals(50, database.getInsertedResults().size());
+  }
+
+  @Test(timeout = 20000)
+  public void write_JournaledResultsReplayed() throws Exception {
+    MetricDatabaseMock database = new MetricDatabaseMock();
+    database.setFailInserts(true);
+    MetricResultWriter writer = new MetricResultWriter(database, 64, 1,
+        new ResultJournal(directory));
+    List<CompletableFuture<Boolean>> writes = new ArrayList<>();
+    // Distinct metrics, a later value of the same one would supersede the earlier ones.
+    for (int i = 0; i < 5; i++) {
+      writes.add(writer.write(createResult("Metric" + i)));
+    }
+    // Failed inserts are reported, even though they are replayed from the journal.
+    for (CompletableFuture<Boolean> written : writes) {
+      assertFalse(written.get());
+    }
+    assertEquals(0, database.getInsertedResults().size());
+
+    database.setFailInserts(false);
+    while (database.getInsertedResults().size() < 5) {
+      Thread.sleep(100);
+    }
+    assertTrue(writer.close(10000));
+    assertEquals(5, database.getInsertedResults().size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void write_ClosedWriterRejects() throws Exception {
+    MetricResultWriter writer = new MetricResultWriter(new MetricDatabaseMock(), 4, 1);
+    assertTrue(writer.close(10000));
+    writer.write(createResult("AvailabilityMetric"));
+  }
+}
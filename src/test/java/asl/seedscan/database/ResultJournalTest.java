@@ -0,0 +1,182 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.Station;
+import asl.seedscan.metrics.MetricResult;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResultJournalTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("journal");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (File file : directory.toFile().listFiles()) {
+      Files.delete(file.toPath());
+    }
+    Files.delete(directory);
+  }
+
+  private static MetricResult createResult(String metricName, double value) {
+    MetricResult result = new MetricResult(metricName, LocalDate.of(2015, 8, 16),
+        new Station("IU", "ANMO"));
+    result.addResult("00,LHZ", value, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+    result.addResult("10,LHZ", value + 1, ByteBuffer.wrap(new byte[]{4, 5}));
+    return result;
+  }
+
+  private File[] segments() {
+    return directory.toFile().listFiles((dir, name) -> name.endsWith(".journal"));
+  }
+
+  @Test
+  public void append_ReadBack() throws Exception {
+    ResultJournal journal = new ResultJournal(directory);
+    journal.append(createResult("AvailabilityMetric", 99.5));
+    journal.append(createResult("GapCountMetric", 3));
+    journal.close();
+
+    File[] segments = segments();
+    assertEquals(1, segments.length);
+    List<MetricResult> read = ResultJournal.read(segments[0].toPath());
+    assertEquals(2, read.size());
+    MetricResult first = read.get(0);
+    assertEquals("AvailabilityMetric", first.getMetricName());
+    assertEquals(LocalDate.of(2015, 8, 16), first.getDate());
+    assertEquals(new Station("IU", "ANMO"), first.getStation());
+    assertEquals(99.5, first.getResult("00,LHZ"), 0);
+    assertEquals(100.5, first.getResult("10,LHZ"), 0);
+    assertEquals(ByteBuffer.wrap(new byte[]{4, 5}), first.getDigest("10,LHZ"));
+    assertEquals("GapCountMetric", read.get(1).getMetricName());
+  }
+
+  @Test
+  public void acknowledge_StoredSegmentDeletedOnClose() throws Exception {
+    ResultJournal journal = new ResultJournal(directory);
+    ResultJournal.Segment segment = journal.append(createResult("AvailabilityMetric", 1));
+    journal.acknowledge(segment, true);
+    journal.close();
+
+    assertEquals(0, segments().length);
+  }
+
+  @Test
+  public void acknowledge_FailedSegmentReplayed() throws Exception {
+    ResultJournal journal = new ResultJournal(directory);
+    ResultJournal.Segment segment = journal.append(createResult("AvailabilityMetric", 1));
+    journal.acknowledge(segment, false);
+    assertNull(journal.pollReplay(0));
+    journal.rotateIfFailed();
+
+    Path replay = journal.pollReplay(0);
+    assertEquals(1, ResultJournal.read(replay).size());
+    journal.delete(replay);
+    journal.close();
+    assertEquals(0, segments().length);
+  }
+
+  @Test
+  public void open_PreviousSegmentsReplayed() throws Exception {
+    ResultJournal journal = new ResultJournal(directory);
+    journal.append(createResult("AvailabilityMetric", 1));
+    // Never acknowledged, as if the process had stopped before the insert.
+    journal.close();
+
+    ResultJournal reopened = new ResultJournal(directory);
+    assertEquals(1, reopened.getReplayBacklog());
+    assertEquals(1, ResultJournal.read(reopened.pollReplay(0)).size());
+    reopened.close();
+  }
+
+  @Test
+  public void removeSuperseded_LaterValuesKept() throws Exception {
+    ResultJournal journal = new ResultJournal(directory);
+    MetricResult older = createResult("AvailabilityMetric", 1);
+    journal.acknowledge(journal.append(older), false);
+    // A later scan of the day only replaced one channel's value.
+    MetricResult newer = new MetricResult("AvailabilityMetric", LocalDate.of(2015, 8, 16),
+        new Station("IU", "ANMO"));
+    newer.addResult("00,LHZ", 50.0, ByteBuffer.wrap(new byte[]{7}));
+    journal.acknowledge(journal.append(newer), true);
+    journal.rotateIfFailed();
+
+    Path replay = journal.pollReplay(0);
+    List<MetricResult> read = ResultJournal.read(replay);
+    assertEquals(2, read.size());
+    List<MetricResult> current = journal.removeSuperseded(replay, read, 0);
+    assertEquals(2, current.size());
+    assertEquals(Collections.singleton("10,LHZ"), current.get(0).getIdSet());
+    assertEquals(2.0, current.get(0).getResult("10,LHZ"), 0);
+    assertEquals(50.0, current.get(1).getResult("00,LHZ"), 0);
+
+    // Offset into the segment, only the newer record
+    assertEquals(50.0,
+        journal.removeSuperseded(replay, read.subList(1, 2), 1).get(0).getResult("00,LHZ"), 0);
+    journal.delete(replay);
+    journal.close();
+  }
+
+  @Test
+  public void open_SupersededValuesNotReplayed() throws Exception {
+    ResultJournal journal = new ResultJournal(directory);
+    journal.acknowledge(journal.append(createResult("AvailabilityMetric", 1)), false);
+    journal.rotateIfFailed();
+    // Stored in a later segment, which is kept while the failed one waits for replay.
+    journal.acknowledge(journal.append(createResult("AvailabilityMetric", 2)), true);
+    journal.close();
+    assertEquals(2, segments().length);
+
+    ResultJournal reopened = new ResultJournal(directory);
+    assertEquals(2, reopened.getReplayBacklog());
+    Path first = reopened.pollReplay(0);
+    assertTrue(reopened.removeSuperseded(first, ResultJournal.read(first), 0).isEmpty());
+    Path second = reopened.pollReplay(0);
+    List<MetricResult> current = reopened
+        .removeSuperseded(second, ResultJournal.read(second), 0);
+    assertEquals(1, current.size());
+    assertEquals(2.0, current.get(0).getResult("00,LHZ"), 0);
+
+    // Segments are deleted oldest first.
+    reopened.delete(second);
+    assertEquals(3, segments().length);
+    reopened.delete(first);
+    assertEquals(1, segments().length);
+    reopened.close();
+    assertEquals(0, segments().length);
+  }
+
+  @Test
+  public void read_TruncatedRecordIgnored() throws Exception {
+    ResultJournal journal = new ResultJournal(directory);
+    journal.append(createResult("AvailabilityMetric", 1));
+    journal.append(createResult("GapCountMetric", 2));
+    journal.close();
+
+    Path segment = segments()[0].toPath();
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+    List<MetricResult> read = ResultJournal.read(segment);
+    assertEquals(1, read.size());
+    assertEquals("AvailabilityMetric", read.get(0).getMetricName());
+  }
+}
@@ -0,0 +1,63 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.Channel;
+import org.junit.Test;
+
+public class ScanFilterTest {
+
+  @Test
+  public final void testUnrestricted() throws Exception {
+    ScanFilter filter = new ScanFilter(null, "", " ");
+    assertTrue(filter.isUnrestricted());
+    assertTrue(filter.acceptsMetric("AvailabilityMetric"));
+    assertTrue(filter.acceptsChannel(new Channel("00", "LHZ")));
+    assertTrue(filter.acceptsData("10", "BH1"));
+    assertNull(filter.getDataChannelPattern());
+  }
+
+  @Test
+  public final void testAcceptsMetric() throws Exception {
+    ScanFilter filter = new ScanFilter("CoherencePBM,AvailabilityMetric", null, null);
+    assertFalse(filter.isUnrestricted());
+    assertTrue(filter.acceptsMetric("AvailabilityMetric"));
+    assertTrue(filter.acceptsMetric("CoherencePBM:4-8"));
+    assertTrue(filter.acceptsMetric("CoherencePBM:90-110"));
+    assertFalse(filter.acceptsMetric("DifferencePBM:4-8"));
+    assertFalse(filter.acceptsMetric("GapCountMetric"));
+
+    filter = new ScanFilter("CoherencePBM:4-8", null, null);
+    assertTrue(filter.acceptsMetric("CoherencePBM:4-8"));
+    assertFalse(filter.acceptsMetric("CoherencePBM:18-22"));
+  }
+
+  @Test
+  public final void testAcceptsChannel() throws Exception {
+    ScanFilter filter = new ScanFilter(null, "00", "LH?");
+    assertTrue(filter.acceptsChannel(new Channel("00", "LHZ")));
+    assertTrue(filter.acceptsChannel(new Channel("00", "LH1")));
+    assertFalse(filter.acceptsChannel(new Channel("10", "LHZ")));
+    assertFalse(filter.acceptsChannel(new Channel("00", "BHZ")));
+    assertFalse(filter.acceptsChannel(new Channel("00", "LHND")));
+
+    filter = new ScanFilter(null, null, "LH*,VM?");
+    assertTrue(filter.acceptsChannel(new Channel("10", "LHND")));
+    assertTrue(filter.acceptsChannel(new Channel("00", "VMW")));
+    assertFalse(filter.acceptsChannel(new Channel("00", "VHZ")));
+  }
+
+  @Test
+  public final void testAcceptsData() throws Exception {
+    // Rotated channels need all horizontal components loaded.
+    ScanFilter filter = new ScanFilter(null, "00", "LHND");
+    assertTrue(filter.acceptsData("00", "LH1"));
+    assertTrue(filter.acceptsData("00", "LH2"));
+    assertFalse(filter.acceptsData("00", "BH1"));
+    // Other locations are loaded as partners for pair metrics.
+    assertTrue(filter.acceptsData("10", "LH1"));
+    assertTrue(filter.acceptsData("10", "LHZ"));
+  }
+}
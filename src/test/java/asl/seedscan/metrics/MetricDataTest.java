@@ -8,10 +8,12 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import asl.metadata.Channel;
+import asl.metadata.ChannelArray;
 import asl.metadata.Station;
 import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.database.MetricDatabaseMock;
 import asl.seedscan.database.MetricValueIdentifier;
+import asl.seedscan.database.ScanFilter;
 import asl.seedsplitter.DataSet;
 import asl.testutils.ResourceManager;
 import java.nio.ByteBuffer;
@@ -512,4 +514,58 @@ public class MetricDataTest {
     //Digest Mismatch recompute
     assertNotNull(digest);
   }
+
+  @Test
+  public final void testValueDigestChanged_LocationFilter_CrossLocationPair() throws Exception {
+    MetricData metricData = (MetricData) ResourceManager
+        .loadCompressedObject("/java_serials/data/IU.ANMO.2015.206.MetricData.ser.gz", true);
+    metricData.setMetricReader(database);
+    metricData.setChannelFilter(new ScanFilter(null, "00", null));
+    LocalDate date = LocalDate.parse("2015-08-16");
+
+    Station station = new Station("IU", "ANMO");
+    String metricName = "CoherencePBM:4-8";
+    Channel channel00 = new Channel("00", "LHZ");
+    Channel channel10 = new Channel("10", "LHZ");
+
+    //Result is stored under 00, the partner location is still compared
+    Channel pairId = MetricResult
+        .createChannel(MetricResult.createResultId(channel00, channel10));
+    ByteBuffer digest = metricData.valueDigestChanged(new ChannelArray(channel00, channel10),
+        new MetricValueIdentifier(date, metricName, station, pairId), false);
+    assertNotNull(digest);
+
+    //Result would be stored under 10, which the filter excludes
+    pairId = MetricResult.createChannel(MetricResult.createResultId(channel10, channel00));
+    digest = metricData.valueDigestChanged(new ChannelArray(channel10, channel00),
+        new MetricValueIdentifier(date, metricName, station, pairId), false);
+    assertNull(digest);
+  }
+
+  @Test
+  public final void testValueDigestChanged_Data_LoadedStoredDigests() throws Exception {
+    MetricDatabaseMock tempDatabase = new MetricDatabaseMock();
+    LocalDate date = LocalDate.parse("2015-07-25");
+    Station station = new Station("IU", "ANMO");
+    String metricName = "AnyMetric";
+    Channel channel = new Channel("10", "BH1");
+    tempDatabase.insertMockDigest(new MetricValueIdentifier(date, metricName, station, channel),
+        ByteBuffer.wrap(DatatypeConverter.parseHexBinary("9A4FE3A10FD60F93526F464B0DB9580E")));
+
+    MetricData metricData = (MetricData) ResourceManager
+        .loadCompressedObject("/java_serials/data/IU.ANMO.2015.206.MetricData.ser.gz", true);
+    metricData.setMetricReader(tempDatabase);
+    metricData.loadStoredDigests(date, station);
+
+    //Digest match don't recompute
+    assertNull(metricData.valueDigestChanged(channel,
+        new MetricValueIdentifier(date, metricName, station, channel), false));
+    //Nothing stored, compute
+    Channel otherChannel = new Channel("10", "BH2");
+    assertNotNull(metricData.valueDigestChanged(otherChannel,
+        new MetricValueIdentifier(date, metricName, station, otherChannel), false));
+
+    assertEquals(1, tempDatabase.getNumberOfDigestQueries());
+    assertEquals(0, tempDatabase.getNumberOfSingleDigestQueries());
+  }
 }
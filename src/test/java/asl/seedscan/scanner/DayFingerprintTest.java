@@ -0,0 +1,151 @@
+package asl.seedscan.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import asl.metadata.Blockette;
+import asl.metadata.Channel;
+import asl.metadata.ChannelKey;
+import asl.metadata.Station;
+import asl.metadata.meta_new.ChannelMeta;
+import asl.metadata.meta_new.StationMeta;
+import asl.seedscan.ArchivePath;
+import asl.seedscan.Global;
+import asl.seedscan.GlobalMock;
+import asl.seedscan.database.ScanFilter;
+import asl.seedscan.metrics.AvailabilityMetric;
+import asl.seedscan.metrics.GapCountMetric;
+import asl.seedscan.metrics.Metric;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DayFingerprintTest {
+
+  private static final Station STATION = new Station("IU", "ANMO");
+
+  private static final LocalDate DATE = LocalDate.of(2015, 8, 16);
+
+  private Path directory;
+
+  private StationMeta metadata;
+
+  private List<Metric> metrics;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("fingerprint");
+    GlobalMock.setDataDir(directory + "/${NETWORK}_${STATION}/${YEAR}/${JDAY}");
+    writeFile(DATE, "00_LHZ.512.seed", new byte[]{1, 2, 3, 4});
+    writeFile(DATE.plusDays(1), "00_LHZ.512.seed", new byte[]{5, 6, 7, 8});
+    metadata = createMetadata("34.9459");
+    metrics = new ArrayList<>();
+    metrics.add(new AvailabilityMetric());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  private static StationMeta createMetadata(String latitude) throws Exception {
+    Blockette blockette = new Blockette(50);
+    blockette.addFieldData("3", "Station call letters: ANMO");
+    blockette.addFieldData("4", "Latitude: " + latitude);
+    blockette.addFieldData("5", "Longitude: -106.4572");
+    blockette.addFieldData("6", "Elevation: 1820.0");
+    blockette.addFieldData("16", "Network Code: IU");
+    StationMeta stationMeta = new StationMeta(blockette, LocalDateTime.of(2015, 8, 16, 0, 0));
+    ChannelMeta channelMeta = new ChannelMeta(new ChannelKey("00", "LHZ"),
+        LocalDateTime.of(2015, 8, 16, 0, 0), STATION);
+    channelMeta.setSampleRate(1.0);
+    stationMeta.addChannel(new ChannelKey("00", "LHZ"), channelMeta);
+    return stationMeta;
+  }
+
+  private File writeFile(LocalDate date, String name, byte[] content) throws Exception {
+    File dir = new File(
+        new ArchivePath(date.atStartOfDay(), STATION).makePath(Global.getDataDir()));
+    Files.createDirectories(dir.toPath());
+    File file = new File(dir, name);
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  private ByteBuffer fingerprint() {
+    return DayFingerprint.create(DATE, STATION, metadata, metrics, ScanFilter.ALL)
+        .getDigestBytes();
+  }
+
+  @Test
+  public final void create_UnchangedDayMatches() throws Exception {
+    assertEquals(fingerprint(), fingerprint());
+  }
+
+  @Test
+  public final void create_ChangedFile() throws Exception {
+    ByteBuffer before = fingerprint();
+    File file = DataLoader.getSeedFiles(DATE, STATION)[0];
+    long lastModified = file.lastModified();
+    // Same size and modification time, only the content differs.
+    writeFile(DATE, file.getName(), new byte[]{1, 2, 3, 5});
+    file.setLastModified(lastModified);
+    assertNotEquals(before, fingerprint());
+  }
+
+  @Test
+  public final void create_AddedFile() throws Exception {
+    ByteBuffer before = fingerprint();
+    writeFile(DATE, "10_LHZ.512.seed", new byte[]{1});
+    assertNotEquals(before, fingerprint());
+  }
+
+  @Test
+  public final void create_ChangedNextDayFile() throws Exception {
+    ByteBuffer before = fingerprint();
+    writeFile(DATE.plusDays(1), "00_LHZ.512.seed", new byte[]{5, 6, 7, 8, 9});
+    assertNotEquals(before, fingerprint());
+  }
+
+  @Test
+  public final void create_ChangedStationCoordinate() throws Exception {
+    ByteBuffer before = fingerprint();
+    metadata = createMetadata("34.9460");
+    assertNotEquals(before, fingerprint());
+  }
+
+  @Test
+  public final void create_ChangedChannelMetadata() throws Exception {
+    ByteBuffer before = fingerprint();
+    metadata.getChannelMetadata(new Channel("00", "LHZ")).setSampleRate(20.0);
+    assertNotEquals(before, fingerprint());
+  }
+
+  @Test
+  public final void create_ChangedMetrics() throws Exception {
+    ByteBuffer before = fingerprint();
+    metrics.add(new GapCountMetric());
+    ByteBuffer added = fingerprint();
+    assertNotEquals(before, added);
+
+    // Order doesn't matter
+    metrics = new ArrayList<>(Arrays.asList(new GapCountMetric(), new AvailabilityMetric()));
+    assertEquals(added, fingerprint());
+
+    metrics.get(0).add("makeplots", "true");
+    assertNotEquals(added, fingerprint());
+  }
+}
@@ -0,0 +1,38 @@
+package asl.seedscan.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+
+  @Test
+  public void reserveRelease_TracksUsage() throws Exception {
+    MemoryBudget budget = new MemoryBudget(100);
+    assertTrue(budget.hasRoom());
+
+    budget.reserve(60);
+    assertTrue(budget.hasRoom());
+    budget.reserve(60);
+    assertFalse(budget.hasRoom());
+    assertEquals(120, budget.getUsed());
+
+    budget.release(60);
+    assertTrue(budget.hasRoom());
+    budget.release(100);
+    assertEquals(0, budget.getUsed());
+  }
+
+  @Test
+  public void adjust_TracksCacheChanges() throws Exception {
+    MemoryBudget budget = new MemoryBudget(100);
+    budget.reserve(50);
+    budget.adjust(70);
+    assertFalse(budget.hasRoom());
+    budget.adjust(-70);
+    assertTrue(budget.hasRoom());
+    assertEquals(50, budget.getUsed());
+  }
+}
@@ -34,6 +34,14 @@ public class ScanManagerMock extends ScanManager {
     numberTasksAdded++;
   }
 
+  /**
+   * Adds delayed tasks right away, so tests don't wait for them.
+   */
+  @Override
+  public void addTask(ScanWorker task, long delay) {
+    addTask(task);
+  }
+
   public synchronized int getNumberTasksAdded() {
     return numberTasksAdded;
   }
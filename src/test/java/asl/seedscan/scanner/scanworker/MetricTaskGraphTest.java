@@ -0,0 +1,158 @@
+package asl.seedscan.scanner.scanworker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.seedscan.metrics.Metric;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricTaskGraphTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test(timeout = 20000)
+  public void execute_DependenciesFinishFirst() throws Exception {
+    TestMetric dead = new TestMetric("DeadChannelMetric:4-8", "NLNMDeviationMetric:4-8");
+    TestMetric nlnm = new TestMetric("NLNMDeviationMetric:4-8");
+    TestMetric availability = new TestMetric("AvailabilityMetric");
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    // Dependent metric is listed first on purpose.
+    new MetricTaskGraph(Arrays.asList(dead, nlnm, availability)).execute(executor,
+        metric -> {
+          if (metric == nlnm) {
+            try {
+              Thread.sleep(200);
+            } catch (InterruptedException ignored) {
+            }
+          }
+          order.add(metric.getName());
+          return null;
+        });
+
+    assertEquals(3, order.size());
+    assertTrue(order.indexOf("NLNMDeviationMetric:4-8") < order.indexOf("DeadChannelMetric:4-8"));
+  }
+
+  @Test(timeout = 20000)
+  public void execute_FailedDependencyStillRunsDependent() throws Exception {
+    TestMetric dead = new TestMetric("DeadChannelMetric:4-8", "NLNMDeviationMetric:4-8");
+    TestMetric nlnm = new TestMetric("NLNMDeviationMetric:4-8");
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    new MetricTaskGraph(Arrays.asList(dead, nlnm)).execute(executor, metric -> {
+      order.add(metric.getName());
+      if (metric == nlnm) {
+        throw new IllegalStateException("Failed metric");
+      }
+      return null;
+    });
+
+    assertEquals(Arrays.asList("NLNMDeviationMetric:4-8", "DeadChannelMetric:4-8"), order);
+  }
+
+  @Test(timeout = 20000)
+  public void execute_CyclesDoNotDeadlock() throws Exception {
+    TestMetric a = new TestMetric("A", "B");
+    TestMetric b = new TestMetric("B", "A");
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    new MetricTaskGraph(Arrays.asList(a, b)).execute(executor, metric -> {
+      order.add(metric.getName());
+      return null;
+    });
+
+    assertEquals(2, order.size());
+  }
+
+  @Test(timeout = 20000)
+  public void execute_DependentWaitsForStoredResults() throws Exception {
+    TestMetric dead = new TestMetric("DeadChannelMetric:4-8", "NLNMDeviationMetric:4-8");
+    TestMetric nlnm = new TestMetric("NLNMDeviationMetric:4-8");
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    new MetricTaskGraph(Arrays.asList(dead, nlnm)).execute(executor, metric -> {
+      order.add(metric.getName());
+      if (metric != nlnm) {
+        return null;
+      }
+      // Stored in the background after the metric's task returned.
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException ignored) {
+        }
+        order.add("stored");
+        return true;
+      });
+    });
+
+    assertEquals(Arrays.asList("NLNMDeviationMetric:4-8", "stored", "DeadChannelMetric:4-8"),
+        order);
+  }
+
+  @Test(timeout = 20000)
+  public void execute_FailedWriteStillRunsDependent() throws Exception {
+    TestMetric dead = new TestMetric("DeadChannelMetric:4-8", "NLNMDeviationMetric:4-8");
+    TestMetric nlnm = new TestMetric("NLNMDeviationMetric:4-8");
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    new MetricTaskGraph(Arrays.asList(dead, nlnm)).execute(executor, metric -> {
+      order.add(metric.getName());
+      CompletableFuture<Boolean> written = new CompletableFuture<>();
+      written.completeExceptionally(new IllegalStateException("Failed write"));
+      return written;
+    });
+
+    assertEquals(Arrays.asList("NLNMDeviationMetric:4-8", "DeadChannelMetric:4-8"), order);
+  }
+
+  private static class TestMetric extends Metric {
+
+    private final String name;
+    private final List<String> dependencies;
+
+    private TestMetric(String name, String... dependencies) {
+      this.name = name;
+      this.dependencies = Arrays.asList(dependencies);
+    }
+
+    @Override
+    public List<String> getDependencies() {
+      return dependencies;
+    }
+
+    @Override
+    public long getVersion() {
+      return 1;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public void process() {
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package asl.seedscan.scanner.scanworker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import asl.metadata.MetaGenerator;
 import asl.seedscan.database.DatabaseScan;
@@ -9,6 +11,9 @@ import asl.seedscan.scanner.ScanManagerMock;
 import asl.testutils.Dependent;
 import asl.testutils.ResourceManager;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -61,6 +66,7 @@ public class RetrieveScanTest {
     assertEquals(1, manager.getNumberTasksAdded());
     //Only 24 will produce data if processed fully.
     assertEquals(0, database.getNumberOfInsertedChildScans());
+    assertEquals(0, database.getNumberOfExpandedScans());
     assertEquals(0, database.getNumberErrors());
   }
 
@@ -77,6 +83,7 @@ public class RetrieveScanTest {
     scan.parseScan(dbScan);
     assertEquals(0, manager.getNumberTasksAdded());
     assertEquals(157, database.getNumberOfInsertedChildScans());
+    assertEquals(1, database.getNumberOfExpandedScans());
     assertEquals(0, database.getNumberErrors());
   }
 
@@ -94,6 +101,8 @@ public class RetrieveScanTest {
     assertEquals(0, manager.getNumberTasksAdded());
     //157*36=5652 30 day scans
     assertEquals(5652, database.getNumberOfInsertedChildScans());
+    // Expanded once, after every child was inserted.
+    assertEquals(1, database.getNumberOfExpandedScans());
     assertEquals(0, database.getNumberErrors());
   }
 
@@ -226,6 +235,92 @@ public class RetrieveScanTest {
     assertEquals(0, database.getNumberErrors());
   }
 
+  @Test
+  public void coalesce_OverlappingScansGrouped() throws Exception {
+    DatabaseScan first = new DatabaseScan(
+        new UUID(100, 100), new UUID(10, 10), "AvailabilityMetric",
+        "IU", "ANMO", null, null,
+        LocalDate.of(2013, 1, 1), LocalDate.of(2013, 1, 10),
+        1, false);
+    DatabaseScan overlapping = new DatabaseScan(
+        new UUID(100, 101), new UUID(10, 11), "GapCountMetric",
+        "IU", "ANMO", null, null,
+        LocalDate.of(2013, 1, 5), LocalDate.of(2013, 1, 20),
+        1, false);
+    DatabaseScan later = new DatabaseScan(
+        new UUID(100, 102), new UUID(10, 11), "GapCountMetric",
+        "IU", "ANMO", null, null,
+        LocalDate.of(2013, 1, 11), LocalDate.of(2013, 1, 20),
+        1, false);
+    DatabaseScan otherChannel = new DatabaseScan(
+        new UUID(100, 103), new UUID(10, 11), "GapCountMetric",
+        "IU", "ANMO", "00", "LH*",
+        LocalDate.of(2013, 1, 2), LocalDate.of(2013, 1, 10),
+        1, false);
+
+    List<List<DatabaseScan>> groups = RetrieveScan
+        .coalesce(Arrays.asList(later, overlapping, otherChannel, first));
+    assertEquals(3, groups.size());
+    assertEquals(Arrays.asList(first, overlapping), groups.get(0));
+    assertEquals(Collections.singletonList(otherChannel), groups.get(1));
+    assertEquals(Collections.singletonList(later), groups.get(2));
+  }
+
+  @Test
+  public void canCoalesce_PassLimitedTo31Days() throws Exception {
+    DatabaseScan first = new DatabaseScan(
+        new UUID(100, 100), new UUID(10, 10), "AvailabilityMetric",
+        "IU", "ANMO", null, null,
+        LocalDate.of(2013, 1, 1), LocalDate.of(2013, 1, 10),
+        1, false);
+    DatabaseScan withinPass = new DatabaseScan(
+        new UUID(100, 101), new UUID(10, 11), "GapCountMetric",
+        "IU", "ANMO", null, null,
+        LocalDate.of(2013, 1, 10), LocalDate.of(2013, 1, 31),
+        1, false);
+    DatabaseScan beyondPass = new DatabaseScan(
+        new UUID(100, 102), new UUID(10, 11), "GapCountMetric",
+        "IU", "ANMO", null, null,
+        LocalDate.of(2013, 1, 10), LocalDate.of(2013, 2, 1),
+        1, false);
+    DatabaseScan deletesExisting = new DatabaseScan(
+        new UUID(100, 103), new UUID(10, 11), "GapCountMetric",
+        "IU", "ANMO", null, null,
+        LocalDate.of(2013, 1, 1), LocalDate.of(2013, 1, 10),
+        1, true);
+
+    assertTrue(RetrieveScan.canCoalesce(first, withinPass));
+    assertFalse(RetrieveScan.canCoalesce(first, beyondPass));
+    assertFalse(RetrieveScan.canCoalesce(first, deletesExisting));
+  }
+
+  @Test
+  public void parseScan_StationScan_TakesOverlappingScans() throws Exception {
+    DatabaseScan dbScan = new DatabaseScan(
+        new UUID(100, 100),
+        new UUID(10, 10),
+        "AvailabilityMetric",
+        "IC", "XAN", null, null,
+        LocalDate.of(2013, 1, 1), LocalDate.of(2013, 1, 30),
+        1, false);
+    DatabaseScan pending = new DatabaseScan(
+        new UUID(100, 101),
+        new UUID(10, 11),
+        "GapCountMetric",
+        "IC", "XAN", null, null,
+        LocalDate.of(2013, 1, 15), LocalDate.of(2013, 1, 31),
+        1, false);
+    database.offerNewScan(pending);
+
+    scan.parseScan(dbScan);
+    assertEquals(1, manager.getNumberTasksAdded());
+    StationScan stationScan = (StationScan) manager.getWorkQueue().peek();
+    assertEquals(Arrays.asList(dbScan, pending), stationScan.databaseScans);
+    assertEquals(LocalDate.of(2013, 1, 31), stationScan.endDate);
+    //Already taken
+    assertTrue(database.takeNextScans(1, RetrieveScan.SCAN_LEASE).isEmpty());
+  }
+
   @Test
   public void getBasePriority() throws Exception {
     //This task should always run after every other type.
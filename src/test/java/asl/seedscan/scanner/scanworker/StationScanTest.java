@@ -1,16 +1,26 @@
 package asl.seedscan.scanner.scanworker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import asl.metadata.MetaGenerator;
 import asl.metadata.Station;
+import asl.seedscan.GlobalMock;
 import asl.seedscan.database.DatabaseScan;
 import asl.seedscan.database.MetricDatabaseMock;
+import asl.seedscan.event.EventCMT;
+import asl.seedscan.metrics.AvailabilityMetric;
+import asl.seedscan.metrics.GapCountMetric;
+import asl.seedscan.metrics.Metric;
 import asl.seedscan.scanner.ScanManagerMock;
 import asl.testutils.Dependent;
 import asl.testutils.ResourceManager;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
 import java.util.Queue;
 import java.util.UUID;
 import org.junit.After;
@@ -140,6 +150,131 @@ public class StationScanTest {
     assertEquals("Number of station Scans added: ", 0, manager.getNumberTasksAdded());
   }
 
+  @Test(timeout = 20000)
+  public void run_CoalescedScansAllFinished() throws Exception {
+    DatabaseScan dbScanA = new DatabaseScan(
+        new UUID(100, 100),
+        new UUID(10, 10),
+        "AvailabilityMetric",
+        "IU", "KIP", null, null,
+        LocalDate.of(2012, 1, 15), LocalDate.of(2012, 1, 15),
+        1, false);
+    DatabaseScan dbScanB = new DatabaseScan(
+        new UUID(100, 101),
+        new UUID(10, 11),
+        "GapCountMetric",
+        "IU", "KIP", null, null,
+        LocalDate.of(2012, 1, 15), LocalDate.of(2012, 1, 16),
+        1, false);
+    database.offerNewScan(dbScanA);
+    database.offerNewScan(dbScanB);
+    database.takeNextScans(2, RetrieveScan.SCAN_LEASE);
+
+    StationScan scan = new StationScan(manager, Arrays.asList(dbScanA, dbScanB));
+    scan.run();
+
+    //The pass continues until the last day of either scan
+    assertEquals("Number of station Scans added: ", 1, manager.getNumberTasksAdded());
+    StationScan nextScan = (StationScan) manager.getWorkQueue().poll();
+    assertEquals(LocalDate.of(2012, 1, 16), nextScan.currentDate);
+    assertEquals(2, nextScan.databaseScans.size());
+    //Both leases are renewed when the next day is queued
+    assertEquals(1, database.getNumberOfLeaseRenewals(dbScanA.scanID));
+    assertEquals(1, database.getNumberOfLeaseRenewals(dbScanB.scanID));
+
+    nextScan.run();
+    assertEquals("Number of station Scans added: ", 1, manager.getNumberTasksAdded());
+    assertEquals(1, database.getNumberOfLeaseRenewals(dbScanB.scanID));
+    assertTrue(database.isScanFinished(dbScanA.scanID));
+    assertTrue(database.isScanFinished(dbScanB.scanID));
+  }
+
+  @Test(timeout = 20000)
+  public void run_DeferredWhileMemoryBudgetExceeded() throws Exception {
+    DatabaseScan dbScan = new DatabaseScan(
+        new UUID(100, 100),
+        new UUID(10, 10),
+        null,
+        "IU", "KIP", null, null,
+        LocalDate.of(2012, 1, 15), LocalDate.of(2012, 1, 20),
+        1, false);
+    StationScan scan = new StationScan(manager, dbScan, LocalDate.of(2012, 1, 17), null);
+    long limit = manager.memoryBudget.getLimit();
+    manager.memoryBudget.reserve(limit);
+
+    //The day is requeued instead of loaded
+    scan.run();
+    assertEquals("Number of station Scans added: ", 1, manager.getNumberTasksAdded());
+    StationScan deferred = (StationScan) manager.getWorkQueue().poll();
+    assertEquals(LocalDate.of(2012, 1, 17), deferred.currentDate);
+
+    //Once there is room the day is scanned and the next day added
+    manager.memoryBudget.release(limit);
+    deferred.run();
+    assertEquals("Number of station Scans added: ", 2, manager.getNumberTasksAdded());
+    StationScan nextScan = (StationScan) manager.getWorkQueue().poll();
+    assertEquals(LocalDate.of(2012, 1, 18), nextScan.currentDate);
+  }
+
+  private StationScan createScan(boolean deleteExisting) {
+    DatabaseScan dbScan = new DatabaseScan(
+        new UUID(100, 100),
+        new UUID(10, 10),
+        null,
+        "IU", "KIP", null, null,
+        LocalDate.of(2012, 1, 15), LocalDate.of(2012, 1, 20),
+        1, deleteExisting);
+    return new StationScan(manager, dbScan, LocalDate.of(2012, 1, 17), null);
+  }
+
+  @Test
+  public void maySkip_UnchangedDaySkipped() throws Exception {
+    List<Metric> metrics = Arrays.asList(new AvailabilityMetric(), new GapCountMetric());
+    assertTrue(createScan(false).maySkip(null, metrics));
+  }
+
+  @Test
+  public void maySkip_DeleteExistingNotSkipped() throws Exception {
+    List<Metric> metrics = Collections.singletonList(new AvailabilityMetric());
+    assertFalse(createScan(true).maySkip(null, metrics));
+  }
+
+  @Test
+  public void maySkip_ForceUpdateNotSkipped() throws Exception {
+    Metric forced = new GapCountMetric();
+    forced.add("forceupdate", "true");
+    List<Metric> metrics = Arrays.asList(new AvailabilityMetric(), forced);
+    assertFalse(createScan(false).maySkip(null, metrics));
+  }
+
+  @Test
+  public void maySkip_EventsNotSkipped() throws Exception {
+    Hashtable<String, EventCMT> events = new Hashtable<>();
+    events.put("C201201170000A", new EventCMT.Builder("C201201170000A").build());
+    List<Metric> metrics = Collections.singletonList(new AvailabilityMetric());
+    assertFalse(createScan(false).maySkip(events, metrics));
+  }
+
+  @Test
+  public void maySkip_DisconnectedDatabaseNotSkipped() throws Exception {
+    database.setConnected(false);
+    List<Metric> metrics = Collections.singletonList(new AvailabilityMetric());
+    assertFalse(createScan(false).maySkip(null, metrics));
+  }
+
+  @Test
+  public void maySkip_ResultFilesNotSkipped() throws Exception {
+    manager.halt();
+    GlobalMock.setResultsDir(System.getProperty("java.io.tmpdir"));
+    try {
+      manager = new ScanManagerMock(database, metaGenerator);
+    } finally {
+      GlobalMock.setResultsDir(null);
+    }
+    List<Metric> metrics = Collections.singletonList(new AvailabilityMetric());
+    assertFalse(createScan(false).maySkip(null, metrics));
+  }
+
   @Ignore
   @Test
   public void run_NoMetadataForDay_NoMetricsShouldBeRun() throws Exception {
@@ -0,0 +1,73 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SeedSplitProcessorTest {
+
+  /**
+   * 32 bit integers, which the splitter does not decode.
+   */
+  private static final int INT32 = 3;
+
+  private static void process(SeedSplitProcessor processor, byte[] record) {
+    processor.processRecord(ByteBuffer.wrap(record), 0, record.length);
+  }
+
+  @Test
+  public final void processRecord_ContiguousRecordsJoined() throws Exception {
+    SteimRecords records = new SteimRecords(SteimRecords.STEIM2, 512, ByteOrder.BIG_ENDIAN);
+    int[] samples = SteimRecords.randomWalk(1, 2000);
+    SeedSplitProcessor processor = new SeedSplitProcessor();
+
+    int offset = 0;
+    int previous = 0;
+    for (int sequence = 1; offset < samples.length; sequence++) {
+      int[] rest = Arrays.copyOfRange(samples, offset, samples.length);
+      process(processor, records.build(sequence, offset * 1000000L, rest, previous));
+      offset += records.countSamples(rest, previous);
+      previous = samples[offset - 1];
+    }
+    processor.finish();
+
+    assertEquals(1, processor.getTable().size());
+    ArrayList<DataSet> dataSets = processor.getTable().values().iterator().next();
+    assertEquals(1, dataSets.size());
+    assertArrayEquals(samples, dataSets.get(0).getSeries());
+  }
+
+  @Test
+  public final void processRecord_UnsupportedEncodingCreatesNoDataSet() throws Exception {
+    int[] samples = SteimRecords.randomWalk(2, 100);
+    SeedSplitProcessor processor = new SeedSplitProcessor();
+    process(processor, new SteimRecords(INT32, 512, ByteOrder.BIG_ENDIAN)
+        .build(1, 0, samples, 0));
+    processor.finish();
+
+    assertTrue(processor.getTable().isEmpty());
+  }
+
+  @Test
+  public final void processRecord_UnsupportedEncodingAfterGap() throws Exception {
+    int[] samples = SteimRecords.randomWalk(3, 100);
+    SteimRecords records = new SteimRecords(SteimRecords.STEIM2, 512, ByteOrder.BIG_ENDIAN);
+    int count = records.countSamples(samples, 0);
+    SeedSplitProcessor processor = new SeedSplitProcessor();
+    process(processor, records.build(1, 0, samples, 0));
+    // Starts an hour later, so it would begin a new DataSet.
+    process(processor, new SteimRecords(INT32, 512, ByteOrder.BIG_ENDIAN)
+        .build(2, 3600000000L, samples, 0));
+    processor.finish();
+
+    ArrayList<DataSet> dataSets = processor.getTable().values().iterator().next();
+    assertEquals(1, dataSets.size());
+    assertEquals(count, dataSets.get(0).getLength());
+  }
+}
@@ -0,0 +1,38 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SequenceTest {
+
+  @Test
+  public final void truncate_ReturnsBlocksToPool() throws Exception {
+    Sequence sequence = new Sequence();
+    int blockSize = sequence.getBlockPool().getBlockSize();
+    int[] data = new int[2 * blockSize + 10];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = i;
+    }
+
+    sequence.extend(data, 0, blockSize);
+    int[] second = sequence.getTailBlock();
+    sequence.extend(data, blockSize, blockSize);
+    int[] third = sequence.getTailBlock();
+    sequence.extend(data, 2 * blockSize, 10);
+    assertEquals(3, sequence.getBlockCount());
+
+    sequence.truncate(blockSize - 5);
+    assertEquals(1, sequence.getBlockCount());
+    assertEquals(blockSize - 5, sequence.getLength());
+    assertArrayEquals(Arrays.copyOf(data, blockSize - 5), sequence.getSeries());
+
+    // Blocks are released from the end of the sequence.
+    BlockPool pool = sequence.getBlockPool();
+    assertSame(third, pool.getNewBlock());
+    assertSame(second, pool.getNewBlock());
+  }
+}
@@ -0,0 +1,168 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import seed.MiniSeed;
+import seed.MiniSeedView;
+import seed.SampleSink;
+
+/**
+ * Decodes the same records with seedCodec through {@link MiniSeed#decomp()} and with the in place
+ * decoder through {@link MiniSeedView#decompress(SampleSink)} and compares the samples.
+ */
+public class SteimDecoderEquivalenceTest {
+
+  /**
+   * Collects samples in deliberately small blocks, so records cross block boundaries.
+   */
+  private static class BlockSink implements SampleSink {
+
+    private final List<int[]> blocks = new ArrayList<>();
+    private int length = 0;
+
+    private BlockSink() {
+      blocks.add(new int[37]);
+    }
+
+    @Override
+    public int[] getTailBlock() {
+      return blocks.get(blocks.size() - 1);
+    }
+
+    @Override
+    public int getTailOffset() {
+      return length % 37;
+    }
+
+    @Override
+    public void commitTail(int count) {
+      length += count;
+      if (length % 37 == 0) {
+        blocks.add(new int[37]);
+      }
+    }
+
+    @Override
+    public int getLength() {
+      return length;
+    }
+
+    @Override
+    public void truncate(int length) {
+      this.length = length;
+      while (blocks.size() > length / 37 + 1) {
+        blocks.remove(blocks.size() - 1);
+      }
+    }
+
+    private int[] getSamples() {
+      int[] samples = new int[length];
+      for (int i = 0; i < length; i += 37) {
+        System.arraycopy(blocks.get(i / 37), 0, samples, i, Math.min(37, length - i));
+      }
+      return samples;
+    }
+  }
+
+  /**
+   * Splits the samples into records laid out back to back in one buffer.
+   */
+  private static List<byte[]> encode(SteimRecords records, int[] samples, int previous) {
+    List<byte[]> encoded = new ArrayList<>();
+    int offset = 0;
+    for (int sequence = 1; offset < samples.length; sequence++) {
+      int[] rest = Arrays.copyOfRange(samples, offset, samples.length);
+      encoded.add(records.build(sequence, offset * 1000000L, rest, previous));
+      offset += records.countSamples(rest, previous);
+      previous = samples[offset - 1];
+    }
+    return encoded;
+  }
+
+  private static void assertEquivalent(int encoding, int recordLength, ByteOrder order,
+      int[] samples, int previous) throws Exception {
+    List<byte[]> records = encode(new SteimRecords(encoding, recordLength, order), samples,
+        previous);
+    ByteBuffer buffer = ByteBuffer.allocate(records.size() * recordLength);
+    for (byte[] record : records) {
+      buffer.put(record);
+    }
+
+    int[] expected = new int[0];
+    for (byte[] record : records) {
+      MiniSeed miniSeed = new MiniSeed(record);
+      int[] decoded = miniSeed.decomp();
+      assertEquals(miniSeed.getNsamp(), decoded.length);
+      int length = expected.length;
+      expected = Arrays.copyOf(expected, length + decoded.length);
+      System.arraycopy(decoded, 0, expected, length, decoded.length);
+    }
+    assertArrayEquals(samples, expected);
+
+    MiniSeedView view = new MiniSeedView();
+    BlockSink sink = new BlockSink();
+    for (int i = 0; i < records.size(); i++) {
+      view.reset(buffer, i * recordLength, recordLength);
+      view.decompress(sink);
+    }
+    assertArrayEquals(expected, sink.getSamples());
+  }
+
+  @Test
+  public final void decompress_Steim1MatchesSeedCodec() throws Exception {
+    for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      for (int recordLength : new int[]{512, 4096}) {
+        assertEquivalent(SteimRecords.STEIM1, recordLength, order,
+            SteimRecords.randomWalk(recordLength, 5000), 0);
+      }
+    }
+  }
+
+  @Test
+  public final void decompress_Steim2MatchesSeedCodec() throws Exception {
+    for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      for (int recordLength : new int[]{512, 4096}) {
+        assertEquivalent(SteimRecords.STEIM2, recordLength, order,
+            SteimRecords.randomWalk(recordLength, 5000), 0);
+      }
+    }
+  }
+
+  @Test
+  public final void decompress_NonZeroIntegrationConstants() throws Exception {
+    // Far from zero and not continuing from the previous record, so the first difference and
+    // both integration constants are large.
+    int[] samples = SteimRecords.randomWalk(7, 3000);
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] += 100000000;
+    }
+    for (int encoding : new int[]{SteimRecords.STEIM1, SteimRecords.STEIM2}) {
+      List<byte[]> records = encode(new SteimRecords(encoding, 512, ByteOrder.BIG_ENDIAN),
+          samples, -5000);
+      // Many records of several frames each
+      assertNotEquals(1, records.size());
+      MiniSeed first = new MiniSeed(records.get(0));
+      assertNotEquals(0, first.getForward());
+      assertNotEquals(0, first.getReverse());
+
+      assertEquivalent(encoding, 512, ByteOrder.BIG_ENDIAN, samples, -5000);
+      assertEquivalent(encoding, 512, ByteOrder.LITTLE_ENDIAN, samples, -5000);
+    }
+  }
+
+  @Test
+  public final void decompress_ConstantSignal() throws Exception {
+    int[] samples = new int[1000];
+    Arrays.fill(samples, -42);
+    assertEquivalent(SteimRecords.STEIM1, 512, ByteOrder.BIG_ENDIAN, samples, -42);
+    assertEquivalent(SteimRecords.STEIM2, 512, ByteOrder.BIG_ENDIAN, samples, -42);
+  }
+}
@@ -0,0 +1,246 @@
+package asl.seedsplitter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Builds MiniSEED records with a blockette 1000 and Steim encoded data, so the decoders can be
+ * tested without data files.
+ */
+class SteimRecords {
+
+  static final int STEIM1 = 10;
+  static final int STEIM2 = 11;
+
+  /**
+   * Header and blockette 1000, data starts at the next frame boundary.
+   */
+  private static final int DATA_OFFSET = 64;
+
+  private static final int FRAME_BYTES = 64;
+
+  private final int encoding;
+  private final int recordLength;
+  private final ByteOrder order;
+
+  private static final String STATION = "FOO";
+  private static final String LOCATION = "00";
+  private static final String CHANNEL = "LHZ";
+  private static final String NETWORK = "XX";
+
+  /**
+   * @param encoding STEIM1, STEIM2 or any other SEED encoding, which is written to the blockette
+   * 1000 with Steim2 frames behind it
+   * @param recordLength the record length, a power of 2 of at least 128 bytes
+   * @param order the byte order of the record
+   */
+  SteimRecords(int encoding, int recordLength, ByteOrder order) {
+    this.encoding = encoding;
+    this.recordLength = recordLength;
+    this.order = order;
+  }
+
+  /**
+   * A random walk whose differences switch between small and large steps, so every Steim packing
+   * is used.
+   */
+  static int[] randomWalk(long seed, int length) {
+    Random random = new Random(seed);
+    int[] samples = new int[length];
+    int[] steps = {7, 15, 31, 127, 511, 16383, 1 << 20, 1 << 28};
+    int value = random.nextInt(1000) - 500;
+    int step = steps[0];
+    for (int i = 0; i < length; i++) {
+      if (i % 23 == 0) {
+        step = steps[random.nextInt(steps.length)];
+      }
+      int next = value + random.nextInt(2 * step + 1) - step;
+      // Keep differences within the 30 bits Steim2 can store.
+      if (Math.abs((long) next) > (1 << 28)) {
+        next = value - (next - value);
+      }
+      value = next;
+      samples[i] = value;
+    }
+    return samples;
+  }
+
+  /**
+   * Encodes as many samples as fit in one record.
+   *
+   * @param sequence the record's sequence number
+   * @param startTime the start of the record in microseconds from the start of 2015-01-01
+   * @param samples the samples
+   * @param previous the sample before the first one, which the first difference is taken from
+   * @return the record, whose length is the record length
+   */
+  byte[] build(int sequence, long startTime, int[] samples, int previous) {
+    ByteBuffer record = ByteBuffer.allocate(recordLength).order(order);
+    int nsamp = encodeFrames(record, samples, previous);
+    writeHeader(record, sequence, startTime, nsamp);
+    return record.array();
+  }
+
+  /**
+   * Get the number of samples {@link #build(int, long, int[], int)} stores in a record.
+   */
+  int countSamples(int[] samples, int previous) {
+    return encodeFrames(ByteBuffer.allocate(recordLength).order(order), samples, previous);
+  }
+
+  private void writeHeader(ByteBuffer record, int sequence, long startTime, int nsamp) {
+    record.position(0);
+    record.put(String.format("%06dD ", sequence).getBytes());
+    record.put(pad(STATION, 5)).put(pad(LOCATION, 2)).put(pad(CHANNEL, 3)).put(pad(NETWORK, 2));
+
+    long seconds = startTime / 1000000;
+    record.putShort((short) 2015);
+    record.putShort((short) (seconds / 86400 + 1));
+    record.put((byte) (seconds / 3600 % 24));
+    record.put((byte) (seconds / 60 % 60));
+    record.put((byte) (seconds % 60));
+    record.put((byte) 0);
+    record.putShort((short) (startTime % 1000000 / 100));
+
+    record.putShort((short) nsamp);
+    // 1 Hz
+    record.putShort((short) 1);
+    record.putShort((short) 1);
+    record.put((byte) 0).put((byte) 0).put((byte) 0);
+    // One blockette
+    record.put((byte) 1);
+    record.putInt(0);
+    record.putShort((short) DATA_OFFSET);
+    record.putShort((short) 48);
+
+    record.putShort((short) 1000);
+    record.putShort((short) 0);
+    record.put((byte) encoding);
+    record.put((byte) (order == ByteOrder.BIG_ENDIAN ? 1 : 0));
+    record.put((byte) Integer.numberOfTrailingZeros(recordLength));
+    record.put((byte) 0);
+  }
+
+  private static byte[] pad(String value, int length) {
+    byte[] padded = new byte[length];
+    Arrays.fill(padded, (byte) ' ');
+    byte[] bytes = value.getBytes();
+    System.arraycopy(bytes, 0, padded, 0, Math.min(bytes.length, length));
+    return padded;
+  }
+
+  /**
+   * Writes the frames from the data offset and returns the number of samples encoded.
+   */
+  private int encodeFrames(ByteBuffer record, int[] samples, int previous) {
+    int frames = (recordLength - DATA_OFFSET) / FRAME_BYTES;
+    int[] diffs = new int[samples.length];
+    for (int i = 0; i < samples.length; i++) {
+      diffs[i] = samples[i] - (i == 0 ? previous : samples[i - 1]);
+    }
+
+    int count = 0;
+    for (int frame = 0; frame < frames; frame++) {
+      int frameStart = DATA_OFFSET + frame * FRAME_BYTES;
+      int nibbles = 0;
+      // The first frame holds the integration constants in words 1 and 2.
+      int word = frame == 0 ? 3 : 1;
+      for (; word < 16; word++) {
+        int[] packed = encoding == STEIM1
+            ? packSteim1(diffs, count)
+            : packSteim2(diffs, count);
+        // packed = {nibble, word, samples}
+        nibbles |= packed[0] << (30 - 2 * word);
+        record.putInt(frameStart + 4 * word, swapWord(packed[0], packed[1]));
+        count += packed[2];
+      }
+      record.putInt(frameStart, nibbles);
+    }
+    count = Math.min(count, samples.length);
+    record.putInt(DATA_OFFSET + 4, samples[0]);
+    record.putInt(DATA_OFFSET + 8, samples[count - 1]);
+    return count;
+  }
+
+  /**
+   * Byte differences are stored in stream order and Steim1 16 bit differences as two shorts, so
+   * only the other words are byte swapped as a whole in little endian records.
+   */
+  private int swapWord(int nibble, int word) {
+    if (order == ByteOrder.BIG_ENDIAN) {
+      return word;
+    }
+    if (nibble == 1) {
+      return Integer.reverseBytes(word);
+    }
+    if (nibble == 2 && encoding == STEIM1) {
+      return Integer.rotateLeft(word, 16);
+    }
+    return word;
+  }
+
+  private static boolean fits(int[] diffs, int from, int n, int bits) {
+    int limit = 1 << (bits - 1);
+    for (int i = from; i < from + n; i++) {
+      int diff = i < diffs.length ? diffs[i] : 0;
+      if (diff < -limit || diff >= limit) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int pack(int[] diffs, int from, int n, int bits, int shift) {
+    int word = 0;
+    int mask = (int) ((1L << bits) - 1);
+    for (int k = 0; k < n; k++) {
+      int diff = from + k < diffs.length ? diffs[from + k] : 0;
+      word |= (diff & mask) << (shift - bits * k);
+    }
+    return word;
+  }
+
+  /**
+   * Packs the next differences into one Steim1 word. Words past the last difference are padded
+   * with zeros, which the decoders never read.
+   */
+  private static int[] packSteim1(int[] diffs, int from) {
+    if (from >= diffs.length) {
+      return new int[]{0, 0, 0};
+    }
+    if (fits(diffs, from, 4, 8)) {
+      return new int[]{1, pack(diffs, from, 4, 8, 24), 4};
+    }
+    if (fits(diffs, from, 2, 16)) {
+      return new int[]{2, pack(diffs, from, 2, 16, 16), 2};
+    }
+    return new int[]{3, diffs[from], 1};
+  }
+
+  private static int[] packSteim2(int[] diffs, int from) {
+    if (from >= diffs.length) {
+      return new int[]{0, 0, 0};
+    }
+    if (fits(diffs, from, 7, 4)) {
+      return new int[]{3, 2 << 30 | pack(diffs, from, 7, 4, 24), 7};
+    }
+    if (fits(diffs, from, 6, 5)) {
+      return new int[]{3, 1 << 30 | pack(diffs, from, 6, 5, 25), 6};
+    }
+    if (fits(diffs, from, 5, 6)) {
+      return new int[]{3, pack(diffs, from, 5, 6, 24), 5};
+    }
+    if (fits(diffs, from, 4, 8)) {
+      return new int[]{1, pack(diffs, from, 4, 8, 24), 4};
+    }
+    if (fits(diffs, from, 3, 10)) {
+      return new int[]{2, 3 << 30 | pack(diffs, from, 3, 10, 20), 3};
+    }
+    if (fits(diffs, from, 2, 15)) {
+      return new int[]{2, 2 << 30 | pack(diffs, from, 2, 15, 15), 2};
+    }
+    return new int[]{2, 1 << 30 | pack(diffs, from, 1, 30, 0), 1};
+  }
+}
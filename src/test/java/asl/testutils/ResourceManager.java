@@ -6,7 +6,7 @@ import asl.seedscan.database.MetricDatabaseMock;
 import asl.metadata.Station;
 import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.metrics.MetricData;
-import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SeedIndex;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -21,7 +21,6 @@ import java.util.*;
 import java.util.concurrent.*;
 
 import asl.seedsplitter.SeedSplitter;
-import seed.Blockette320;
 
 /**
  * ResourceManager is used for loading and saving serialized objects. It may be
@@ -148,21 +147,10 @@ public abstract class ResourceManager { // NO_UCD (test only)
     File dir = new File(getDirectoryPath(timeSeriesDataLocation));
     File [] files = dir.listFiles((dir1, name) -> name.endsWith(".seed"));
 
-    Hashtable<String, ArrayList<DataSet>> dataTable;
-    Hashtable<String, ArrayList<Integer>> qualityTable;
-    Hashtable<String, ArrayList<Blockette320>> calibrationTable;
-
     int timeout = 900;
-    SplitterObject splitObj = null;
     try {
-      splitObj = executeSplitter(files, timeout, date);
-      SeedSplitter splitter = splitObj.splitter;
-      dataTable = splitObj.table;
-      qualityTable = splitter.getQualityTable();
-      calibrationTable = splitter.getCalTable();
-
-
-      return new MetricData(mockDB, dataTable, qualityTable, stationMeta, calibrationTable);
+      SeedIndex index = executeSplitter(files, timeout, date);
+      return new MetricData(mockDB, index, stationMeta);
     } catch (TimeoutException | ExecutionException | InterruptedException e) {
       e.printStackTrace();
       return null;
@@ -171,18 +159,17 @@ public abstract class ResourceManager { // NO_UCD (test only)
   }
 
   /**
-   * SeedSplitter function: processing times greater than 3 min. will move to
-   * the next day
+   * SeedSplitter function: indexing times greater than the timeout will move to the next day
    */
-  private static SplitterObject executeSplitter(File[] files, int timeout, LocalDate timestamp)
+  private static SeedIndex executeSplitter(File[] files, int timeout, LocalDate timestamp)
           throws TimeoutException, ExecutionException, InterruptedException {
-    Hashtable<String, ArrayList<DataSet>> table = null;
+    SeedIndex index = null;
     SeedSplitter splitter = new SeedSplitter(files);
     ExecutorService executor = Executors.newSingleThreadExecutor();
-    Future<Hashtable<String, ArrayList<DataSet>>> future = executor.submit(new Task(splitter));
+    Future<SeedIndex> future = executor.submit(new Task(splitter));
 
     try {
-      table = future.get(timeout, TimeUnit.SECONDS);
+      index = future.get(timeout, TimeUnit.SECONDS);
     } catch (TimeoutException | ExecutionException | InterruptedException e) {
       future.cancel(true);
       throw e;
@@ -190,23 +177,11 @@ public abstract class ResourceManager { // NO_UCD (test only)
     executor.shutdown();
     executor.awaitTermination(300, TimeUnit.SECONDS);
 
-    return new SplitterObject(splitter, table);
-  }
-
-  // Class to assign seedplitter object and seedsplitter table
-  private static class SplitterObject {
-
-    private SeedSplitter splitter;
-    private Hashtable<String, ArrayList<DataSet>> table;
-
-    private SplitterObject(SeedSplitter splitter, Hashtable<String, ArrayList<DataSet>> table) {
-      this.splitter = splitter;
-      this.table = table;
-    }
+    return index;
   }
 
-  // Class to run Future task (seedplitter.doInBackground())
-  private static class Task implements Callable<Hashtable<String, ArrayList<DataSet>>> {
+  // Class to run Future task (seedplitter.buildIndex())
+  private static class Task implements Callable<SeedIndex> {
 
     private SeedSplitter splitter;
 
@@ -214,9 +189,8 @@ public abstract class ResourceManager { // NO_UCD (test only)
       this.splitter = splitter;
     }
 
-    public Hashtable<String, ArrayList<DataSet>> call() throws Exception {
-      Hashtable<String, ArrayList<DataSet>> table = splitter.doInBackground();
-      return table;
+    public SeedIndex call() throws Exception {
+      return splitter.buildIndex();
     }
   }
 }
@@ -0,0 +1,105 @@
+package asl.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import asl.metadata.Channel;
+import asl.seedscan.metrics.MetricPSDException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class CrossPowerCacheTest {
+
+  private static final Channel LHZ = new Channel("00", "LHZ");
+  private static final Channel LH1 = new Channel("00", "LH1");
+  private static final Channel LH2 = new Channel("00", "LH2");
+
+  @Test
+  public final void get_ComputedOnce() throws Exception {
+    CrossPowerCache cache = new CrossPowerCache(Long.MAX_VALUE);
+    AtomicInteger computations = new AtomicInteger();
+    CrossPower crossPower = new CrossPower(new double[100], 0.1);
+
+    CrossPower first = cache.get(new CrossPowerKey(LHZ, LH1), () -> {
+      computations.incrementAndGet();
+      return crossPower;
+    });
+    // Keys are symmetric
+    CrossPower second = cache.get(new CrossPowerKey(LH1, LHZ), () -> {
+      computations.incrementAndGet();
+      return crossPower;
+    });
+
+    assertSame(first, second);
+    assertEquals(1, computations.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(800, cache.getCachedBytes());
+  }
+
+  @Test
+  public final void get_OldestEvictedFirst() throws Exception {
+    // Room for two spectra
+    CrossPowerCache cache = new CrossPowerCache(1600);
+
+    cache.get(new CrossPowerKey(LHZ, LHZ), () -> new CrossPower(new double[100], 0.1));
+    cache.get(new CrossPowerKey(LH1, LH1), () -> new CrossPower(new double[100], 0.1));
+    cache.get(new CrossPowerKey(LH2, LH2), () -> new CrossPower(new double[100], 0.1));
+    assertEquals(1, cache.getEvictions());
+    assertEquals(1600, cache.getCachedBytes());
+
+    // Still cached
+    cache.get(new CrossPowerKey(LH1, LH1), () -> {
+      throw new MetricPSDException("Recomputed");
+    });
+    assertEquals(1, cache.getHits());
+
+    // Evicted, so recomputed
+    AtomicInteger computations = new AtomicInteger();
+    cache.get(new CrossPowerKey(LHZ, LHZ), () -> {
+      computations.incrementAndGet();
+      return new CrossPower(new double[100], 0.1);
+    });
+    assertEquals(1, computations.get());
+    assertEquals(4, cache.getMisses());
+  }
+
+  @Test
+  public final void get_UsageReported() throws Exception {
+    AtomicLong usage = new AtomicLong();
+    CrossPowerCache cache = new CrossPowerCache(1600, usage::addAndGet);
+
+    cache.get(new CrossPowerKey(LHZ, LHZ), () -> new CrossPower(new double[100], 0.1));
+    cache.get(new CrossPowerKey(LH1, LH1), () -> new CrossPower(new double[100], 0.1));
+    assertEquals(1600, usage.get());
+    // Evicting the oldest is reported as well
+    cache.get(new CrossPowerKey(LH2, LH2), () -> new CrossPower(new double[100], 0.1));
+    assertEquals(1600, usage.get());
+
+    cache.clear();
+    assertEquals(0, usage.get());
+    assertEquals(0, cache.getCachedBytes());
+  }
+
+  @Test
+  public final void get_FailureNotCached() throws Exception {
+    CrossPowerCache cache = new CrossPowerCache(Long.MAX_VALUE);
+    CrossPowerKey key = new CrossPowerKey(LHZ, LH1);
+
+    try {
+      cache.get(key, () -> {
+        throw new MetricPSDException("Got srate=0");
+      });
+      fail("Expected MetricPSDException");
+    } catch (MetricPSDException e) {
+      assertEquals("Got srate=0", e.getMessage());
+    }
+
+    CrossPower crossPower = new CrossPower(new double[100], 0.1);
+    assertSame(crossPower, cache.get(key, () -> crossPower));
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, cache.getHits());
+  }
+}
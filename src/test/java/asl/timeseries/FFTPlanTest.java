@@ -0,0 +1,105 @@
+package asl.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class FFTPlanTest {
+
+  private static final double TOLERANCE = 1E-9;
+
+  /**
+   * Direct evaluation of the forward DFT.
+   */
+  private static double[][] dft(double[] re, double[] im) {
+    int n = re.length;
+    double[][] result = new double[2][n];
+    for (int k = 0; k < n; k++) {
+      for (int t = 0; t < n; t++) {
+        double angle = -2 * Math.PI * ((long) k * t % n) / n;
+        result[0][k] += re[t] * Math.cos(angle) - im[t] * Math.sin(angle);
+        result[1][k] += re[t] * Math.sin(angle) + im[t] * Math.cos(angle);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public final void forward_MatchesDFT() throws Exception {
+    Random random = new Random(42);
+    for (int size = 1; size <= 512; size <<= 1) {
+      double[] re = new double[size];
+      double[] im = new double[size];
+      for (int i = 0; i < size; i++) {
+        re[i] = random.nextGaussian();
+        im[i] = random.nextGaussian();
+      }
+      double[][] expected = dft(re, im);
+
+      FFTPlan.getPlan(size).forward(re, im);
+      for (int k = 0; k < size; k++) {
+        assertEquals(expected[0][k], re[k], TOLERANCE);
+        assertEquals(expected[1][k], im[k], TOLERANCE);
+      }
+    }
+  }
+
+  @Test
+  public final void inverse_RestoresData() throws Exception {
+    Random random = new Random(7);
+    int size = 256;
+    double[] re = new double[size];
+    double[] im = new double[size];
+    for (int i = 0; i < size; i++) {
+      re[i] = random.nextGaussian();
+      im[i] = random.nextGaussian();
+    }
+    double[] originalRe = re.clone();
+    double[] originalIm = im.clone();
+
+    FFTPlan plan = FFTPlan.getPlan(size);
+    plan.forward(re, im);
+    plan.inverse(re, im);
+    for (int i = 0; i < size; i++) {
+      assertEquals(originalRe[i], re[i], TOLERANCE);
+      assertEquals(originalIm[i], im[i], TOLERANCE);
+    }
+  }
+
+  @Test
+  public final void realForward_MatchesDFT() throws Exception {
+    Random random = new Random(3);
+    for (int size = 1; size <= 512; size <<= 1) {
+      // Leave the last quarter to be zero padded.
+      int length = Math.max(1, size - size / 4);
+      double[] data = new double[length];
+      double[] paddedRe = new double[size];
+      for (int i = 0; i < length; i++) {
+        data[i] = random.nextGaussian();
+        paddedRe[i] = data[i];
+      }
+      double[][] expected = dft(paddedRe, new double[size]);
+
+      double[] re = new double[size / 2 + 1];
+      double[] im = new double[size / 2 + 1];
+      FFTPlan.getPlan(size).realForward(data, length, re, im);
+      for (int k = 0; k <= size / 2; k++) {
+        assertEquals(expected[0][k], re[k], TOLERANCE);
+        assertEquals(expected[1][k], im[k], TOLERANCE);
+      }
+    }
+  }
+
+  @Test
+  public final void getPlan_Cached() throws Exception {
+    assertSame(FFTPlan.getPlan(1024), FFTPlan.getPlan(1024));
+    assertEquals(1024, FFTPlan.getPlan(1024).getSize());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void getPlan_NotPowerOf2() throws Exception {
+    FFTPlan.getPlan(1000);
+  }
+}
@@ -0,0 +1,142 @@
+package asl.timeseries;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+public class PSDTest {
+
+  /**
+   * The Complex based computation PSD used before WelchPSD, kept to check the results are
+   * unchanged.
+   */
+  private static Complex[] referenceSpectrum(double[] dataX, double[] dataY) {
+    int dataSize = dataX.length;
+    int segmentSize = dataSize / 4;
+    int segmentOffsetSize = segmentSize / 4;
+    int paddedSegmentSize = FFTUtils.getPaddedSize(segmentSize);
+    int singleSideSize = paddedSegmentSize / 2 + 1;
+    double period = 0.05;
+
+    Complex[] psd = new Complex[singleSideSize];
+    Arrays.fill(psd, Complex.ZERO);
+    double wss = 0.;
+    int numberSegmentsProcessed = 0;
+    for (int offset = 0; offset + segmentSize <= dataSize; offset += segmentOffsetSize) {
+      double[] xseg = Arrays.copyOfRange(dataX, offset, offset + segmentSize);
+      TimeseriesUtils.detrend(xseg);
+      TimeseriesUtils.demean(xseg);
+      wss = TimeseriesUtils.costaper(xseg, .10);
+      Complex[] xfft = FFTUtils.singleSidedFFT(xseg);
+      double[] yseg = Arrays.copyOfRange(dataY, offset, offset + segmentSize);
+      TimeseriesUtils.detrend(yseg);
+      TimeseriesUtils.demean(yseg);
+      wss = TimeseriesUtils.costaper(yseg, .10);
+      Complex[] yfft = FFTUtils.singleSidedFFT(yseg);
+      for (int k = 0; k < singleSideSize; k++) {
+        psd[k] = psd[k].add(xfft[k].multiply(yfft[k].conjugate()));
+      }
+      numberSegmentsProcessed++;
+    }
+
+    double psdNormalization = 2.0 * period / (double) paddedSegmentSize;
+    psdNormalization = psdNormalization / (wss / (double) segmentSize);
+    psdNormalization = psdNormalization / (double) numberSegmentsProcessed;
+    for (int k = 0; k < singleSideSize; k++) {
+      psd[k] = psd[k].multiply(psdNormalization);
+    }
+
+    Complex[] smoothed = psd.clone();
+    for (int iw = 5; iw < singleSideSize - 5; iw++) {
+      Complex sumC = Complex.ZERO;
+      for (int k = iw - 5; k < iw + 5; k++) {
+        sumC = sumC.add(psd[k]);
+      }
+      smoothed[iw] = sumC.divide(11.);
+    }
+    return smoothed;
+  }
+
+  private static double[] createData(long seed, int size) {
+    Random random = new Random(seed);
+    double[] data = new double[size];
+    for (int i = 0; i < size; i++) {
+      // Microseism like signal over noise and a trend.
+      data[i] = 1000 * Math.sin(2 * Math.PI * i / 137.) + random.nextGaussian() + 0.01 * i;
+    }
+    return data;
+  }
+
+  private static void assertSpectrumEquals(Complex[] expected, Complex[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int k = 0; k < expected.length; k++) {
+      double scale = Math.max(expected[k].abs(), Double.MIN_NORMAL);
+      assertEquals(expected[k].getReal(), actual[k].getReal(), scale * 1E-10);
+      assertEquals(expected[k].getImaginary(), actual[k].getImaginary(), scale * 1E-10);
+    }
+  }
+
+  @Test
+  public final void getSpectrum_PowerMatchesReference() throws Exception {
+    double[] data = createData(1, 20000);
+    PSD psd = new PSD(data, data.clone(), 0.05);
+
+    assertSpectrumEquals(referenceSpectrum(data, data), psd.getSpectrum());
+  }
+
+  @Test
+  public final void getSpectrum_CrossPowerMatchesReference() throws Exception {
+    double[] dataX = createData(1, 20000);
+    double[] dataY = createData(2, 20000);
+    PSD psd = new PSD(dataX, dataY, 0.05);
+
+    assertSpectrumEquals(referenceSpectrum(dataX, dataY), psd.getSpectrum());
+  }
+
+  @Test
+  public final void getSpectrum_ParallelMatchesSequential() throws Exception {
+    double[] dataX = createData(3, 20000);
+    double[] dataY = createData(4, 20000);
+    PSD sequential = new PSD(dataX, dataY, 0.05);
+    PSD parallel = new PSD(dataX, dataY, 0.05, true);
+
+    assertSpectrumEquals(sequential.getSpectrum(), parallel.getSpectrum());
+  }
+
+  @Test
+  public final void compute_SegmentSpectraMatchData() throws Exception {
+    double[] dataX = createData(6, 20000);
+    double[] dataY = createData(7, 20000);
+    int size = WelchPSD.getSpectrumSize(dataX.length);
+    double[] expectedRe = new double[size];
+    double[] expectedIm = new double[size];
+    WelchPSD.compute(dataX, dataY, 0.05, expectedRe, expectedIm, false);
+
+    double[] re = new double[size];
+    double[] im = new double[size];
+    WelchPSD.compute(WelchPSD.computeSegments(dataX), WelchPSD.computeSegments(dataY), 0.05, re,
+        im);
+
+    assertArrayEquals(expectedRe, re, 0.);
+    assertArrayEquals(expectedIm, im, 0.);
+  }
+
+  @Test
+  public final void getFreq_IncrementsByDeltaF() throws Exception {
+    double[] data = createData(5, 20000);
+    PSD psd = new PSD(data, data, 0.05);
+
+    // 20000 / 4 = 5000 points per segment, padded to 8192.
+    assertEquals(1. / (8192 * 0.05), psd.getDeltaF(), 0.);
+    double[] expected = new double[8192 / 2 + 1];
+    for (int k = 0; k < expected.length; k++) {
+      expected[k] = k * psd.getDeltaF();
+    }
+    assertArrayEquals(expected, psd.getFreq(), 0.);
+    assertEquals(expected.length, psd.getSpectrumReal().length);
+  }
+}
@@ -0,0 +1,117 @@
+package asl.timeseries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class SegmentSpectraCacheTest {
+
+  private static double[] createData(int size) {
+    Random random = new Random(size);
+    double[] data = new double[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = random.nextGaussian();
+    }
+    return data;
+  }
+
+  @Test
+  public final void get_ComputedOnce() throws Exception {
+    SegmentSpectraCache cache = new SegmentSpectraCache(Long.MAX_VALUE);
+    AtomicInteger loads = new AtomicInteger();
+    double[] data = createData(4000);
+
+    SegmentSpectra first = cache.get("00-LHZ", 4000, () -> {
+      loads.incrementAndGet();
+      return data;
+    });
+    SegmentSpectra second = cache.get("00-LHZ", 4000, () -> {
+      loads.incrementAndGet();
+      return data;
+    });
+
+    assertSame(first, second);
+    assertEquals(1, loads.get());
+    assertEquals(first.getSizeInBytes(), cache.getCachedBytes());
+  }
+
+  @Test
+  public final void get_LargestEvictedFirst() throws Exception {
+    long small = WelchPSD.computeSegments(createData(4000)).getSizeInBytes();
+    long large = WelchPSD.computeSegments(createData(16000)).getSizeInBytes();
+    // Room for the large and one small spectra
+    SegmentSpectraCache cache = new SegmentSpectraCache(large + small);
+
+    cache.get("00-BHZ", 16000, () -> createData(16000));
+    cache.get("00-LHZ", 4000, () -> createData(4000));
+    assertEquals(large + small, cache.getCachedBytes());
+
+    cache.get("00-LH1", 4000, () -> createData(4000));
+    assertFalse(cache.contains("00-BHZ"));
+    assertTrue(cache.contains("00-LHZ"));
+    assertTrue(cache.contains("00-LH1"));
+    assertEquals(2 * small, cache.getCachedBytes());
+  }
+
+  @Test
+  public final void get_UsageReported() throws Exception {
+    long small = WelchPSD.computeSegments(createData(4000)).getSizeInBytes();
+    long large = WelchPSD.computeSegments(createData(16000)).getSizeInBytes();
+    AtomicLong usage = new AtomicLong();
+    SegmentSpectraCache cache = new SegmentSpectraCache(large + small, usage::addAndGet);
+
+    cache.get("00-BHZ", 16000, () -> createData(16000));
+    cache.get("00-LHZ", 4000, () -> createData(4000));
+    assertEquals(large + small, usage.get());
+    cache.get("00-LH1", 4000, () -> createData(4000));
+    assertEquals(2 * small, usage.get());
+
+    cache.clear();
+    assertEquals(0, usage.get());
+  }
+
+  @Test
+  public final void get_LargerThanBudgetNeverBuilt() throws Exception {
+    SegmentSpectraCache cache = new SegmentSpectraCache(1024);
+    AtomicInteger loads = new AtomicInteger();
+
+    SegmentSpectra spectra = cache.get("00-LHZ", 4000, () -> {
+      loads.incrementAndGet();
+      return createData(4000);
+    });
+
+    assertNull(spectra);
+    assertEquals(0, loads.get());
+    assertFalse(cache.contains("00-LHZ"));
+    assertEquals(0, cache.getCachedBytes());
+  }
+
+  @Test
+  public final void getSegmentSpectraSize_MatchesComputedSpectra() throws Exception {
+    for (int size : new int[]{4000, 16000, 86400}) {
+      assertEquals(WelchPSD.computeSegments(createData(size)).getSizeInBytes(),
+          WelchPSD.getSegmentSpectraSize(size));
+    }
+  }
+
+  @Test
+  public final void get_FailureNotCached() throws Exception {
+    SegmentSpectraCache cache = new SegmentSpectraCache(Long.MAX_VALUE);
+    try {
+      cache.get("00-LHZ", 0, () -> new double[0]);
+    } catch (RuntimeException e) {
+      // Too little data
+    }
+    assertFalse(cache.contains("00-LHZ"));
+
+    cache.get("00-LHZ", 4000, () -> createData(4000));
+    assertTrue(cache.contains("00-LHZ"));
+  }
+}